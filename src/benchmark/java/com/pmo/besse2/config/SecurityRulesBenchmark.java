@@ -0,0 +1,80 @@
+package com.pmo.besse2.config;
+
+import com.pmo.besse2.security.AuthoritiesConstants;
+import com.pmo.besse2.security.PathAuthorizationManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.security.web.server.authorization.DelegatingReactiveAuthorizationManager;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcherEntry;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compares the compiled access rules of {@link SecurityConfiguration} with the sequence of path matchers they replace.
+ * <p>
+ * Run with {@code ./mvnw -Pdev,benchmark test-compile exec:exec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityRulesBenchmark {
+
+    @Param({ "/", "/api/authenticate", "/api/account", "/services/service-a/api/items", "/management/prometheus", "/management/env" })
+    public String path;
+
+    private final Mono<Authentication> authentication = Mono.just(
+        new UsernamePasswordAuthenticationToken("admin", "admin", List.of(new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN)))
+    );
+
+    private PathAuthorizationManager compiledRules;
+
+    private DelegatingReactiveAuthorizationManager pathMatchers;
+
+    private ServerWebExchange exchange;
+
+    private AuthorizationContext context;
+
+    @Setup
+    public void setup() {
+        compiledRules = SecurityConfiguration.pathAuthorizationManager();
+        DelegatingReactiveAuthorizationManager.Builder builder = DelegatingReactiveAuthorizationManager.builder();
+        for (PathAuthorizationManager.Rule rule : compiledRules.getRules()) {
+            builder.add(new ServerWebExchangeMatcherEntry<>(ServerWebExchangeMatchers.pathMatchers(rule.getPattern()), rule.getAccess()));
+        }
+        pathMatchers = builder.build();
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        context = new AuthorizationContext(exchange);
+    }
+
+    @Benchmark
+    public AuthorizationDecision compiledRules() {
+        return compiledRules.check(authentication, context).block();
+    }
+
+    @Benchmark
+    public AuthorizationDecision pathMatchers() {
+        return pathMatchers.check(authentication, exchange).block();
+    }
+}
@@ -1,6 +1,10 @@
 package com.pmo.besse2.config;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 /**
  * Properties specific to Jhipster Sample Application 2.
@@ -10,7 +14,553 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final PasswordHashing passwordHashing = new PasswordHashing();
+
+    private final UserImport userImport = new UserImport();
+
+    private final UserIndexing userIndexing = new UserIndexing();
+
+    private final UserReindex userReindex = new UserReindex();
+
+    private final HttpCache httpCache = new HttpCache();
+
+    private final LoadBalancer loadBalancer = new LoadBalancer();
+
+    private final Hedging hedging = new Hedging();
+
+    private final StaticAssets staticAssets = new StaticAssets();
+
+    private final CacheInvalidation cacheInvalidation = new CacheInvalidation();
+
+    private final Caches caches = new Caches();
+
+    private final CacheStats cacheStats = new CacheStats();
+
+    private final UserBatchLoading userBatchLoading = new UserBatchLoading();
+
     // jhipster-needle-application-properties-property
+
+    public PasswordHashing getPasswordHashing() {
+        return passwordHashing;
+    }
+
+    public UserImport getUserImport() {
+        return userImport;
+    }
+
+    public UserIndexing getUserIndexing() {
+        return userIndexing;
+    }
+
+    public UserReindex getUserReindex() {
+        return userReindex;
+    }
+
+    public HttpCache getHttpCache() {
+        return httpCache;
+    }
+
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    public StaticAssets getStaticAssets() {
+        return staticAssets;
+    }
+
+    public CacheInvalidation getCacheInvalidation() {
+        return cacheInvalidation;
+    }
+
+    public Caches getCaches() {
+        return caches;
+    }
+
+    public CacheStats getCacheStats() {
+        return cacheStats;
+    }
+
+    public UserBatchLoading getUserBatchLoading() {
+        return userBatchLoading;
+    }
+
     // jhipster-needle-application-properties-property-getter
+
+    public static class PasswordHashing {
+
+        private int bcryptStrength = 10;
+
+        private int poolSize = Runtime.getRuntime().availableProcessors();
+
+        private int queueCapacity = 1000;
+
+        public int getBcryptStrength() {
+            return bcryptStrength;
+        }
+
+        public void setBcryptStrength(int bcryptStrength) {
+            this.bcryptStrength = bcryptStrength;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class UserImport {
+
+        private int chunkSize = 500;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    public static class UserIndexing {
+
+        private int batchSize = 500;
+
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        private int maxRetries = 5;
+
+        private Duration retryBackoff = Duration.ofMillis(500);
+
+        private Duration leaseTime = Duration.ofMinutes(2);
+
+        private int maxAttempts = 10;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public Duration getLeaseTime() {
+            return leaseTime;
+        }
+
+        public void setLeaseTime(Duration leaseTime) {
+            this.leaseTime = leaseTime;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+    }
+
+    public static class UserReindex {
+
+        private int chunkSize = 1000;
+
+        private int slices = 4;
+
+        private int maxDocumentsPerSecond = 0;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getSlices() {
+            return slices;
+        }
+
+        public void setSlices(int slices) {
+            this.slices = slices;
+        }
+
+        public int getMaxDocumentsPerSecond() {
+            return maxDocumentsPerSecond;
+        }
+
+        public void setMaxDocumentsPerSecond(int maxDocumentsPerSecond) {
+            this.maxDocumentsPerSecond = maxDocumentsPerSecond;
+        }
+    }
+
+    public static class HttpCache {
+
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+
+        private int maxVaryKeys = 10_000;
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public DataSize getMaxEntrySize() {
+            return maxEntrySize;
+        }
+
+        public void setMaxEntrySize(DataSize maxEntrySize) {
+            this.maxEntrySize = maxEntrySize;
+        }
+
+        public int getMaxVaryKeys() {
+            return maxVaryKeys;
+        }
+
+        public void setMaxVaryKeys(int maxVaryKeys) {
+            this.maxVaryKeys = maxVaryKeys;
+        }
+    }
+
+    public static class LoadBalancer {
+
+        private Duration decayTime = Duration.ofSeconds(10);
+
+        private int maxConsecutiveFailures = 5;
+
+        private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+        public Duration getDecayTime() {
+            return decayTime;
+        }
+
+        public void setDecayTime(Duration decayTime) {
+            this.decayTime = decayTime;
+        }
+
+        public int getMaxConsecutiveFailures() {
+            return maxConsecutiveFailures;
+        }
+
+        public void setMaxConsecutiveFailures(int maxConsecutiveFailures) {
+            this.maxConsecutiveFailures = maxConsecutiveFailures;
+        }
+
+        public Duration getBaseEjectionTime() {
+            return baseEjectionTime;
+        }
+
+        public void setBaseEjectionTime(Duration baseEjectionTime) {
+            this.baseEjectionTime = baseEjectionTime;
+        }
+
+        public Duration getMaxEjectionTime() {
+            return maxEjectionTime;
+        }
+
+        public void setMaxEjectionTime(Duration maxEjectionTime) {
+            this.maxEjectionTime = maxEjectionTime;
+        }
+    }
+
+    public static class Hedging {
+
+        private double budgetRatio = 0.1;
+
+        private int budgetBurst = 100;
+
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        public int getBudgetBurst() {
+            return budgetBurst;
+        }
+
+        public void setBudgetBurst(int budgetBurst) {
+            this.budgetBurst = budgetBurst;
+        }
+    }
+
+    public static class StaticAssets {
+
+        private boolean enabled = false;
+
+        private String location = "classpath:static/";
+
+        private boolean offHeap = false;
+
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public void setLocation(String location) {
+            this.location = location;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        public void setOffHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class CacheInvalidation {
+
+        private Duration batchWindow = Duration.ofMillis(50);
+
+        private int maxBatchSize = 100;
+
+        private Duration timeout = Duration.ofSeconds(2);
+
+        public Duration getBatchWindow() {
+            return batchWindow;
+        }
+
+        public void setBatchWindow(Duration batchWindow) {
+            this.batchWindow = batchWindow;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    public static class Caches {
+
+        /**
+         * The directory of the disk tiers, needed if a cache has one.
+         */
+        private String diskPath;
+
+        /**
+         * The policies by cache name, the caches without one only have the entries and the time to live of
+         * {@code jhipster.cache.ehcache} on the heap.
+         */
+        private final Map<String, CachePolicy> policies = new LinkedHashMap<>();
+
+        public String getDiskPath() {
+            return diskPath;
+        }
+
+        public void setDiskPath(String diskPath) {
+            this.diskPath = diskPath;
+        }
+
+        public Map<String, CachePolicy> getPolicies() {
+            return policies;
+        }
+    }
+
+    public static class CachePolicy {
+
+        private Long heapEntries;
+
+        private DataSize offHeap;
+
+        private DataSize disk;
+
+        private boolean persistent = false;
+
+        private Duration timeToLive;
+
+        private Duration timeToIdle;
+
+        private Duration staleWhileRevalidate;
+
+        private double earlyExpirationBeta = 0;
+
+        public Long getHeapEntries() {
+            return heapEntries;
+        }
+
+        public void setHeapEntries(Long heapEntries) {
+            this.heapEntries = heapEntries;
+        }
+
+        public DataSize getOffHeap() {
+            return offHeap;
+        }
+
+        public void setOffHeap(DataSize offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        public DataSize getDisk() {
+            return disk;
+        }
+
+        public void setDisk(DataSize disk) {
+            this.disk = disk;
+        }
+
+        public boolean isPersistent() {
+            return persistent;
+        }
+
+        public void setPersistent(boolean persistent) {
+            this.persistent = persistent;
+        }
+
+        public Duration getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public Duration getTimeToIdle() {
+            return timeToIdle;
+        }
+
+        public void setTimeToIdle(Duration timeToIdle) {
+            this.timeToIdle = timeToIdle;
+        }
+
+        public Duration getStaleWhileRevalidate() {
+            return staleWhileRevalidate;
+        }
+
+        public void setStaleWhileRevalidate(Duration staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+        }
+
+        public double getEarlyExpirationBeta() {
+            return earlyExpirationBeta;
+        }
+
+        public void setEarlyExpirationBeta(double earlyExpirationBeta) {
+            this.earlyExpirationBeta = earlyExpirationBeta;
+        }
+    }
+
+    public static class CacheStats {
+
+        private int hotKeys = 10;
+
+        private double entrySizeSampleRatio = 0.05;
+
+        public int getHotKeys() {
+            return hotKeys;
+        }
+
+        public void setHotKeys(int hotKeys) {
+            this.hotKeys = hotKeys;
+        }
+
+        public double getEntrySizeSampleRatio() {
+            return entrySizeSampleRatio;
+        }
+
+        public void setEntrySizeSampleRatio(double entrySizeSampleRatio) {
+            this.entrySizeSampleRatio = entrySizeSampleRatio;
+        }
+    }
+
+    public static class UserBatchLoading {
+
+        private Duration window = Duration.ofMillis(2);
+
+        private int maxBatchSize = 100;
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
     // jhipster-needle-application-properties-property-class
 }
@@ -1,9 +1,21 @@
 package com.pmo.besse2.config;
 
+import com.pmo.besse2.management.CacheHotKeysService;
+import com.pmo.besse2.repository.UserLookupCache;
+import java.io.File;
 import java.time.Duration;
+import javax.cache.Caching;
 import org.ehcache.config.builders.*;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.impl.config.persistence.DefaultPersistenceConfiguration;
+import org.ehcache.impl.serialization.PlainJavaSerializer;
 import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.spi.serialization.Serializer;
 import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.cache.JCacheManagerCustomizer;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
@@ -24,18 +36,34 @@ public class CacheConfiguration {
 
     private GitProperties gitProperties;
     private BuildProperties buildProperties;
-    private final javax.cache.configuration.Configuration<Object, Object> jcacheConfiguration;
+    private final JHipsterProperties.Cache.Ehcache ehcache;
+    private final ApplicationProperties.Caches caches;
 
-    public CacheConfiguration(JHipsterProperties jHipsterProperties) {
-        JHipsterProperties.Cache.Ehcache ehcache = jHipsterProperties.getCache().getEhcache();
+    public CacheConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
+        this.ehcache = jHipsterProperties.getCache().getEhcache();
+        this.caches = applicationProperties.getCaches();
+    }
 
-        jcacheConfiguration =
-            Eh107Configuration.fromEhcacheCacheConfiguration(
-                CacheConfigurationBuilder
-                    .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(ehcache.getMaxEntries()))
-                    .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ehcache.getTimeToLiveSeconds())))
-                    .build()
-            );
+    /**
+     * The JCache cache manager, created like the one of Spring Boot but with the persistence service needed by the disk
+     * tiers, and whose caches count the keys read for the cachestats management endpoint.
+     */
+    @Bean
+    public javax.cache.CacheManager jCacheCacheManager(
+        ObjectProvider<JCacheManagerCustomizer> cacheManagerCustomizers,
+        CacheHotKeysService cacheHotKeysService
+    ) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        EhcacheCachingProvider cachingProvider = (EhcacheCachingProvider) Caching.getCachingProvider(
+            EhcacheCachingProvider.class.getName(),
+            classLoader
+        );
+        DefaultConfiguration configuration = caches.getDiskPath() != null
+            ? new DefaultConfiguration(classLoader, new DefaultPersistenceConfiguration(new File(caches.getDiskPath())))
+            : new DefaultConfiguration(classLoader);
+        javax.cache.CacheManager cacheManager = cachingProvider.getCacheManager(cachingProvider.getDefaultURI(), configuration);
+        cacheManagerCustomizers.orderedStream().forEach(customizer -> customizer.customize(cacheManager));
+        return cacheHotKeysService.track(cacheManager);
     }
 
     @Bean
@@ -46,22 +74,95 @@ public class CacheConfiguration {
     @Bean
     public JCacheManagerCustomizer cacheManagerCustomizer() {
         return cm -> {
-            createCache(cm, com.pmo.besse2.repository.UserRepository.USERS_BY_LOGIN_CACHE);
-            createCache(cm, com.pmo.besse2.repository.UserRepository.USERS_BY_EMAIL_CACHE);
-            createCache(cm, com.pmo.besse2.domain.User.class.getName());
-            createCache(cm, com.pmo.besse2.domain.Authority.class.getName());
-            createCache(cm, com.pmo.besse2.domain.User.class.getName() + ".authorities");
+            createCache(cm, com.pmo.besse2.repository.UserRepository.USERS_BY_LOGIN_CACHE, String.class, UserLookupCache.CachedUser.class);
+            createCache(cm, com.pmo.besse2.repository.UserRepository.USERS_BY_EMAIL_CACHE, String.class, UserLookupCache.CachedUser.class);
+            createCache(cm, com.pmo.besse2.domain.User.class.getName(), Object.class, Object.class);
+            createCache(cm, com.pmo.besse2.domain.Authority.class.getName(), Object.class, Object.class);
+            createCache(cm, com.pmo.besse2.domain.User.class.getName() + ".authorities", Object.class, Object.class);
+            createCache(cm, com.pmo.besse2.web.filter.RateLimitGatewayFilterFactory.BUCKETS_CACHE, String.class, byte[].class);
+            createCache(
+                cm,
+                com.pmo.besse2.security.jwt.TokenProvider.AUTHENTICATIONS_CACHE,
+                String.class,
+                com.pmo.besse2.security.jwt.TokenProvider.CachedAuthentication.class
+            );
             // jhipster-needle-ehcache-add-entry
         };
     }
 
-    private void createCache(javax.cache.CacheManager cm, String cacheName) {
-        javax.cache.Cache<Object, Object> cache = cm.getCache(cacheName);
+    private <K, V> void createCache(javax.cache.CacheManager cm, String cacheName, Class<K> keyType, Class<V> valueType) {
+        javax.cache.Cache<K, V> cache = cm.getCache(cacheName);
         if (cache != null) {
             cache.clear();
         } else {
-            cm.createCache(cacheName, jcacheConfiguration);
+            cm.createCache(
+                cacheName,
+                Eh107Configuration.fromEhcacheCacheConfiguration(ehcacheConfiguration(cacheName, keyType, valueType, cm.getClassLoader()))
+            );
+        }
+        // Read by Micrometer and the cachestats management endpoint
+        cm.enableStatistics(cacheName, true);
+    }
+
+    /**
+     * The configuration of a cache, from its policy. The entries of the off-heap and disk tiers are serialized with the
+     * serializers of Ehcache for their types, such as strings, byte arrays or {@link java.io.Serializable} classes, and with
+     * the Java serialization when their type is only known as {@link Object}.
+     *
+     * @throws IllegalStateException if the policy is invalid.
+     */
+    <K, V> org.ehcache.config.CacheConfiguration<K, V> ehcacheConfiguration(
+        String cacheName,
+        Class<K> keyType,
+        Class<V> valueType,
+        ClassLoader classLoader
+    ) {
+        ApplicationProperties.CachePolicy policy = caches.getPolicies().getOrDefault(cacheName, new ApplicationProperties.CachePolicy());
+        long heapEntries = policy.getHeapEntries() != null ? policy.getHeapEntries() : ehcache.getMaxEntries();
+        ResourcePoolsBuilder resourcePools = ResourcePoolsBuilder.newResourcePoolsBuilder().heap(heapEntries, EntryUnit.ENTRIES);
+        if (policy.getOffHeap() != null) {
+            resourcePools = resourcePools.offheap(policy.getOffHeap().toBytes(), MemoryUnit.B);
+        }
+        if (policy.getDisk() != null) {
+            if (caches.getDiskPath() == null) {
+                throw new IllegalStateException("The " + cacheName + " cache has a disk tier, but application.caches.disk-path is not set");
+            }
+            resourcePools = resourcePools.disk(policy.getDisk().toBytes(), MemoryUnit.B, policy.isPersistent());
         }
+        if (policy.getTimeToLive() != null && policy.getTimeToIdle() != null) {
+            throw new IllegalStateException("The " + cacheName + " cache has both a time to live and a time to idle");
+        }
+        if ((policy.getStaleWhileRevalidate() != null || policy.getEarlyExpirationBeta() > 0) && policy.getTimeToLive() == null) {
+            throw new IllegalStateException("The refreshes of the " + cacheName + " cache need a time to live in its policy");
+        }
+
+        CacheConfigurationBuilder<K, V> builder = CacheConfigurationBuilder.newCacheConfigurationBuilder(keyType, valueType, resourcePools);
+        if (policy.getTimeToIdle() != null) {
+            builder = builder.withExpiry(ExpiryPolicyBuilder.timeToIdleExpiration(policy.getTimeToIdle()));
+        } else {
+            Duration timeToLive = policy.getTimeToLive() != null
+                ? policy.getTimeToLive()
+                : Duration.ofSeconds(ehcache.getTimeToLiveSeconds());
+            if (policy.getStaleWhileRevalidate() != null) {
+                // The stale entries are kept, to be returned while they are refreshed
+                timeToLive = timeToLive.plus(policy.getStaleWhileRevalidate());
+            }
+            builder = builder.withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(timeToLive));
+        }
+        if (policy.getOffHeap() != null || policy.getDisk() != null) {
+            if (keyType == Object.class) {
+                builder = builder.withKeySerializer(javaSerializer(classLoader));
+            }
+            if (valueType == Object.class) {
+                builder = builder.withValueSerializer(javaSerializer(classLoader));
+            }
+        }
+        return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Serializer<T> javaSerializer(ClassLoader classLoader) {
+        return (Serializer<T>) new PlainJavaSerializer<Object>(classLoader);
     }
 
     @Autowired(required = false)
@@ -0,0 +1,41 @@
+package com.pmo.besse2.config;
+
+import com.pmo.besse2.web.loadbalancer.LatencyAwareLoadBalancer;
+import com.pmo.besse2.web.loadbalancer.LoadBalancerStats;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.config.LoadBalancerZoneConfig;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Configuration of the load balancer of each service, in the child context of that service.
+ * <p>
+ * It must not be registered in the application context, so it isn't annotated with
+ * {@link org.springframework.context.annotation.Configuration} and is only referenced by {@link LoadBalancerConfiguration}.
+ */
+class LatencyAwareLoadBalancerClientConfiguration {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> reactorServiceInstanceLoadBalancer(
+        Environment environment,
+        LoadBalancerClientFactory loadBalancerClientFactory,
+        LoadBalancerStats loadBalancerStats,
+        ObjectProvider<LoadBalancerZoneConfig> zoneConfig
+    ) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        LoadBalancerZoneConfig config = zoneConfig.getIfAvailable();
+        String zone = config != null && config.getZone() != null
+            ? config.getZone()
+            : environment.getProperty("eureka.instance.metadata-map.zone");
+        return new LatencyAwareLoadBalancer(
+            serviceId,
+            loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+            loadBalancerStats,
+            zone
+        );
+    }
+}
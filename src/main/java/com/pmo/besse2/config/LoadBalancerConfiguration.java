@@ -0,0 +1,12 @@
+package com.pmo.besse2.config;
+
+import com.pmo.besse2.web.loadbalancer.LatencyAwareLoadBalancer;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Use the {@link LatencyAwareLoadBalancer} for all the services called through the gateway.
+ */
+@Configuration
+@LoadBalancerClients(defaultConfiguration = LatencyAwareLoadBalancerClientConfiguration.class)
+public class LoadBalancerConfiguration {}
@@ -3,8 +3,11 @@ package com.pmo.besse2.config;
 import static org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers.pathMatchers;
 
 import com.pmo.besse2.security.AuthoritiesConstants;
+import com.pmo.besse2.security.PasswordHashingScheduler;
+import com.pmo.besse2.security.PathAuthorizationManager;
 import com.pmo.besse2.security.jwt.JWTFilter;
 import com.pmo.besse2.security.jwt.TokenProvider;
+import com.pmo.besse2.web.filter.PathClassifier;
 import com.pmo.besse2.web.filter.SpaWebFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
@@ -16,13 +19,13 @@ import org.springframework.security.config.annotation.web.reactive.EnableWebFlux
 import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.security.web.server.header.ReferrerPolicyServerHttpHeadersWriter;
 import org.springframework.security.web.server.header.XFrameOptionsServerHttpHeadersWriter.Mode;
 import org.springframework.security.web.server.util.matcher.NegatedServerWebExchangeMatcher;
 import org.springframework.security.web.server.util.matcher.OrServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
 import org.springframework.web.cors.reactive.CorsWebFilter;
 import org.zalando.problem.spring.webflux.advice.security.SecurityProblemSupport;
 import tech.jhipster.config.JHipsterProperties;
@@ -41,23 +44,27 @@ public class SecurityConfiguration {
     private final SecurityProblemSupport problemSupport;
     private final CorsWebFilter corsWebFilter;
 
+    private final PasswordHashingScheduler passwordHashingScheduler;
+
     public SecurityConfiguration(
         ReactiveUserDetailsService userDetailsService,
         TokenProvider tokenProvider,
         JHipsterProperties jHipsterProperties,
         SecurityProblemSupport problemSupport,
-        CorsWebFilter corsWebFilter
+        CorsWebFilter corsWebFilter,
+        PasswordHashingScheduler passwordHashingScheduler
     ) {
         this.userDetailsService = userDetailsService;
         this.tokenProvider = tokenProvider;
         this.jHipsterProperties = jHipsterProperties;
         this.problemSupport = problemSupport;
         this.corsWebFilter = corsWebFilter;
+        this.passwordHashingScheduler = passwordHashingScheduler;
     }
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return passwordHashingScheduler.getPasswordEncoder();
     }
 
     @Bean
@@ -66,7 +73,10 @@ public class SecurityConfiguration {
             userDetailsService
         );
         authenticationManager.setPasswordEncoder(passwordEncoder());
-        return authenticationManager;
+        // Check the passwords on the bounded hashing pool, answering 503 instead of queueing without limit when it is saturated
+        authenticationManager.setScheduler(passwordHashingScheduler.getScheduler());
+        return authentication ->
+            authenticationManager.authenticate(authentication).onErrorMap(passwordHashingScheduler::translateRejection);
     }
 
     @Bean
@@ -74,13 +84,13 @@ public class SecurityConfiguration {
         // @formatter:off
         http
             .securityMatcher(new NegatedServerWebExchangeMatcher(new OrServerWebExchangeMatcher(
-                pathMatchers("/app/**", "/_app/**", "/i18n/**", "/img/**", "/content/**", "/swagger-ui/**", "/v3/api-docs/**", "/test/**"),
+                staticPathsMatcher(),
                 pathMatchers(HttpMethod.OPTIONS, "/**")
             )))
             .csrf()
                 .disable()
             .addFilterBefore(corsWebFilter, SecurityWebFiltersOrder.REACTOR_CONTEXT)
-            .addFilterAt(new SpaWebFilter(), SecurityWebFiltersOrder.AUTHENTICATION)
+            .addFilterAt(new SpaWebFilter(PathClassifier.INSTANCE), SecurityWebFiltersOrder.AUTHENTICATION)
             .addFilterAt(new JWTFilter(tokenProvider), SecurityWebFiltersOrder.HTTP_BASIC)
             .authenticationManager(reactiveAuthenticationManager())
             .exceptionHandling()
@@ -97,23 +107,46 @@ public class SecurityConfiguration {
                 .frameOptions().mode(Mode.DENY)
         .and()
             .authorizeExchange()
-            .pathMatchers("/").permitAll()
-            .pathMatchers("/*.*").permitAll()
-            .pathMatchers("/api/authenticate").permitAll()
-            .pathMatchers("/api/register").permitAll()
-            .pathMatchers("/api/activate").permitAll()
-            .pathMatchers("/api/account/reset-password/init").permitAll()
-            .pathMatchers("/api/account/reset-password/finish").permitAll()
-            .pathMatchers("/api/admin/**").hasAuthority(AuthoritiesConstants.ADMIN)
-            .pathMatchers("/api/**").authenticated()
-            .pathMatchers("/services/*/v3/api-docs").hasAuthority(AuthoritiesConstants.ADMIN)
-            .pathMatchers("/services/**").authenticated()
-            .pathMatchers("/management/health").permitAll()
-            .pathMatchers("/management/health/**").permitAll()
-            .pathMatchers("/management/info").permitAll()
-            .pathMatchers("/management/prometheus").permitAll()
-            .pathMatchers("/management/**").hasAuthority(AuthoritiesConstants.ADMIN);
+            .anyExchange().access(pathAuthorizationManager());
         // @formatter:on
         return http.build();
     }
+
+    /**
+     * The access rules of the paths, the first matching rule applies. They are compiled into a prefix tree, which finds
+     * the rule of a request in a single traversal of its path.
+     */
+    static PathAuthorizationManager pathAuthorizationManager() {
+        // @formatter:off
+        return PathAuthorizationManager.builder()
+            .permitAll("/")
+            .permitAll("/*.*")
+            .permitAll("/api/authenticate")
+            .permitAll("/api/register")
+            .permitAll("/api/activate")
+            .permitAll("/api/account/reset-password/init")
+            .permitAll("/api/account/reset-password/finish")
+            .hasAuthority(AuthoritiesConstants.ADMIN, "/api/admin/**")
+            .authenticated("/api/**")
+            .hasAuthority(AuthoritiesConstants.ADMIN, "/services/*/v3/api-docs")
+            .authenticated("/services/**")
+            .permitAll("/management/health")
+            .permitAll("/management/health/**")
+            .permitAll("/management/info")
+            .permitAll("/management/prometheus")
+            .hasAuthority(AuthoritiesConstants.ADMIN, "/management/**")
+            .build();
+        // @formatter:on
+    }
+
+    /**
+     * Matches the {@link PathClassifier#STATIC_PATHS}, and what is below them.
+     */
+    private static ServerWebExchangeMatcher staticPathsMatcher() {
+        return exchange ->
+            PathClassifier.INSTANCE.classify(exchange.getRequest().getPath().pathWithinApplication().value()) ==
+                PathClassifier.Category.STATIC
+                ? ServerWebExchangeMatcher.MatchResult.match()
+                : ServerWebExchangeMatcher.MatchResult.notMatch();
+    }
 }
@@ -0,0 +1,129 @@
+package com.pmo.besse2.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * An entry of the outbox of the users to index: the user with the given id changed, and its document in the search index
+ * must be updated, or deleted if the user no longer exists.
+ * <p>
+ * A node indexing the entry first claims it, with a token and a lease: the entry is retried by any node once its lease
+ * is over, until it has been claimed too many times and gets the {@link #STATUS_FAILED} status.
+ */
+@Table("jhi_user_index_outbox")
+public class UserIndexEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String STATUS_PENDING = "PENDING";
+
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    private Long id;
+
+    @Column("user_id")
+    private Long userId;
+
+    @Column("created_date")
+    private Instant createdDate;
+
+    private String status = STATUS_PENDING;
+
+    @Column("claim_token")
+    private String claimToken;
+
+    @Column("claimed_until")
+    private Instant claimedUntil;
+
+    private int attempts;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Instant getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(Instant createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getClaimToken() {
+        return claimToken;
+    }
+
+    public void setClaimToken(String claimToken) {
+        this.claimToken = claimToken;
+    }
+
+    public Instant getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public void setClaimedUntil(Instant claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UserIndexEvent)) {
+            return false;
+        }
+        return id != null && id.equals(((UserIndexEvent) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "UserIndexEvent{" +
+            "id=" + id +
+            ", userId=" + userId +
+            ", createdDate=" + createdDate +
+            ", status='" + status + "'" +
+            ", claimedUntil=" + claimedUntil +
+            ", attempts=" + attempts +
+            "}";
+    }
+}
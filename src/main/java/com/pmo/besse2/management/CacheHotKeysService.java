@@ -0,0 +1,104 @@
+package com.pmo.besse2.management;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+/**
+ * Samples the hottest keys read from each cache, with a count-min sketch per cache.
+ * <p>
+ * JCache has no listener for the reads, so the caches of the cache manager returned by {@link #track(CacheManager)}
+ * count the keys of their reads themselves: every cache is covered, whether it is read through Spring, Hibernate or
+ * directly, like the buckets of the rate limits.
+ */
+@Service
+public class CacheHotKeysService {
+
+    private static final int SKETCH_WIDTH = 1024;
+
+    /**
+     * The methods of {@link Cache} reading the entries of their first argument, a key or a set of keys.
+     */
+    private static final Set<String> READ_METHODS = Set.of("get", "getAll", "invoke", "invokeAll");
+
+    private final int hotKeys;
+
+    private final Map<String, HotKeySketch> sketches = new ConcurrentHashMap<>();
+
+    public CacheHotKeysService(ApplicationProperties applicationProperties) {
+        this.hotKeys = applicationProperties.getCacheStats().getHotKeys();
+    }
+
+    /**
+     * Count a read of a key, to find the hottest keys of the cache.
+     *
+     * @param cacheName the name of the cache.
+     * @param key the key read.
+     */
+    public void trackRead(String cacheName, Object key) {
+        if (key != null) {
+            sketches.computeIfAbsent(cacheName, name -> new HotKeySketch(SKETCH_WIDTH, hotKeys * 2)).add(key.toString());
+        }
+    }
+
+    /**
+     * @param cacheName the name of the cache.
+     * @return the hottest keys read from the cache, hottest first.
+     */
+    public List<HotKeySketch.HotKey> hotKeys(String cacheName) {
+        HotKeySketch sketch = sketches.get(cacheName);
+        return sketch != null ? sketch.hotKeys(hotKeys) : Collections.emptyList();
+    }
+
+    /**
+     * Wrap a cache manager, so that the reads of its caches are counted.
+     *
+     * @param cacheManager the cache manager.
+     * @return the cache manager, whose caches count their reads.
+     */
+    public CacheManager track(CacheManager cacheManager) {
+        return (CacheManager) Proxy.newProxyInstance(
+            CacheManager.class.getClassLoader(),
+            new Class<?>[] { CacheManager.class },
+            (proxy, method, args) -> {
+                Object result = invoke(cacheManager, method, args);
+                return result instanceof Cache ? track((Cache<?, ?>) result) : result;
+            }
+        );
+    }
+
+    private Cache<?, ?> track(Cache<?, ?> cache) {
+        String cacheName = cache.getName();
+        return (Cache<?, ?>) Proxy.newProxyInstance(
+            Cache.class.getClassLoader(),
+            new Class<?>[] { Cache.class },
+            (proxy, method, args) -> {
+                if (args != null && READ_METHODS.contains(method.getName())) {
+                    if (args[0] instanceof Set) {
+                        ((Set<?>) args[0]).forEach(key -> trackRead(cacheName, key));
+                    } else {
+                        trackRead(cacheName, args[0]);
+                    }
+                }
+                return invoke(cache, method, args);
+            }
+        );
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
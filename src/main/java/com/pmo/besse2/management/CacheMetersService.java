@@ -0,0 +1,362 @@
+package com.pmo.besse2.management;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+/**
+ * Instruments the JCache caches, whose statistics are enabled by {@link com.pmo.besse2.config.CacheConfiguration}.
+ * <p>
+ * The hits, misses, puts, evictions and removals of each cache are bound to Micrometer by Spring Boot ({@code cache.*}
+ * meters); this service adds the average latency of the cache operations, and the distribution of the size of a sample
+ * of the entries written, serialized. The hottest keys read, sampled by {@link CacheHotKeysService}, are only exposed by
+ * the {@code cachestats} management endpoint: as meter tags, the keys would have an unbounded cardinality.
+ */
+@Service
+public class CacheMetersService implements DisposableBean {
+
+    public static final String LATENCY_METER_NAME = "cache.operation.average.latency";
+    public static final String LATENCY_METER_DESCRIPTION = "Indicates the average latency of the cache operations, since the start.";
+
+    public static final String ENTRY_SIZE_METER_NAME = "cache.entry.size";
+    public static final String ENTRY_SIZE_METER_DESCRIPTION = "Indicates the serialized size of a sample of the entries written.";
+
+    private final Logger log = LoggerFactory.getLogger(CacheMetersService.class);
+
+    private final CacheManager cacheManager;
+
+    private final ApplicationProperties.CacheStats properties;
+
+    private final CacheHotKeysService cacheHotKeysService;
+
+    private final Map<String, CacheMeters> meters = new ConcurrentHashMap<>();
+
+    public CacheMetersService(
+        CacheManager cacheManager,
+        MeterRegistry meterRegistry,
+        CacheHotKeysService cacheHotKeysService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.cacheManager = cacheManager;
+        this.cacheHotKeysService = cacheHotKeysService;
+        this.properties = applicationProperties.getCacheStats();
+        for (String cacheName : cacheManager.getCacheNames()) {
+            Cache<Object, Object> cache = cacheManager.getCache(cacheName);
+            if (cache != null) {
+                meters.put(cacheName, new CacheMeters(cache, meterRegistry));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        meters.values().forEach(CacheMeters::close);
+    }
+
+    /**
+     * @return the statistics of each cache, by cache name.
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+        meters.keySet().stream().sorted().forEach(cacheName -> snapshots.put(cacheName, meters.get(cacheName).snapshot()));
+        return snapshots;
+    }
+
+    private final class CacheMeters {
+
+        private final Cache<Object, Object> cache;
+
+        private final CacheStatisticsMXBean statistics;
+
+        private final DistributionSummary entrySize;
+
+        private final CacheEntryListenerConfiguration<Object, Object> entrySizeListener;
+
+        CacheMeters(Cache<Object, Object> cache, MeterRegistry meterRegistry) {
+            this.cache = cache;
+            this.statistics = findStatistics(cache);
+            if (statistics != null) {
+                latencyGauge(meterRegistry, "get", CacheStatisticsMXBean::getAverageGetTime);
+                latencyGauge(meterRegistry, "put", CacheStatisticsMXBean::getAveragePutTime);
+                latencyGauge(meterRegistry, "remove", CacheStatisticsMXBean::getAverageRemoveTime);
+            }
+            this.entrySize =
+                DistributionSummary
+                    .builder(ENTRY_SIZE_METER_NAME)
+                    .description(ENTRY_SIZE_METER_DESCRIPTION)
+                    .baseUnit("bytes")
+                    .tag("cache", cache.getName())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            this.entrySizeListener =
+                new MutableCacheEntryListenerConfiguration<>(
+                    new FactoryBuilder.SingletonFactory<>(new EntrySizeListener(entrySize, properties.getEntrySizeSampleRatio())),
+                    null,
+                    false,
+                    false
+                );
+            cache.registerCacheEntryListener(entrySizeListener);
+        }
+
+        private void latencyGauge(MeterRegistry meterRegistry, String operation, ToDoubleFunction<CacheStatisticsMXBean> latency) {
+            TimeGauge
+                .builder(LATENCY_METER_NAME, statistics, TimeUnit.MICROSECONDS, latency)
+                .description(LATENCY_METER_DESCRIPTION)
+                .tag("cache", cache.getName())
+                .tag("operation", operation)
+                .register(meterRegistry);
+        }
+
+        void close() {
+            if (!cache.isClosed()) {
+                cache.deregisterCacheEntryListener(entrySizeListener);
+            }
+        }
+
+        Snapshot snapshot() {
+            Snapshot snapshot = new Snapshot();
+            if (statistics != null) {
+                snapshot.hits = statistics.getCacheHits();
+                snapshot.misses = statistics.getCacheMisses();
+                snapshot.hitRatio = statistics.getCacheHitPercentage() / 100;
+                snapshot.puts = statistics.getCachePuts();
+                snapshot.evictions = statistics.getCacheEvictions();
+                snapshot.removals = statistics.getCacheRemovals();
+                snapshot.averageGetMicros = statistics.getAverageGetTime();
+                snapshot.averagePutMicros = statistics.getAveragePutTime();
+                snapshot.averageRemoveMicros = statistics.getAverageRemoveTime();
+            }
+            HistogramSnapshot entrySizes = entrySize.takeSnapshot();
+            snapshot.sampledEntries = entrySizes.count();
+            snapshot.entrySizeMean = entrySizes.mean();
+            snapshot.entrySizeMax = entrySizes.max();
+            for (ValueAtPercentile value : entrySizes.percentileValues()) {
+                snapshot.entrySizePercentiles.put(Double.toString(value.percentile()), value.value());
+            }
+            snapshot.hotKeys = cacheHotKeysService.hotKeys(cache.getName());
+            return snapshot;
+        }
+    }
+
+    /**
+     * The statistics MBean registered for the cache by the JCache provider when its statistics are enabled.
+     */
+    private CacheStatisticsMXBean findStatistics(Cache<?, ?> cache) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(
+                "javax.cache:type=CacheStatistics,CacheManager=" +
+                sanitize(cacheManager.getURI().toString()) +
+                ",Cache=" +
+                sanitize(cache.getName())
+            );
+            if (!server.isRegistered(name)) {
+                log.debug("The statistics of the {} cache are not enabled", cache.getName());
+                return null;
+            }
+            return JMX.newMXBeanProxy(server, name, CacheStatisticsMXBean.class);
+        } catch (MalformedObjectNameException e) {
+            log.warn("Could not find the statistics of the {} cache: {}", cache.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[,:=\n]", ".");
+    }
+
+    /**
+     * Records the serialized size of a sample of the entries created or updated, notified asynchronously.
+     */
+    private static final class EntrySizeListener
+        implements CacheEntryCreatedListener<Object, Object>, CacheEntryUpdatedListener<Object, Object> {
+
+        private final DistributionSummary entrySize;
+
+        private final double sampleRatio;
+
+        EntrySizeListener(DistributionSummary entrySize, double sampleRatio) {
+            this.entrySize = entrySize;
+            this.sampleRatio = sampleRatio;
+        }
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<?, ?>> events) {
+            record(events);
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<?, ?>> events) {
+            record(events);
+        }
+
+        private void record(Iterable<CacheEntryEvent<?, ?>> events) {
+            for (CacheEntryEvent<?, ?> event : events) {
+                if (ThreadLocalRandom.current().nextDouble() < sampleRatio) {
+                    long size = sizeOf(event.getKey()) + sizeOf(event.getValue());
+                    if (size >= 0) {
+                        entrySize.record(size);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the serialized size of the object, {@code -1} if it isn't serializable.
+     */
+    static long sizeOf(Object object) {
+        if (object instanceof byte[]) {
+            return ((byte[]) object).length;
+        }
+        if (object instanceof String) {
+            return ((String) object).getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (!(object instanceof Serializable)) {
+            return -1;
+        }
+        CountingOutputStream outputStream = new CountingOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+            objectOutputStream.writeObject(object);
+        } catch (IOException e) {
+            return -1;
+        }
+        return outputStream.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static final class Snapshot {
+
+        private long hits;
+
+        private long misses;
+
+        private float hitRatio;
+
+        private long puts;
+
+        private long evictions;
+
+        private long removals;
+
+        private float averageGetMicros;
+
+        private float averagePutMicros;
+
+        private float averageRemoveMicros;
+
+        private long sampledEntries;
+
+        private double entrySizeMean;
+
+        private double entrySizeMax;
+
+        private final Map<String, Double> entrySizePercentiles = new LinkedHashMap<>();
+
+        private List<HotKeySketch.HotKey> hotKeys = new ArrayList<>();
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public float getHitRatio() {
+            return hitRatio;
+        }
+
+        public long getPuts() {
+            return puts;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getRemovals() {
+            return removals;
+        }
+
+        public float getAverageGetMicros() {
+            return averageGetMicros;
+        }
+
+        public float getAveragePutMicros() {
+            return averagePutMicros;
+        }
+
+        public float getAverageRemoveMicros() {
+            return averageRemoveMicros;
+        }
+
+        public long getSampledEntries() {
+            return sampledEntries;
+        }
+
+        public double getEntrySizeMean() {
+            return entrySizeMean;
+        }
+
+        public double getEntrySizeMax() {
+            return entrySizeMax;
+        }
+
+        public Map<String, Double> getEntrySizePercentiles() {
+            return entrySizePercentiles;
+        }
+
+        public List<HotKeySketch.HotKey> getHotKeys() {
+            return hotKeys;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.pmo.besse2.management;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Estimates the most frequent keys of a stream in a fixed space: a count-min sketch counts all the keys, and the keys
+ * with the highest estimates are kept as candidates. The counts are halved when the sketch has counted ten times its
+ * width, so that the keys which were hot long ago fade away.
+ */
+public final class HotKeySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private final int width;
+
+    private final int[] counts;
+
+    private final int resetThreshold;
+
+    private int additions;
+
+    private final int capacity;
+
+    private final Map<String, Long> candidates = new HashMap<>();
+
+    /**
+     * @param width the counters in each row of the sketch, rounded up to a power of two.
+     * @param capacity the number of candidate hot keys.
+     */
+    HotKeySketch(int width, int capacity) {
+        this.width = Integer.highestOneBit(Math.max(2, width) * 2 - 1);
+        this.counts = new int[DEPTH * this.width];
+        this.resetThreshold = this.width * 10;
+        this.capacity = capacity;
+    }
+
+    synchronized void add(String key) {
+        int hash = key.hashCode();
+        int[] indexes = new int[DEPTH];
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            indexes[row] = index(hash, row);
+            min = Math.min(min, counts[indexes[row]]);
+        }
+        // Conservative update: only the counters equal to the estimate can be too low
+        if (min < Integer.MAX_VALUE) {
+            for (int index : indexes) {
+                if (counts[index] == min) {
+                    counts[index]++;
+                }
+            }
+            min++;
+        }
+        track(key, min);
+        if (++additions >= resetThreshold) {
+            halve();
+        }
+    }
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return row * width + ((int) h & (width - 1));
+    }
+
+    private void track(String key, long estimate) {
+        if (candidates.containsKey(key) || candidates.size() < capacity) {
+            candidates.put(key, estimate);
+            return;
+        }
+        Map.Entry<String, Long> coldest = null;
+        for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+            if (coldest == null || candidate.getValue() < coldest.getValue()) {
+                coldest = candidate;
+            }
+        }
+        if (coldest != null && estimate > coldest.getValue()) {
+            candidates.remove(coldest.getKey());
+            candidates.put(key, estimate);
+        }
+    }
+
+    private void halve() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] >>>= 1;
+        }
+        candidates.replaceAll((key, estimate) -> estimate >>> 1);
+        candidates.values().removeIf(estimate -> estimate == 0);
+        additions = 0;
+    }
+
+    /**
+     * @param limit the maximum number of keys.
+     * @return the hottest keys, the hottest first.
+     */
+    synchronized List<HotKey> hotKeys(int limit) {
+        return candidates
+            .entrySet()
+            .stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+            .limit(limit)
+            .map(candidate -> new HotKey(candidate.getKey(), candidate.getValue()))
+            .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    public static final class HotKey {
+
+        private final String key;
+
+        private final long estimatedCount;
+
+        HotKey(String key, long estimatedCount) {
+            this.key = key;
+            this.estimatedCount = estimatedCount;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the estimated reads of the key since the counts were last halved, never lower than the real count.
+         */
+        public long getEstimatedCount() {
+            return estimatedCount;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.pmo.besse2.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Coalesces the loads of single values by key into batches, like a DataLoader: the keys requested within {@code window}
+ * after the first one of a batch, or until {@code maxBatchSize} distinct keys are requested, are loaded by a single
+ * query, whose values are then handed to each subscriber.
+ * <p>
+ * The subscribers waiting for the same key each get their own value, copied for all but the first, so that they can
+ * modify it. The query runs apart from the subscribers, outside of their transactions.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+final class BatchLoader<K, V> {
+
+    private final Function<Collection<K>, Flux<V>> query;
+
+    private final Function<V, K> keyOf;
+
+    private final UnaryOperator<V> copier;
+
+    private final Duration window;
+
+    private final int maxBatchSize;
+
+    private final Scheduler scheduler;
+
+    private final DistributionSummary batchSize;
+
+    private final Timer waitTime;
+
+    /**
+     * The batch collecting the keys, {@code null} if there is none.
+     */
+    private Batch batch;
+
+    /**
+     * @param query loads the values of the given keys, in any order, the keys without a value having none.
+     * @param keyOf the key of a value.
+     * @param copier copies a value, for each additional subscriber of the same key.
+     * @param batchSize records the number of distinct keys of each query.
+     * @param waitTime records the time each subscriber waited for the query to start.
+     */
+    BatchLoader(
+        Function<Collection<K>, Flux<V>> query,
+        Function<V, K> keyOf,
+        UnaryOperator<V> copier,
+        Duration window,
+        int maxBatchSize,
+        Scheduler scheduler,
+        DistributionSummary batchSize,
+        Timer waitTime
+    ) {
+        this.query = query;
+        this.keyOf = keyOf;
+        this.copier = copier;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.batchSize = batchSize;
+        this.waitTime = waitTime;
+    }
+
+    Mono<V> load(K key) {
+        return Mono.defer(() -> {
+            Sinks.One<V> sink = Sinks.one();
+            Batch full = null;
+            synchronized (this) {
+                if (batch == null) {
+                    Batch created = new Batch();
+                    batch = created;
+                    created.timer = scheduler.schedule(() -> dispatch(created), window.toNanos(), TimeUnit.NANOSECONDS);
+                }
+                batch.add(key, sink);
+                if (batch.waiters.size() >= maxBatchSize) {
+                    full = batch;
+                    batch = null;
+                }
+            }
+            if (full != null) {
+                full.timer.dispose();
+                dispatch(full);
+            }
+            return sink.asMono();
+        });
+    }
+
+    private void dispatch(Batch dispatched) {
+        synchronized (this) {
+            if (batch == dispatched) {
+                batch = null;
+            }
+            if (dispatched.dispatched) {
+                return;
+            }
+            dispatched.dispatched = true;
+        }
+        long now = System.nanoTime();
+        batchSize.record(dispatched.waiters.size());
+        for (List<Waiter<V>> waiters : dispatched.waiters.values()) {
+            waiters.forEach(waiter -> waitTime.record(now - waiter.enqueuedNanos, TimeUnit.NANOSECONDS));
+        }
+        Flux
+            .defer(() -> query.apply(new ArrayList<>(dispatched.waiters.keySet())))
+            .collectMap(keyOf)
+            .subscribe(
+                values ->
+                    dispatched.waiters.forEach((key, waiters) -> {
+                        V value = values.get(key);
+                        for (int i = 0; i < waiters.size(); i++) {
+                            if (value == null) {
+                                waiters.get(i).sink.tryEmitEmpty();
+                            } else {
+                                waiters.get(i).sink.tryEmitValue(i == 0 ? value : copier.apply(value));
+                            }
+                        }
+                    }),
+                error -> dispatched.waiters.values().forEach(waiters -> waiters.forEach(waiter -> waiter.sink.tryEmitError(error)))
+            );
+    }
+
+    private final class Batch {
+
+        private final Map<K, List<Waiter<V>>> waiters = new LinkedHashMap<>();
+
+        private Disposable timer;
+
+        private boolean dispatched;
+
+        void add(K key, Sinks.One<V> sink) {
+            waiters.computeIfAbsent(key, k -> new ArrayList<>()).add(new Waiter<>(sink, System.nanoTime()));
+        }
+    }
+
+    private static final class Waiter<V> {
+
+        private final Sinks.One<V> sink;
+
+        private final long enqueuedNanos;
+
+        Waiter(Sinks.One<V> sink, long enqueuedNanos) {
+            this.sink = sink;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -2,9 +2,13 @@ package com.pmo.besse2.repository;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -25,10 +29,9 @@ import org.springframework.data.relational.core.sql.SelectBuilder.SelectOrdered;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.data.relational.core.sql.Table;
 import org.springframework.data.relational.core.sql.render.SqlRenderer;
-import org.springframework.r2dbc.core.Parameter;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -172,30 +175,61 @@ public class EntityManager {
     }
 
     /**
-     * Updates the table, which links the entity with the referred entities.
+     * Updates the table, which links the entity with the referred entities: only the links which are missing are
+     * inserted, and only the links to entities which are no longer referred are deleted.
      * @param table describes the link table, it contains a table name, the column name for the id, and for the referred entity id.
      * @param entityId the id of the entity, for which the links are created.
      * @param referencedIds the id of the referred entities.
      * @return the number of inserted rows.
      */
     public Mono<Integer> updateLinkTable(LinkTable table, Object entityId, Stream<?> referencedIds) {
-        return deleteFromLinkTable(table, entityId)
-            .then(
-                Flux
-                    .fromStream(referencedIds)
-                    .flatMap((Object referenceId) -> {
-                        StatementMapper.InsertSpec insert = r2dbcEntityTemplate
-                            .getDataAccessStrategy()
-                            .getStatementMapper()
-                            .createInsert(table.tableName)
-                            .withColumn(table.idColumn, Parameter.from(entityId))
-                            .withColumn(table.referenceColumn, Parameter.from(referenceId));
-
-                        return r2dbcEntityTemplate.getDatabaseClient().sql(statementMapper.getMappedObject(insert)).fetch().rowsUpdated();
-                    })
-                    .collectList()
-                    .map((List<Integer> updates) -> updates.stream().reduce(Integer::sum).orElse(0))
-            );
+        Set<Object> ids = referencedIds.map(Object.class::cast).collect(Collectors.toCollection(LinkedHashSet::new));
+        return writeLinkTable(table, entityId, ids, true);
+    }
+
+    /**
+     * Adds the missing links between the entity and the referred entities, keeping the links to other entities.
+     * @param table describes the link table, it contains a table name, the column name for the id, and for the referred entity id.
+     * @param entityId the id of the entity, for which the links are created.
+     * @param referencedIds the id of the referred entities.
+     * @return the number of inserted rows.
+     */
+    public Mono<Integer> addToLinkTable(LinkTable table, Object entityId, Stream<?> referencedIds) {
+        Set<Object> ids = referencedIds.map(Object.class::cast).collect(Collectors.toCollection(LinkedHashSet::new));
+        return writeLinkTable(table, entityId, ids, false);
+    }
+
+    /**
+     * Inserts the given links with a single multi-row statement.
+     * @param table describes the link table, it contains a table name, the column name for the id, and for the referred entity id.
+     * @param referencedIdsByEntityId the id of the referred entities, by id of the entity they are linked to.
+     * @return the number of inserted rows.
+     */
+    public Mono<Integer> insertIntoLinkTable(LinkTable table, Map<?, ? extends Collection<?>> referencedIdsByEntityId) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+            .append(table.tableName)
+            .append(" (")
+            .append(table.idColumn)
+            .append(", ")
+            .append(table.referenceColumn)
+            .append(") VALUES ");
+        List<Object> values = new ArrayList<>();
+        for (Entry<?, ? extends Collection<?>> links : referencedIdsByEntityId.entrySet()) {
+            for (Object referenceId : links.getValue()) {
+                int row = values.size() / 2;
+                sql.append(row == 0 ? "" : ", ").append("(:id").append(row).append(", :reference").append(row).append(')');
+                values.add(links.getKey());
+                values.add(referenceId);
+            }
+        }
+        if (values.isEmpty()) {
+            return Mono.just(0);
+        }
+        DatabaseClient.GenericExecuteSpec insert = r2dbcEntityTemplate.getDatabaseClient().sql(sql.toString());
+        for (int row = 0; row < values.size() / 2; row++) {
+            insert = insert.bind("id" + row, values.get(2 * row)).bind("reference" + row, values.get(2 * row + 1));
+        }
+        return insert.fetch().rowsUpdated();
     }
 
     public Mono<Void> deleteFromLinkTable(LinkTable table, Object entityId) {
@@ -208,6 +242,45 @@ public class EntityManager {
         return r2dbcEntityTemplate.getDatabaseClient().sql(statementMapper.getMappedObject(deleteSpec)).then();
     }
 
+    /**
+     * Reads the current links of the entity, then deletes the links to remove (if any) with one statement and inserts
+     * the missing ones (if any) with another one, instead of rewriting every link.
+     */
+    private Mono<Integer> writeLinkTable(LinkTable table, Object entityId, Set<Object> referencedIds, boolean removeOthers) {
+        Assert.notNull(entityId, "entityId is null");
+        if (referencedIds.isEmpty()) {
+            return removeOthers ? deleteFromLinkTable(table, entityId).thenReturn(0) : Mono.just(0);
+        }
+        Class<?> referenceType = referencedIds.iterator().next().getClass();
+        DatabaseClient databaseClient = r2dbcEntityTemplate.getDatabaseClient();
+        return databaseClient
+            .sql("SELECT " + table.referenceColumn + " FROM " + table.tableName + " WHERE " + table.idColumn + " = :id")
+            .bind("id", entityId)
+            .map((row, metadata) -> (Object) row.get(table.referenceColumn, referenceType))
+            .all()
+            .collect(Collectors.toSet())
+            .flatMap(existingIds -> {
+                List<Object> removedIds = existingIds.stream().filter(id -> !referencedIds.contains(id)).collect(Collectors.toList());
+                List<Object> addedIds = referencedIds.stream().filter(id -> !existingIds.contains(id)).collect(Collectors.toList());
+                Mono<Void> delete = removeOthers && !removedIds.isEmpty()
+                    ? databaseClient
+                        .sql(
+                            "DELETE FROM " +
+                            table.tableName +
+                            " WHERE " +
+                            table.idColumn +
+                            " = :id AND " +
+                            table.referenceColumn +
+                            " IN (:references)"
+                        )
+                        .bind("id", entityId)
+                        .bind("references", removedIds)
+                        .then()
+                    : Mono.empty();
+                return delete.then(insertIntoLinkTable(table, Collections.singletonMap(entityId, addedIds)));
+            });
+    }
+
     private String createSelectImpl(SelectOrdered selectFrom, Class<?> entityType, Sort sortParameter) {
         if (sortParameter != null && sortParameter.isSorted()) {
             RelationalPersistentEntity<?> entity = getPersistentEntity(entityType);
@@ -0,0 +1,55 @@
+package com.pmo.besse2.repository;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.domain.User;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.SerializationUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Loads the users with their authorities by login like {@link UserRepository#findOneWithAuthoritiesByLogin(String)},
+ * but with the concurrent lookups coalesced by a {@link BatchLoader} into a single {@code IN (...)} query.
+ * <p>
+ * It loads the users missing from the {@link UserLookupCache}, which every authenticated request goes through, so the
+ * misses and refreshes of many users at the same time, after a restart or when their entries expire together, cost a
+ * few queries instead of one each. The users are read outside of the transaction of the caller, and their login must be
+ * in lower case, as stored.
+ */
+@Component
+public class UserBatchLoader {
+
+    public static final String BATCH_SIZE_METER_NAME = "user.batch.loading.batch.size";
+    public static final String BATCH_SIZE_METER_DESCRIPTION = "Indicates the number of users loaded by each batch query.";
+
+    public static final String WAIT_METER_NAME = "user.batch.loading.wait";
+    public static final String WAIT_METER_DESCRIPTION = "Indicates the time the user lookups wait for their batch query.";
+
+    private final BatchLoader<String, User> byLogin;
+
+    public UserBatchLoader(UserRepository userRepository, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        ApplicationProperties.UserBatchLoading properties = applicationProperties.getUserBatchLoading();
+        this.byLogin =
+            new BatchLoader<>(
+                userRepository::findAllWithAuthoritiesByLoginIn,
+                User::getLogin,
+                UserBatchLoader::copy,
+                properties.getWindow(),
+                properties.getMaxBatchSize(),
+                Schedulers.parallel(),
+                DistributionSummary.builder(BATCH_SIZE_METER_NAME).description(BATCH_SIZE_METER_DESCRIPTION).register(meterRegistry),
+                Timer.builder(WAIT_METER_NAME).description(WAIT_METER_DESCRIPTION).register(meterRegistry)
+            );
+    }
+
+    private static User copy(User user) {
+        return (User) SerializationUtils.deserialize(SerializationUtils.serialize(user));
+    }
+
+    public Mono<User> findOneWithAuthoritiesByLogin(String login) {
+        return byLogin.load(login);
+    }
+}
@@ -0,0 +1,95 @@
+package com.pmo.besse2.repository;
+
+import com.pmo.besse2.domain.UserIndexEvent;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Spring Data R2DBC repository for the {@link UserIndexEvent} entity, the outbox of the users to index.
+ */
+@Repository
+public interface UserIndexEventRepository extends R2dbcRepository<UserIndexEvent, Long>, UserIndexEventRepositoryInternal {
+    Flux<UserIndexEvent> findAllByClaimToken(String claimToken);
+
+    Mono<Long> countByStatus(String status);
+
+    @Modifying
+    @Query("DELETE FROM jhi_user_index_outbox WHERE claim_token = :claimToken AND id IN (:ids)")
+    Mono<Void> deleteClaimed(String claimToken, Collection<Long> ids);
+
+    /**
+     * Give up the entries still claimed with the given token which have been claimed at least the given number of times.
+     */
+    @Modifying
+    @Query("UPDATE jhi_user_index_outbox SET status = 'FAILED' WHERE claim_token = :claimToken AND attempts >= :maxAttempts")
+    Mono<Integer> failClaimed(String claimToken, int maxAttempts);
+}
+
+interface UserIndexEventRepositoryInternal {
+    Mono<Void> insertAll(Collection<Long> userIds, Instant createdDate);
+
+    Mono<Integer> claim(String claimToken, int limit, Instant now, Duration leaseTime);
+}
+
+class UserIndexEventRepositoryInternalImpl implements UserIndexEventRepositoryInternal {
+
+    private final DatabaseClient db;
+
+    UserIndexEventRepositoryInternalImpl(DatabaseClient db) {
+        this.db = db;
+    }
+
+    /**
+     * Insert one event per user id with a single multi-row statement.
+     */
+    @Override
+    public Mono<Void> insertAll(Collection<Long> userIds, Instant createdDate) {
+        if (userIds.isEmpty()) {
+            return Mono.empty();
+        }
+        List<Long> ids = List.copyOf(userIds);
+        StringBuilder sql = new StringBuilder("INSERT INTO jhi_user_index_outbox (user_id, created_date) VALUES ");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(:userId").append(i).append(", :createdDate)");
+        }
+        DatabaseClient.GenericExecuteSpec insert = db
+            .sql(sql.toString())
+            .bind("createdDate", LocalDateTime.ofInstant(createdDate, ZoneOffset.UTC));
+        for (int i = 0; i < ids.size(); i++) {
+            insert = insert.bind("userId" + i, ids.get(i));
+        }
+        return insert.then();
+    }
+
+    /**
+     * Claim the oldest pending entries which aren't claimed, or whose lease is over, with a single statement: the
+     * concurrent claims of other nodes wait for its row locks, then skip the entries it claimed.
+     *
+     * @return the number of claimed entries.
+     */
+    @Override
+    public Mono<Integer> claim(String claimToken, int limit, Instant now, Duration leaseTime) {
+        return db
+            .sql(
+                "UPDATE jhi_user_index_outbox SET claim_token = :claimToken, claimed_until = :claimedUntil, attempts = attempts + 1" +
+                " WHERE status = 'PENDING' AND (claimed_until IS NULL OR claimed_until < :now) ORDER BY id LIMIT :limit"
+            )
+            .bind("claimToken", claimToken)
+            .bind("claimedUntil", LocalDateTime.ofInstant(now.plus(leaseTime), ZoneOffset.UTC))
+            .bind("now", LocalDateTime.ofInstant(now, ZoneOffset.UTC))
+            .bind("limit", limit)
+            .fetch()
+            .rowsUpdated();
+    }
+}
@@ -0,0 +1,331 @@
+package com.pmo.besse2.repository;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.domain.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive cache of the users looked up with their authorities by login or by email.
+ * <p>
+ * {@code @Cacheable} can't be used on methods returning a {@link Mono}, so this component reads and fills the
+ * {@link UserRepository#USERS_BY_LOGIN_CACHE} and {@link UserRepository#USERS_BY_EMAIL_CACHE} caches itself: their size
+ * and time to live are the ones configured in {@link com.pmo.besse2.config.CacheConfiguration}. Concurrent misses on the
+ * same key share a single database query, and the misses by login of different users are loaded together by the
+ * {@link UserBatchLoader}.
+ * <p>
+ * The users are cached with the time they were loaded at and the time their query took. When the policy of a cache has a
+ * {@code time-to-live}, its users can be refreshed in the background, by the single query of their key, while the cached
+ * user is still returned:
+ * <ul>
+ *     <li>before they expire, with a probability rising as their expiry gets closer, and sooner for the users whose query
+ *     is slow ({@code early-expiration-beta}, the "XFetch" probabilistic early expiration);</li>
+ *     <li>during the {@code stale-while-revalidate} time after they expired, which is added to the time to live of the
+ *     cache.</li>
+ * </ul>
+ * The users read often are thus refreshed before they expire, and don't all miss at the same time.
+ * <p>
+ * Each eviction stamps its key with a version, and a lookup only caches its user if the key wasn't evicted since the
+ * lookup started: a lookup which read the user before a change can't put the stale user back once it is evicted,
+ * whether the eviction is local or comes from another node.
+ */
+@Component
+public class UserLookupCache {
+
+    public static final String LOOKUPS_METER_NAME = "user.lookup.cache";
+    public static final String LOOKUPS_METER_DESCRIPTION = "Indicates the user lookups by login or email, by cache and result.";
+
+    public static final String REFRESHES_METER_NAME = "user.lookup.cache.refreshes";
+    public static final String REFRESHES_METER_DESCRIPTION = "Indicates the background refreshes of cached users, by cache and trigger.";
+
+    private final Logger log = LoggerFactory.getLogger(UserLookupCache.class);
+
+    private final UserRepository userRepository;
+
+    private final UserBatchLoader userBatchLoader;
+
+    private final CacheManager cacheManager;
+
+    private final Map<String, RefreshPolicy> refreshPolicies = new ConcurrentHashMap<>();
+
+    private final Map<String, Mono<User>> inFlightLookups = new ConcurrentHashMap<>();
+
+    /**
+     * The lookups taking longer than this don't cache their user, so that the versions can be forgotten after it.
+     */
+    private static final long VERSION_RETENTION_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final int VERSIONS_PRUNE_THRESHOLD = 1024;
+
+    /**
+     * Incremented on every eviction, the version of the evicted key.
+     */
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * The versions of the keys evicted in the last {@link #VERSION_RETENTION_NANOS}, by in-flight key.
+     */
+    private final Map<String, EvictionVersion> evictionVersions = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> hitCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> missCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> coalescedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> staleCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> earlyRefreshCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> staleRefreshCounters = new ConcurrentHashMap<>();
+
+    public UserLookupCache(
+        UserRepository userRepository,
+        UserBatchLoader userBatchLoader,
+        CacheManager cacheManager,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.userRepository = userRepository;
+        this.userBatchLoader = userBatchLoader;
+        this.cacheManager = cacheManager;
+        for (String cacheName : new String[] { UserRepository.USERS_BY_LOGIN_CACHE, UserRepository.USERS_BY_EMAIL_CACHE }) {
+            ApplicationProperties.CachePolicy policy = applicationProperties.getCaches().getPolicies().get(cacheName);
+            if (policy != null && policy.getTimeToLive() != null) {
+                refreshPolicies.put(cacheName, new RefreshPolicy(policy));
+            }
+            hitCounters.put(cacheName, lookupsCounter(meterRegistry, cacheName, "hit"));
+            missCounters.put(cacheName, lookupsCounter(meterRegistry, cacheName, "miss"));
+            coalescedCounters.put(cacheName, lookupsCounter(meterRegistry, cacheName, "coalesced"));
+            staleCounters.put(cacheName, lookupsCounter(meterRegistry, cacheName, "stale"));
+            earlyRefreshCounters.put(cacheName, refreshesCounter(meterRegistry, cacheName, "early"));
+            staleRefreshCounters.put(cacheName, refreshesCounter(meterRegistry, cacheName, "stale"));
+        }
+    }
+
+    private static Counter lookupsCounter(MeterRegistry meterRegistry, String cacheName, String result) {
+        return Counter
+            .builder(LOOKUPS_METER_NAME)
+            .description(LOOKUPS_METER_DESCRIPTION)
+            .tag("cache", cacheName)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private static Counter refreshesCounter(MeterRegistry meterRegistry, String cacheName, String trigger) {
+        return Counter
+            .builder(REFRESHES_METER_NAME)
+            .description(REFRESHES_METER_DESCRIPTION)
+            .tag("cache", cacheName)
+            .tag("trigger", trigger)
+            .register(meterRegistry);
+    }
+
+    public Mono<User> findOneWithAuthoritiesByLogin(String login) {
+        return lookup(UserRepository.USERS_BY_LOGIN_CACHE, login, userBatchLoader::findOneWithAuthoritiesByLogin);
+    }
+
+    public Mono<User> findOneWithAuthoritiesByEmailIgnoreCase(String email) {
+        return lookup(
+            UserRepository.USERS_BY_EMAIL_CACHE,
+            email.toLowerCase(Locale.ENGLISH),
+            userRepository::findOneWithAuthoritiesByEmailIgnoreCase
+        );
+    }
+
+    /**
+     * Evict the given user from both lookup caches.
+     *
+     * @param user the user to evict.
+     */
+    public void evict(User user) {
+        evict(UserRepository.USERS_BY_LOGIN_CACHE, user.getLogin());
+        if (user.getEmail() != null) {
+            evict(UserRepository.USERS_BY_EMAIL_CACHE, user.getEmail());
+        }
+    }
+
+    /**
+     * Evict a key from one of the lookup caches.
+     *
+     * @param cacheName {@link UserRepository#USERS_BY_LOGIN_CACHE} or {@link UserRepository#USERS_BY_EMAIL_CACHE}.
+     * @param key the login, or the email.
+     */
+    public void evict(String cacheName, String key) {
+        String inFlightKey = inFlightKey(cacheName, key);
+        long now = System.nanoTime();
+        // Stamp the key first, so that a lookup completing meanwhile doesn't cache its user
+        evictionVersions.put(inFlightKey, new EvictionVersion(versions.incrementAndGet(), now));
+        getCache(cacheName).evict(key);
+        // Only the lookup started before the eviction, not one started since by another thread
+        Mono<User> inFlightLookup = inFlightLookups.get(inFlightKey);
+        if (inFlightLookup != null) {
+            inFlightLookups.remove(inFlightKey, inFlightLookup);
+        }
+        if (evictionVersions.size() > VERSIONS_PRUNE_THRESHOLD) {
+            evictionVersions.values().removeIf(version -> now - version.nanoTime > VERSION_RETENTION_NANOS);
+        }
+    }
+
+    private Mono<User> lookup(String cacheName, String key, Function<String, Mono<User>> loader) {
+        return Mono.defer(() -> {
+            Cache cache = getCache(cacheName);
+            Cache.ValueWrapper cached = cache.get(key);
+            // Ignore the values of another type, read from a persistent disk tier written by a previous version
+            if (cached != null && cached.get() instanceof CachedUser) {
+                CachedUser cachedUser = (CachedUser) cached.get();
+                RefreshPolicy refreshPolicy = refreshPolicies.get(cacheName);
+                long now = System.currentTimeMillis();
+                if (refreshPolicy != null && refreshPolicy.isStale(cachedUser, now)) {
+                    staleCounters.get(cacheName).increment();
+                    refresh(cacheName, key, loader, staleRefreshCounters);
+                } else {
+                    hitCounters.get(cacheName).increment();
+                    if (refreshPolicy != null && refreshPolicy.expiresEarly(cachedUser, now)) {
+                        refresh(cacheName, key, loader, earlyRefreshCounters);
+                    }
+                }
+                return Mono.just(cachedUser.user);
+            }
+            Mono<User> inFlightLookup = inFlightLookups.get(inFlightKey(cacheName, key));
+            if (inFlightLookup != null) {
+                coalescedCounters.get(cacheName).increment();
+                return inFlightLookup;
+            }
+            missCounters.get(cacheName).increment();
+            return load(cacheName, key, loader, cache);
+        });
+    }
+
+    /**
+     * Reload a cached user in the background, unless its key is already being loaded.
+     */
+    private void refresh(String cacheName, String key, Function<String, Mono<User>> loader, Map<String, Counter> counters) {
+        if (inFlightLookups.containsKey(inFlightKey(cacheName, key))) {
+            return;
+        }
+        counters.get(cacheName).increment();
+        load(cacheName, key, loader, getCache(cacheName))
+            .subscribe(user -> {}, e -> log.debug("Could not refresh the cached user {} of {}: {}", key, cacheName, e.getMessage()));
+    }
+
+    /**
+     * Load a user and cache it, with a single query for the concurrent loads of the same key.
+     */
+    private Mono<User> load(String cacheName, String key, Function<String, Mono<User>> loader, Cache cache) {
+        String inFlightKey = inFlightKey(cacheName, key);
+        long versionAtStart = versions.get();
+        long startNanos = System.nanoTime();
+        AtomicReference<Mono<User>> self = new AtomicReference<>();
+        Mono<User> lookup = loader
+            .apply(key)
+            .doOnNext(user -> {
+                if (isUnchangedSince(inFlightKey, versionAtStart, startNanos)) {
+                    cache.put(key, new CachedUser(user, System.currentTimeMillis(), System.nanoTime() - startNanos));
+                    // The key may have been evicted between the check and the put
+                    if (!isUnchangedSince(inFlightKey, versionAtStart, startNanos)) {
+                        cache.evict(key);
+                    }
+                }
+            })
+            // A refreshed user may not exist anymore
+            .switchIfEmpty(Mono.fromRunnable(() -> cache.evict(key)))
+            // Not the lookup which may have replaced this one after an eviction
+            .doFinally(signal -> inFlightLookups.remove(inFlightKey, self.get()))
+            .cache();
+        self.set(lookup);
+        Mono<User> existing = inFlightLookups.putIfAbsent(inFlightKey, lookup);
+        return existing != null ? existing : lookup;
+    }
+
+    private boolean isUnchangedSince(String inFlightKey, long version, long startNanos) {
+        EvictionVersion evictionVersion = evictionVersions.get(inFlightKey);
+        return (
+            System.nanoTime() - startNanos < VERSION_RETENTION_NANOS && (evictionVersion == null || evictionVersion.version <= version)
+        );
+    }
+
+    private Cache getCache(String cacheName) {
+        return Objects.requireNonNull(cacheManager.getCache(cacheName));
+    }
+
+    private static String inFlightKey(String cacheName, String key) {
+        return cacheName + ':' + key;
+    }
+
+    /**
+     * A cached user, with the time it was loaded at, and the time its query took.
+     */
+    public static final class CachedUser implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final User user;
+
+        private final long loadedAtMillis;
+
+        private final long loadNanos;
+
+        CachedUser(User user, long loadedAtMillis, long loadNanos) {
+            this.user = user;
+            this.loadedAtMillis = loadedAtMillis;
+            this.loadNanos = loadNanos;
+        }
+
+        public User getUser() {
+            return user;
+        }
+    }
+
+    private static final class RefreshPolicy {
+
+        private final long timeToLiveMillis;
+
+        private final double earlyExpirationBeta;
+
+        RefreshPolicy(ApplicationProperties.CachePolicy policy) {
+            this.timeToLiveMillis = policy.getTimeToLive().toMillis();
+            this.earlyExpirationBeta = policy.getEarlyExpirationBeta();
+        }
+
+        boolean isStale(CachedUser cachedUser, long now) {
+            return now - cachedUser.loadedAtMillis >= timeToLiveMillis;
+        }
+
+        /**
+         * Whether the user should be refreshed before it expires: {@code now - delta * beta * ln(random) >= expiry}, where
+         * {@code delta} is the time its query took.
+         */
+        boolean expiresEarly(CachedUser cachedUser, long now) {
+            if (earlyExpirationBeta <= 0) {
+                return false;
+            }
+            double deltaMillis = cachedUser.loadNanos / 1_000_000.0;
+            double random = 1 - ThreadLocalRandom.current().nextDouble();
+            return now - deltaMillis * earlyExpirationBeta * Math.log(random) >= cachedUser.loadedAtMillis + timeToLiveMillis;
+        }
+    }
+
+    private static final class EvictionVersion {
+
+        private final long version;
+
+        private final long nanoTime;
+
+        EvictionVersion(long version, long nanoTime) {
+            this.version = version;
+            this.nanoTime = nanoTime;
+        }
+    }
+}
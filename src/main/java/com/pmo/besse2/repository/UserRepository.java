@@ -5,12 +5,17 @@ import static org.springframework.data.relational.core.query.Query.query;
 
 import com.pmo.besse2.domain.Authority;
 import com.pmo.besse2.domain.User;
+import com.pmo.besse2.repository.rowmapper.UserRowMapper;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import org.apache.commons.beanutils.BeanComparator;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.*;
 import org.springframework.data.domain.Sort;
@@ -18,8 +23,14 @@ import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.relational.core.sql.BindMarker;
 import org.springframework.data.relational.core.sql.Column;
+import org.springframework.data.relational.core.sql.Condition;
+import org.springframework.data.relational.core.sql.Conditions;
 import org.springframework.data.relational.core.sql.Expression;
+import org.springframework.data.relational.core.sql.SQL;
+import org.springframework.data.relational.core.sql.Select;
+import org.springframework.data.relational.core.sql.SelectBuilder.SelectFromAndJoin;
 import org.springframework.data.relational.core.sql.Table;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Repository;
@@ -33,6 +44,10 @@ import reactor.util.function.Tuples;
  */
 @Repository
 public interface UserRepository extends R2dbcRepository<User, Long>, UserRepositoryInternal {
+    String USERS_BY_LOGIN_CACHE = "usersByLogin";
+
+    String USERS_BY_EMAIL_CACHE = "usersByEmail";
+
     Mono<User> findOneByActivationKey(String activationKey);
 
     Flux<User> findAllByActivatedIsFalseAndActivationKeyIsNotNullAndCreatedDateBefore(LocalDateTime dateTime);
@@ -49,6 +64,9 @@ public interface UserRepository extends R2dbcRepository<User, Long>, UserReposit
 
     Mono<Long> count();
 
+    @Query("SELECT COALESCE(MAX(id), 0) FROM jhi_user")
+    Mono<Long> findMaxId();
+
     @Query("INSERT INTO jhi_user_authority VALUES(:userId, :authority)")
     Mono<Void> saveUserAuthority(Long userId, String authority);
 
@@ -69,18 +87,79 @@ interface UserRepositoryInternal extends DeleteExtended<User> {
     Mono<User> findOneWithAuthoritiesByEmailIgnoreCase(String email);
 
     Flux<User> findAllWithAuthorities(Pageable pageable);
+
+    Flux<User> findAllWithAuthoritiesAfter(Sort.Order order, Object lastValue, Long lastId, int size);
+
+    Flux<User> findAllActivatedAfter(Sort.Order order, Object lastValue, Long lastId, int size);
+
+    Flux<User> findAllWithAuthoritiesByIdIn(Collection<Long> ids);
+
+    Flux<User> findAllWithAuthoritiesByLoginIn(Collection<String> logins);
+
+    Flux<User> findAllWithAuthoritiesInIdRange(Long afterId, Long lastId, int size);
+
+    Flux<String> findExistingLogins(Collection<String> logins);
+
+    Flux<String> findExistingEmails(Collection<String> emails);
+
+    Flux<User> insertAll(List<User> users);
+
+    Mono<Integer> insertUserAuthorities(Long userId, Collection<String> authorities);
+
+    Mono<Integer> addUserAuthorities(Long userId, Collection<String> authorities);
+
+    Mono<Integer> replaceUserAuthorities(Long userId, Collection<String> authorities);
 }
 
 class UserRepositoryInternalImpl implements UserRepositoryInternal {
 
+    private static final Table USER_TABLE = Table.aliased("jhi_user", EntityManager.ENTITY_ALIAS);
+
+    private static final String LAST_VALUE = "lastValue";
+    private static final String LAST_ID = "lastId";
+
+    private static final EntityManager.LinkTable USER_AUTHORITY_LINK = new EntityManager.LinkTable(
+        "jhi_user_authority",
+        "user_id",
+        "authority_name"
+    );
+
+    private static final String[] INSERTED_COLUMNS = {
+        "login",
+        "password_hash",
+        "first_name",
+        "last_name",
+        "email",
+        "image_url",
+        "activated",
+        "lang_key",
+        "activation_key",
+        "reset_key",
+        "reset_date",
+        "created_by",
+        "created_date",
+        "last_modified_by",
+        "last_modified_date",
+    };
+
     private final DatabaseClient db;
     private final R2dbcEntityTemplate r2dbcEntityTemplate;
     private final R2dbcConverter r2dbcConverter;
+    private final EntityManager entityManager;
+    private final UserRowMapper userMapper;
 
-    public UserRepositoryInternalImpl(DatabaseClient db, R2dbcEntityTemplate r2dbcEntityTemplate, R2dbcConverter r2dbcConverter) {
+    public UserRepositoryInternalImpl(
+        DatabaseClient db,
+        R2dbcEntityTemplate r2dbcEntityTemplate,
+        R2dbcConverter r2dbcConverter,
+        EntityManager entityManager,
+        UserRowMapper userMapper
+    ) {
         this.db = db;
         this.r2dbcEntityTemplate = r2dbcEntityTemplate;
         this.r2dbcConverter = r2dbcConverter;
+        this.entityManager = entityManager;
+        this.userMapper = userMapper;
     }
 
     @Override
@@ -93,30 +172,182 @@ class UserRepositoryInternalImpl implements UserRepositoryInternal {
         return findOneWithAuthoritiesBy("email", email.toLowerCase());
     }
 
+    /**
+     * Fetch one page of users: the page itself is selected with ORDER BY/LIMIT/OFFSET, and the authorities are then
+     * loaded for the users of that page only.
+     */
     @Override
     public Flux<User> findAllWithAuthorities(Pageable pageable) {
-        String property = pageable.getSort().stream().map(Sort.Order::getProperty).findFirst().orElse("id");
-        String direction = String.valueOf(
-            pageable.getSort().stream().map(Sort.Order::getDirection).findFirst().orElse(Sort.DEFAULT_DIRECTION)
-        );
-        long page = pageable.getPageNumber();
-        long size = pageable.getPageSize();
+        Pageable stablePageable = pageable.isPaged()
+            ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), withIdTieBreaker(pageable.getSort()))
+            : null;
+        String select = entityManager.createSelect(selectUsers(), User.class, stablePageable, null);
+        return findPageWithAuthorities(db.sql(select));
+    }
+
+    /**
+     * Fetch the users following the given (sort value, id) position, so deep pages do not have to skip over the
+     * previous rows like an OFFSET does. A {@code null} lastId starts from the first user.
+     */
+    @Override
+    public Flux<User> findAllWithAuthoritiesAfter(Sort.Order order, Object lastValue, Long lastId, int size) {
+        return findPageWithAuthorities(selectAfter(order, lastValue, lastId, size, null));
+    }
+
+    @Override
+    public Flux<User> findAllActivatedAfter(Sort.Order order, Object lastValue, Long lastId, int size) {
+        return selectAfter(order, lastValue, lastId, size, USER_TABLE.column("activated").isEqualTo(SQL.literalOf(true)))
+            .map((row, metadata) -> userMapper.apply(row, EntityManager.ENTITY_ALIAS))
+            .all();
+    }
+
+    @Override
+    public Flux<User> findAllWithAuthoritiesByIdIn(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        Condition idIn = USER_TABLE.column("id").in(SQL.bindMarker(":ids"));
+        return findPageWithAuthorities(db.sql(entityManager.createSelect(selectUsers(), User.class, null, idIn)).bind("ids", ids));
+    }
+
+    @Override
+    public Flux<User> findAllWithAuthoritiesByLoginIn(Collection<String> logins) {
+        if (logins.isEmpty()) {
+            return Flux.empty();
+        }
+        Condition loginIn = USER_TABLE.column("login").in(SQL.bindMarker(":logins"));
+        String select = entityManager.createSelect(selectUsers(), User.class, null, loginIn);
+        return findPageWithAuthorities(db.sql(select).bind("logins", logins));
+    }
 
+    /**
+     * Fetch, ordered by id, the first users whose id is greater than afterId and at most lastId.
+     */
+    @Override
+    public Flux<User> findAllWithAuthoritiesInIdRange(Long afterId, Long lastId, int size) {
+        Column idColumn = USER_TABLE.column("id");
+        Condition inRange = idColumn.isGreater(SQL.bindMarker(":afterId")).and(idColumn.isLessOrEqualTo(SQL.bindMarker(":lastId")));
+        String select = entityManager.createSelect(selectUsers(), User.class, PageRequest.of(0, size, Sort.by("id")), inRange);
+        return findPageWithAuthorities(db.sql(select).bind("afterId", afterId).bind("lastId", lastId));
+    }
+
+    @Override
+    public Flux<String> findExistingLogins(Collection<String> logins) {
+        if (logins.isEmpty()) {
+            return Flux.empty();
+        }
         return db
-            .sql("SELECT * FROM jhi_user u LEFT JOIN jhi_user_authority ua ON u.id=ua.user_id")
-            .map((row, metadata) ->
-                Tuples.of(r2dbcConverter.read(User.class, row, metadata), Optional.ofNullable(row.get("authority_name", String.class)))
-            )
-            .all()
-            .groupBy(t -> t.getT1().getLogin())
-            .flatMap(l -> l.collectList().map(t -> updateUserWithAuthorities(t.get(0).getT1(), t)))
-            .sort(
-                Sort.Direction.fromString(direction) == Sort.DEFAULT_DIRECTION
-                    ? new BeanComparator<>(property)
-                    : new BeanComparator<>(property).reversed()
+            .sql("SELECT login FROM jhi_user WHERE login IN (:logins)")
+            .bind("logins", logins)
+            .map((row, metadata) -> row.get("login", String.class))
+            .all();
+    }
+
+    /**
+     * The emails are stored in lower case, so the given ones are lowered rather than the column, which keeps the query on
+     * its unique index.
+     */
+    @Override
+    public Flux<String> findExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return Flux.empty();
+        }
+        return db
+            .sql("SELECT email FROM jhi_user WHERE email IN (:emails)")
+            .bind("emails", emails.stream().map(String::toLowerCase).collect(Collectors.toSet()))
+            .map((row, metadata) -> row.get("email", String.class))
+            .all();
+    }
+
+    /**
+     * Insert the given new users with a single multi-row statement, then their authorities with another one. The
+     * generated ids are read back by login, as a multi-row insert only reports the first one.
+     */
+    @Override
+    public Flux<User> insertAll(List<User> users) {
+        if (users.isEmpty()) {
+            return Flux.empty();
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO jhi_user (")
+            .append(String.join(", ", INSERTED_COLUMNS))
+            .append(") VALUES ");
+        for (int i = 0; i < users.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append('(');
+            for (int j = 0; j < INSERTED_COLUMNS.length; j++) {
+                sql.append(j == 0 ? "" : ", ").append(':').append(INSERTED_COLUMNS[j]).append(i);
+            }
+            sql.append(')');
+        }
+        DatabaseClient.GenericExecuteSpec spec = db.sql(sql.toString());
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            spec = bind(spec, "login" + i, user.getLogin(), String.class);
+            spec = bind(spec, "password_hash" + i, user.getPassword(), String.class);
+            spec = bind(spec, "first_name" + i, user.getFirstName(), String.class);
+            spec = bind(spec, "last_name" + i, user.getLastName(), String.class);
+            spec = bind(spec, "email" + i, user.getEmail(), String.class);
+            spec = bind(spec, "image_url" + i, user.getImageUrl(), String.class);
+            spec = bind(spec, "activated" + i, user.isActivated(), Boolean.class);
+            spec = bind(spec, "lang_key" + i, user.getLangKey(), String.class);
+            spec = bind(spec, "activation_key" + i, user.getActivationKey(), String.class);
+            spec = bind(spec, "reset_key" + i, user.getResetKey(), String.class);
+            spec = bind(spec, "reset_date" + i, toBindValue(user.getResetDate()), LocalDateTime.class);
+            spec = bind(spec, "created_by" + i, user.getCreatedBy(), String.class);
+            spec = bind(spec, "created_date" + i, toBindValue(user.getCreatedDate()), LocalDateTime.class);
+            spec = bind(spec, "last_modified_by" + i, user.getLastModifiedBy(), String.class);
+            spec = bind(spec, "last_modified_date" + i, toBindValue(user.getLastModifiedDate()), LocalDateTime.class);
+        }
+        List<String> logins = users.stream().map(User::getLogin).collect(Collectors.toList());
+        return spec
+            .then()
+            .then(
+                db
+                    .sql("SELECT id, login FROM jhi_user WHERE login IN (:logins)")
+                    .bind("logins", logins)
+                    .map((row, metadata) -> Tuples.of(row.get("login", String.class), row.get("id", Long.class)))
+                    .all()
+                    .collectMap(Tuple2::getT1, Tuple2::getT2)
             )
-            .skip(page * size)
-            .take(size);
+            .flatMap(idsByLogin -> {
+                users.forEach(user -> user.setId(idsByLogin.get(user.getLogin())));
+                return insertAuthorities(users);
+            })
+            .thenMany(Flux.fromIterable(users));
+    }
+
+    private Mono<Void> insertAuthorities(List<User> users) {
+        Map<Long, List<String>> authoritiesByUserId = new LinkedHashMap<>();
+        for (User user : users) {
+            authoritiesByUserId.put(user.getId(), user.getAuthorities().stream().map(Authority::getName).collect(Collectors.toList()));
+        }
+        return entityManager.insertIntoLinkTable(USER_AUTHORITY_LINK, authoritiesByUserId).then();
+    }
+
+    /**
+     * Link a user which was just inserted to its authorities, without reading its links first as it has none.
+     */
+    @Override
+    public Mono<Integer> insertUserAuthorities(Long userId, Collection<String> authorities) {
+        return entityManager.insertIntoLinkTable(USER_AUTHORITY_LINK, Map.of(userId, authorities));
+    }
+
+    @Override
+    public Mono<Integer> addUserAuthorities(Long userId, Collection<String> authorities) {
+        return entityManager.addToLinkTable(USER_AUTHORITY_LINK, userId, authorities.stream());
+    }
+
+    @Override
+    public Mono<Integer> replaceUserAuthorities(Long userId, Collection<String> authorities) {
+        return entityManager.updateLinkTable(USER_AUTHORITY_LINK, userId, authorities.stream());
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(
+        DatabaseClient.GenericExecuteSpec spec,
+        String name,
+        Object value,
+        Class<?> type
+    ) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
     }
 
     @Override
@@ -141,6 +372,127 @@ class UserRepositoryInternalImpl implements UserRepositoryInternal {
             .map(l -> updateUserWithAuthorities(l.get(0).getT1(), l));
     }
 
+    private DatabaseClient.GenericExecuteSpec selectAfter(Sort.Order order, Object lastValue, Long lastId, int size, Condition filter) {
+        Sort sort = "id".equals(order.getProperty()) ? Sort.by(order) : Sort.by(order, new Sort.Order(order.getDirection(), "id"));
+        Condition where = filter;
+        if (lastId != null) {
+            Condition after = keysetCondition(order, lastValue);
+            where = where == null ? after : where.and(after);
+        }
+        String select = entityManager.createSelect(selectUsers(), User.class, PageRequest.of(0, size, sort), where);
+
+        DatabaseClient.GenericExecuteSpec spec = db.sql(select);
+        if (lastId != null) {
+            spec = spec.bind(LAST_ID, lastId);
+            if (lastValue != null && !"id".equals(order.getProperty())) {
+                spec = spec.bind(LAST_VALUE, toBindValue(lastValue));
+            }
+        }
+        return spec;
+    }
+
+    private SelectFromAndJoin selectUsers() {
+        List<Expression> columns = UserSqlHelper.getColumns(USER_TABLE, EntityManager.ENTITY_ALIAS);
+        return Select.builder().select(columns).from(USER_TABLE);
+    }
+
+    private Flux<User> findPageWithAuthorities(DatabaseClient.GenericExecuteSpec spec) {
+        return spec
+            .map((row, metadata) -> userMapper.apply(row, EntityManager.ENTITY_ALIAS))
+            .all()
+            .collectList()
+            .flatMapMany(this::fetchAuthorities);
+    }
+
+    /**
+     * Load the authorities of all the given users with a single {@code IN (...)} query, keeping the order of the page.
+     */
+    private Flux<User> fetchAuthorities(List<User> users) {
+        if (users.isEmpty()) {
+            return Flux.empty();
+        }
+        List<Long> userIds = users.stream().map(User::getId).collect(Collectors.toList());
+        return db
+            .sql("SELECT user_id, authority_name FROM jhi_user_authority WHERE user_id IN (:userIds)")
+            .bind("userIds", userIds)
+            .map((row, metadata) -> Tuples.of(row.get("user_id", Long.class), row.get("authority_name", String.class)))
+            .all()
+            .collectMultimap(Tuple2::getT1, Tuple2::getT2)
+            .flatMapIterable(authoritiesByUserId -> {
+                for (User user : users) {
+                    user.setAuthorities(
+                        authoritiesByUserId
+                            .getOrDefault(user.getId(), Collections.emptyList())
+                            .stream()
+                            .map(name -> {
+                                Authority authority = new Authority();
+                                authority.setName(name);
+                                return authority;
+                            })
+                            .collect(Collectors.toSet())
+                    );
+                }
+                return users;
+            });
+    }
+
+    /**
+     * Builds {@code (sort_col, id) > (:lastValue, :lastId)} (or {@code <} for a descending order) in its expanded form,
+     * taking into account that NULLs are sorted first in ascending order and last in descending order.
+     */
+    private Condition keysetCondition(Sort.Order order, Object lastValue) {
+        boolean ascending = order.isAscending();
+        Column idColumn = USER_TABLE.column("id");
+        Condition idAfter = after(idColumn, SQL.bindMarker(":" + LAST_ID), ascending);
+        if ("id".equals(order.getProperty())) {
+            return idAfter;
+        }
+        Column sortColumn = USER_TABLE.column(columnName(order.getProperty()));
+        if (lastValue == null) {
+            Condition sameNullGroup = Conditions.nest(sortColumn.isNull().and(idAfter));
+            return ascending ? Conditions.nest(sameNullGroup.or(sortColumn.isNotNull())) : sameNullGroup;
+        }
+        BindMarker lastValueMarker = SQL.bindMarker(":" + LAST_VALUE);
+        Condition sameValue = Conditions.nest(sortColumn.isEqualTo(lastValueMarker).and(idAfter));
+        Condition keyset = after(sortColumn, lastValueMarker, ascending).or(sameValue);
+        return Conditions.nest(ascending ? keyset : keyset.or(sortColumn.isNull()));
+    }
+
+    private static Condition after(Column column, Expression marker, boolean ascending) {
+        return ascending ? column.isGreater(marker) : column.isLess(marker);
+    }
+
+    private String columnName(String property) {
+        return r2dbcConverter
+            .getMappingContext()
+            .getRequiredPersistentEntity(User.class)
+            .getRequiredPersistentProperty(property)
+            .getColumnName()
+            .getReference();
+    }
+
+    private static Object toBindValue(Object value) {
+        if (value instanceof Instant) {
+            return LocalDateTime.ofInstant((Instant) value, ZoneOffset.UTC);
+        }
+        return value;
+    }
+
+    /**
+     * Appends the id to the sort, so that rows with the same sort value always come in the same order across pages.
+     */
+    private static Sort withIdTieBreaker(Sort sort) {
+        if (sort.getOrderFor("id") != null) {
+            return sort;
+        }
+        Sort.Direction direction = sort
+            .stream()
+            .reduce((first, second) -> second)
+            .map(Sort.Order::getDirection)
+            .orElse(Sort.DEFAULT_DIRECTION);
+        return sort.and(Sort.by(direction, "id"));
+    }
+
     private User updateUserWithAuthorities(User user, List<Tuple2<User, Optional<String>>> tuples) {
         user.setAuthorities(
             tuples
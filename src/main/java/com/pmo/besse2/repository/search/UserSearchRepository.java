@@ -1,13 +1,40 @@
 package com.pmo.besse2.repository.search;
 
-import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.elasticsearch.index.query.QueryBuilders.multiMatchQuery;
 
 import com.pmo.besse2.domain.User;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.ReactiveIndexOperations;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
 import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Spring Data Elasticsearch repository for the User entity.
@@ -15,20 +42,221 @@ import reactor.core.publisher.Flux;
 public interface UserSearchRepository extends ReactiveElasticsearchRepository<User, Long>, UserSearchRepositoryInternal {}
 
 interface UserSearchRepositoryInternal {
-    Flux<User> search(String query);
+    Flux<SearchHit<User>> search(String query, List<Object> searchAfter, int size);
+
+    Mono<Void> createIndex(String indexName);
+
+    Mono<Void> deleteIndex(String indexName);
+
+    Mono<Set<Long>> writeAll(Collection<User> users, Collection<Long> deletedIds, ToLongFunction<Long> version, String indexName);
+
+    Mono<Set<Long>> writeAll(Collection<User> users, Collection<Long> deletedIds, ToLongFunction<Long> version);
+
+    Mono<Boolean> indexExists(String indexName);
+
+    Mono<Void> addReindexTarget(String indexName);
+
+    Mono<Set<String>> findReindexTargets();
+
+    Mono<Set<String>> moveAlias(String indexName);
 }
 
 class UserSearchRepositoryInternalImpl implements UserSearchRepositoryInternal {
 
+    /**
+     * The name of the index of the {@link User} documents, which is an alias to a versioned index once the users have
+     * been reindexed.
+     */
+    private static final String ALIAS = "user";
+
+    /**
+     * The alias of the index being rebuilt, which receives the changes along with the {@link #ALIAS} on every node.
+     */
+    private static final String REINDEX_ALIAS = "user-reindex";
+
+    /**
+     * The fields matched by a search.
+     */
+    private static final String[] SEARCHED_FIELDS = { "login", "firstName", "lastName", "email" };
+
+    /**
+     * The fields returned by a search, those of the {@link com.pmo.besse2.service.dto.UserDTO}.
+     */
+    private static final String[] RETURNED_FIELDS = { "id", "login" };
+
+    /**
+     * The fields whose matches are highlighted: only the public ones, not the names or the email.
+     */
+    private static final String[] HIGHLIGHTED_FIELDS = { "login" };
+
     private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
 
     UserSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
         this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
     }
 
+    /**
+     * Search the users matching the given text, as typed by a user, best matches first.
+     *
+     * @param query the searched text.
+     * @param searchAfter the sort values (score and id) of the last hit of the previous page, or {@code null} for the first page.
+     * @param size the maximum number of hits.
+     * @return the hits, with the {@code id} and {@code login} of the users and the highlighted matches.
+     */
+    @Override
+    public Flux<SearchHit<User>> search(String query, List<Object> searchAfter, int size) {
+        NativeSearchQuery nativeSearchQuery = new NativeSearchQueryBuilder()
+            .withQuery(multiMatchQuery(query, SEARCHED_FIELDS).type(MultiMatchQueryBuilder.Type.BOOL_PREFIX))
+            .withSorts(
+                SortBuilders.scoreSort().order(SortOrder.DESC),
+                SortBuilders.fieldSort("id").order(SortOrder.ASC).unmappedType("long")
+            )
+            .withSourceFilter(new FetchSourceFilter(RETURNED_FIELDS, null))
+            .withHighlightFields(
+                Arrays.stream(HIGHLIGHTED_FIELDS).map(HighlightBuilder.Field::new).toArray(HighlightBuilder.Field[]::new)
+            )
+            .withPageable(PageRequest.of(0, size))
+            .build();
+        nativeSearchQuery.setSearchAfter(searchAfter);
+        return reactiveElasticsearchTemplate.search(nativeSearchQuery, User.class);
+    }
+
+    /**
+     * Create the given index, with the mapping of the {@link User} documents.
+     */
+    @Override
+    public Mono<Void> createIndex(String indexName) {
+        ReactiveIndexOperations indexOperations = reactiveElasticsearchTemplate.indexOps(IndexCoordinates.of(indexName));
+        return indexOperations.create().then(indexOperations.putMapping(indexOperations.createMapping(User.class))).then();
+    }
+
+    @Override
+    public Mono<Void> deleteIndex(String indexName) {
+        return reactiveElasticsearchTemplate.indexOps(IndexCoordinates.of(indexName)).delete().then();
+    }
+
+    /**
+     * Index the given users and delete the documents of the given ids in one bulk request, with external versions: a
+     * document is only written if its version is at least the one of the document, or of the deletion, in the index. So
+     * a write which lost a race with a newer one is ignored, instead of overwriting it.
+     *
+     * @param version the version of the document of a user id.
+     * @return the ids of the users whose document could not be written, for other reasons than a newer version.
+     */
+    @Override
+    public Mono<Set<Long>> writeAll(Collection<User> users, Collection<Long> deletedIds, ToLongFunction<Long> version, String indexName) {
+        BulkRequest request = new BulkRequest().setRefreshPolicy(toRefreshPolicy(reactiveElasticsearchTemplate.getRefreshPolicy()));
+        for (User user : users) {
+            request.add(
+                new IndexRequest(indexName)
+                    .id(String.valueOf(user.getId()))
+                    .source(reactiveElasticsearchTemplate.getElasticsearchConverter().mapObject(user))
+                    .version(version.applyAsLong(user.getId()))
+                    .versionType(VersionType.EXTERNAL_GTE)
+            );
+        }
+        for (Long id : deletedIds) {
+            request.add(
+                new DeleteRequest(indexName, String.valueOf(id)).version(version.applyAsLong(id)).versionType(VersionType.EXTERNAL_GTE)
+            );
+        }
+        if (request.numberOfActions() == 0) {
+            return Mono.just(Set.of());
+        }
+        return Mono
+            .from(reactiveElasticsearchTemplate.execute(client -> client.bulk(request)))
+            .map(response -> {
+                Set<Long> failedIds = new HashSet<>();
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed() && item.getFailure().getStatus() != RestStatus.CONFLICT) {
+                        failedIds.add(Long.valueOf(item.getId()));
+                    }
+                }
+                return failedIds;
+            });
+    }
+
+    /**
+     * Like {@link #writeAll(Collection, Collection, ToLongFunction, String)}, in the {@code user} alias.
+     */
+    @Override
+    public Mono<Set<Long>> writeAll(Collection<User> users, Collection<Long> deletedIds, ToLongFunction<Long> version) {
+        return writeAll(users, deletedIds, version, ALIAS);
+    }
+
+    private static WriteRequest.RefreshPolicy toRefreshPolicy(RefreshPolicy refreshPolicy) {
+        if (refreshPolicy == null) {
+            return WriteRequest.RefreshPolicy.NONE;
+        }
+        switch (refreshPolicy) {
+            case IMMEDIATE:
+                return WriteRequest.RefreshPolicy.IMMEDIATE;
+            case WAIT_UNTIL:
+                return WriteRequest.RefreshPolicy.WAIT_UNTIL;
+            default:
+                return WriteRequest.RefreshPolicy.NONE;
+        }
+    }
+
+    @Override
+    public Mono<Boolean> indexExists(String indexName) {
+        return reactiveElasticsearchTemplate.indexOps(IndexCoordinates.of(indexName)).exists();
+    }
+
+    /**
+     * Point the {@code user-reindex} alias to the given index, if it doesn't already.
+     */
+    @Override
+    public Mono<Void> addReindexTarget(String indexName) {
+        AliasActions actions = new AliasActions(
+            new AliasAction.Add(AliasActionParameters.builder().withIndices(indexName).withAliases(REINDEX_ALIAS).build())
+        );
+        return reactiveElasticsearchTemplate.indexOps(IndexCoordinates.of(indexName)).alias(actions).then();
+    }
+
+    /**
+     * @return the indices the {@code user-reindex} alias points to, if any.
+     */
+    @Override
+    public Mono<Set<String>> findReindexTargets() {
+        return reactiveElasticsearchTemplate
+            .indexOps(IndexCoordinates.of(REINDEX_ALIAS))
+            .getAliases(REINDEX_ALIAS)
+            .map(aliasesByIndex -> Set.copyOf(aliasesByIndex.keySet()))
+            .onErrorResume(e -> Mono.just(Set.of()));
+    }
+
+    /**
+     * Atomically point the {@code user} alias to the given index, removing it from the indices it pointed to, and the
+     * {@code user-reindex} alias from the given index. If {@code user} is still a concrete index, that index is deleted in
+     * the same request.
+     *
+     * @return the indices the alias pointed to before.
+     */
     @Override
-    public Flux<User> search(String query) {
-        NativeSearchQuery nativeSearchQuery = new NativeSearchQuery(queryStringQuery(query));
-        return reactiveElasticsearchTemplate.search(nativeSearchQuery, User.class).map(SearchHit::getContent);
+    public Mono<Set<String>> moveAlias(String indexName) {
+        ReactiveIndexOperations aliasOperations = reactiveElasticsearchTemplate.indexOps(IndexCoordinates.of(ALIAS));
+        return aliasOperations
+            .getAliases(ALIAS)
+            .map(aliasesByIndex -> Set.copyOf(aliasesByIndex.keySet()))
+            .onErrorResume(e -> Mono.just(Set.of()))
+            .zipWith(aliasOperations.exists())
+            .flatMap(previousIndicesAndExists -> {
+                Set<String> previousIndices = previousIndicesAndExists.getT1();
+                AliasActions actions = new AliasActions();
+                if (previousIndices.isEmpty() && Boolean.TRUE.equals(previousIndicesAndExists.getT2())) {
+                    actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(ALIAS).build()));
+                }
+                for (String previousIndex : previousIndices) {
+                    actions.add(
+                        new AliasAction.Remove(AliasActionParameters.builder().withIndices(previousIndex).withAliases(ALIAS).build())
+                    );
+                }
+                actions.add(new AliasAction.Add(AliasActionParameters.builder().withIndices(indexName).withAliases(ALIAS).build()));
+                actions.add(
+                    new AliasAction.Remove(AliasActionParameters.builder().withIndices(indexName).withAliases(REINDEX_ALIAS).build())
+                );
+                return reactiveElasticsearchTemplate.indexOps(IndexCoordinates.of(indexName)).alias(actions).thenReturn(previousIndices);
+            });
     }
 }
@@ -0,0 +1,160 @@
+package com.pmo.besse2.security;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs the BCrypt password hashing on a dedicated, bounded pool of threads.
+ * <p>
+ * BCrypt is CPU bound and slow by design: running it on the event loops, or on the shared bounded elastic scheduler,
+ * lets a burst of logins stall all the I/O. When both the threads and the queue of this pool are busy, hashing
+ * requests fail fast with a {@link PasswordHashingUnavailableException} ({@code 503 (Service Unavailable)}).
+ */
+@Component
+public class PasswordHashingScheduler implements DisposableBean {
+
+    public static final String HASHING_METER_NAME = "security.password.hashing";
+    public static final String HASHING_METER_DESCRIPTION = "Indicates the time spent hashing or matching passwords.";
+    public static final String REJECTED_METER_NAME = "security.password.hashing.rejected";
+    public static final String REJECTED_METER_DESCRIPTION = "Indicates the password hashing requests rejected as the queue was full.";
+    public static final String QUEUE_METER_NAME = "security.password.hashing.queue";
+
+    private final ThreadPoolExecutor executor;
+
+    private final Scheduler scheduler;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final Counter rejectedCounter;
+
+    public PasswordHashingScheduler(ApplicationProperties applicationProperties, MeterRegistry registry) {
+        ApplicationProperties.PasswordHashing properties = applicationProperties.getPasswordHashing();
+        this.executor =
+            new ThreadPoolExecutor(
+                properties.getPoolSize(),
+                properties.getPoolSize(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                new CustomizableThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy()
+            );
+        this.scheduler = Schedulers.fromExecutorService(executor, "password-hashing");
+        this.passwordEncoder =
+            new TimedPasswordEncoder(
+                new BCryptPasswordEncoder(properties.getBcryptStrength()),
+                hashingTimer(registry, "encode"),
+                hashingTimer(registry, "matches")
+            );
+        this.rejectedCounter = Counter.builder(REJECTED_METER_NAME).description(REJECTED_METER_DESCRIPTION).register(registry);
+        Gauge.builder(QUEUE_METER_NAME, executor, e -> e.getQueue().size()).register(registry);
+    }
+
+    private static Timer hashingTimer(MeterRegistry registry, String operation) {
+        return Timer.builder(HASHING_METER_NAME).description(HASHING_METER_DESCRIPTION).tag("operation", operation).register(registry);
+    }
+
+    /**
+     * The password encoder, timing each operation. Its methods block for the whole hashing time, so they must only be
+     * called on the {@link #getScheduler() hashing scheduler}.
+     *
+     * @return the password encoder.
+     */
+    public PasswordEncoder getPasswordEncoder() {
+        return passwordEncoder;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Encode the raw password on the hashing scheduler.
+     *
+     * @param rawPassword the password to encode.
+     * @return the encoded password.
+     */
+    public Mono<String> encode(CharSequence rawPassword) {
+        return execute(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Check the raw password against the encoded one on the hashing scheduler.
+     *
+     * @param rawPassword the password to check.
+     * @param encodedPassword the stored encoded password.
+     * @return whether the passwords match.
+     */
+    public Mono<Boolean> matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Translate the rejection of a task by the saturated hashing scheduler, leaving other errors untouched.
+     *
+     * @param error the error.
+     * @return the error to propagate.
+     */
+    public Throwable translateRejection(Throwable error) {
+        if (error instanceof RejectedExecutionException) {
+            rejectedCounter.increment();
+            return new PasswordHashingUnavailableException(error);
+        }
+        return error;
+    }
+
+    private <T> Mono<T> execute(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(scheduler).onErrorMap(this::translateRejection);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    private static class TimedPasswordEncoder implements PasswordEncoder {
+
+        private final PasswordEncoder delegate;
+
+        private final Timer encodeTimer;
+
+        private final Timer matchesTimer;
+
+        TimedPasswordEncoder(PasswordEncoder delegate, Timer encodeTimer, Timer matchesTimer) {
+            this.delegate = delegate;
+            this.encodeTimer = encodeTimer;
+            this.matchesTimer = matchesTimer;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return encodeTimer.record(() -> delegate.encode(rawPassword));
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return Boolean.TRUE.equals(matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            return delegate.upgradeEncoding(encodedPassword);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.pmo.besse2.security;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * This exception is thrown when the password hashing queue is full, so the request is rejected rather than queued.
+ */
+public class PasswordHashingUnavailableException extends ResponseStatusException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingUnavailableException(Throwable cause) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Password hashing is saturated, please retry later", cause);
+    }
+}
@@ -0,0 +1,107 @@
+package com.pmo.besse2.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.security.authorization.AuthenticatedReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorityReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import reactor.core.publisher.Mono;
+
+/**
+ * Authorizes the requests with the access rule of the first path pattern matching them, like a sequence of
+ * {@code pathMatchers(...)} of the {@code authorizeExchange()} specification, but with the patterns compiled into
+ * {@link PathRules}. The requests matching no pattern are denied.
+ */
+public final class PathAuthorizationManager implements ReactiveAuthorizationManager<AuthorizationContext> {
+
+    private static final ReactiveAuthorizationManager<AuthorizationContext> PERMIT_ALL = (authentication, context) ->
+        Mono.just(new AuthorizationDecision(true));
+
+    private static final Mono<AuthorizationDecision> DENIED = Mono.just(new AuthorizationDecision(false));
+
+    private final List<Rule> rules;
+
+    private final PathRules<ReactiveAuthorizationManager<AuthorizationContext>> compiledRules;
+
+    private PathAuthorizationManager(List<Rule> rules) {
+        this.rules = List.copyOf(rules);
+        PathRules.Builder<ReactiveAuthorizationManager<AuthorizationContext>> builder = PathRules.builder();
+        rules.forEach(rule -> builder.add(rule.access, rule.pattern));
+        this.compiledRules = builder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Mono<AuthorizationDecision> check(Mono<Authentication> authentication, AuthorizationContext context) {
+        ReactiveAuthorizationManager<AuthorizationContext> access = compiledRules.match(
+            context.getExchange().getRequest().getPath().pathWithinApplication()
+        );
+        return access != null ? access.check(authentication, context) : DENIED;
+    }
+
+    /**
+     * @return the rules, in their order.
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public static final class Builder {
+
+        private final List<Rule> rules = new ArrayList<>();
+
+        private Builder() {}
+
+        public Builder permitAll(String... patterns) {
+            return access(PERMIT_ALL, patterns);
+        }
+
+        public Builder authenticated(String... patterns) {
+            return access(AuthenticatedReactiveAuthorizationManager.authenticated(), patterns);
+        }
+
+        public Builder hasAuthority(String authority, String... patterns) {
+            return access(AuthorityReactiveAuthorizationManager.hasAuthority(authority), patterns);
+        }
+
+        public Builder access(ReactiveAuthorizationManager<AuthorizationContext> access, String... patterns) {
+            for (String pattern : patterns) {
+                rules.add(new Rule(pattern, access));
+            }
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a pattern is not supported by {@link PathRules}.
+         */
+        public PathAuthorizationManager build() {
+            return new PathAuthorizationManager(rules);
+        }
+    }
+
+    public static final class Rule {
+
+        private final String pattern;
+
+        private final ReactiveAuthorizationManager<AuthorizationContext> access;
+
+        private Rule(String pattern, ReactiveAuthorizationManager<AuthorizationContext> access) {
+            this.pattern = pattern;
+            this.access = access;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public ReactiveAuthorizationManager<AuthorizationContext> getAccess() {
+            return access;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.pmo.besse2.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+
+/**
+ * Path patterns compiled into a prefix tree of path segments, which finds the first pattern matching a path in a single
+ * traversal, instead of matching the patterns one after the other.
+ * <p>
+ * The patterns match like the {@link PathPattern}s of the default parser: against the decoded path segments, without
+ * their parameters, with an optional trailing separator. Their segments are literals or have {@code *} wildcards (like
+ * {@code *.*}, or a {@code *} alone within the pattern), and they may end with {@code /**}.
+ *
+ * @param <T> the type of the values associated to the patterns.
+ */
+public final class PathRules<T> {
+
+    private static final int NO_RULE = Integer.MAX_VALUE;
+
+    private final Node root;
+
+    /**
+     * The rule of the {@code /} pattern, which only matches the root path.
+     */
+    private final int slash;
+
+    private final List<T> values;
+
+    private PathRules(Node root, int slash, List<T> values) {
+        this.root = root;
+        this.slash = slash;
+        this.values = values;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @return the value of the first pattern matching the path, or {@code null} if none does.
+     */
+    public T match(PathContainer path) {
+        List<PathContainer.Element> elements = path.elements();
+        int rule = root.match(elements, 0, elements.size() == 1 && isSeparator(elements, 0) ? slash : NO_RULE);
+        return rule == NO_RULE ? null : values.get(rule);
+    }
+
+    private static boolean isSeparator(List<PathContainer.Element> elements, int index) {
+        return elements.get(index) instanceof PathContainer.Separator;
+    }
+
+    public static final class Builder<T> {
+
+        private final Node root = new Node();
+
+        private int slash = NO_RULE;
+
+        private final List<T> values = new ArrayList<>();
+
+        private Builder() {}
+
+        /**
+         * Adds the patterns after the previous ones, which come first when several patterns match.
+         *
+         * @throws IllegalArgumentException if a pattern is not supported.
+         */
+        public Builder<T> add(T value, String... patterns) {
+            for (String pattern : patterns) {
+                add(pattern, value);
+            }
+            return this;
+        }
+
+        private void add(String pattern, T value) {
+            if (!pattern.startsWith("/")) {
+                throw new IllegalArgumentException("The path pattern doesn't start with a separator: " + pattern);
+            }
+            boolean rest = pattern.endsWith("/**");
+            String segments = rest ? pattern.substring(0, pattern.length() - 3) : pattern;
+            if (!rest && segments.endsWith("/*")) {
+                throw new IllegalArgumentException("The path pattern ends with a single wildcard: " + pattern);
+            }
+            int rule = values.size();
+            values.add(value);
+            if (pattern.equals("/")) {
+                slash = Math.min(slash, rule);
+                return;
+            }
+            Node node = root;
+            node.first = Math.min(node.first, rule);
+            if (!segments.isEmpty()) {
+                for (String segment : segments.substring(1).split("/", -1)) {
+                    node = node.child(segment, pattern);
+                    node.first = Math.min(node.first, rule);
+                }
+            }
+            if (rest) {
+                node.rest = Math.min(node.rest, rule);
+            } else {
+                node.end = Math.min(node.end, rule);
+            }
+        }
+
+        public PathRules<T> build() {
+            return new PathRules<>(root, slash, List.copyOf(values));
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> literals = new HashMap<>();
+
+        private final List<Wildcard> wildcards = new ArrayList<>();
+
+        /**
+         * The first rule in this node or below it.
+         */
+        private int first = NO_RULE;
+
+        /**
+         * The first rule ending with this node.
+         */
+        private int end = NO_RULE;
+
+        /**
+         * The first rule ending with {@code /**} after this node.
+         */
+        private int rest = NO_RULE;
+
+        Node child(String segment, String pattern) {
+            if (segment.isEmpty() || segment.contains("**") || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0) {
+                throw new IllegalArgumentException("The path pattern is not supported: " + pattern);
+            }
+            if (segment.indexOf('*') < 0) {
+                return literals.computeIfAbsent(segment, s -> new Node());
+            }
+            for (Wildcard wildcard : wildcards) {
+                if (wildcard.segment.equals(segment)) {
+                    return wildcard.node;
+                }
+            }
+            Wildcard wildcard = new Wildcard(segment);
+            wildcards.add(wildcard);
+            return wildcard.node;
+        }
+
+        /**
+         * @param index the index of the separator before the next segment.
+         * @param best the first rule matching so far.
+         * @return the first rule matching, {@code best} if there is none before it.
+         */
+        int match(List<PathContainer.Element> elements, int index, int best) {
+            if (first >= best) {
+                return best;
+            }
+            int size = elements.size();
+            if (rest < best && (index == size || isSeparator(elements, index))) {
+                best = rest;
+            }
+            // An optional trailing separator
+            if (end < best && (index == size || (index + 1 == size && isSeparator(elements, index)))) {
+                best = end;
+            }
+            if (index + 1 < size && isSeparator(elements, index) && elements.get(index + 1) instanceof PathContainer.PathSegment) {
+                String value = ((PathContainer.PathSegment) elements.get(index + 1)).valueToMatch();
+                Node literal = literals.get(value);
+                if (literal != null) {
+                    best = literal.match(elements, index + 2, best);
+                }
+                for (Wildcard wildcard : wildcards) {
+                    if (wildcard.matches(value)) {
+                        best = wildcard.node.match(elements, index + 2, best);
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    private static final class Wildcard {
+
+        private final String segment;
+
+        /**
+         * The pattern of the segment, {@code null} for a {@code *} alone, which matches any non-empty segment.
+         */
+        private final Pattern pattern;
+
+        private final Node node = new Node();
+
+        Wildcard(String segment) {
+            this.segment = segment;
+            if (segment.equals("*")) {
+                this.pattern = null;
+            } else {
+                StringBuilder regex = new StringBuilder();
+                int start = 0;
+                for (int wildcard = segment.indexOf('*'); wildcard >= 0; wildcard = segment.indexOf('*', start)) {
+                    if (wildcard > start) {
+                        regex.append(Pattern.quote(segment.substring(start, wildcard)));
+                    }
+                    regex.append(".*");
+                    start = wildcard + 1;
+                }
+                if (start < segment.length()) {
+                    regex.append(Pattern.quote(segment.substring(start)));
+                }
+                this.pattern = Pattern.compile(regex.toString());
+            }
+        }
+
+        boolean matches(String value) {
+            return pattern == null ? !value.isEmpty() : pattern.matcher(value).matches();
+        }
+    }
+}
@@ -8,10 +8,14 @@ import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -24,6 +28,12 @@ import tech.jhipster.config.JHipsterProperties;
 @Component
 public class TokenProvider {
 
+    /**
+     * The cache of the authentications of the tokens already verified, bounded and expired by its policy in
+     * {@code application.caches.policies}.
+     */
+    public static final String AUTHENTICATIONS_CACHE = "authenticationsByToken";
+
     private final Logger log = LoggerFactory.getLogger(TokenProvider.class);
 
     private static final String AUTHORITIES_KEY = "auth";
@@ -40,7 +50,12 @@ public class TokenProvider {
 
     private final SecurityMetersService securityMetersService;
 
-    public TokenProvider(JHipsterProperties jHipsterProperties, SecurityMetersService securityMetersService) {
+    /**
+     * Authentications of the tokens already verified, by SHA-256 digest of the token, until the token or the entry expires.
+     */
+    private final Cache authenticationCache;
+
+    public TokenProvider(JHipsterProperties jHipsterProperties, SecurityMetersService securityMetersService, CacheManager cacheManager) {
         byte[] keyBytes;
         String secret = jHipsterProperties.getSecurity().getAuthentication().getJwt().getBase64Secret();
         if (!ObjectUtils.isEmpty(secret)) {
@@ -61,6 +76,7 @@ public class TokenProvider {
             1000 * jHipsterProperties.getSecurity().getAuthentication().getJwt().getTokenValidityInSecondsForRememberMe();
 
         this.securityMetersService = securityMetersService;
+        this.authenticationCache = cacheManager.getCache(AUTHENTICATIONS_CACHE);
     }
 
     public String createToken(Authentication authentication, boolean rememberMe) {
@@ -85,24 +101,39 @@ public class TokenProvider {
     }
 
     public Authentication getAuthentication(String token) {
-        Claims claims = jwtParser.parseClaimsJws(token).getBody();
-
-        Collection<? extends GrantedAuthority> authorities = Arrays
-            .stream(claims.get(AUTHORITIES_KEY).toString().split(","))
-            .filter(auth -> !auth.trim().isEmpty())
-            .map(SimpleGrantedAuthority::new)
-            .collect(Collectors.toList());
-
-        User principal = new User(claims.getSubject(), "", authorities);
-
-        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
+        CachedAuthentication cached = getCachedAuthentication(token);
+        if (cached != null) {
+            return cached.authentication;
+        }
+        return parseAuthentication(token);
     }
 
     public boolean validateToken(String authToken) {
+        return validateAndGetAuthentication(authToken).isPresent();
+    }
+
+    /**
+     * Validate the token and get its authentication, parsing and verifying the signature of the token only once.
+     * <p>
+     * The authentications of valid tokens are cached until the tokens expire, so a token presented again is neither
+     * parsed nor verified again.
+     *
+     * @param authToken the JWT token.
+     * @return the authentication of the token, or an empty {@link Optional} if the token is not valid.
+     */
+    public Optional<Authentication> validateAndGetAuthentication(String authToken) {
+        CachedAuthentication cached = getCachedAuthentication(authToken);
+        if (cached != null) {
+            this.securityMetersService.trackTokenCacheHit();
+            return Optional.of(cached.authentication);
+        }
+        this.securityMetersService.trackTokenCacheMiss();
         try {
-            jwtParser.parseClaimsJws(authToken);
+            Claims claims = jwtParser.parseClaimsJws(authToken).getBody();
+            Authentication authentication = createAuthentication(claims, authToken);
+            cacheAuthentication(authToken, authentication, claims.getExpiration());
 
-            return true;
+            return Optional.of(authentication);
         } catch (ExpiredJwtException e) {
             this.securityMetersService.trackTokenExpired();
 
@@ -123,6 +154,71 @@ public class TokenProvider {
             log.error("Token validation error {}", e.getMessage());
         }
 
-        return false;
+        return Optional.empty();
+    }
+
+    private Authentication parseAuthentication(String token) {
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        Authentication authentication = createAuthentication(claims, token);
+        cacheAuthentication(token, authentication, claims.getExpiration());
+        return authentication;
+    }
+
+    private Authentication createAuthentication(Claims claims, String token) {
+        Collection<? extends GrantedAuthority> authorities = Arrays
+            .stream(claims.get(AUTHORITIES_KEY).toString().split(","))
+            .filter(auth -> !auth.trim().isEmpty())
+            .map(SimpleGrantedAuthority::new)
+            .collect(Collectors.toList());
+
+        User principal = new User(claims.getSubject(), "", authorities);
+
+        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
+    }
+
+    private CachedAuthentication getCachedAuthentication(String token) {
+        String digest = digest(token);
+        CachedAuthentication cached = authenticationCache.get(digest, CachedAuthentication.class);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired(System.currentTimeMillis())) {
+            authenticationCache.evict(digest);
+            return null;
+        }
+        return cached;
+    }
+
+    private void cacheAuthentication(String token, Authentication authentication, Date expiration) {
+        if (expiration == null) {
+            // tokens without expiration are never cached, so that they are verified on every request
+            return;
+        }
+        authenticationCache.put(digest(token), new CachedAuthentication(authentication, expiration.getTime()));
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static final class CachedAuthentication {
+
+        private final Authentication authentication;
+
+        private final long expiresAt;
+
+        private CachedAuthentication(Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
     }
 }
@@ -0,0 +1,25 @@
+package com.pmo.besse2.service;
+
+import com.pmo.besse2.service.dto.CacheInvalidationDTO;
+import java.util.function.Consumer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Carries the user cache evictions of the {@link UserCacheInvalidationBus} between the nodes of the cluster.
+ */
+public interface CacheInvalidationTransport {
+    /**
+     * Send evictions to the other nodes.
+     *
+     * @param invalidation the evictions.
+     * @return a completed {@link Mono} once the evictions are delivered, or an error if they couldn't be to some nodes.
+     */
+    Mono<Void> send(CacheInvalidationDTO invalidation);
+
+    /**
+     * Register the receiver of the evictions sent by the other nodes.
+     *
+     * @param receiver the receiver.
+     */
+    void onReceive(Consumer<CacheInvalidationDTO> receiver);
+}
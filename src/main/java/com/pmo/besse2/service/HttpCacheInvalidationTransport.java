@@ -0,0 +1,126 @@
+package com.pmo.besse2.service;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.config.Constants;
+import com.pmo.besse2.security.AuthoritiesConstants;
+import com.pmo.besse2.security.jwt.TokenProvider;
+import com.pmo.besse2.service.dto.CacheInvalidationDTO;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends the user cache evictions to the other instances of the application registered in the discovery service, with an
+ * HTTP request to each of them, authenticated as the system with an admin token. The instances receive them at
+ * {@value #PATH}.
+ */
+@Component
+public class HttpCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    public static final String PATH = "/api/admin/cache-invalidations";
+
+    private static final UsernamePasswordAuthenticationToken SYSTEM_AUTHENTICATION = new UsernamePasswordAuthenticationToken(
+        Constants.SYSTEM,
+        null,
+        List.of(new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN))
+    );
+
+    private final Logger log = LoggerFactory.getLogger(HttpCacheInvalidationTransport.class);
+
+    private final DiscoveryClient discoveryClient;
+
+    private final ObjectProvider<Registration> registration;
+
+    private final TokenProvider tokenProvider;
+
+    private final WebClient webClient;
+
+    private final String appName;
+
+    private final Duration timeout;
+
+    private volatile Consumer<CacheInvalidationDTO> receiver = invalidation -> {};
+
+    public HttpCacheInvalidationTransport(
+        DiscoveryClient discoveryClient,
+        ObjectProvider<Registration> registration,
+        TokenProvider tokenProvider,
+        WebClient.Builder webClientBuilder,
+        ApplicationProperties applicationProperties,
+        @Value("${spring.application.name}") String appName
+    ) {
+        this.discoveryClient = discoveryClient;
+        this.registration = registration;
+        this.tokenProvider = tokenProvider;
+        this.webClient = webClientBuilder.build();
+        this.appName = appName;
+        this.timeout = applicationProperties.getCacheInvalidation().getTimeout();
+    }
+
+    @Override
+    public Mono<Void> send(CacheInvalidationDTO invalidation) {
+        return Mono.defer(() -> {
+            List<ServiceInstance> peers = getPeers();
+            if (peers.isEmpty()) {
+                return Mono.empty();
+            }
+            String token = tokenProvider.createToken(SYSTEM_AUTHENTICATION, false);
+            return Flux
+                .fromIterable(peers)
+                .flatMapDelayError(peer -> deliver(peer, invalidation, token), peers.size(), 1)
+                .then();
+        });
+    }
+
+    private Mono<Void> deliver(ServiceInstance peer, CacheInvalidationDTO invalidation, String token) {
+        return webClient
+            .post()
+            .uri(peer.getUri().resolve(PATH))
+            .headers(headers -> headers.setBearerAuth(token))
+            .bodyValue(invalidation)
+            .retrieve()
+            .toBodilessEntity()
+            .timeout(timeout)
+            .doOnError(e -> log.warn("Could not send the user cache evictions to {}: {}", peer.getUri(), e.getMessage()))
+            .then();
+    }
+
+    private List<ServiceInstance> getPeers() {
+        Registration self = registration.getIfAvailable();
+        String selfId = self != null ? self.getInstanceId() : null;
+        return discoveryClient
+            .getInstances(appName)
+            .stream()
+            .filter(instance -> selfId == null || !Objects.equals(instance.getInstanceId(), selfId))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public void onReceive(Consumer<CacheInvalidationDTO> receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Hand evictions sent by another node to the receiver.
+     *
+     * @param invalidation the evictions.
+     */
+    public void receive(CacheInvalidationDTO invalidation) {
+        receiver.accept(invalidation);
+    }
+}
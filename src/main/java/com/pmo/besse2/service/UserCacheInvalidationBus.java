@@ -0,0 +1,170 @@
+package com.pmo.besse2.service;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.domain.User;
+import com.pmo.besse2.repository.UserLookupCache;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.service.dto.CacheInvalidationDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Service class evicting the changed users from the lookup caches of all the nodes of the cluster.
+ * <p>
+ * A user is evicted from the local caches at once, and its keys are sent to the other nodes by a single background
+ * pipeline, through the {@link CacheInvalidationTransport}: the keys are batched for up to {@code batch-window}, or until
+ * {@code max-batch-size} keys are waiting. The evictions which can't be delivered are not retried, the entries then expire
+ * with the time to live of the caches. The {@link UserLookupCache} stamps each eviction with a version, so a lookup in
+ * flight on a node when an eviction arrives doesn't put the stale user back, even when the eviction arrives late.
+ */
+@Service
+public class UserCacheInvalidationBus implements DisposableBean {
+
+    public static final String EVICTIONS_METER_NAME = "user.cache.invalidation.evictions";
+    public static final String EVICTIONS_METER_DESCRIPTION = "Indicates the user cache evictions exchanged with the other nodes.";
+
+    private static final Set<String> CACHE_NAMES = Set.of(UserRepository.USERS_BY_LOGIN_CACHE, UserRepository.USERS_BY_EMAIL_CACHE);
+
+    private final Logger log = LoggerFactory.getLogger(UserCacheInvalidationBus.class);
+
+    private final UserLookupCache userLookupCache;
+
+    private final CacheInvalidationTransport transport;
+
+    private final ApplicationProperties.CacheInvalidation properties;
+
+    /**
+     * The id of this node, to ignore its own evictions if the transport sends them back.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Sinks.Many<Eviction> evictions = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    private final Counter sentCounter;
+
+    private final Counter failedCounter;
+
+    private final Counter receivedCounter;
+
+    public UserCacheInvalidationBus(
+        UserLookupCache userLookupCache,
+        CacheInvalidationTransport transport,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.userLookupCache = userLookupCache;
+        this.transport = transport;
+        this.properties = applicationProperties.getCacheInvalidation();
+        this.sentCounter = evictionsCounter(meterRegistry, "sent");
+        this.failedCounter = evictionsCounter(meterRegistry, "failed");
+        this.receivedCounter = evictionsCounter(meterRegistry, "received");
+        transport.onReceive(this::receive);
+    }
+
+    private static Counter evictionsCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(EVICTIONS_METER_NAME).description(EVICTIONS_METER_DESCRIPTION).tag("result", result).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscriptions.add(
+            evictions
+                .asFlux()
+                .bufferTimeout(properties.getMaxBatchSize(), properties.getBatchWindow())
+                .concatMap(batch ->
+                    transport
+                        .send(new CacheInvalidationDTO(nodeId, byCacheName(batch)))
+                        .doOnSuccess(done -> sentCounter.increment(batch.size()))
+                        .onErrorResume(e -> {
+                            log.warn("Could not send {} user cache evictions to the other nodes: {}", batch.size(), e.getMessage());
+                            failedCounter.increment(batch.size());
+                            return Mono.empty();
+                        })
+                )
+                .subscribe()
+        );
+    }
+
+    @Override
+    public void destroy() {
+        subscriptions.dispose();
+    }
+
+    /**
+     * Evict the given user from the lookup caches of this node, and then of the other ones.
+     *
+     * @param user the user to evict.
+     */
+    public void evict(User user) {
+        userLookupCache.evict(user);
+        emit(new Eviction(UserRepository.USERS_BY_LOGIN_CACHE, user.getLogin()));
+        if (user.getEmail() != null) {
+            emit(new Eviction(UserRepository.USERS_BY_EMAIL_CACHE, user.getEmail()));
+        }
+    }
+
+    private void emit(Eviction eviction) {
+        synchronized (evictions) {
+            evictions.tryEmitNext(eviction);
+        }
+    }
+
+    private static Map<String, List<String>> byCacheName(List<Eviction> batch) {
+        Map<String, List<String>> keys = new LinkedHashMap<>();
+        for (Eviction eviction : batch) {
+            keys.computeIfAbsent(eviction.cacheName, cacheName -> new ArrayList<>()).add(eviction.key);
+        }
+        return keys;
+    }
+
+    /**
+     * Apply the evictions sent by another node.
+     *
+     * @param invalidation the evictions.
+     */
+    void receive(CacheInvalidationDTO invalidation) {
+        if (nodeId.equals(invalidation.getOrigin()) || invalidation.getKeys() == null) {
+            return;
+        }
+        invalidation
+            .getKeys()
+            .forEach((cacheName, keys) -> {
+                if (!CACHE_NAMES.contains(cacheName)) {
+                    log.debug("Ignoring the evictions of unknown cache {}", cacheName);
+                    return;
+                }
+                keys.forEach(key -> userLookupCache.evict(cacheName, key));
+                receivedCounter.increment(keys.size());
+            });
+    }
+
+    private static final class Eviction {
+
+        private final String cacheName;
+
+        private final String key;
+
+        Eviction(String cacheName, String key) {
+            this.cacheName = cacheName;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.pmo.besse2.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.config.Constants;
+import com.pmo.besse2.domain.Authority;
+import com.pmo.besse2.domain.User;
+import com.pmo.besse2.repository.AuthorityRepository;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.security.PasswordHashingScheduler;
+import com.pmo.besse2.security.SecurityUtils;
+import com.pmo.besse2.service.dto.AdminUserDTO;
+import com.pmo.besse2.service.dto.UserImportResultDTO;
+import com.pmo.besse2.service.dto.UserImportResultDTO.Status;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+import tech.jhipster.security.RandomUtil;
+
+/**
+ * Service class for importing users in bulk.
+ * <p>
+ * The rows are handled in chunks: each chunk is validated, checked for login and email uniqueness with one query per
+ * column, and inserted with multi-row statements in its own transaction, along with the outbox entries of the
+ * {@link UserIndexingService} which indexes them in bulk. The outcome of every row is streamed back as soon as its
+ * chunk is done.
+ * <p>
+ * Like the users created by an administrator, imported users are activated, unless their {@code activated} column or
+ * field is false, and get a reset key; as nobody knows their generated password, a single password is generated and
+ * hashed per chunk instead of one per user.
+ */
+@Service
+public class UserImportService {
+
+    public enum Format {
+        NDJSON,
+        CSV,
+    }
+
+    /**
+     * Separator of the authorities in the {@code authorities} column of a CSV import.
+     */
+    public static final String CSV_AUTHORITIES_SEPARATOR = "|";
+
+    private final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private final UserRepository userRepository;
+
+    private final AuthorityRepository authorityRepository;
+
+    private final UserIndexingService userIndexingService;
+
+    private final PasswordHashingScheduler passwordHashingScheduler;
+
+    private final MailService mailService;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final Validator validator;
+
+    private final ObjectMapper objectMapper;
+
+    private final int chunkSize;
+
+    public UserImportService(
+        UserRepository userRepository,
+        AuthorityRepository authorityRepository,
+        UserIndexingService userIndexingService,
+        PasswordHashingScheduler passwordHashingScheduler,
+        MailService mailService,
+        TransactionalOperator transactionalOperator,
+        Validator validator,
+        ObjectMapper objectMapper,
+        ApplicationProperties applicationProperties
+    ) {
+        this.userRepository = userRepository;
+        this.authorityRepository = authorityRepository;
+        this.userIndexingService = userIndexingService;
+        this.passwordHashingScheduler = passwordHashingScheduler;
+        this.mailService = mailService;
+        this.transactionalOperator = transactionalOperator;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.chunkSize = applicationProperties.getUserImport().getChunkSize();
+    }
+
+    /**
+     * Import the users read from the given lines.
+     *
+     * @param lines the lines of the uploaded file: one JSON user per line, or a CSV header followed by one user per line.
+     * @param format the format of the lines.
+     * @param sendCreationEmail whether to send the creation email, with the password reset link, to the created users.
+     * @return the outcome of each non blank line, in the order of the lines.
+     */
+    public Flux<UserImportResultDTO> importUsers(Flux<String> lines, Format format, boolean sendCreationEmail) {
+        return Mono
+            .zip(
+                authorityRepository.findAll().map(Authority::getName).collect(Collectors.toSet()),
+                SecurityUtils.getCurrentUserLogin().switchIfEmpty(Mono.just(Constants.SYSTEM))
+            )
+            .flatMapMany(authoritiesAndLogin -> {
+                ImportContext context = new ImportContext(authoritiesAndLogin.getT1(), authoritiesAndLogin.getT2(), sendCreationEmail);
+                return parse(lines, format).buffer(chunkSize).concatMap(chunk -> importChunk(chunk, context));
+            });
+    }
+
+    private Flux<ImportRow> parse(Flux<String> lines, Format format) {
+        Flux<Tuple2<Long, String>> numberedLines = lines.index((index, line) -> Tuples.of(index + 1, line));
+        Flux<Tuple2<Long, String>> nonBlankLines = numberedLines.filter(line -> StringUtils.hasText(line.getT2()));
+        if (format == Format.NDJSON) {
+            return nonBlankLines.map(line -> parseJson(line.getT1(), line.getT2()));
+        }
+        return nonBlankLines.switchOnFirst((first, rows) -> {
+            if (!first.hasValue()) {
+                return Flux.empty();
+            }
+            List<String> header = CsvLineParser.parse(first.get().getT2());
+            return rows.skip(1).map(line -> parseCsv(header, line.getT1(), line.getT2()));
+        });
+    }
+
+    private ImportRow parseJson(long line, String json) {
+        try {
+            return new ImportRow(line, objectMapper.readerForUpdating(newUser()).readValue(json), null);
+        } catch (JsonProcessingException e) {
+            return new ImportRow(line, null, "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * A user to read from a row, activated unless the row says otherwise.
+     */
+    private static AdminUserDTO newUser() {
+        AdminUserDTO user = new AdminUserDTO();
+        user.setActivated(true);
+        return user;
+    }
+
+    private ImportRow parseCsv(List<String> header, long line, String csv) {
+        List<String> values;
+        try {
+            values = CsvLineParser.parse(csv);
+        } catch (IllegalArgumentException e) {
+            return new ImportRow(line, null, e.getMessage());
+        }
+        if (values.size() != header.size()) {
+            return new ImportRow(line, null, "Expected " + header.size() + " columns but found " + values.size());
+        }
+        AdminUserDTO user = newUser();
+        for (int i = 0; i < header.size(); i++) {
+            String value = StringUtils.hasText(values.get(i)) ? values.get(i).trim() : null;
+            switch (header.get(i).trim()) {
+                case "login":
+                    user.setLogin(value);
+                    break;
+                case "firstName":
+                    user.setFirstName(value);
+                    break;
+                case "lastName":
+                    user.setLastName(value);
+                    break;
+                case "email":
+                    user.setEmail(value);
+                    break;
+                case "imageUrl":
+                    user.setImageUrl(value);
+                    break;
+                case "langKey":
+                    user.setLangKey(value);
+                    break;
+                case "activated":
+                    if (value != null) {
+                        user.setActivated(Boolean.parseBoolean(value));
+                    }
+                    break;
+                case "authorities":
+                    user.setAuthorities(
+                        value == null
+                            ? new HashSet<>()
+                            : Arrays
+                                .stream(StringUtils.delimitedListToStringArray(value, CSV_AUTHORITIES_SEPARATOR))
+                                .map(String::trim)
+                                .filter(StringUtils::hasText)
+                                .collect(Collectors.toSet())
+                    );
+                    break;
+                default:
+                    // Unknown columns are ignored
+                    break;
+            }
+        }
+        return new ImportRow(line, user, null);
+    }
+
+    private Flux<UserImportResultDTO> importChunk(List<ImportRow> rows, ImportContext context) {
+        UserImportResultDTO[] results = new UserImportResultDTO[rows.size()];
+        Map<Integer, ImportRow> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            String error = validate(row, context);
+            if (error != null) {
+                results[i] = result(row, Status.INVALID, null, error);
+            } else if (!context.seenLogins.add(row.login())) {
+                results[i] = result(row, Status.LOGIN_ALREADY_USED, null, "Login already used by a previous row");
+            } else if (row.email() != null && !context.seenEmails.add(row.email())) {
+                results[i] = result(row, Status.EMAIL_ALREADY_USED, null, "Email already used by a previous row");
+            } else {
+                candidates.put(i, row);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+
+        Set<String> logins = candidates.values().stream().map(ImportRow::login).collect(Collectors.toSet());
+        Set<String> emails = candidates.values().stream().map(ImportRow::email).filter(Objects::nonNull).collect(Collectors.toSet());
+        return Mono
+            .zip(
+                userRepository.findExistingLogins(logins).collect(Collectors.toSet()),
+                userRepository.findExistingEmails(emails).collect(Collectors.toSet())
+            )
+            .flatMapMany(existing -> {
+                Map<Integer, ImportRow> newRows = new LinkedHashMap<>();
+                candidates.forEach((i, row) -> {
+                    if (existing.getT1().contains(row.login())) {
+                        results[i] = result(row, Status.LOGIN_ALREADY_USED, null, "Login name already used!");
+                    } else if (row.email() != null && existing.getT2().contains(row.email())) {
+                        results[i] = result(row, Status.EMAIL_ALREADY_USED, null, "Email is already in use!");
+                    } else {
+                        newRows.put(i, row);
+                    }
+                });
+                return insert(newRows, results, context);
+            });
+    }
+
+    private Flux<UserImportResultDTO> insert(Map<Integer, ImportRow> newRows, UserImportResultDTO[] results, ImportContext context) {
+        if (newRows.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+        return passwordHashingScheduler
+            .encode(RandomUtil.generatePassword())
+            .map(encryptedPassword ->
+                newRows.values().stream().map(row -> toUser(row, encryptedPassword, context.login)).collect(Collectors.toList())
+            )
+            .flatMap(users ->
+                userRepository
+                    .insertAll(users)
+                    .collectList()
+                    .flatMap(inserted ->
+                        userIndexingService.enqueue(inserted.stream().map(User::getId).collect(Collectors.toList())).thenReturn(inserted)
+                    )
+                    .as(transactionalOperator::transactional)
+            )
+            .doOnNext(users -> {
+                Iterator<Integer> indexes = newRows.keySet().iterator();
+                for (User user : users) {
+                    int i = indexes.next();
+                    results[i] = result(newRows.get(i), Status.CREATED, user.getId(), null);
+                    if (context.sendCreationEmail) {
+                        mailService.sendCreationEmail(user);
+                    }
+                }
+                log.debug("Imported {} users", users.size());
+            })
+            .onErrorResume(e -> {
+                log.warn("Could not import a chunk of {} users: {}", newRows.size(), e.getMessage());
+                newRows.forEach((i, row) -> results[i] = result(row, Status.FAILED, null, e.getMessage()));
+                return Mono.empty();
+            })
+            .thenMany(Flux.defer(() -> Flux.fromArray(results)));
+    }
+
+    private String validate(ImportRow row, ImportContext context) {
+        if (row.error != null) {
+            return row.error;
+        }
+        if (row.user.getId() != null) {
+            return "A new user cannot already have an ID";
+        }
+        Set<ConstraintViolation<AdminUserDTO>> violations = validator.validate(row.user);
+        if (!violations.isEmpty()) {
+            return violations
+                .stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+        }
+        if (row.user.getAuthorities() != null) {
+            for (String authority : row.user.getAuthorities()) {
+                if (!context.authorities.contains(authority)) {
+                    return "Unknown authority: " + authority;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static User toUser(ImportRow row, String encryptedPassword, String currentLogin) {
+        AdminUserDTO userDTO = row.user;
+        User user = new User();
+        user.setLogin(row.login());
+        user.setPassword(encryptedPassword);
+        user.setFirstName(userDTO.getFirstName());
+        user.setLastName(userDTO.getLastName());
+        user.setEmail(row.email());
+        user.setImageUrl(userDTO.getImageUrl());
+        user.setLangKey(userDTO.getLangKey() == null ? Constants.DEFAULT_LANGUAGE : userDTO.getLangKey());
+        user.setActivated(userDTO.isActivated());
+        user.setResetKey(RandomUtil.generateResetKey());
+        user.setResetDate(Instant.now());
+        user.setCreatedBy(currentLogin);
+        user.setCreatedDate(Instant.now());
+        user.setLastModifiedBy(currentLogin);
+        user.setLastModifiedDate(Instant.now());
+        if (userDTO.getAuthorities() != null) {
+            for (String name : userDTO.getAuthorities()) {
+                Authority authority = new Authority();
+                authority.setName(name);
+                user.getAuthorities().add(authority);
+            }
+        }
+        return user;
+    }
+
+    private static UserImportResultDTO result(ImportRow row, Status status, Long id, String message) {
+        return new UserImportResultDTO(row.line, row.user != null ? row.login() : null, status, id, message);
+    }
+
+    private static class ImportRow {
+
+        private final long line;
+
+        private final AdminUserDTO user;
+
+        private final String error;
+
+        ImportRow(long line, AdminUserDTO user, String error) {
+            this.line = line;
+            this.user = user;
+            this.error = error;
+        }
+
+        String login() {
+            return user.getLogin() == null ? null : user.getLogin().toLowerCase();
+        }
+
+        String email() {
+            return user.getEmail() == null ? null : user.getEmail().toLowerCase();
+        }
+    }
+
+    /**
+     * State shared by the chunks of one import: rows are checked against the previous rows of the same file, which are
+     * not necessarily committed yet.
+     */
+    private static class ImportContext {
+
+        private final Set<String> authorities;
+
+        private final String login;
+
+        private final boolean sendCreationEmail;
+
+        private final Set<String> seenLogins = new HashSet<>();
+
+        private final Set<String> seenEmails = new HashSet<>();
+
+        ImportContext(Set<String> authorities, String login, boolean sendCreationEmail) {
+            this.authorities = authorities;
+            this.login = login;
+            this.sendCreationEmail = sendCreationEmail;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.pmo.besse2.service;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.domain.User;
+import com.pmo.besse2.domain.UserIndexEvent;
+import com.pmo.besse2.repository.UserIndexEventRepository;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.repository.search.UserSearchRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Service class keeping the {@code user} search index in sync with the database, out of the requests.
+ * <p>
+ * The users to index are written to an outbox table, in the transaction which changes them, so a change can't be lost
+ * even if the node dies before indexing it. The outbox is drained by a single background pipeline on each node, every
+ * {@code flush-interval} or as soon as {@code batch-size} changes are waiting: the entries are claimed with a lease, so
+ * the nodes don't index the same ones, the changes to the same user are coalesced, the current state of the users is
+ * indexed (or deleted, for users which no longer exist) with bulk requests, retried with backoff, and the drained entries
+ * are then removed from the outbox. The documents are versioned with the id of the last entry of their user, so a node
+ * which indexed an older state late can't overwrite a newer one. The entries which still fail are retried once their
+ * lease is over, until they have been claimed {@code max-attempts} times.
+ */
+@Service
+public class UserIndexingService implements DisposableBean {
+
+    public static final String QUEUE_METER_NAME = "user.indexing.queue";
+    public static final String QUEUE_METER_DESCRIPTION = "Indicates the number of user changes waiting to be indexed.";
+    public static final String LAG_METER_NAME = "user.indexing.lag";
+    public static final String LAG_METER_DESCRIPTION = "Indicates the time between a user change and its indexing.";
+    public static final String DOCUMENTS_METER_NAME = "user.indexing.documents";
+    public static final String DOCUMENTS_METER_DESCRIPTION = "Indicates the user documents indexed or deleted, by operation.";
+    public static final String FAILURES_METER_NAME = "user.indexing.failures";
+    public static final String FAILURES_METER_DESCRIPTION = "Indicates the flushes which failed after all their retries.";
+
+    private final Logger log = LoggerFactory.getLogger(UserIndexingService.class);
+
+    private final UserIndexEventRepository userIndexEventRepository;
+
+    private final UserRepository userRepository;
+
+    private final UserSearchRepository userSearchRepository;
+
+    private final ApplicationProperties.UserIndexing properties;
+
+    /**
+     * The flush requests, handled one after the other; each one is completed once the outbox has been drained.
+     */
+    private final Sinks.Many<Sinks.Empty<Void>> flushRequests = Sinks.many().unicast().onBackpressureBuffer();
+
+    /**
+     * Whether a flush request which isn't explicit is already waiting, so that ticks don't pile up behind a slow flush.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final AtomicLong enqueuedSinceFlush = new AtomicLong();
+
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    private final Timer lagTimer;
+
+    private final Counter indexedCounter;
+
+    private final Counter deletedCounter;
+
+    private final Counter failuresCounter;
+
+    public UserIndexingService(
+        UserIndexEventRepository userIndexEventRepository,
+        UserRepository userRepository,
+        UserSearchRepository userSearchRepository,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.userIndexEventRepository = userIndexEventRepository;
+        this.userRepository = userRepository;
+        this.userSearchRepository = userSearchRepository;
+        this.properties = applicationProperties.getUserIndexing();
+        Gauge.builder(QUEUE_METER_NAME, queueDepth, AtomicLong::get).description(QUEUE_METER_DESCRIPTION).register(meterRegistry);
+        this.lagTimer = Timer.builder(LAG_METER_NAME).description(LAG_METER_DESCRIPTION).register(meterRegistry);
+        this.indexedCounter = documentsCounter(meterRegistry, "index");
+        this.deletedCounter = documentsCounter(meterRegistry, "delete");
+        this.failuresCounter = Counter.builder(FAILURES_METER_NAME).description(FAILURES_METER_DESCRIPTION).register(meterRegistry);
+    }
+
+    private static Counter documentsCounter(MeterRegistry meterRegistry, String operation) {
+        return Counter
+            .builder(DOCUMENTS_METER_NAME)
+            .description(DOCUMENTS_METER_DESCRIPTION)
+            .tag("operation", operation)
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscriptions.add(flushRequests.asFlux().concatMap(request -> drain().doFinally(signal -> request.tryEmitEmpty())).subscribe());
+        subscriptions.add(Flux.interval(properties.getFlushInterval()).subscribe(tick -> scheduleFlush()));
+    }
+
+    @Override
+    public void destroy() {
+        subscriptions.dispose();
+    }
+
+    /**
+     * Record that the given user changed. This must be called in the transaction which changes the user.
+     *
+     * @param userId the id of the changed user.
+     * @return a completed {@link Mono} once the change is recorded.
+     */
+    public Mono<Void> enqueue(Long userId) {
+        return enqueue(Collections.singleton(userId));
+    }
+
+    /**
+     * Record that the given users changed. This must be called in the transaction which changes the users.
+     *
+     * @param userIds the ids of the changed users.
+     * @return a completed {@link Mono} once the changes are recorded.
+     */
+    public Mono<Void> enqueue(Collection<Long> userIds) {
+        return userIndexEventRepository
+            .insertAll(userIds, Instant.now())
+            .doOnSuccess(done -> {
+                if (enqueuedSinceFlush.addAndGet(userIds.size()) >= properties.getBatchSize()) {
+                    scheduleFlush();
+                }
+            });
+    }
+
+    /**
+     * Index the pending user changes now.
+     *
+     * @return a completed {@link Mono} once the changes committed before the call are indexed, or have failed to, unless
+     * they are claimed by another node.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> done = Sinks.empty();
+            emit(done);
+            return done.asMono();
+        });
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            Sinks.Empty<Void> done = Sinks.empty();
+            emit(done);
+        }
+    }
+
+    private void emit(Sinks.Empty<Void> request) {
+        synchronized (flushRequests) {
+            flushRequests.tryEmitNext(request);
+        }
+    }
+
+    private Mono<Void> drain() {
+        return Mono
+            .defer(() -> {
+                flushScheduled.set(false);
+                enqueuedSinceFlush.set(0);
+                return flushBatch().expand(flushed -> flushed >= properties.getBatchSize() ? flushBatch() : Mono.empty()).then();
+            })
+            .onErrorResume(e -> {
+                failuresCounter.increment();
+                log.warn("Could not index the changed users, they will be retried once their lease is over: {}", e.getMessage());
+                return Mono.empty();
+            })
+            .then(
+                userIndexEventRepository
+                    .countByStatus(UserIndexEvent.STATUS_PENDING)
+                    .doOnNext(queueDepth::set)
+                    .onErrorResume(e -> Mono.empty())
+            )
+            .then();
+    }
+
+    /**
+     * Claim the oldest entries of the outbox, index their users, and remove these entries.
+     *
+     * @return the number of claimed entries.
+     */
+    private Mono<Integer> flushBatch() {
+        String claimToken = UUID.randomUUID().toString();
+        return userIndexEventRepository
+            .claim(claimToken, properties.getBatchSize(), Instant.now(), properties.getLeaseTime())
+            .flatMap(claimed ->
+                claimed == 0
+                    ? Mono.just(0)
+                    : userIndexEventRepository
+                        .findAllByClaimToken(claimToken)
+                        .collectList()
+                        .flatMap(events -> flushClaimed(claimToken, events))
+                        .thenReturn(claimed)
+            );
+    }
+
+    /**
+     * Index the users of the claimed entries, with the id of their last entry as version, and remove the entries of the
+     * indexed users. The other entries stay claimed until their lease is over, to be retried, unless they have been
+     * claimed too many times.
+     */
+    private Mono<Void> flushClaimed(String claimToken, List<UserIndexEvent> events) {
+        Map<Long, Long> versions = events.stream().collect(Collectors.toMap(UserIndexEvent::getUserId, UserIndexEvent::getId, Math::max));
+        return index(versions)
+            .retryWhen(Retry.backoff(properties.getMaxRetries(), properties.getRetryBackoff()))
+            .flatMap(failedUserIds -> {
+                List<UserIndexEvent> indexed = events
+                    .stream()
+                    .filter(event -> !failedUserIds.contains(event.getUserId()))
+                    .collect(Collectors.toList());
+                Mono<Void> delete = indexed.isEmpty()
+                    ? Mono.empty()
+                    : userIndexEventRepository
+                        .deleteClaimed(claimToken, indexed.stream().map(UserIndexEvent::getId).collect(Collectors.toList()))
+                        .doOnSuccess(done -> {
+                            Instant now = Instant.now();
+                            indexed.forEach(event -> lagTimer.record(Duration.between(event.getCreatedDate(), now)));
+                            log.debug("Indexed {} changes of {} users", indexed.size(), versions.size() - failedUserIds.size());
+                        });
+                if (failedUserIds.isEmpty()) {
+                    return delete;
+                }
+                return delete.then(Mono.fromRunnable(failuresCounter::increment)).then(giveUpClaimed(claimToken));
+            })
+            .onErrorResume(e -> giveUpClaimed(claimToken).then(Mono.error(e)));
+    }
+
+    private Mono<Void> giveUpClaimed(String claimToken) {
+        return userIndexEventRepository
+            .failClaimed(claimToken, properties.getMaxAttempts())
+            .doOnNext(failed -> {
+                if (failed > 0) {
+                    log.warn("Gave up indexing {} user changes after {} attempts", failed, properties.getMaxAttempts());
+                }
+            })
+            .then();
+    }
+
+    /**
+     * Index the current state of the given users, or delete them if they no longer exist, in the current index and in the
+     * index being rebuilt by the {@link UserReindexService}, if any.
+     *
+     * @param versions the version of the document of each user id.
+     * @return the ids of the users which could not be indexed.
+     */
+    private Mono<Set<Long>> index(Map<Long, Long> versions) {
+        return userRepository
+            .findAllWithAuthoritiesByIdIn(versions.keySet())
+            .collectList()
+            .flatMap(users -> {
+                Set<Long> deletedUserIds = new HashSet<>(versions.keySet());
+                users.stream().map(User::getId).forEach(deletedUserIds::remove);
+                Mono<Set<Long>> write = userSearchRepository.writeAll(users, deletedUserIds, versions::get);
+                Flux<Set<Long>> reindexWrites = userSearchRepository
+                    .findReindexTargets()
+                    .flatMapMany(Flux::fromIterable)
+                    .concatMap(targetIndex -> userSearchRepository.writeAll(users, deletedUserIds, versions::get, targetIndex));
+                return Flux
+                    .concat(write, reindexWrites)
+                    .reduce(UserIndexingService::union)
+                    .doOnNext(failedUserIds -> {
+                        indexedCounter.increment(users.stream().filter(user -> !failedUserIds.contains(user.getId())).count());
+                        deletedCounter.increment(deletedUserIds.stream().filter(id -> !failedUserIds.contains(id)).count());
+                    });
+            });
+    }
+
+    private static Set<Long> union(Set<Long> first, Set<Long> second) {
+        Set<Long> union = new HashSet<>(first);
+        union.addAll(second);
+        return union;
+    }
+}
@@ -0,0 +1,328 @@
+package com.pmo.besse2.service;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.repository.search.UserSearchRepository;
+import com.pmo.besse2.service.dto.UserReindexStatusDTO;
+import com.pmo.besse2.service.dto.UserReindexStatusDTO.Status;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Service class rebuilding the {@code user} search index from the database.
+ * <p>
+ * The users are copied into a new, versioned index: their ids are split in ranges ("slices") read in parallel, each one
+ * streamed with keyset pagination and written with bulk requests, optionally throttled. The new index is the target of
+ * the {@code user-reindex} alias, so the {@link UserIndexingService} of every node writes the changes to it as well while
+ * the copy goes on. The copied documents have the version {@code 0}, below the one of any change, so they never
+ * overwrite a change, nor resurrect a deleted user. Once all the users are copied, the {@code user} alias is atomically
+ * moved to the new index, and the previous index is deleted.
+ * <p>
+ * A cancelled or failed reindex can be resumed: each slice restarts after the last user it indexed. A reindex which
+ * didn't complete on another node, or before a restart, is found through its alias and resumed from the start.
+ */
+@Service
+public class UserReindexService {
+
+    private static final String INDEX_PREFIX = "user-";
+
+    private static final DateTimeFormatter INDEX_VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS").withZone(ZoneOffset.UTC);
+
+    private final Logger log = LoggerFactory.getLogger(UserReindexService.class);
+
+    private final UserRepository userRepository;
+
+    private final UserSearchRepository userSearchRepository;
+
+    private final ApplicationProperties.UserReindex properties;
+
+    private volatile int maxDocumentsPerSecond;
+
+    private Job job;
+
+    public UserReindexService(
+        UserRepository userRepository,
+        UserSearchRepository userSearchRepository,
+        ApplicationProperties applicationProperties
+    ) {
+        this.userRepository = userRepository;
+        this.userSearchRepository = userSearchRepository;
+        this.properties = applicationProperties.getUserReindex();
+        this.maxDocumentsPerSecond = properties.getMaxDocumentsPerSecond();
+    }
+
+    /**
+     * Start reindexing the users into a new index, or into the index of a reindex which didn't complete.
+     *
+     * @return the status of the reindex.
+     * @throws IllegalStateException if a reindex is already running.
+     */
+    public synchronized UserReindexStatusDTO start() {
+        checkNotRunning();
+        job = new Job(true);
+        run(job);
+        return getStatus();
+    }
+
+    /**
+     * Resume the last reindex, which was cancelled or has failed, on this node or another one.
+     *
+     * @return the status of the reindex, which fails if there is no reindex to resume on any node.
+     * @throws IllegalStateException if a reindex is running, or if the last reindex of this node has completed.
+     */
+    public synchronized UserReindexStatusDTO resume() {
+        checkNotRunning();
+        if (job != null && job.status == Status.COMPLETED) {
+            throw new IllegalStateException("There is no reindex to resume");
+        }
+        if (job == null) {
+            job = new Job(false);
+        }
+        run(job);
+        return getStatus();
+    }
+
+    /**
+     * Cancel the running reindex, which can be resumed later.
+     *
+     * @return the status of the reindex.
+     */
+    public synchronized UserReindexStatusDTO cancel() {
+        if (job != null && job.status == Status.RUNNING) {
+            job.subscription.dispose();
+            finish(job, Status.CANCELLED, null);
+        }
+        return getStatus();
+    }
+
+    /**
+     * Change the throttle of the reindex, including the running one.
+     *
+     * @param maxDocumentsPerSecond the maximum number of users indexed per second, or {@code 0} for no limit.
+     */
+    public void setMaxDocumentsPerSecond(int maxDocumentsPerSecond) {
+        this.maxDocumentsPerSecond = Math.max(0, maxDocumentsPerSecond);
+    }
+
+    public synchronized UserReindexStatusDTO getStatus() {
+        UserReindexStatusDTO status = new UserReindexStatusDTO();
+        status.setMaxDocumentsPerSecond(maxDocumentsPerSecond);
+        if (job == null) {
+            status.setStatus(Status.IDLE);
+            return status;
+        }
+        status.setStatus(job.status);
+        status.setTargetIndex(job.targetIndex);
+        status.setTotalUsers(job.totalUsers);
+        status.setIndexedUsers(job.indexedUsers.get());
+        status.setStartedDate(job.startedDate);
+        status.setFinishedDate(job.finishedDate);
+        status.setError(job.error);
+        if (job.slices != null) {
+            status.setSlices(
+                job.slices
+                    .stream()
+                    .map(slice -> new UserReindexStatusDTO.SliceDTO(slice.checkpointId, slice.lastId))
+                    .collect(Collectors.toList())
+            );
+        }
+        return status;
+    }
+
+    private void checkNotRunning() {
+        if (job != null && job.status == Status.RUNNING) {
+            throw new IllegalStateException("A reindex is already running");
+        }
+    }
+
+    private void run(Job job) {
+        job.status = Status.RUNNING;
+        job.startedDate = Instant.now();
+        job.finishedDate = null;
+        job.error = null;
+        job.subscription =
+            prepare(job)
+                .thenMany(
+                    Flux
+                        .defer(() -> Flux.fromIterable(job.slices))
+                        .flatMap(slice -> reindexSlice(job, slice), Math.max(1, properties.getSlices()))
+                )
+                .then(Mono.defer(() -> userSearchRepository.moveAlias(job.targetIndex)))
+                .flatMapMany(previousIndices -> Flux.fromIterable(previousIndices))
+                .filter(previousIndex -> !previousIndex.equals(job.targetIndex))
+                .concatMap(userSearchRepository::deleteIndex)
+                .subscribe(
+                    null,
+                    error -> {
+                        log.error("Could not reindex the users into {}", job.targetIndex, error);
+                        finish(job, Status.FAILED, error.getMessage());
+                    },
+                    () -> {
+                        finish(job, Status.COMPLETED, null);
+                        log.info("Reindexed {} users into {}", job.indexedUsers.get(), job.targetIndex);
+                    }
+                );
+    }
+
+    private synchronized void finish(Job job, Status status, String error) {
+        if (job.status == Status.RUNNING) {
+            job.status = status;
+            job.error = error;
+            job.finishedDate = Instant.now();
+        }
+    }
+
+    /**
+     * Find or name the target index, create it unless it exists, point the {@code user-reindex} alias to it, and split the
+     * ids of the users in slices, unless this is a resumed reindex of this node. Each step can be repeated.
+     */
+    private Mono<Void> prepare(Job job) {
+        return findTargetIndex(job)
+            .flatMap(targetIndex -> {
+                job.targetIndex = targetIndex;
+                log.info("Reindexing the users into {}", targetIndex);
+                return userSearchRepository
+                    .indexExists(targetIndex)
+                    .flatMap(exists -> Boolean.TRUE.equals(exists) ? Mono.<Void>empty() : userSearchRepository.createIndex(targetIndex))
+                    .then(userSearchRepository.addReindexTarget(targetIndex));
+            })
+            .then(Mono.defer(() -> job.slices != null ? Mono.<Void>empty() : split(job)));
+    }
+
+    private Mono<String> findTargetIndex(Job job) {
+        if (job.targetIndex != null) {
+            return Mono.just(job.targetIndex);
+        }
+        return userSearchRepository
+            .findReindexTargets()
+            .flatMap(targetIndices -> {
+                if (!targetIndices.isEmpty()) {
+                    return Mono.just(targetIndices.iterator().next());
+                }
+                if (!job.newIndex) {
+                    return Mono.error(new IllegalStateException("There is no reindex to resume"));
+                }
+                return Mono.just(INDEX_PREFIX + INDEX_VERSION_FORMAT.format(Instant.now()));
+            });
+    }
+
+    private Mono<Void> split(Job job) {
+        return Mono
+            .zip(userRepository.findMaxId(), userRepository.count())
+            .doOnNext(maxIdAndCount -> {
+                long maxId = maxIdAndCount.getT1();
+                int sliceCount = Math.max(1, properties.getSlices());
+                long sliceSize = maxId / sliceCount + 1;
+                List<Slice> slices = new ArrayList<>();
+                for (long afterId = 0; afterId < maxId; afterId += sliceSize) {
+                    slices.add(new Slice(afterId, Math.min(afterId + sliceSize, maxId)));
+                }
+                job.slices = slices;
+                job.totalUsers = maxIdAndCount.getT2();
+            })
+            .then();
+    }
+
+    private Mono<Void> reindexSlice(Job job, Slice slice) {
+        return reindexChunk(job, slice)
+            .expand(indexed -> indexed < properties.getChunkSize() ? Mono.empty() : reindexChunk(job, slice))
+            .then();
+    }
+
+    /**
+     * Index the next users of the slice, then wait as long as needed to respect the throttle.
+     *
+     * @return the number of indexed users.
+     */
+    private Mono<Integer> reindexChunk(Job job, Slice slice) {
+        long start = System.nanoTime();
+        return userRepository
+            .findAllWithAuthoritiesInIdRange(slice.checkpointId, slice.lastId, properties.getChunkSize())
+            .collectList()
+            .flatMap(users -> {
+                if (users.isEmpty()) {
+                    return Mono.just(0);
+                }
+                return userSearchRepository
+                    .writeAll(users, List.of(), id -> 0L, job.targetIndex)
+                    .flatMap(failedIds ->
+                        failedIds.isEmpty() ? Mono.empty() : Mono.error(new IllegalStateException("Could not index the users " + failedIds))
+                    )
+                    .retryWhen(Retry.backoff(3, Duration.ofSeconds(1)))
+                    .then(
+                        Mono.fromCallable(() -> {
+                            slice.checkpointId = users.get(users.size() - 1).getId();
+                            job.indexedUsers.addAndGet(users.size());
+                            return users.size();
+                        })
+                    );
+            })
+            .delayUntil(indexed -> throttle(indexed, Duration.ofNanos(System.nanoTime() - start)));
+    }
+
+    private Mono<Long> throttle(int indexed, Duration elapsed) {
+        int limit = maxDocumentsPerSecond;
+        if (limit <= 0 || indexed == 0) {
+            return Mono.empty();
+        }
+        // The limit is shared between the slices running in parallel
+        Duration minimum = Duration.ofMillis(1000L * indexed * Math.max(1, properties.getSlices()) / limit);
+        Duration delay = minimum.minus(elapsed);
+        return delay.isNegative() ? Mono.empty() : Mono.delay(delay);
+    }
+
+    private static class Job {
+
+        /**
+         * Whether the reindex may start into a new index, when there is no reindex to resume.
+         */
+        private final boolean newIndex;
+
+        private volatile String targetIndex;
+
+        private final AtomicLong indexedUsers = new AtomicLong();
+
+        private volatile Status status;
+
+        private volatile List<Slice> slices;
+
+        private volatile long totalUsers;
+
+        private volatile Instant startedDate;
+
+        private volatile Instant finishedDate;
+
+        private volatile String error;
+
+        private volatile Disposable subscription;
+
+        Job(boolean newIndex) {
+            this.newIndex = newIndex;
+        }
+    }
+
+    private static class Slice {
+
+        private volatile long checkpointId;
+
+        private final long lastId;
+
+        Slice(long afterId, long lastId) {
+            this.checkpointId = afterId;
+            this.lastId = lastId;
+        }
+    }
+}
@@ -4,23 +4,24 @@ import com.pmo.besse2.config.Constants;
 import com.pmo.besse2.domain.Authority;
 import com.pmo.besse2.domain.User;
 import com.pmo.besse2.repository.AuthorityRepository;
+import com.pmo.besse2.repository.UserLookupCache;
 import com.pmo.besse2.repository.UserRepository;
-import com.pmo.besse2.repository.search.UserSearchRepository;
 import com.pmo.besse2.security.AuthoritiesConstants;
+import com.pmo.besse2.security.PasswordHashingScheduler;
 import com.pmo.besse2.security.SecurityUtils;
 import com.pmo.besse2.service.dto.AdminUserDTO;
+import com.pmo.besse2.service.dto.UserCursor;
 import com.pmo.besse2.service.dto.UserDTO;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
@@ -38,26 +39,30 @@ public class UserService {
 
     private final UserRepository userRepository;
 
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingScheduler passwordHashingScheduler;
 
-    private final UserSearchRepository userSearchRepository;
+    private final UserIndexingService userIndexingService;
 
     private final AuthorityRepository authorityRepository;
 
-    private final CacheManager cacheManager;
+    private final UserLookupCache userLookupCache;
+
+    private final UserCacheInvalidationBus userCacheInvalidationBus;
 
     public UserService(
         UserRepository userRepository,
-        PasswordEncoder passwordEncoder,
-        UserSearchRepository userSearchRepository,
+        PasswordHashingScheduler passwordHashingScheduler,
+        UserIndexingService userIndexingService,
         AuthorityRepository authorityRepository,
-        CacheManager cacheManager
+        UserLookupCache userLookupCache,
+        UserCacheInvalidationBus userCacheInvalidationBus
     ) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
-        this.userSearchRepository = userSearchRepository;
+        this.passwordHashingScheduler = passwordHashingScheduler;
+        this.userIndexingService = userIndexingService;
         this.authorityRepository = authorityRepository;
-        this.cacheManager = cacheManager;
+        this.userLookupCache = userLookupCache;
+        this.userCacheInvalidationBus = userCacheInvalidationBus;
     }
 
     @Transactional
@@ -71,7 +76,7 @@ public class UserService {
                 user.setActivationKey(null);
                 return saveUser(user);
             })
-            .flatMap(user -> userSearchRepository.save(user).thenReturn(user))
+            .flatMap(user -> userIndexingService.enqueue(user.getId()).thenReturn(user))
             .doOnNext(this::clearUserCaches)
             .doOnNext(user -> log.debug("Activated user: {}", user));
     }
@@ -82,13 +87,16 @@ public class UserService {
         return userRepository
             .findOneByResetKey(key)
             .filter(user -> user.getResetDate().isAfter(Instant.now().minus(1, ChronoUnit.DAYS)))
-            .publishOn(Schedulers.boundedElastic())
-            .map(user -> {
-                user.setPassword(passwordEncoder.encode(newPassword));
-                user.setResetKey(null);
-                user.setResetDate(null);
-                return user;
-            })
+            .flatMap(user ->
+                passwordHashingScheduler
+                    .encode(newPassword)
+                    .map(encryptedPassword -> {
+                        user.setPassword(encryptedPassword);
+                        user.setResetKey(null);
+                        user.setResetDate(null);
+                        return user;
+                    })
+            )
             .flatMap(this::saveUser)
             .doOnNext(this::clearUserCaches);
     }
@@ -115,7 +123,7 @@ public class UserService {
             .flatMap(existingUser -> {
                 if (!existingUser.isActivated()) {
                     this.clearUserCaches(existingUser);
-                    return userRepository.delete(existingUser);
+                    return userRepository.delete(existingUser).then(userIndexingService.enqueue(existingUser.getId()));
                 } else {
                     return Mono.error(new UsernameAlreadyUsedException());
                 }
@@ -124,33 +132,30 @@ public class UserService {
             .flatMap(existingUser -> {
                 if (!existingUser.isActivated()) {
                     this.clearUserCaches(existingUser);
-                    return userRepository.delete(existingUser);
+                    return userRepository.delete(existingUser).then(userIndexingService.enqueue(existingUser.getId()));
                 } else {
                     return Mono.error(new EmailAlreadyUsedException());
                 }
             })
-            .publishOn(Schedulers.boundedElastic())
-            .then(
-                Mono.fromCallable(() -> {
-                    User newUser = new User();
-                    String encryptedPassword = passwordEncoder.encode(password);
-                    newUser.setLogin(userDTO.getLogin().toLowerCase());
-                    // new user gets initially a generated password
-                    newUser.setPassword(encryptedPassword);
-                    newUser.setFirstName(userDTO.getFirstName());
-                    newUser.setLastName(userDTO.getLastName());
-                    if (userDTO.getEmail() != null) {
-                        newUser.setEmail(userDTO.getEmail().toLowerCase());
-                    }
-                    newUser.setImageUrl(userDTO.getImageUrl());
-                    newUser.setLangKey(userDTO.getLangKey());
-                    // new user is not active
-                    newUser.setActivated(false);
-                    // new user gets registration key
-                    newUser.setActivationKey(RandomUtil.generateActivationKey());
-                    return newUser;
-                })
-            )
+            .then(passwordHashingScheduler.encode(password))
+            .map(encryptedPassword -> {
+                User newUser = new User();
+                newUser.setLogin(userDTO.getLogin().toLowerCase());
+                // new user gets initially a generated password
+                newUser.setPassword(encryptedPassword);
+                newUser.setFirstName(userDTO.getFirstName());
+                newUser.setLastName(userDTO.getLastName());
+                if (userDTO.getEmail() != null) {
+                    newUser.setEmail(userDTO.getEmail().toLowerCase());
+                }
+                newUser.setImageUrl(userDTO.getImageUrl());
+                newUser.setLangKey(userDTO.getLangKey());
+                // new user is not active
+                newUser.setActivated(false);
+                // new user gets registration key
+                newUser.setActivationKey(RandomUtil.generateActivationKey());
+                return newUser;
+            })
             .flatMap(newUser -> {
                 Set<Authority> authorities = new HashSet<>();
                 return authorityRepository
@@ -159,7 +164,7 @@ public class UserService {
                     .thenReturn(newUser)
                     .doOnNext(user -> user.setAuthorities(authorities))
                     .flatMap(this::saveUser)
-                    .flatMap(user -> userSearchRepository.save(user).thenReturn(user))
+                    .flatMap(user -> userIndexingService.enqueue(user.getId()).thenReturn(user))
                     .doOnNext(this::clearUserCaches)
                     .doOnNext(user -> log.debug("Created Information for User: {}", user));
             });
@@ -185,17 +190,19 @@ public class UserService {
             .flatMap(authorityRepository::findById)
             .doOnNext(authority -> user.getAuthorities().add(authority))
             .then(Mono.just(user))
-            .publishOn(Schedulers.boundedElastic())
-            .map(newUser -> {
-                String encryptedPassword = passwordEncoder.encode(RandomUtil.generatePassword());
-                newUser.setPassword(encryptedPassword);
-                newUser.setResetKey(RandomUtil.generateResetKey());
-                newUser.setResetDate(Instant.now());
-                newUser.setActivated(true);
-                return newUser;
-            })
+            .flatMap(newUser ->
+                passwordHashingScheduler
+                    .encode(RandomUtil.generatePassword())
+                    .map(encryptedPassword -> {
+                        newUser.setPassword(encryptedPassword);
+                        newUser.setResetKey(RandomUtil.generateResetKey());
+                        newUser.setResetDate(Instant.now());
+                        newUser.setActivated(true);
+                        return newUser;
+                    })
+            )
             .flatMap(this::saveUser)
-            .flatMap(user1 -> userSearchRepository.save(user1).thenReturn(user1))
+            .flatMap(user1 -> userIndexingService.enqueue(user1.getId()).thenReturn(user1))
             .doOnNext(this::clearUserCaches)
             .doOnNext(user1 -> log.debug("Created Information for User: {}", user1));
     }
@@ -223,15 +230,14 @@ public class UserService {
                 user.setLangKey(userDTO.getLangKey());
                 Set<Authority> managedAuthorities = user.getAuthorities();
                 managedAuthorities.clear();
-                return userRepository
-                    .deleteUserAuthorities(user.getId())
-                    .thenMany(Flux.fromIterable(userDTO.getAuthorities()))
+                return Flux
+                    .fromIterable(userDTO.getAuthorities())
                     .flatMap(authorityRepository::findById)
                     .map(managedAuthorities::add)
                     .then(Mono.just(user));
             })
-            .flatMap(this::saveUser)
-            .flatMap(user -> userSearchRepository.save(user).thenReturn(user))
+            .flatMap(user -> saveUser(user, true))
+            .flatMap(user -> userIndexingService.enqueue(user.getId()).thenReturn(user))
             .doOnNext(this::clearUserCaches)
             .doOnNext(user -> log.debug("Changed Information for User: {}", user))
             .map(AdminUserDTO::new);
@@ -242,7 +248,7 @@ public class UserService {
         return userRepository
             .findOneByLogin(login)
             .flatMap(user -> userRepository.delete(user).thenReturn(user))
-            .flatMap(user -> userSearchRepository.delete(user).thenReturn(user))
+            .flatMap(user -> userIndexingService.enqueue(user.getId()).thenReturn(user))
             .doOnNext(this::clearUserCaches)
             .doOnNext(user -> log.debug("Deleted User: {}", user))
             .then();
@@ -273,7 +279,7 @@ public class UserService {
                 user.setImageUrl(imageUrl);
                 return saveUser(user);
             })
-            .flatMap(user -> userSearchRepository.save(user).thenReturn(user))
+            .flatMap(user -> userIndexingService.enqueue(user.getId()).thenReturn(user))
             .doOnNext(this::clearUserCaches)
             .doOnNext(user -> log.debug("Changed Information for User: {}", user))
             .then();
@@ -281,6 +287,18 @@ public class UserService {
 
     @Transactional
     public Mono<User> saveUser(User user) {
+        return saveUser(user, false);
+    }
+
+    /**
+     * Save the user and the links to its authorities.
+     *
+     * @param user the user to save.
+     * @param replaceAuthorities whether the authorities of the user replace the stored ones, or are only added to them
+     *                           (users read without their authorities have none).
+     * @return the saved user.
+     */
+    private Mono<User> saveUser(User user, boolean replaceAuthorities) {
         return SecurityUtils
             .getCurrentUserLogin()
             .switchIfEmpty(Mono.just(Constants.SYSTEM))
@@ -291,14 +309,22 @@ public class UserService {
                 user.setLastModifiedBy(login);
                 // Saving the relationship can be done in an entity callback
                 // once https://github.com/spring-projects/spring-data-r2dbc/issues/215 is done
+                boolean isNew = user.getId() == null;
                 return userRepository
                     .save(user)
-                    .flatMap(savedUser ->
-                        Flux
-                            .fromIterable(user.getAuthorities())
-                            .flatMap(authority -> userRepository.saveUserAuthority(savedUser.getId(), authority.getName()))
-                            .then(Mono.just(savedUser))
-                    );
+                    .flatMap(savedUser -> {
+                        List<String> authorities = user.getAuthorities().stream().map(Authority::getName).collect(Collectors.toList());
+                        Mono<Integer> linksUpdate;
+                        if (isNew) {
+                            // A new user has no links yet, there is nothing to read nor to remove
+                            linksUpdate = userRepository.insertUserAuthorities(savedUser.getId(), authorities);
+                        } else if (replaceAuthorities) {
+                            linksUpdate = userRepository.replaceUserAuthorities(savedUser.getId(), authorities);
+                        } else {
+                            linksUpdate = userRepository.addUserAuthorities(savedUser.getId(), authorities);
+                        }
+                        return linksUpdate.thenReturn(savedUser);
+                    });
             });
     }
 
@@ -307,16 +333,17 @@ public class UserService {
         return SecurityUtils
             .getCurrentUserLogin()
             .flatMap(userRepository::findOneByLogin)
-            .publishOn(Schedulers.boundedElastic())
-            .map(user -> {
-                String currentEncryptedPassword = user.getPassword();
-                if (!passwordEncoder.matches(currentClearTextPassword, currentEncryptedPassword)) {
-                    throw new InvalidPasswordException();
-                }
-                String encryptedPassword = passwordEncoder.encode(newPassword);
-                user.setPassword(encryptedPassword);
-                return user;
-            })
+            .flatMap(user ->
+                passwordHashingScheduler
+                    .matches(currentClearTextPassword, user.getPassword())
+                    .flatMap(matches ->
+                        matches ? passwordHashingScheduler.encode(newPassword) : Mono.<String>error(new InvalidPasswordException())
+                    )
+                    .map(encryptedPassword -> {
+                        user.setPassword(encryptedPassword);
+                        return user;
+                    })
+            )
             .flatMap(this::saveUser)
             .doOnNext(this::clearUserCaches)
             .doOnNext(user -> log.debug("Changed password for User: {}", user))
@@ -328,11 +355,35 @@ public class UserService {
         return userRepository.findAllWithAuthorities(pageable).map(AdminUserDTO::new);
     }
 
+    /**
+     * Get the page of users, with their authorities, following the given cursor.
+     *
+     * @param cursor the position of the page.
+     * @param size the maximum number of users.
+     * @return the users of the page.
+     */
+    @Transactional(readOnly = true)
+    public Flux<User> getAllManagedUsers(UserCursor cursor, int size) {
+        return userRepository.findAllWithAuthoritiesAfter(cursor.getOrder(), cursor.getLastValue(), cursor.getLastId(), size);
+    }
+
     @Transactional(readOnly = true)
     public Flux<UserDTO> getAllPublicUsers(Pageable pageable) {
         return userRepository.findAllByIdNotNullAndActivatedIsTrue(pageable).map(UserDTO::new);
     }
 
+    /**
+     * Get the page of activated users following the given cursor.
+     *
+     * @param cursor the position of the page.
+     * @param size the maximum number of users.
+     * @return the users of the page.
+     */
+    @Transactional(readOnly = true)
+    public Flux<User> getAllPublicUsers(UserCursor cursor, int size) {
+        return userRepository.findAllActivatedAfter(cursor.getOrder(), cursor.getLastValue(), cursor.getLastId(), size);
+    }
+
     @Transactional(readOnly = true)
     public Mono<Long> countManagedUsers() {
         return userRepository.count();
@@ -340,12 +391,12 @@ public class UserService {
 
     @Transactional(readOnly = true)
     public Mono<User> getUserWithAuthoritiesByLogin(String login) {
-        return userRepository.findOneWithAuthoritiesByLogin(login);
+        return userLookupCache.findOneWithAuthoritiesByLogin(login);
     }
 
     @Transactional(readOnly = true)
     public Mono<User> getUserWithAuthorities() {
-        return SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneWithAuthoritiesByLogin);
+        return SecurityUtils.getCurrentUserLogin().flatMap(userLookupCache::findOneWithAuthoritiesByLogin);
     }
 
     /**
@@ -365,7 +416,7 @@ public class UserService {
                 LocalDateTime.ofInstant(Instant.now().minus(3, ChronoUnit.DAYS), ZoneOffset.UTC)
             )
             .flatMap(user -> userRepository.delete(user).thenReturn(user))
-            .flatMap(user -> userSearchRepository.delete(user).thenReturn(user))
+            .flatMap(user -> userIndexingService.enqueue(user.getId()).thenReturn(user))
             .doOnNext(this::clearUserCaches)
             .doOnNext(user -> log.debug("Deleted User: {}", user));
     }
@@ -380,9 +431,6 @@ public class UserService {
     }
 
     private void clearUserCaches(User user) {
-        Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE)).evict(user.getLogin());
-        if (user.getEmail() != null) {
-            Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE)).evict(user.getEmail());
-        }
+        userCacheInvalidationBus.evict(user);
     }
 }
@@ -0,0 +1,57 @@
+package com.pmo.besse2.service.dto;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DTO representing a batch of user cache evictions, sent by a node to the other ones.
+ */
+public class CacheInvalidationDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String origin;
+
+    private Map<String, List<String>> keys;
+
+    public CacheInvalidationDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public CacheInvalidationDTO(String origin, Map<String, List<String>> keys) {
+        this.origin = origin;
+        this.keys = keys;
+    }
+
+    /**
+     * @return the id of the node which sent the evictions.
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * @return the evicted keys, by cache name.
+     */
+    public Map<String, List<String>> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(Map<String, List<String>> keys) {
+        this.keys = keys;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "CacheInvalidationDTO{" +
+            "origin='" + origin + '\'' +
+            ", keys=" + keys +
+            "}";
+    }
+}
@@ -0,0 +1,176 @@
+package com.pmo.besse2.service.dto;
+
+import com.pmo.besse2.domain.User;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Objects;
+import org.springframework.data.domain.Sort;
+
+/**
+ * A position in a list of users sorted on one property, used for keyset (seek) pagination.
+ * <p>
+ * The position is the sort value and the id of the last user of the previous page, and is exchanged with the
+ * clients as an opaque token.
+ */
+public final class UserCursor {
+
+    private static final String SEPARATOR = "\n";
+    private static final String NULL_VALUE = "~";
+    private static final String VALUE_PREFIX = "=";
+
+    private final Sort.Order order;
+
+    private final Object lastValue;
+
+    private final Long lastId;
+
+    private UserCursor(Sort.Order order, Object lastValue, Long lastId) {
+        this.order = order;
+        this.lastValue = lastValue;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Create a cursor positioned before the first user.
+     *
+     * @param order the sort order, on a single user property.
+     * @return the cursor.
+     */
+    public static UserCursor start(Sort.Order order) {
+        readProperty(new User(), order.getProperty());
+        return new UserCursor(order, null, null);
+    }
+
+    /**
+     * Create the cursor positioned right after the given user.
+     *
+     * @param user the last user of the current page.
+     * @return the cursor of the next page.
+     */
+    public UserCursor next(User user) {
+        return new UserCursor(order, readProperty(user, order.getProperty()), user.getId());
+    }
+
+    /**
+     * Decode a token created by {@link #encode()}.
+     *
+     * @param token the token.
+     * @return the cursor.
+     * @throws IllegalArgumentException if the token is not a valid cursor.
+     */
+    public static UserCursor decode(String token) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = decoded.split(SEPARATOR, 4);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        Sort.Order order = new Sort.Order(Sort.Direction.fromString(parts[1]), parts[0]);
+        readProperty(new User(), order.getProperty());
+        Long lastId = Long.valueOf(parts[2]);
+        Object lastValue = null;
+        if (parts[3].startsWith(VALUE_PREFIX)) {
+            lastValue = parseValue(order.getProperty(), parts[3].substring(VALUE_PREFIX.length()));
+        } else if (!NULL_VALUE.equals(parts[3])) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new UserCursor(order, lastValue, lastId);
+    }
+
+    /**
+     * Encode this cursor as an opaque, URL safe token.
+     *
+     * @return the token.
+     */
+    public String encode() {
+        String value = lastValue == null ? NULL_VALUE : VALUE_PREFIX + lastValue;
+        String decoded = String.join(SEPARATOR, order.getProperty(), order.getDirection().name(), String.valueOf(lastId), value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isStart() {
+        return lastId == null;
+    }
+
+    public Sort.Order getOrder() {
+        return order;
+    }
+
+    public Object getLastValue() {
+        return lastValue;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    private static Object readProperty(User user, String property) {
+        switch (property) {
+            case "id":
+                return user.getId();
+            case "login":
+                return user.getLogin();
+            case "firstName":
+                return user.getFirstName();
+            case "lastName":
+                return user.getLastName();
+            case "email":
+                return user.getEmail();
+            case "activated":
+                return user.isActivated();
+            case "langKey":
+                return user.getLangKey();
+            case "createdBy":
+                return user.getCreatedBy();
+            case "createdDate":
+                return user.getCreatedDate();
+            case "lastModifiedBy":
+                return user.getLastModifiedBy();
+            case "lastModifiedDate":
+                return user.getLastModifiedDate();
+            default:
+                throw new IllegalArgumentException("Unsupported cursor property: " + property);
+        }
+    }
+
+    private static Object parseValue(String property, String value) {
+        switch (property) {
+            case "id":
+                return Long.valueOf(value);
+            case "activated":
+                return Boolean.valueOf(value);
+            case "createdDate":
+            case "lastModifiedDate":
+                try {
+                    return Instant.parse(value);
+                } catch (DateTimeException e) {
+                    throw new IllegalArgumentException("Invalid cursor", e);
+                }
+            default:
+                return value;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UserCursor)) {
+            return false;
+        }
+        UserCursor that = (UserCursor) o;
+        return order.equals(that.order) && Objects.equals(lastValue, that.lastValue) && Objects.equals(lastId, that.lastId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(order, lastValue, lastId);
+    }
+
+    @Override
+    public String toString() {
+        return "UserCursor{order=" + order + ", lastValue=" + lastValue + ", lastId=" + lastId + "}";
+    }
+}
@@ -0,0 +1,159 @@
+package com.pmo.besse2.service.dto;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A DTO representing the progress of the reindexing of the users.
+ */
+public class UserReindexStatusDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        IDLE,
+        RUNNING,
+        CANCELLED,
+        FAILED,
+        COMPLETED,
+    }
+
+    private Status status;
+
+    private String targetIndex;
+
+    private long totalUsers;
+
+    private long indexedUsers;
+
+    private int maxDocumentsPerSecond;
+
+    private Instant startedDate;
+
+    private Instant finishedDate;
+
+    private String error;
+
+    private List<SliceDTO> slices;
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getTargetIndex() {
+        return targetIndex;
+    }
+
+    public void setTargetIndex(String targetIndex) {
+        this.targetIndex = targetIndex;
+    }
+
+    public long getTotalUsers() {
+        return totalUsers;
+    }
+
+    public void setTotalUsers(long totalUsers) {
+        this.totalUsers = totalUsers;
+    }
+
+    public long getIndexedUsers() {
+        return indexedUsers;
+    }
+
+    public void setIndexedUsers(long indexedUsers) {
+        this.indexedUsers = indexedUsers;
+    }
+
+    public int getMaxDocumentsPerSecond() {
+        return maxDocumentsPerSecond;
+    }
+
+    public void setMaxDocumentsPerSecond(int maxDocumentsPerSecond) {
+        this.maxDocumentsPerSecond = maxDocumentsPerSecond;
+    }
+
+    public Instant getStartedDate() {
+        return startedDate;
+    }
+
+    public void setStartedDate(Instant startedDate) {
+        this.startedDate = startedDate;
+    }
+
+    public Instant getFinishedDate() {
+        return finishedDate;
+    }
+
+    public void setFinishedDate(Instant finishedDate) {
+        this.finishedDate = finishedDate;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public List<SliceDTO> getSlices() {
+        return slices;
+    }
+
+    public void setSlices(List<SliceDTO> slices) {
+        this.slices = slices;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "UserReindexStatusDTO{" +
+            "status=" + status +
+            ", targetIndex='" + targetIndex + '\'' +
+            ", totalUsers=" + totalUsers +
+            ", indexedUsers=" + indexedUsers +
+            "}";
+    }
+
+    /**
+     * The progress of one id range of the users: the users up to {@code checkpointId} are indexed.
+     */
+    public static class SliceDTO implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private long checkpointId;
+
+        private long lastId;
+
+        public SliceDTO() {
+            // Empty constructor needed for Jackson.
+        }
+
+        public SliceDTO(long checkpointId, long lastId) {
+            this.checkpointId = checkpointId;
+            this.lastId = lastId;
+        }
+
+        public long getCheckpointId() {
+            return checkpointId;
+        }
+
+        public void setCheckpointId(long checkpointId) {
+            this.checkpointId = checkpointId;
+        }
+
+        public long getLastId() {
+            return lastId;
+        }
+
+        public void setLastId(long lastId) {
+            this.lastId = lastId;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.pmo.besse2.service.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A position in the results of a user search, sorted by score then id, used for {@code search_after} pagination.
+ * <p>
+ * The position is the sort values of the last hit of the previous page, and is exchanged with the clients as an
+ * opaque token.
+ */
+public final class UserSearchCursor {
+
+    private static final String SEPARATOR = "\n";
+
+    private final double score;
+
+    private final long lastId;
+
+    private UserSearchCursor(double score, long lastId) {
+        this.score = score;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Create the cursor positioned right after the hit with the given sort values.
+     *
+     * @param sortValues the sort values of the hit: its score and its id.
+     * @return the cursor.
+     * @throws IllegalArgumentException if the sort values are not a score and an id.
+     */
+    public static UserSearchCursor of(List<Object> sortValues) {
+        if (sortValues.size() != 2 || !(sortValues.get(0) instanceof Number) || !(sortValues.get(1) instanceof Number)) {
+            throw new IllegalArgumentException("Invalid sort values: " + sortValues);
+        }
+        return new UserSearchCursor(((Number) sortValues.get(0)).doubleValue(), ((Number) sortValues.get(1)).longValue());
+    }
+
+    /**
+     * Decode a token created by {@link #encode()}.
+     *
+     * @param token the token.
+     * @return the cursor.
+     * @throws IllegalArgumentException if the token is not a valid cursor.
+     */
+    public static UserSearchCursor decode(String token) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = decoded.split(SEPARATOR, 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new UserSearchCursor(Double.parseDouble(parts[0]), Long.parseLong(parts[1]));
+    }
+
+    /**
+     * Encode this cursor as an opaque, URL safe token.
+     *
+     * @return the token.
+     */
+    public String encode() {
+        String decoded = String.join(SEPARATOR, String.valueOf(score), String.valueOf(lastId));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the {@code search_after} values of the next page.
+     */
+    public List<Object> getSearchAfter() {
+        return List.of(score, lastId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UserSearchCursor)) {
+            return false;
+        }
+        UserSearchCursor that = (UserSearchCursor) o;
+        return Double.compare(score, that.score) == 0 && lastId == that.lastId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(score, lastId);
+    }
+
+    @Override
+    public String toString() {
+        return "UserSearchCursor{score=" + score + ", lastId=" + lastId + "}";
+    }
+}
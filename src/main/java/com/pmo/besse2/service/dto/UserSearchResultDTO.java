@@ -0,0 +1,54 @@
+package com.pmo.besse2.service.dto;
+
+import com.pmo.besse2.domain.User;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DTO representing a user found by a search, with the public attributes, the highlighted matches and the cursor
+ * to request the results following this one.
+ */
+public class UserSearchResultDTO extends UserDTO {
+
+    private static final long serialVersionUID = 1L;
+
+    private Map<String, List<String>> highlights;
+
+    private String cursor;
+
+    public UserSearchResultDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public UserSearchResultDTO(User user, Map<String, List<String>> highlights, String cursor) {
+        super(user);
+        this.highlights = highlights;
+        this.cursor = cursor;
+    }
+
+    public Map<String, List<String>> getHighlights() {
+        return highlights;
+    }
+
+    public void setHighlights(Map<String, List<String>> highlights) {
+        this.highlights = highlights;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "UserSearchResultDTO{" +
+            "id='" + getId() + '\'' +
+            ", login='" + getLogin() + '\'' +
+            ", highlights=" + highlights +
+            "}";
+    }
+}
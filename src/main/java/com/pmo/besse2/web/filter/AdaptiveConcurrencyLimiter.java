@@ -0,0 +1,112 @@
+package com.pmo.besse2.web.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit which adapts to the latency of a service, following the gradient algorithm.
+ * <p>
+ * The limiter compares the recent round trip time of the calls to its long term average: while they are alike, the
+ * service isn't queuing the calls and the limit grows; when the recent calls get slower, the limit shrinks in
+ * proportion. A call failing with an error (a timeout, a refused connection) shrinks the limit as well. The limit
+ * always stays between the minimum and the maximum, the maximum acting as a bulkhead.
+ */
+class AdaptiveConcurrencyLimiter {
+
+    /**
+     * The number of samples over which the long term round trip time is averaged.
+     */
+    private static final int LONG_WINDOW = 600;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double smoothing;
+
+    private final double rttTolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    private double longRttNanos;
+
+    private long samples;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double smoothing, double rttTolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.rttTolerance = rttTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Start a call if the limit allows it.
+     *
+     * @return the number of calls in flight when this one started, or {@code -1} if the call is rejected.
+     */
+    int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * End a call without updating the limit, when its outcome says nothing about the service (it was cancelled).
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * End a call and update the limit from its outcome.
+     *
+     * @param rttNanos the duration of the call.
+     * @param inFlightAtStart the number of calls in flight when the call started.
+     * @param failed whether the call failed with an error.
+     */
+    void release(long rttNanos, int inFlightAtStart, boolean failed) {
+        inFlight.decrementAndGet();
+        update(rttNanos, inFlightAtStart, failed);
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtStart, boolean failed) {
+        double current = limit;
+        if (failed) {
+            limit = Math.max(minLimit, current * BACKOFF_RATIO);
+            return;
+        }
+        rttNanos = Math.max(1, rttNanos);
+        samples++;
+        longRttNanos = samples == 1 ? rttNanos : longRttNanos + (rttNanos - longRttNanos) / Math.min(samples, LONG_WINDOW);
+        if (longRttNanos / rttNanos > 2) {
+            // The service got much faster: forget the slow past faster
+            longRttNanos *= 0.95;
+        }
+        if (inFlightAtStart < current / 2) {
+            // The calls don't use the limit, they say nothing about a higher one
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRttNanos / rttNanos));
+        double newLimit = current * gradient + Math.sqrt(current);
+        newLimit = current * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
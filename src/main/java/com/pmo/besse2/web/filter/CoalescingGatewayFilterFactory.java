@@ -0,0 +1,275 @@
+package com.pmo.besse2.web.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Gateway filter collapsing the concurrent identical {@code GET} requests of a route into a single call to the
+ * service ("single flight").
+ * <p>
+ * The first request is forwarded, and its response is captured on its way to the client. The identical requests which
+ * arrive meanwhile wait for that response, at most {@code max-wait}, and get a copy of it. Two requests are identical
+ * when they have the same path, query and values of the {@code vary-headers}, which include the credentials by default
+ * so that the responses of one user are never given to another. When the response can't be shared (it is too large,
+ * or the first request failed) or doesn't come in time, the waiting requests are forwarded on their own.
+ */
+@Component
+public class CoalescingGatewayFilterFactory extends AbstractGatewayFilterFactory<CoalescingGatewayFilterFactory.Config> {
+
+    public static final String REQUESTS_METER_NAME = "gateway.coalescing.requests";
+    public static final String REQUESTS_METER_DESCRIPTION =
+        "Indicates the requests handled by request coalescing, by route and result (forwarded, collapsed, timeout or fallback).";
+
+    /**
+     * The response headers which only make sense for one connection, and aren't copied.
+     */
+    private static final Set<String> UNSHARED_HEADERS = Set.of("connection", "keep-alive", "transfer-encoding", "trailer", "upgrade");
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Counter> requestCounters = new ConcurrentHashMap<>();
+
+    public CoalescingGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * The filter comes before the one writing the response of the service, so that it can capture that response.
+     */
+    @Override
+    public GatewayFilter apply(Config config) {
+        Map<String, Flight> flights = new ConcurrentHashMap<>();
+        return new OrderedGatewayFilter(
+            (exchange, chain) -> Mono.defer(() -> filter(exchange, chain, config, flights)),
+            NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1
+        );
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, Config config, Map<String, Flight> flights) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange);
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route == null ? "" : route.getId();
+        String key = key(request, config.getVaryHeaders());
+
+        Flight flight = new Flight();
+        Flight current = flights.putIfAbsent(key, flight);
+        if (current != null) {
+            return current.response
+                .asMono()
+                .timeout(config.getMaxWait())
+                .flatMap(response -> {
+                    count(routeId, "collapsed");
+                    return response.writeTo(exchange.getResponse());
+                })
+                .switchIfEmpty(
+                    Mono.defer(() -> {
+                        count(routeId, "fallback");
+                        return chain.filter(exchange);
+                    })
+                )
+                .onErrorResume(
+                    TimeoutException.class,
+                    e -> {
+                        count(routeId, "timeout");
+                        return chain.filter(exchange);
+                    }
+                );
+        }
+
+        count(routeId, "forwarded");
+        ServerHttpResponse response = new CapturingResponse(exchange.getResponse(), config.getMaxBodySize().toBytes(), captured -> {
+            flights.remove(key, flight);
+            flight.response.tryEmitValue(captured);
+        });
+        return chain
+            .filter(exchange.mutate().response(response).build())
+            .doFinally(signal -> {
+                flights.remove(key, flight);
+                flight.response.tryEmitEmpty();
+            });
+    }
+
+    private static String key(ServerHttpRequest request, List<String> varyHeaders) {
+        StringBuilder key = new StringBuilder(request.getURI().getRawPath()).append('?').append(request.getURI().getRawQuery());
+        for (String header : varyHeaders) {
+            key.append('\n').append(header.toLowerCase(Locale.ROOT)).append(':');
+            key.append(String.join(",", request.getHeaders().getOrEmpty(header)));
+        }
+        return key.toString();
+    }
+
+    private void count(String routeId, String result) {
+        requestCounters
+            .computeIfAbsent(
+                routeId + " " + result,
+                id ->
+                    Counter
+                        .builder(REQUESTS_METER_NAME)
+                        .description(REQUESTS_METER_DESCRIPTION)
+                        .tag("route", routeId)
+                        .tag("result", result)
+                        .register(meterRegistry)
+            )
+            .increment();
+    }
+
+    /**
+     * A request being forwarded, whose response is awaited by the identical requests.
+     */
+    private static final class Flight {
+
+        private final Sinks.One<SharedResponse> response = Sinks.one();
+    }
+
+    /**
+     * A complete response, which can be written to any number of clients.
+     */
+    private static final class SharedResponse {
+
+        private final HttpStatus status;
+
+        private final HttpHeaders headers;
+
+        private final byte[] body;
+
+        SharedResponse(HttpStatus status, HttpHeaders headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        Mono<Void> writeTo(ServerHttpResponse response) {
+            response.setStatusCode(status);
+            response.getHeaders().putAll(headers);
+            response.getHeaders().setContentLength(body.length);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        }
+    }
+
+    /**
+     * The response of the service, passed through to the first client and copied on the side, up to a maximum size.
+     */
+    private static final class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final long maxBodyBytes;
+
+        private final Consumer<SharedResponse> onCaptured;
+
+        CapturingResponse(ServerHttpResponse delegate, long maxBodyBytes, Consumer<SharedResponse> onCaptured) {
+            super(delegate);
+            this.maxBodyBytes = maxBodyBytes;
+            this.onCaptured = onCaptured;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (getHeaders().getContentLength() > maxBodyBytes) {
+                return super.writeWith(body);
+            }
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            boolean[] tooLarge = new boolean[1];
+            return super.writeWith(
+                Flux
+                    .<DataBuffer>from(body)
+                    .doOnNext(buffer -> {
+                        if (tooLarge[0]) {
+                            return;
+                        }
+                        int length = buffer.readableByteCount();
+                        if (copy.size() + (long) length > maxBodyBytes) {
+                            tooLarge[0] = true;
+                            return;
+                        }
+                        byte[] chunk = new byte[length];
+                        buffer.asByteBuffer().get(chunk);
+                        copy.write(chunk, 0, length);
+                    })
+                    .doOnComplete(() -> {
+                        if (!tooLarge[0]) {
+                            HttpHeaders headers = new HttpHeaders();
+                            getHeaders()
+                                .forEach((name, values) -> {
+                                    if (!UNSHARED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                                        headers.put(name, values);
+                                    }
+                                });
+                            onCaptured.accept(new SharedResponse(getStatusCode(), headers, copy.toByteArray()));
+                        }
+                    })
+            );
+        }
+    }
+
+    public static class Config {
+
+        private List<String> varyHeaders = List.of(
+            HttpHeaders.AUTHORIZATION,
+            HttpHeaders.COOKIE,
+            HttpHeaders.ACCEPT,
+            HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.ACCEPT_LANGUAGE
+        );
+
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        private DataSize maxBodySize = DataSize.ofMegabytes(1);
+
+        public List<String> getVaryHeaders() {
+            return varyHeaders;
+        }
+
+        public void setVaryHeaders(List<String> varyHeaders) {
+            this.varyHeaders = varyHeaders;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public DataSize getMaxBodySize() {
+            return maxBodySize;
+        }
+
+        public void setMaxBodySize(DataSize maxBodySize) {
+            this.maxBodySize = maxBodySize;
+        }
+    }
+}
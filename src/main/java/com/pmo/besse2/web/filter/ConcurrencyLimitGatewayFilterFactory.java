@@ -0,0 +1,159 @@
+package com.pmo.besse2.web.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Gateway filter limiting the requests of a route in flight, with a limit adapted to the latency of the service (see
+ * {@link AdaptiveConcurrencyLimiter}).
+ * <p>
+ * The requests over the limit are rejected at once with status {@code 503 (Service Unavailable)}, instead of queuing
+ * in the shared HTTP client pool. The maximum limit of each route is a bulkhead: a slow service can't take more
+ * connections than that. The limiter of a route is kept when the routes are refreshed.
+ */
+@Component
+public class ConcurrencyLimitGatewayFilterFactory extends AbstractGatewayFilterFactory<ConcurrencyLimitGatewayFilterFactory.Config> {
+
+    public static final String LIMIT_METER_NAME = "gateway.concurrency.limit";
+    public static final String LIMIT_METER_DESCRIPTION = "Indicates the current concurrency limit of the route.";
+    public static final String IN_FLIGHT_METER_NAME = "gateway.concurrency.inflight";
+    public static final String IN_FLIGHT_METER_DESCRIPTION = "Indicates the requests of the route in flight.";
+    public static final String REJECTED_METER_NAME = "gateway.concurrency.rejected";
+    public static final String REJECTED_METER_DESCRIPTION = "Indicates the requests rejected by the concurrency limit of the route.";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimitGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String routeId = config.getRouteId() == null ? "" : config.getRouteId();
+        AdaptiveConcurrencyLimiter limiter = limiters.computeIfAbsent(routeId, id -> newLimiter(id, config));
+        Counter rejectedCounter = Counter
+            .builder(REJECTED_METER_NAME)
+            .description(REJECTED_METER_DESCRIPTION)
+            .tag("route", routeId)
+            .register(meterRegistry);
+
+        return (exchange, chain) -> {
+            int inFlightAtStart = limiter.tryAcquire();
+            if (inFlightAtStart < 0) {
+                rejectedCounter.increment();
+                exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+                return exchange.getResponse().setComplete();
+            }
+            long start = System.nanoTime();
+            return chain
+                .filter(exchange)
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL) {
+                        limiter.release();
+                    } else {
+                        limiter.release(System.nanoTime() - start, inFlightAtStart, signal == SignalType.ON_ERROR);
+                    }
+                });
+        };
+    }
+
+    private AdaptiveConcurrencyLimiter newLimiter(String routeId, Config config) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+            config.getInitialLimit(),
+            config.getMinLimit(),
+            config.getMaxLimit(),
+            config.getSmoothing(),
+            config.getRttTolerance()
+        );
+        Gauge
+            .builder(LIMIT_METER_NAME, limiter, AdaptiveConcurrencyLimiter::getLimit)
+            .description(LIMIT_METER_DESCRIPTION)
+            .tag("route", routeId)
+            .register(meterRegistry);
+        Gauge
+            .builder(IN_FLIGHT_METER_NAME, limiter, AdaptiveConcurrencyLimiter::getInFlight)
+            .description(IN_FLIGHT_METER_DESCRIPTION)
+            .tag("route", routeId)
+            .register(meterRegistry);
+        return limiter;
+    }
+
+    public static class Config implements HasRouteId {
+
+        private String routeId;
+
+        private int initialLimit = 20;
+
+        private int minLimit = 10;
+
+        private int maxLimit = 200;
+
+        private double smoothing = 0.2;
+
+        private double rttTolerance = 1.5;
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public double getRttTolerance() {
+            return rttTolerance;
+        }
+
+        public void setRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+        }
+    }
+}
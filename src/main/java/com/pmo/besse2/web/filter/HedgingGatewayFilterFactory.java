@@ -0,0 +1,513 @@
+package com.pmo.besse2.web.filter;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.web.loadbalancer.LatencyAwareLoadBalancer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.time.Duration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gateway filter sending a second ("hedge") request to another instance of the service when the first one takes
+ * longer than usual, and answering with whichever comes first.
+ * <p>
+ * Only the idempotent requests without a body are hedged. The hedge is sent once the first request has waited for the
+ * configured percentile of the time the route takes to answer, within {@code min-delay} and {@code max-delay} (the
+ * latter is used until the route has enough samples). The first response to arrive is written to the client, and the
+ * other request is cancelled. The hedges draw on a budget shared by all the routes, which earns
+ * {@code application.hedging.budget-ratio} hedges per request, so that hedging can't double the load of the services
+ * when they are all slow.
+ * <p>
+ * The filter must come after the filters answering from the gateway itself (such as {@code HttpCache}) in the list of
+ * filters of a route.
+ */
+@Component
+public class HedgingGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgingGatewayFilterFactory.Config> {
+
+    public static final String REQUESTS_METER_NAME = "gateway.hedging.requests";
+    public static final String REQUESTS_METER_DESCRIPTION =
+        "Indicates the requests handled by request hedging, by route and result (primary, hedge-won, hedge-lost, no-budget or failed).";
+    public static final String LATENCY_METER_NAME = "gateway.hedging.latency";
+    public static final String LATENCY_METER_DESCRIPTION =
+        "Indicates the time the route takes to answer, from which the hedge delay is computed.";
+
+    private static final Set<HttpMethod> HEDGED_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int MIN_SAMPLES = 100;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Budget budget;
+
+    private final Map<String, RouteLatency> latencies = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> requestCounters = new ConcurrentHashMap<>();
+
+    public HedgingGatewayFilterFactory(MeterRegistry meterRegistry, ApplicationProperties applicationProperties) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+        ApplicationProperties.Hedging properties = applicationProperties.getHedging();
+        this.budget = new Budget(Math.max(0, Math.min(1, properties.getBudgetRatio())), properties.getBudgetBurst());
+    }
+
+    /**
+     * The filter comes before the one writing the response of the service, so that each request writes to its own
+     * response.
+     */
+    @Override
+    public GatewayFilter apply(Config config) {
+        String routeId = config.getRouteId() == null ? "" : config.getRouteId();
+        RouteLatency latency = latencies.computeIfAbsent(
+            routeId,
+            id ->
+                new RouteLatency(
+                    Timer
+                        .builder(LATENCY_METER_NAME)
+                        .description(LATENCY_METER_DESCRIPTION)
+                        .tag("route", id)
+                        .publishPercentiles(config.getPercentile())
+                        .register(meterRegistry),
+                    config
+                )
+        );
+        return new OrderedGatewayFilter(
+            (exchange, chain) -> Mono.defer(() -> filter(exchange, chain, routeId, latency)),
+            NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1
+        );
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, String routeId, RouteLatency latency) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!HEDGED_METHODS.contains(request.getMethod()) || hasBody(request)) {
+            return chain.filter(exchange);
+        }
+        budget.deposit();
+        Hedge hedge = new Hedge();
+        Attempt primary = new Attempt(exchange, hedge, latency, null);
+        Mono<Attempt> hedgeCall = Mono
+            .delay(latency.getDelay())
+            .filter(tick -> hedge.winner.get() == null)
+            .filter(tick -> {
+                if (budget.tryWithdraw()) {
+                    return true;
+                }
+                hedge.budgetExhausted = true;
+                return false;
+            })
+            .flatMap(tick -> {
+                Attempt attempt = new Attempt(exchange, hedge, latency, chosenInstance(primary));
+                hedge.hedged = attempt;
+                return attempt.call(chain);
+            });
+        return Mono
+            .firstWithValue(primary.call(chain), hedgeCall)
+            .doOnNext(winner -> count(routeId, result(hedge, winner)))
+            .doOnError(e -> count(routeId, "failed"))
+            .onErrorMap(NoSuchElementException.class, e -> hedge.failure(primary, e))
+            .then();
+    }
+
+    private static boolean hasBody(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        return headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+    }
+
+    private static ServiceInstance chosenInstance(Attempt attempt) {
+        Response<ServiceInstance> response = attempt.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        return response != null && response.hasServer() ? response.getServer() : null;
+    }
+
+    private static String result(Hedge hedge, Attempt winner) {
+        if (hedge.hedged != null) {
+            return winner == hedge.hedged ? "hedge-won" : "hedge-lost";
+        }
+        return hedge.budgetExhausted ? "no-budget" : "primary";
+    }
+
+    private void count(String routeId, String result) {
+        requestCounters
+            .computeIfAbsent(
+                routeId + " " + result,
+                id ->
+                    Counter
+                        .builder(REQUESTS_METER_NAME)
+                        .description(REQUESTS_METER_DESCRIPTION)
+                        .tag("route", routeId)
+                        .tag("result", result)
+                        .register(meterRegistry)
+            )
+            .increment();
+    }
+
+    /**
+     * The hedges which can be sent: each request earns a fraction of a hedge, up to the burst.
+     */
+    private static final class Budget {
+
+        private static final long SCALE = 1000;
+
+        private final long deposit;
+
+        private final long maxBalance;
+
+        private final AtomicLong balance;
+
+        Budget(double ratio, int burst) {
+            this.deposit = Math.round(ratio * SCALE);
+            this.maxBalance = burst * SCALE;
+            this.balance = new AtomicLong(maxBalance);
+        }
+
+        void deposit() {
+            balance.accumulateAndGet(deposit, (current, amount) -> Math.min(maxBalance, current + amount));
+        }
+
+        boolean tryWithdraw() {
+            while (true) {
+                long current = balance.get();
+                if (current < SCALE) {
+                    return false;
+                }
+                if (balance.compareAndSet(current, current - SCALE)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * The time a route takes to answer, and the hedge delay computed from it at most once a second.
+     */
+    private static final class RouteLatency {
+
+        private final Timer timer;
+
+        private final double percentile;
+
+        private final long minDelayNanos;
+
+        private final long maxDelayNanos;
+
+        private volatile long delayNanos;
+
+        private volatile long refreshNanos = System.nanoTime();
+
+        RouteLatency(Timer timer, Config config) {
+            this.timer = timer;
+            this.percentile = config.getPercentile();
+            this.minDelayNanos = config.getMinDelay().toNanos();
+            this.maxDelayNanos = config.getMaxDelay().toNanos();
+            this.delayNanos = maxDelayNanos;
+        }
+
+        void record(long nanos) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        Duration getDelay() {
+            long now = System.nanoTime();
+            if (now - refreshNanos >= 0) {
+                refreshNanos = now + DELAY_REFRESH_NANOS;
+                delayNanos = computeDelay();
+            }
+            return Duration.ofNanos(delayNanos);
+        }
+
+        private long computeDelay() {
+            if (timer.count() < MIN_SAMPLES) {
+                return maxDelayNanos;
+            }
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                if (value.percentile() == percentile) {
+                    return Math.max(minDelayNanos, Math.min(maxDelayNanos, (long) value.value(TimeUnit.NANOSECONDS)));
+                }
+            }
+            return maxDelayNanos;
+        }
+    }
+
+    /**
+     * The requests sent for one client request, racing to write the response.
+     */
+    private static final class Hedge {
+
+        private final AtomicReference<Attempt> winner = new AtomicReference<>();
+
+        private volatile Attempt hedged;
+
+        private volatile boolean budgetExhausted;
+
+        /**
+         * @return the error to report when none of the requests succeeded: the one of the request which started to write
+         * the response, or else the one of the first request.
+         */
+        Throwable failure(Attempt primary, Throwable fallback) {
+            for (Attempt attempt : new Attempt[] { winner.get(), primary, hedged }) {
+                if (attempt != null && attempt.error != null && !(attempt.error instanceof HedgeLostException)) {
+                    return attempt.error;
+                }
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * One of the requests sent for a client request, with its own attributes and response, and an empty body.
+     */
+    private static final class Attempt extends ServerWebExchangeDecorator {
+
+        private final Hedge hedge;
+
+        private final RouteLatency latency;
+
+        private final long startNanos = System.nanoTime();
+
+        private final Map<String, Object> attributes;
+
+        private final ServerHttpRequest request;
+
+        private final AttemptResponse response;
+
+        private volatile Throwable error;
+
+        Attempt(ServerWebExchange exchange, Hedge hedge, RouteLatency latency, ServiceInstance excludedInstance) {
+            super(exchange);
+            this.hedge = hedge;
+            this.latency = latency;
+            this.attributes = new ConcurrentHashMap<>(exchange.getAttributes());
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(exchange.getRequest().getHeaders());
+            if (excludedInstance != null) {
+                LatencyAwareLoadBalancer.excludeInstance(headers, excludedInstance);
+            }
+            HttpHeaders requestHeaders = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.request =
+                new ServerHttpRequestDecorator(exchange.getRequest()) {
+                    @Override
+                    public HttpHeaders getHeaders() {
+                        return requestHeaders;
+                    }
+
+                    @Override
+                    public Flux<DataBuffer> getBody() {
+                        return Flux.empty();
+                    }
+                };
+            this.response = new AttemptResponse(exchange.getResponse(), this);
+        }
+
+        Mono<Attempt> call(GatewayFilterChain chain) {
+            return chain
+                .filter(this)
+                .doOnError(e -> error = e)
+                .then(Mono.defer(() -> claim() ? Mono.just(this) : Mono.error(HedgeLostException.INSTANCE)));
+        }
+
+        /**
+         * Make this request the one answering the client, unless the other one already is.
+         */
+        boolean claim() {
+            if (hedge.winner.compareAndSet(null, this)) {
+                latency.record(System.nanoTime() - startNanos);
+                response.copyToDelegate();
+                return true;
+            }
+            return hedge.winner.get() == this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServerHttpResponse getResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * The response of one request: the status and headers are kept aside until the request answers the client.
+     */
+    private static final class AttemptResponse extends ServerHttpResponseDecorator {
+
+        private final Attempt attempt;
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        private final MultiValueMap<String, ResponseCookie> cookies = new LinkedMultiValueMap<>();
+
+        private volatile Integer status;
+
+        AttemptResponse(ServerHttpResponse delegate, Attempt attempt) {
+            super(delegate);
+            this.attempt = attempt;
+        }
+
+        void copyToDelegate() {
+            ServerHttpResponse delegate = getDelegate();
+            delegate.getHeaders().putAll(headers);
+            if (status != null) {
+                delegate.setRawStatusCode(status);
+            }
+            cookies.values().forEach(values -> values.forEach(delegate::addCookie));
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public boolean setStatusCode(HttpStatus status) {
+            this.status = status == null ? null : status.value();
+            return true;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return status == null ? null : HttpStatus.resolve(status);
+        }
+
+        @Override
+        public boolean setRawStatusCode(Integer status) {
+            this.status = status;
+            return true;
+        }
+
+        @Override
+        public Integer getRawStatusCode() {
+            return status;
+        }
+
+        @Override
+        public MultiValueMap<String, ResponseCookie> getCookies() {
+            return cookies;
+        }
+
+        @Override
+        public void addCookie(ResponseCookie cookie) {
+            cookies.add(cookie.getName(), cookie);
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return attempt.hedge.winner.get() == attempt && super.isCommitted();
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return attempt.claim() ? super.writeWith(body) : Mono.error(HedgeLostException.INSTANCE);
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return attempt.claim() ? super.writeAndFlushWith(body) : Mono.error(HedgeLostException.INSTANCE);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            return attempt.claim() ? super.setComplete() : Mono.error(HedgeLostException.INSTANCE);
+        }
+    }
+
+    /**
+     * The error ending a request whose response came after the other one.
+     */
+    private static final class HedgeLostException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final HedgeLostException INSTANCE = new HedgeLostException();
+
+        private HedgeLostException() {
+            super("The other request answered first", null, false, false);
+        }
+    }
+
+    public static class Config implements HasRouteId {
+
+        private String routeId;
+
+        private double percentile = 0.95;
+
+        private Duration minDelay = Duration.ofMillis(5);
+
+        private Duration maxDelay = Duration.ofSeconds(1);
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public Duration getMaxDelay() {
+            return maxDelay;
+        }
+
+        public void setMaxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.pmo.besse2.web.filter;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gateway filter acting as a shared HTTP cache for the {@code GET} requests of a route.
+ * <p>
+ * Successful responses are cached for their {@code s-maxage} or {@code max-age}, unless they are marked
+ * {@code no-store}, {@code no-cache} or {@code private}, set cookies, or answer an authenticated request without
+ * being marked {@code public}. They are stored per {@code Vary} request headers. Once stale, a response with an
+ * {@code ETag} is revalidated with {@code If-None-Match}, and served again if the service answers
+ * {@code 304 (Not Modified)}.
+ * <p>
+ * Requests with their own conditional headers, or with {@code Cache-Control: no-cache}, are always forwarded.
+ */
+@Component
+public class HttpCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+    public static final String REQUESTS_METER_NAME = "gateway.cache.requests";
+    public static final String REQUESTS_METER_DESCRIPTION =
+        "Indicates the requests handled by the gateway cache, by route and result (hit, revalidated, miss or bypass).";
+    public static final String SIZE_METER_NAME = "gateway.cache.size";
+    public static final String SIZE_METER_DESCRIPTION = "Indicates the total size of the response bodies cached by the gateway.";
+
+    /**
+     * The response headers which only make sense for one connection, and aren't cached.
+     */
+    private static final Set<String> UNCACHED_HEADERS = Set.of(
+        "connection",
+        "keep-alive",
+        "transfer-encoding",
+        "proxy-authenticate",
+        "trailer",
+        "upgrade",
+        "age"
+    );
+
+    private final HttpResponseCache cache;
+
+    private final long maxEntryBytes;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Counter> requestCounters = new ConcurrentHashMap<>();
+
+    public HttpCacheGatewayFilterFactory(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        super(Object.class);
+        ApplicationProperties.HttpCache properties = applicationProperties.getHttpCache();
+        this.cache = new HttpResponseCache(properties.getMaxSize().toBytes(), properties.getMaxVaryKeys());
+        this.maxEntryBytes = properties.getMaxEntrySize().toBytes();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(SIZE_METER_NAME, cache, HttpResponseCache::getBytes).description(SIZE_METER_DESCRIPTION).register(meterRegistry);
+    }
+
+    /**
+     * The filter comes before the one writing the response of the service, so that it can capture that response.
+     */
+    @Override
+    public GatewayFilter apply(Object config) {
+        return new OrderedGatewayFilter(this::filter, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route == null ? "" : route.getId();
+        Directives requestDirectives = Directives.parse(request.getHeaders());
+        if (
+            request.getMethod() != HttpMethod.GET ||
+            request.getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH) ||
+            request.getHeaders().containsKey(HttpHeaders.IF_MODIFIED_SINCE) ||
+            requestDirectives.has("no-cache")
+        ) {
+            count(routeId, "bypass");
+            return chain.filter(exchange);
+        }
+
+        String key = routeId + " " + request.getURI().getRawPath() + "?" + request.getURI().getRawQuery();
+        HttpResponseCache.Entry entry = cache.get(key, request.getHeaders());
+        long now = System.nanoTime();
+        if (entry != null && entry.isFresh(now)) {
+            count(routeId, "hit");
+            return writeEntry(exchange.getResponse(), entry, entry.getHeaders(), now);
+        }
+
+        HttpResponseCache.Entry stale = entry != null && entry.getETag() != null ? entry : null;
+        ServerWebExchange forwarded = stale == null
+            ? exchange
+            : exchange.mutate().request(r -> r.headers(headers -> headers.setIfNoneMatch(stale.getETag()))).build();
+        CachingResponse response = new CachingResponse(exchange.getResponse(), routeId, key, request, requestDirectives, stale);
+        return chain.filter(forwarded.mutate().response(response).build());
+    }
+
+    private static Mono<Void> writeEntry(ServerHttpResponse response, HttpResponseCache.Entry entry, HttpHeaders headers, long now) {
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().putAll(headers);
+        response.getHeaders().setContentLength(entry.size());
+        response.getHeaders().set(HttpHeaders.AGE, Long.toString(entry.getAgeSeconds(now)));
+        return response.writeWith(Mono.just(entry.getBody(response.bufferFactory())));
+    }
+
+    private void count(String routeId, String result) {
+        requestCounters
+            .computeIfAbsent(
+                routeId + " " + result,
+                id ->
+                    Counter
+                        .builder(REQUESTS_METER_NAME)
+                        .description(REQUESTS_METER_DESCRIPTION)
+                        .tag("route", routeId)
+                        .tag("result", result)
+                        .register(meterRegistry)
+            )
+            .increment();
+    }
+
+    /**
+     * The response of the service, cached on its way to the client when it may be, or replaced by the cached response
+     * when that response was revalidated.
+     */
+    private class CachingResponse extends ServerHttpResponseDecorator {
+
+        private final String routeId;
+
+        private final String key;
+
+        private final ServerHttpRequest request;
+
+        private final Directives requestDirectives;
+
+        private final HttpResponseCache.Entry stale;
+
+        CachingResponse(
+            ServerHttpResponse delegate,
+            String routeId,
+            String key,
+            ServerHttpRequest request,
+            Directives requestDirectives,
+            HttpResponseCache.Entry stale
+        ) {
+            super(delegate);
+            this.routeId = routeId;
+            this.key = key;
+            this.request = request;
+            this.requestDirectives = requestDirectives;
+            this.stale = stale;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            long now = System.nanoTime();
+            if (stale != null && getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                count(routeId, "revalidated");
+                HttpHeaders headers = new HttpHeaders();
+                headers.putAll(stale.getHeaders());
+                getHeaders()
+                    .forEach((name, values) -> {
+                        if (!isContentHeader(name) && !UNCACHED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                            headers.put(name, values);
+                        }
+                    });
+                long lifetime = freshnessLifetimeNanos(Directives.parse(headers), headers);
+                HttpResponseCache.Entry refreshed = new HttpResponseCache.Entry(headers, stale.getBodyBuffer(), now, now + lifetime);
+                cache.put(key, request.getHeaders(), refreshed);
+                return Flux.from(body).doOnNext(DataBufferUtils::release).then(writeEntry(getDelegate(), refreshed, headers, now));
+            }
+            count(routeId, "miss");
+            HttpHeaders headers = getHeaders();
+            Directives directives = Directives.parse(headers);
+            long lifetime = freshnessLifetimeNanos(directives, headers);
+            if (!isStorable(directives, headers, lifetime)) {
+                return super.writeWith(body);
+            }
+            return super.writeWith(capture(body, headers, now, now + lifetime));
+        }
+
+        private boolean isStorable(Directives directives, HttpHeaders headers, long lifetime) {
+            boolean authenticated = request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION);
+            return (
+                getStatusCode() == HttpStatus.OK &&
+                lifetime > 0 &&
+                !requestDirectives.has("no-store") &&
+                !directives.has("no-store") &&
+                !directives.has("no-cache") &&
+                !directives.has("private") &&
+                !headers.containsKey(HttpHeaders.SET_COOKIE) &&
+                !headers.getVary().contains("*") &&
+                headers.getContentLength() <= maxEntryBytes &&
+                (!authenticated || directives.has("public") || directives.has("s-maxage") || directives.has("must-revalidate"))
+            );
+        }
+
+        /**
+         * Pass the body through, copying it on the side, and cache the copy once the body is complete.
+         */
+        private Flux<DataBuffer> capture(Publisher<? extends DataBuffer> body, HttpHeaders headers, long storedAt, long freshUntil) {
+            List<byte[]> chunks = new ArrayList<>();
+            long[] size = new long[1];
+            return Flux
+                .<DataBuffer>from(body)
+                .doOnNext(buffer -> {
+                    if (size[0] < 0) {
+                        return;
+                    }
+                    int length = buffer.readableByteCount();
+                    if (size[0] + length > maxEntryBytes) {
+                        chunks.clear();
+                        size[0] = -1;
+                        return;
+                    }
+                    byte[] chunk = new byte[length];
+                    buffer.asByteBuffer().get(chunk);
+                    chunks.add(chunk);
+                    size[0] += length;
+                })
+                .doOnComplete(() -> {
+                    if (size[0] < 0) {
+                        return;
+                    }
+                    ByteBuffer content = ByteBuffer.allocateDirect((int) size[0]);
+                    chunks.forEach(content::put);
+                    content.flip();
+                    HttpHeaders cachedHeaders = new HttpHeaders();
+                    headers.forEach((name, values) -> {
+                        if (!UNCACHED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                            cachedHeaders.put(name, values);
+                        }
+                    });
+                    cache.put(key, request.getHeaders(), new HttpResponseCache.Entry(cachedHeaders, content, storedAt, freshUntil));
+                });
+        }
+    }
+
+    private static boolean isContentHeader(String name) {
+        return (
+            HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) ||
+            HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name) ||
+            HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+        );
+    }
+
+    /**
+     * The time a response stays fresh in a shared cache: its {@code s-maxage}, else its {@code max-age}, minus the
+     * time it already spent in upstream caches.
+     */
+    private static long freshnessLifetimeNanos(Directives directives, HttpHeaders headers) {
+        Long maxAge = directives.getSeconds("s-maxage");
+        if (maxAge == null) {
+            maxAge = directives.getSeconds("max-age");
+        }
+        if (maxAge == null) {
+            return 0;
+        }
+        Long age = null;
+        try {
+            String ageHeader = headers.getFirst(HttpHeaders.AGE);
+            age = ageHeader == null ? null : Long.valueOf(ageHeader.trim());
+        } catch (NumberFormatException e) {
+            // An invalid Age is ignored
+        }
+        return TimeUnit.SECONDS.toNanos(Math.max(0, maxAge - (age == null ? 0 : age)));
+    }
+
+    /**
+     * The directives of a {@code Cache-Control} header.
+     */
+    private static final class Directives {
+
+        private final Map<String, String> values;
+
+        private Directives(Map<String, String> values) {
+            this.values = values;
+        }
+
+        static Directives parse(HttpHeaders headers) {
+            Map<String, String> values = new HashMap<>();
+            for (String header : headers.getValuesAsList(HttpHeaders.CACHE_CONTROL)) {
+                int separator = header.indexOf('=');
+                String name = (separator < 0 ? header : header.substring(0, separator)).trim().toLowerCase(Locale.ROOT);
+                String value = separator < 0 ? "" : header.substring(separator + 1).trim().replace("\"", "");
+                values.put(name, value);
+            }
+            return new Directives(values);
+        }
+
+        boolean has(String name) {
+            return values.containsKey(name);
+        }
+
+        Long getSeconds(String name) {
+            try {
+                String value = values.get(name);
+                return value == null ? null : Long.valueOf(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
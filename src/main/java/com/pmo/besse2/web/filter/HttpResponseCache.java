@@ -0,0 +1,156 @@
+package com.pmo.besse2.web.filter;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * The responses cached by the {@link HttpCacheGatewayFilterFactory}, bounded by the total size of their bodies and
+ * evicted in least recently used order.
+ * <p>
+ * A response is stored under the URL it answers and the values its {@code Vary} headers had in the request, so the
+ * {@code Vary} header names of each URL are remembered as well.
+ */
+class HttpResponseCache {
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, List<String>> varyByKey;
+
+    private long bytes;
+
+    HttpResponseCache(long maxBytes, int maxVaryKeys) {
+        this.maxBytes = maxBytes;
+        this.varyByKey =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                    return size() > maxVaryKeys;
+                }
+            };
+    }
+
+    /**
+     * Get the response cached for the given URL and request headers, fresh or not.
+     *
+     * @param key the key of the requested URL.
+     * @param requestHeaders the headers of the request.
+     * @return the cached response, or {@code null}.
+     */
+    synchronized Entry get(String key, HttpHeaders requestHeaders) {
+        List<String> vary = varyByKey.get(key);
+        if (vary == null) {
+            return null;
+        }
+        return entries.get(variantKey(key, vary, requestHeaders));
+    }
+
+    /**
+     * Cache a response, evicting the least recently used ones as needed.
+     *
+     * @param key the key of the requested URL.
+     * @param requestHeaders the headers of the request.
+     * @param entry the response.
+     */
+    synchronized void put(String key, HttpHeaders requestHeaders, Entry entry) {
+        if (entry.size() > maxBytes) {
+            return;
+        }
+        varyByKey.put(key, entry.vary);
+        Entry previous = entries.put(variantKey(key, entry.vary, requestHeaders), entry);
+        if (previous != null) {
+            bytes -= previous.size();
+        }
+        bytes += entry.size();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private static String variantKey(String key, List<String> vary, HttpHeaders requestHeaders) {
+        if (vary.isEmpty()) {
+            return key;
+        }
+        return vary
+            .stream()
+            .map(name -> name + ":" + String.join(",", requestHeaders.getValuesAsList(name)))
+            .collect(Collectors.joining("\n", key + "\n", ""));
+    }
+
+    /**
+     * A cached response: its headers, and its body held in a direct buffer, out of the heap.
+     */
+    static final class Entry {
+
+        private final HttpHeaders headers;
+
+        private final ByteBuffer body;
+
+        private final List<String> vary;
+
+        private final long storedAtNanos;
+
+        private final long freshUntilNanos;
+
+        Entry(HttpHeaders headers, ByteBuffer body, long storedAtNanos, long freshUntilNanos) {
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.body = body;
+            this.vary =
+                headers
+                    .getVary()
+                    .stream()
+                    .map(name -> name.trim().toLowerCase(Locale.ROOT))
+                    .filter(name -> !name.isEmpty())
+                    .sorted()
+                    .collect(Collectors.toUnmodifiableList());
+            this.storedAtNanos = storedAtNanos;
+            this.freshUntilNanos = freshUntilNanos;
+        }
+
+        HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        String getETag() {
+            return headers.getETag();
+        }
+
+        boolean isFresh(long nowNanos) {
+            return nowNanos - freshUntilNanos < 0;
+        }
+
+        long getAgeSeconds(long nowNanos) {
+            return (nowNanos - storedAtNanos) / 1_000_000_000L;
+        }
+
+        int size() {
+            return body.capacity();
+        }
+
+        /**
+         * @return the body, wrapped without copy in a buffer of the given factory.
+         */
+        DataBuffer getBody(DataBufferFactory bufferFactory) {
+            return bufferFactory.wrap(body.asReadOnlyBuffer());
+        }
+
+        ByteBuffer getBodyBuffer() {
+            return body;
+        }
+    }
+}
@@ -1,29 +1,33 @@
 package com.pmo.besse2.web.filter;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
@@ -31,22 +35,49 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/**
+ * Rewrites the {@code servers} of the OpenAPI documents of the services, so that they point to the gateway.
+ * <p>
+ * The documents are rewritten as they stream through (see {@link OpenApiServersRewriter}), and asked uncompressed
+ * from the services for that. The rewritten documents are cached by service instance, and dropped when the version or
+ * the commit of the instance (from its Eureka metadata) changes: the document of the instance is still read, but not
+ * parsed again.
+ */
 @Component
 public class ModifyServersOpenApiFilter implements GlobalFilter, Ordered {
 
     private static final String OPEN_API_PATH = "/v3/api-docs";
     private static final Logger log = LoggerFactory.getLogger(ModifyServersOpenApiFilter.class);
 
+    /**
+     * Total size of the rewritten documents kept in cache.
+     */
+    private static final long MAX_CACHE_BYTES = 32L * 1024 * 1024;
+
+    private static final int GZIP_CHUNK_SIZE = 8192;
+
+    private final JsonFactory jsonFactory;
+
+    private final DocumentCache documentCache = new DocumentCache(MAX_CACHE_BYTES);
+
+    public ModifyServersOpenApiFilter(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         String path = exchange.getRequest().getURI().getPath();
         if (path.startsWith("/services") && path.contains(OPEN_API_PATH)) {
-            ServerHttpResponse originalResponse = exchange.getResponse();
-            DataBufferFactory bufferFactory = originalResponse.bufferFactory();
-            ServerHttpResponseDecorator decoratedResponse = createModifyServersOpenApiInterceptor(path, originalResponse, bufferFactory);
+            ServerHttpResponseDecorator decoratedResponse = createModifyServersOpenApiInterceptor(path, exchange);
+            // the document is asked uncompressed, so that it can be rewritten as it streams through
+            ServerHttpRequest request = exchange
+                .getRequest()
+                .mutate()
+                .headers(headers -> headers.remove(HttpHeaders.ACCEPT_ENCODING))
+                .build();
 
             // replace response with decorator
-            return chain.filter(exchange.mutate().response(decoratedResponse).build());
+            return chain.filter(exchange.mutate().request(request).response(decoratedResponse).build());
         } else {
             return chain.filter(exchange);
         }
@@ -57,91 +88,168 @@ public class ModifyServersOpenApiFilter implements GlobalFilter, Ordered {
         return -1;
     }
 
-    public ModifyServersOpenApiInterceptor createModifyServersOpenApiInterceptor(
-        String path,
-        ServerHttpResponse originalResponse,
-        DataBufferFactory bufferFactory
-    ) {
-        return new ModifyServersOpenApiInterceptor(path, originalResponse, bufferFactory);
+    public ModifyServersOpenApiInterceptor createModifyServersOpenApiInterceptor(String path, ServerWebExchange exchange) {
+        return new ModifyServersOpenApiInterceptor(path, exchange);
     }
 
     public class ModifyServersOpenApiInterceptor extends ServerHttpResponseDecorator {
 
         private final String path;
+        private final ServerWebExchange exchange;
         private final ServerHttpResponse originalResponse;
         private final DataBufferFactory bufferFactory;
-        private String rewritedBody = "";
+        private byte[] rewritedBody;
 
-        private ModifyServersOpenApiInterceptor(String path, ServerHttpResponse originalResponse, DataBufferFactory bufferFactory) {
-            super(originalResponse);
+        private ModifyServersOpenApiInterceptor(String path, ServerWebExchange exchange) {
+            super(exchange.getResponse());
             this.path = path;
-            this.originalResponse = originalResponse;
-            this.bufferFactory = bufferFactory;
+            this.exchange = exchange;
+            this.originalResponse = exchange.getResponse();
+            this.bufferFactory = originalResponse.bufferFactory();
         }
 
+        /**
+         * @return the rewritten document, if it was rewritten and not too large to be kept.
+         */
         public String getRewritedBody() {
-            return rewritedBody;
+            if (rewritedBody == null) {
+                return "";
+            }
+            byte[] content = isZippedResponse() ? unzipContent(rewritedBody) : rewritedBody;
+            return new String(content, StandardCharsets.UTF_8);
         }
 
         @Override
         public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
-            rewritedBody = "";
-            if (body instanceof Flux) {
+            rewritedBody = null;
+            if (body instanceof Flux && isOpenApiDocument()) {
                 Flux<? extends DataBuffer> fluxBody = (Flux<? extends DataBuffer>) body;
-
-                return super.writeWith(fluxBody.buffer().map(dataBuffers -> rewriteBodyWithServers(dataBuffers)));
+                String instance = instanceKey();
+                String document = path + "|" + originalResponse.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+                byte[] cached = instance == null ? null : documentCache.get(instance, instanceStamp(), document);
+                if (cached != null) {
+                    rewritedBody = cached;
+                    originalResponse.getHeaders().setContentLength(cached.length);
+                    return fluxBody
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.defer(() -> super.writeWith(Mono.fromSupplier(() -> bufferFactory.wrap(cached)))));
+                }
+                originalResponse.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                DocumentCopy copy = new DocumentCopy(MAX_CACHE_BYTES);
+                Flux<byte[]> rewritten = isZippedResponse() ? rewriteZipped(fluxBody) : rewrite(fluxBody);
+                return super.writeWith(
+                    rewritten
+                        .filter(bytes -> bytes.length > 0)
+                        .doOnNext(copy::write)
+                        .doOnComplete(() -> {
+                            rewritedBody = copy.toByteArray();
+                            if (instance != null && rewritedBody != null) {
+                                documentCache.put(instance, instanceStamp(), document, rewritedBody);
+                            }
+                        })
+                        .doOnError(e -> log.error("Error when modify servers from api-doc of {}: {}", path, e.getMessage()))
+                        .map(bufferFactory::wrap)
+                );
             }
-            // when body is not a flux
+            // when body is not a flux, or not a document
             return super.writeWith(body);
         }
 
-        private DataBuffer rewriteBodyWithServers(List<? extends DataBuffer> dataBuffers) {
-            DataBufferFactory dataBufferFactory = new DefaultDataBufferFactory();
-            DataBuffer join = dataBufferFactory.join(dataBuffers);
-            byte[] content = new byte[join.readableByteCount()];
-            join.read(content);
-
-            // release memory
-            DataBufferUtils.release(join);
-            String strBody = contentToString(content);
-
-            try {
-                // create custom server
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode jsonBody = mapper.readTree(strBody);
-                ObjectNode serversToJson = mapper.createObjectNode();
-                serversToJson.set("url", mapper.valueToTree(path.replaceFirst(OPEN_API_PATH + "(/.*)?$", "")));
-                serversToJson.set("description", mapper.valueToTree("added by global filter"));
-
-                // add custom server
-                ArrayNode servers = mapper.createArrayNode();
-                servers.add(serversToJson);
-                ((ObjectNode) jsonBody).set("servers", servers);
-
-                rewritedBody = jsonBody.toString();
-                return rewritedBodyToDataBuffer();
-            } catch (JsonProcessingException e) {
-                log.error("Error when modify servers from api-doc of {}: {}", path, e.getMessage());
-            }
-            return join;
+        private Flux<byte[]> rewrite(Flux<? extends DataBuffer> fluxBody) {
+            return Mono
+                .fromCallable(() -> new OpenApiServersRewriter(jsonFactory, serverUrl()))
+                .flatMapMany(rewriter ->
+                    fluxBody
+                        .concatMap(buffer ->
+                            Mono.fromCallable(() -> {
+                                try {
+                                    byte[] chunk = new byte[buffer.readableByteCount()];
+                                    buffer.read(chunk);
+                                    return rewriter.feed(chunk, 0, chunk.length);
+                                } finally {
+                                    DataBufferUtils.release(buffer);
+                                }
+                            })
+                        )
+                        .concatWith(Mono.fromCallable(rewriter::finish))
+                );
+        }
+
+        /**
+         * The compressed document is small enough to be read whole; it is rewritten as it is unzipped.
+         */
+        private Flux<byte[]> rewriteZipped(Flux<? extends DataBuffer> fluxBody) {
+            return DataBufferUtils
+                .join(fluxBody)
+                .map(join -> {
+                    byte[] content = new byte[join.readableByteCount()];
+                    join.read(content);
+                    DataBufferUtils.release(join);
+                    return content;
+                })
+                .flatMapMany(content ->
+                    Mono.fromCallable(() -> {
+                        ByteArrayOutputStream zipped = new ByteArrayOutputStream(content.length);
+                        try (
+                            InputStream unzipped = new GZIPInputStream(new ByteArrayInputStream(content));
+                            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(zipped)
+                        ) {
+                            OpenApiServersRewriter rewriter = new OpenApiServersRewriter(jsonFactory, serverUrl());
+                            byte[] chunk = new byte[GZIP_CHUNK_SIZE];
+                            int length;
+                            while ((length = unzipped.read(chunk)) > 0) {
+                                gzipOutputStream.write(rewriter.feed(chunk, 0, length));
+                            }
+                            gzipOutputStream.write(rewriter.finish());
+                        }
+                        return zipped.toByteArray();
+                    })
+                );
+        }
+
+        private String serverUrl() {
+            return path.replaceFirst(OPEN_API_PATH + "(/.*)?$", "");
         }
 
-        private DataBuffer rewritedBodyToDataBuffer() {
-            if (isZippedResponse()) {
-                byte[] zippedBody = zipContent(rewritedBody);
-                originalResponse.getHeaders().setContentLength(zippedBody.length);
-                return bufferFactory.wrap(zippedBody);
+        /**
+         * Error pages and other contents are passed through.
+         */
+        private boolean isOpenApiDocument() {
+            HttpHeaders headers = originalResponse.getHeaders();
+            Integer status = originalResponse.getRawStatusCode();
+            boolean success = status == null || (status >= 200 && status < 300);
+            MediaType contentType = headers.getContentType();
+            return success && (contentType == null || contentType.getSubtype().endsWith("json"));
+        }
+
+        private ServiceInstance serviceInstance() {
+            Response<ServiceInstance> response = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+            return response != null && response.hasServer() ? response.getServer() : null;
+        }
+
+        /**
+         * @return the instance which answered, if its version is known.
+         */
+        private String instanceKey() {
+            ServiceInstance instance = serviceInstance();
+            if (instance == null || instanceStamp() == null) {
+                return null;
             }
-            originalResponse.getHeaders().setContentLength(rewritedBody.getBytes().length);
-            return bufferFactory.wrap(rewritedBody.getBytes());
+            String instanceId = instance.getInstanceId() != null ? instance.getInstanceId() : instance.getHost() + ":" + instance.getPort();
+            return instance.getServiceId() + "/" + instanceId;
         }
 
-        private String contentToString(byte[] content) {
-            if (isZippedResponse()) {
-                byte[] unzippedContent = unzipContent(content);
-                return new String(unzippedContent, StandardCharsets.UTF_8);
+        private String instanceStamp() {
+            ServiceInstance instance = serviceInstance();
+            if (instance == null) {
+                return null;
             }
-            return new String(content, StandardCharsets.UTF_8);
+            String version = instance.getMetadata().get("version");
+            String commit = instance.getMetadata().get("git-commit");
+            if ((version == null || version.isEmpty()) && (commit == null || commit.isEmpty())) {
+                return null;
+            }
+            return version + "/" + commit;
         }
 
         private boolean isZippedResponse() {
@@ -153,29 +261,106 @@ public class ModifyServersOpenApiFilter implements GlobalFilter, Ordered {
         }
 
         private byte[] unzipContent(byte[] content) {
-            try {
-                GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(content));
-                byte[] unzippedContent = gzipInputStream.readAllBytes();
-                gzipInputStream.close();
-                return unzippedContent;
+            try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(content))) {
+                return gzipInputStream.readAllBytes();
             } catch (IOException e) {
                 log.error("Error when unzip content during modify servers from api-doc of {}: {}", path, e.getMessage());
             }
             return content;
         }
+    }
+
+    /**
+     * A copy of a rewritten document, given up when it gets too large to be cached.
+     */
+    private static final class DocumentCopy {
+
+        private final long maxBytes;
+
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        DocumentCopy(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
 
-        private byte[] zipContent(String content) {
-            try {
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(content.length());
-                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
-                gzipOutputStream.write(content.getBytes(StandardCharsets.UTF_8));
-                gzipOutputStream.flush();
-                gzipOutputStream.close();
-                return byteArrayOutputStream.toByteArray();
-            } catch (IOException e) {
-                log.error("Error when zip content during modify servers from api-doc of {}: {}", path, e.getMessage());
+        void write(byte[] chunk) {
+            if (bytes != null && bytes.size() + (long) chunk.length > maxBytes) {
+                bytes = null;
+            }
+            if (bytes != null) {
+                bytes.write(chunk, 0, chunk.length);
             }
-            return content.getBytes();
+        }
+
+        byte[] toByteArray() {
+            return bytes == null ? null : bytes.toByteArray();
+        }
+    }
+
+    /**
+     * The rewritten documents of each service instance, for one version of the instance; the least recently used
+     * instances are dropped over the maximum size.
+     */
+    private static final class DocumentCache {
+
+        private final long maxBytes;
+
+        private final LinkedHashMap<String, InstanceDocuments> instances = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long size;
+
+        DocumentCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized byte[] get(String instance, String stamp, String document) {
+            InstanceDocuments documents = instances.get(instance);
+            if (documents == null) {
+                return null;
+            }
+            if (!documents.stamp.equals(stamp)) {
+                remove(instance);
+                return null;
+            }
+            return documents.documents.get(document);
+        }
+
+        synchronized void put(String instance, String stamp, String document, byte[] content) {
+            InstanceDocuments documents = instances.get(instance);
+            if (documents == null || !documents.stamp.equals(stamp)) {
+                remove(instance);
+                documents = new InstanceDocuments(stamp);
+                instances.put(instance, documents);
+            }
+            byte[] previous = documents.documents.put(document, content);
+            long added = content.length - (previous == null ? 0 : previous.length);
+            documents.size += added;
+            size += added;
+            Iterator<Map.Entry<String, InstanceDocuments>> eldest = instances.entrySet().iterator();
+            while (size > maxBytes && eldest.hasNext()) {
+                size -= eldest.next().getValue().size;
+                eldest.remove();
+            }
+        }
+
+        private void remove(String instance) {
+            InstanceDocuments removed = instances.remove(instance);
+            if (removed != null) {
+                size -= removed.size;
+            }
+        }
+    }
+
+    private static final class InstanceDocuments {
+
+        private final String stamp;
+
+        private final Map<String, byte[]> documents = new LinkedHashMap<>();
+
+        private long size;
+
+        InstanceDocuments(String stamp) {
+            this.stamp = stamp;
         }
     }
 }
@@ -0,0 +1,126 @@
+package com.pmo.besse2.web.filter;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Rewrites the {@code servers} of an OpenAPI document as it is read, token by token, without reading the whole
+ * document in memory.
+ * <p>
+ * The document is fed in chunks, and each chunk gives the part of the rewritten document which is ready. The
+ * {@code servers} of the root object are replaced by the given server, which is added at the end of the root object if
+ * the document has none.
+ */
+class OpenApiServersRewriter {
+
+    static final String SERVER_DESCRIPTION = "added by global filter";
+
+    private static final byte[] NOTHING = new byte[0];
+
+    private static final String SERVERS_FIELD = "servers";
+
+    private final JsonParser parser;
+
+    private final ByteArrayFeeder feeder;
+
+    private final JsonGenerator generator;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private final String serverUrl;
+
+    private int depth;
+
+    private boolean skipValue;
+
+    private int skipDepth;
+
+    private boolean serversWritten;
+
+    OpenApiServersRewriter(JsonFactory jsonFactory, String serverUrl) throws IOException {
+        this.parser = jsonFactory.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8);
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * @return the rewritten document up to the end of the given chunk, as far as it can be written.
+     */
+    byte[] feed(byte[] chunk, int offset, int length) throws IOException {
+        feeder.feedInput(chunk, offset, offset + length);
+        return rewrite();
+    }
+
+    /**
+     * @return the end of the rewritten document.
+     */
+    byte[] finish() throws IOException {
+        feeder.endOfInput();
+        rewrite();
+        generator.close();
+        parser.close();
+        return drainOutput();
+    }
+
+    private byte[] rewrite() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (skipValue) {
+                skip(token);
+                continue;
+            }
+            if (token == JsonToken.FIELD_NAME && depth == 1 && SERVERS_FIELD.equals(parser.getCurrentName())) {
+                writeServers();
+                skipValue = true;
+                continue;
+            }
+            if (token == JsonToken.END_OBJECT && depth == 1 && !serversWritten) {
+                writeServers();
+            }
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            generator.copyCurrentEvent(parser);
+        }
+        generator.flush();
+        return drainOutput();
+    }
+
+    private void skip(JsonToken token) {
+        if (token.isStructStart()) {
+            skipDepth++;
+        } else if (token.isStructEnd()) {
+            skipDepth--;
+        }
+        skipValue = skipDepth > 0;
+    }
+
+    private void writeServers() throws IOException {
+        generator.writeFieldName(SERVERS_FIELD);
+        generator.writeStartArray();
+        generator.writeStartObject();
+        generator.writeStringField("url", serverUrl);
+        generator.writeStringField("description", SERVER_DESCRIPTION);
+        generator.writeEndObject();
+        generator.writeEndArray();
+        serversWritten = true;
+    }
+
+    private byte[] drainOutput() {
+        if (output.size() == 0) {
+            return NOTHING;
+        }
+        byte[] bytes = output.toByteArray();
+        output.reset();
+        return bytes;
+    }
+}
@@ -0,0 +1,101 @@
+package com.pmo.besse2.web.filter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies the request paths of the gateway, with a prefix tree built once.
+ * <p>
+ * The server paths are matched as plain prefixes, the static paths like the {@code /app/**} patterns: the path itself,
+ * or anything below it. The longest match wins, so {@code /v3/api-docs/swagger-config} is static while
+ * {@code /v3/api-docs} is both and counts as static.
+ */
+public final class PathClassifier {
+
+    /**
+     * The paths served by the gateway itself or by the services.
+     */
+    public static final List<String> SERVER_PREFIXES = List.of("/api", "/management", "/services", "/v3/api-docs");
+
+    /**
+     * The paths of the webapp and of the documentation, which are public.
+     */
+    public static final List<String> STATIC_PATHS = List.of(
+        "/app",
+        "/_app",
+        "/i18n",
+        "/img",
+        "/content",
+        "/swagger-ui",
+        "/v3/api-docs",
+        "/test"
+    );
+
+    public static final PathClassifier INSTANCE = new PathClassifier(SERVER_PREFIXES, STATIC_PATHS);
+
+    public enum Category {
+        SERVER,
+        STATIC,
+        CLIENT,
+    }
+
+    private final Node root = new Node();
+
+    PathClassifier(List<String> serverPrefixes, List<String> staticPaths) {
+        serverPrefixes.forEach(prefix -> node(prefix).prefix = Category.SERVER);
+        for (String path : staticPaths) {
+            node(path).exact = Category.STATIC;
+            node(path + "/").prefix = Category.STATIC;
+        }
+    }
+
+    private Node node(String path) {
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.children.computeIfAbsent(path.charAt(i), c -> new Node());
+        }
+        return node;
+    }
+
+    public Category classify(String path) {
+        Category category = Category.CLIENT;
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.children.get(path.charAt(i));
+            if (node == null) {
+                return category;
+            }
+            if (node.prefix != null) {
+                category = node.prefix;
+            }
+        }
+        return node.exact != null ? node.exact : category;
+    }
+
+    /**
+     * @return whether the path is a route of the client application, to be answered with {@code index.html}: a path
+     * which isn't served by the server, and doesn't look like a file (it has no period, nor backslash).
+     */
+    public boolean isClientRoute(String path) {
+        if (classify(path) != Category.CLIENT) {
+            return false;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '.' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+
+        private final Map<Character, Node> children = new HashMap<>(4);
+
+        private Category prefix;
+
+        private Category exact;
+    }
+}
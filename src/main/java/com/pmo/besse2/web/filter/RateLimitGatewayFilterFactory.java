@@ -0,0 +1,282 @@
+package com.pmo.besse2.web.filter;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.grid.jcache.JCacheProxyManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Gateway filter applying token bucket limits to the proxied requests, for each route and each client (the user
+ * authenticated by the JWT, or the IP address) or for the route as a whole.
+ * <p>
+ * The buckets are local to the node by default, and lock-free. When {@code distributed} is set, they are stored in the
+ * {@value #BUCKETS_CACHE} JCache cache instead, and shared by the nodes if the cache provider is clustered.
+ * <p>
+ * A request over the limit is rejected with status {@code 429 (Too Many Requests)} and a {@code Retry-After} header.
+ */
+@Component
+public class RateLimitGatewayFilterFactory extends AbstractGatewayFilterFactory<RateLimitGatewayFilterFactory.Config> {
+
+    public static final String BUCKETS_CACHE = "gateway-rate-limit-buckets";
+
+    public static final String REJECTED_METER_NAME = "gateway.ratelimit.rejected";
+    public static final String REJECTED_METER_DESCRIPTION = "Indicates the requests rejected by a rate limit, by route and key.";
+
+    public static final String REMAINING_HEADER = "X-Rate-Limit-Remaining";
+
+    public enum KeyType {
+        USER,
+        IP,
+        ROUTE,
+    }
+
+    private final Logger log = LoggerFactory.getLogger(RateLimitGatewayFilterFactory.class);
+
+    private final MeterRegistry meterRegistry;
+
+    private final ObjectProvider<CacheManager> cacheManager;
+
+    private volatile ProxyManager<String> proxyManager;
+
+    public RateLimitGatewayFilterFactory(MeterRegistry meterRegistry, ObjectProvider<CacheManager> cacheManager) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        BucketConfiguration bucketConfiguration = BucketConfiguration
+            .builder()
+            .addLimit(Bandwidth.classic(config.getCapacity(), Refill.greedy(config.getRefillTokens(), config.getRefillPeriod())))
+            .build();
+        Buckets buckets = config.isDistributed()
+            ? new DistributedBuckets(getProxyManager(), bucketConfiguration)
+            : new LocalBuckets(bucketConfiguration, config.getMaxKeys());
+        Map<String, Counter> rejectedCounters = new ConcurrentHashMap<>();
+
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String routeId = route == null ? "" : route.getId();
+            return resolveKey(exchange, config.getKey())
+                .flatMap(key -> buckets.tryConsume(routeId + "|" + key))
+                .flatMap(probe -> {
+                    if (probe.isConsumed()) {
+                        exchange.getResponse().getHeaders().set(REMAINING_HEADER, Long.toString(probe.getRemainingTokens()));
+                        return chain.filter(exchange);
+                    }
+                    rejectedCounters.computeIfAbsent(routeId, id -> rejectedCounter(id, config.getKey())).increment();
+                    long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill() + 999_999_999L));
+                    log.debug("Rate limit exceeded on route {}, retry after {}s", routeId, retryAfterSeconds);
+                    exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+                    exchange.getResponse().getHeaders().set(REMAINING_HEADER, "0");
+                    return exchange.getResponse().setComplete();
+                });
+        };
+    }
+
+    private Counter rejectedCounter(String routeId, KeyType keyType) {
+        return Counter
+            .builder(REJECTED_METER_NAME)
+            .description(REJECTED_METER_DESCRIPTION)
+            .tag("route", routeId)
+            .tag("key", keyType.name().toLowerCase())
+            .register(meterRegistry);
+    }
+
+    /**
+     * The key of the bucket of the request: the login of the authenticated user (or the IP address of anonymous
+     * clients), the IP address, or nothing to limit the route as a whole.
+     */
+    private Mono<String> resolveKey(ServerWebExchange exchange, KeyType keyType) {
+        switch (keyType) {
+            case USER:
+                return exchange.getPrincipal().map(Principal::getName).map(name -> "user:" + name).defaultIfEmpty(ipKey(exchange));
+            case IP:
+                return Mono.just(ipKey(exchange));
+            default:
+                return Mono.just("route");
+        }
+    }
+
+    private static String ipKey(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        if (remoteAddress == null) {
+            return "ip:unknown";
+        }
+        return "ip:" + (remoteAddress.getAddress() == null ? remoteAddress.getHostString() : remoteAddress.getAddress().getHostAddress());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProxyManager<String> getProxyManager() {
+        if (proxyManager == null) {
+            synchronized (this) {
+                if (proxyManager == null) {
+                    CacheManager manager = cacheManager.getIfAvailable();
+                    if (manager == null || manager.getCache(BUCKETS_CACHE) == null) {
+                        throw new IllegalStateException("The " + BUCKETS_CACHE + " cache is needed for distributed rate limits");
+                    }
+                    Cache<String, byte[]> cache = (Cache<String, byte[]>) (Cache<?, ?>) manager.getCache(BUCKETS_CACHE);
+                    proxyManager = new JCacheProxyManager<>(cache);
+                }
+            }
+        }
+        return proxyManager;
+    }
+
+    private interface Buckets {
+        Mono<ConsumptionProbe> tryConsume(String key);
+    }
+
+    /**
+     * Buckets held by this node. The full buckets, which are equivalent to new ones, are dropped when there are too many.
+     */
+    private static class LocalBuckets implements Buckets {
+
+        private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+        private final BucketConfiguration configuration;
+
+        private final long capacity;
+
+        private final int maxKeys;
+
+        /**
+         * The number of buckets above which the full buckets are dropped, raised when too few of them are full, so
+         * that the buckets aren't scanned on each new key.
+         */
+        private volatile int sweepThreshold;
+
+        LocalBuckets(BucketConfiguration configuration, int maxKeys) {
+            this.configuration = configuration;
+            this.capacity = configuration.getBandwidths()[0].getCapacity();
+            this.maxKeys = maxKeys;
+            this.sweepThreshold = maxKeys;
+        }
+
+        @Override
+        public Mono<ConsumptionProbe> tryConsume(String key) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= sweepThreshold) {
+                    buckets.values().removeIf(candidate -> candidate.getAvailableTokens() >= capacity);
+                    sweepThreshold = Math.max(maxKeys, buckets.size() + maxKeys / 10);
+                }
+                bucket = buckets.computeIfAbsent(key, k -> Bucket.builder().addLimit(configuration.getBandwidths()[0]).build());
+            }
+            return Mono.just(bucket.tryConsumeAndReturnRemaining(1));
+        }
+    }
+
+    /**
+     * Buckets stored in a JCache cache, whose access may block.
+     */
+    private static class DistributedBuckets implements Buckets {
+
+        private final ProxyManager<String> proxyManager;
+
+        private final BucketConfiguration configuration;
+
+        DistributedBuckets(ProxyManager<String> proxyManager, BucketConfiguration configuration) {
+            this.proxyManager = proxyManager;
+            this.configuration = configuration;
+        }
+
+        @Override
+        public Mono<ConsumptionProbe> tryConsume(String key) {
+            return Mono
+                .fromCallable(() -> proxyManager.builder().build(key, configuration).tryConsumeAndReturnRemaining(1))
+                .subscribeOn(Schedulers.boundedElastic());
+        }
+    }
+
+    public static class Config {
+
+        private KeyType key = KeyType.USER;
+
+        private long capacity = 100;
+
+        private long refillTokens = 100;
+
+        private Duration refillPeriod = Duration.ofSeconds(1);
+
+        private boolean distributed = false;
+
+        private int maxKeys = 100_000;
+
+        public KeyType getKey() {
+            return key;
+        }
+
+        public void setKey(KeyType key) {
+            this.key = key;
+        }
+
+        public long getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(long capacity) {
+            this.capacity = capacity;
+        }
+
+        public long getRefillTokens() {
+            return refillTokens;
+        }
+
+        public void setRefillTokens(long refillTokens) {
+            this.refillTokens = refillTokens;
+        }
+
+        public Duration getRefillPeriod() {
+            return refillPeriod;
+        }
+
+        public void setRefillPeriod(Duration refillPeriod) {
+            this.refillPeriod = refillPeriod;
+        }
+
+        public boolean isDistributed() {
+            return distributed;
+        }
+
+        public void setDistributed(boolean distributed) {
+            this.distributed = distributed;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+}
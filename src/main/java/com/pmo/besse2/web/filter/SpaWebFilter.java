@@ -7,19 +7,19 @@ import reactor.core.publisher.Mono;
 
 public class SpaWebFilter implements WebFilter {
 
+    private final PathClassifier pathClassifier;
+
+    public SpaWebFilter(PathClassifier pathClassifier) {
+        this.pathClassifier = pathClassifier;
+    }
+
     /**
      * Forwards any unmapped paths (except those containing a period) to the client {@code index.html}.
      */
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
         String path = exchange.getRequest().getURI().getPath();
-        if (
-            !path.startsWith("/api") &&
-            !path.startsWith("/management") &&
-            !path.startsWith("/services") &&
-            !path.startsWith("/v3/api-docs") &&
-            path.matches("[^\\\\.]*")
-        ) {
+        if (pathClassifier.isClientRoute(path)) {
             return chain.filter(exchange.mutate().request(exchange.getRequest().mutate().path("/index.html").build()).build());
         }
         return chain.filter(exchange);
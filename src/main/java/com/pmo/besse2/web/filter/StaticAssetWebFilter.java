@@ -0,0 +1,274 @@
+package com.pmo.besse2.web.filter;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Serves {@code index.html} and the hashed assets of the webapp from memory.
+ * <p>
+ * The assets are read once at startup, along with their gzip variant (computed, or read from a {@code .gz} file) and
+ * their brotli variant (read from a {@code .br} file produced by the webapp build, if there is one). Each variant has a
+ * strong ETag. The hashed assets never change and are cached by the browsers for a year; {@code index.html} is
+ * revalidated with its ETag. The filter comes after the security filters, so that the client routes forwarded to
+ * {@code index.html} are served from memory as well.
+ */
+@Component
+public class StaticAssetWebFilter implements WebFilter, Ordered {
+
+    private static final Logger log = LoggerFactory.getLogger(StaticAssetWebFilter.class);
+
+    private static final String INDEX = "index.html";
+
+    /**
+     * The names of the files produced by the webapp build with a content hash, such as {@code main.1a2b3c4d.js}.
+     */
+    private static final Pattern HASHED_ASSET = Pattern.compile(".+\\.[0-9a-f]{8,}\\.[a-z0-9]+");
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private static final String REVALIDATE_CACHE_CONTROL = "no-cache";
+
+    private final Map<String, Asset> assets = new HashMap<>();
+
+    private final boolean offHeap;
+
+    public StaticAssetWebFilter(ApplicationProperties applicationProperties, ResourceLoader resourceLoader) {
+        ApplicationProperties.StaticAssets properties = applicationProperties.getStaticAssets();
+        this.offHeap = properties.isOffHeap();
+        if (properties.isEnabled()) {
+            ResourcePatternResolver resolver = ResourcePatternUtils.getResourcePatternResolver(resourceLoader);
+            load(resolver, properties.getLocation(), properties.getMaxSize().toBytes());
+        }
+    }
+
+    private void load(ResourcePatternResolver resolver, String location, long maxBytes) {
+        try {
+            String base = resolver.getResource(location).getURL().toString();
+            long size = 0;
+            Resource index = resolver.getResource(location + INDEX);
+            if (index.isReadable()) {
+                size += put(INDEX, index, resolver, location, REVALIDATE_CACHE_CONTROL);
+            }
+            for (Resource resource : resolver.getResources(location + "**")) {
+                String name = resource.getFilename();
+                if (name == null || !resource.isReadable() || !HASHED_ASSET.matcher(name).matches()) {
+                    continue;
+                }
+                String url = resource.getURL().toString();
+                if (!url.startsWith(base)) {
+                    continue;
+                }
+                String path = url.substring(base.length());
+                if (size + resource.contentLength() > maxBytes) {
+                    log.warn("The static assets exceed {} bytes, {} and the next ones are served from the resources", maxBytes, path);
+                    break;
+                }
+                size += put(path, resource, resolver, location, IMMUTABLE_CACHE_CONTROL);
+            }
+            log.info("Serving {} static assets from memory ({} bytes)", assets.size(), size);
+        } catch (IOException e) {
+            log.warn("Could not load the static assets from {}: {}", location, e.getMessage());
+            assets.clear();
+        }
+    }
+
+    private long put(String path, Resource resource, ResourcePatternResolver resolver, String location, String cacheControl)
+        throws IOException {
+        byte[] content = read(resource);
+        String eTag = DigestUtils.md5DigestAsHex(content);
+        MediaType contentType = MediaTypeFactory.getMediaType(path).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        Variant identity = new Variant(store(content), null, "\"" + eTag + "\"");
+
+        Variant gzip = null;
+        Resource precompressed = resolver.getResource(location + path + ".gz");
+        byte[] gzipped = precompressed.isReadable() ? read(precompressed) : isCompressible(contentType) ? gzip(content) : null;
+        if (gzipped != null && gzipped.length < content.length) {
+            gzip = new Variant(store(gzipped), "gzip", "\"" + eTag + "-gzip\"");
+        }
+        Variant brotli = null;
+        Resource brotliResource = resolver.getResource(location + path + ".br");
+        if (brotliResource.isReadable()) {
+            brotli = new Variant(store(read(brotliResource)), "br", "\"" + eTag + "-br\"");
+        }
+        assets.put("/" + path, new Asset(contentType, cacheControl, identity, gzip, brotli));
+        return content.length + (gzip == null ? 0 : gzip.length()) + (brotli == null ? 0 : brotli.length());
+    }
+
+    private static byte[] read(Resource resource) throws IOException {
+        try (InputStream inputStream = resource.getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static boolean isCompressible(MediaType contentType) {
+        String subtype = contentType.getSubtype();
+        return (
+            "text".equals(contentType.getType()) ||
+            subtype.contains("javascript") ||
+            subtype.contains("json") ||
+            subtype.contains("xml") ||
+            subtype.contains("svg")
+        );
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2);
+        try (
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }
+        ) {
+            gzipOutputStream.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    private ByteBuffer store(byte[] content) {
+        if (!offHeap) {
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (assets.isEmpty() || (request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD)) {
+            return chain.filter(exchange);
+        }
+        Asset asset = assets.get(request.getPath().pathWithinApplication().value());
+        if (asset == null) {
+            return chain.filter(exchange);
+        }
+        Variant variant = asset.negotiate(request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING));
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.setCacheControl(asset.cacheControl);
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        if (exchange.checkNotModified(variant.eTag)) {
+            return response.setComplete();
+        }
+        headers.setContentType(asset.contentType);
+        headers.setContentLength(variant.length());
+        if (variant.encoding != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, variant.encoding);
+        }
+        if (request.getMethod() == HttpMethod.HEAD) {
+            return response.setComplete();
+        }
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(variant.content.duplicate())));
+    }
+
+    /**
+     * After the security filters.
+     */
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    private static final class Asset {
+
+        private final MediaType contentType;
+
+        private final String cacheControl;
+
+        private final Variant identity;
+
+        private final Variant gzip;
+
+        private final Variant brotli;
+
+        Asset(MediaType contentType, String cacheControl, Variant identity, Variant gzip, Variant brotli) {
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+        }
+
+        Variant negotiate(List<String> acceptEncoding) {
+            boolean acceptsBrotli = false;
+            boolean acceptsGzip = false;
+            for (String header : acceptEncoding) {
+                for (String coding : header.split(",")) {
+                    String[] parts = coding.split(";");
+                    String name = parts[0].trim().toLowerCase(Locale.ROOT);
+                    boolean refused = parts.length > 1 && isZeroQuality(parts[1].trim());
+                    acceptsBrotli |= "br".equals(name) && !refused;
+                    acceptsGzip |= "gzip".equals(name) && !refused;
+                }
+            }
+            if (acceptsBrotli && brotli != null) {
+                return brotli;
+            }
+            if (acceptsGzip && gzip != null) {
+                return gzip;
+            }
+            return identity;
+        }
+
+        private static boolean isZeroQuality(String parameter) {
+            if (!parameter.startsWith("q=")) {
+                return false;
+            }
+            try {
+                return Double.parseDouble(parameter.substring(2)) == 0;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class Variant {
+
+        private final ByteBuffer content;
+
+        private final String encoding;
+
+        private final String eTag;
+
+        Variant(ByteBuffer content, String encoding, String eTag) {
+            this.content = content;
+            this.encoding = encoding;
+            this.eTag = eTag;
+        }
+
+        int length() {
+            return content.remaining();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.pmo.besse2.web.loadbalancer;
+
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Removes the {@link LatencyAwareLoadBalancer#EXCLUDED_INSTANCE_HEADER} from the requests sent to the services: it is
+ * only meant for the load balancer of the gateway.
+ */
+@Component
+public class ExcludedInstanceHeaderFilter implements HttpHeadersFilter {
+
+    @Override
+    public HttpHeaders filter(HttpHeaders input, ServerWebExchange exchange) {
+        if (!input.containsKey(LatencyAwareLoadBalancer.EXCLUDED_INSTANCE_HEADER)) {
+            return input;
+        }
+        HttpHeaders filtered = new HttpHeaders();
+        filtered.putAll(input);
+        filtered.remove(LatencyAwareLoadBalancer.EXCLUDED_INSTANCE_HEADER);
+        return filtered;
+    }
+}
@@ -0,0 +1,215 @@
+package com.pmo.besse2.web.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * The recent behaviour of one instance of a service, as seen by the gateway: the decaying average of its latency, the
+ * calls in flight, and its failures.
+ * <p>
+ * The latency average follows the increases immediately and forgets them over the decay time ("peak EWMA"), so a
+ * slowing instance is penalised at once.
+ */
+public class InstanceStats {
+
+    private final String serviceId;
+
+    private final String instanceId;
+
+    private final String host;
+
+    private final int port;
+
+    private final String zone;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private double latencyMillis;
+
+    private long lastSampleNanos;
+
+    private long requests;
+
+    private long failures;
+
+    private int consecutiveFailures;
+
+    private int ejections;
+
+    private long ejectedUntilNanos;
+
+    InstanceStats(ServiceInstance instance) {
+        this.serviceId = instance.getServiceId();
+        this.instanceId = key(instance);
+        this.host = instance.getHost();
+        this.port = instance.getPort();
+        this.zone = instance.getMetadata().get("zone");
+    }
+
+    static String key(ServiceInstance instance) {
+        return instance.getInstanceId() != null ? instance.getInstanceId() : instance.getHost() + ":" + instance.getPort();
+    }
+
+    void startCall() {
+        inFlight.incrementAndGet();
+    }
+
+    void endCall() {
+        inFlight.updateAndGet(calls -> Math.max(0, calls - 1));
+    }
+
+    /**
+     * Record the outcome of a call.
+     *
+     * @param latencyNanos the duration of the call, or a negative value if unknown.
+     * @param failed whether the call failed.
+     * @param nowNanos the current time.
+     * @param decayNanos the time over which the latency average forgets a sample.
+     * @param maxConsecutiveFailures the failures in a row after which the instance is ejected.
+     * @param baseEjectionNanos the first ejection time, multiplied by the number of ejections in a row.
+     * @param maxEjectionNanos the longest ejection time.
+     */
+    synchronized void record(
+        long latencyNanos,
+        boolean failed,
+        long nowNanos,
+        long decayNanos,
+        int maxConsecutiveFailures,
+        long baseEjectionNanos,
+        long maxEjectionNanos
+    ) {
+        requests++;
+        if (latencyNanos >= 0) {
+            double sampleMillis = latencyNanos / 1_000_000d;
+            if (lastSampleNanos == 0 || sampleMillis > latencyMillis) {
+                latencyMillis = sampleMillis;
+            } else {
+                double weight = Math.exp(-(double) (nowNanos - lastSampleNanos) / decayNanos);
+                latencyMillis = latencyMillis * weight + sampleMillis * (1 - weight);
+            }
+            lastSampleNanos = nowNanos;
+        }
+        if (!failed) {
+            consecutiveFailures = 0;
+            if (!isEjected(nowNanos)) {
+                ejections = 0;
+            }
+            return;
+        }
+        failures++;
+        consecutiveFailures++;
+        if (consecutiveFailures >= maxConsecutiveFailures && !isEjected(nowNanos)) {
+            ejections++;
+            ejectedUntilNanos = nowNanos + Math.min(maxEjectionNanos, baseEjectionNanos * ejections);
+            consecutiveFailures = 0;
+        }
+    }
+
+    synchronized boolean isEjected(long nowNanos) {
+        return ejectedUntilNanos != 0 && nowNanos - ejectedUntilNanos < 0;
+    }
+
+    /**
+     * @return the cost of sending a call to this instance: its average latency, weighted by the calls in flight. An
+     * instance without samples costs nothing, so that it gets tried.
+     */
+    synchronized double getScore() {
+        return latencyMillis * (inFlight.get() + 1);
+    }
+
+    synchronized Snapshot snapshot(long nowNanos) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.serviceId = serviceId;
+        snapshot.instanceId = instanceId;
+        snapshot.host = host;
+        snapshot.port = port;
+        snapshot.zone = zone;
+        snapshot.latencyMillis = latencyMillis;
+        snapshot.inFlight = inFlight.get();
+        snapshot.score = getScore();
+        snapshot.requests = requests;
+        snapshot.failures = failures;
+        snapshot.consecutiveFailures = consecutiveFailures;
+        snapshot.ejectedForSeconds = isEjected(nowNanos) ? TimeUnit.NANOSECONDS.toSeconds(ejectedUntilNanos - nowNanos) + 1 : 0;
+        return snapshot;
+    }
+
+    /**
+     * The state of an instance at one point in time.
+     */
+    public static class Snapshot {
+
+        private String serviceId;
+
+        private String instanceId;
+
+        private String host;
+
+        private int port;
+
+        private String zone;
+
+        private double latencyMillis;
+
+        private int inFlight;
+
+        private double score;
+
+        private long requests;
+
+        private long failures;
+
+        private int consecutiveFailures;
+
+        private long ejectedForSeconds;
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public String getInstanceId() {
+            return instanceId;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public String getZone() {
+            return zone;
+        }
+
+        public double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public long getEjectedForSeconds() {
+            return ejectedForSeconds;
+        }
+    }
+}
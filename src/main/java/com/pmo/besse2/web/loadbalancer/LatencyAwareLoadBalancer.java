@@ -0,0 +1,122 @@
+package com.pmo.besse2.web.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+
+/**
+ * Load balancer sending the calls to the instances which answer the fastest.
+ * <p>
+ * The ejected instances are left out (unless all of them are), then the instances of the zone of the gateway are
+ * preferred, if there are any. Two of the remaining instances are picked at random, and the call goes to the one with
+ * the lowest {@link InstanceStats#getScore() score} ("power of two choices"): unlike always choosing the best
+ * instance, this doesn't send all the calls to an instance whose stats are not updated yet.
+ * <p>
+ * A call can ask to avoid an instance, with the {@link #EXCLUDED_INSTANCE_HEADER} request header: the hedge requests
+ * use it to go to another instance than the request they hedge. It is a header because the gateway only hands the
+ * method, URL, headers and cookies of the request to the load balancer, and not the exchange attributes. The
+ * {@link ExcludedInstanceHeaderFilter} removes it from the requests sent to the services.
+ */
+public class LatencyAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    public static final String EXCLUDED_INSTANCE_HEADER = "X-Gateway-Excluded-Instance";
+
+    private final String serviceId;
+
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+    private final LoadBalancerStats stats;
+
+    private final String zone;
+
+    public LatencyAwareLoadBalancer(
+        String serviceId,
+        ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+        LoadBalancerStats stats,
+        String zone
+    ) {
+        this.serviceId = serviceId;
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.stats = stats;
+        this.zone = zone;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        String excludedKey = excludedInstanceKey(request);
+        return supplier.get(request).next().map(instances -> choose(instances, excludedKey));
+    }
+
+    /**
+     * Ask the load balancer to avoid an instance for a request.
+     *
+     * @param headers the headers of the request.
+     * @param instance the instance to avoid.
+     */
+    public static void excludeInstance(HttpHeaders headers, ServiceInstance instance) {
+        headers.set(EXCLUDED_INSTANCE_HEADER, InstanceStats.key(instance));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static String excludedInstanceKey(Request request) {
+        if (!(request.getContext() instanceof RequestDataContext)) {
+            return null;
+        }
+        HttpHeaders headers = ((RequestDataContext) request.getContext()).getClientRequest().getHeaders();
+        return headers == null ? null : headers.getFirst(EXCLUDED_INSTANCE_HEADER);
+    }
+
+    Response<ServiceInstance> choose(List<ServiceInstance> instances) {
+        return choose(instances, null);
+    }
+
+    Response<ServiceInstance> choose(List<ServiceInstance> instances, String excludedKey) {
+        if (instances.isEmpty()) {
+            return new EmptyResponse();
+        }
+        stats.retainAll(serviceId, instances);
+        long now = System.nanoTime();
+        List<ServiceInstance> candidates = instances
+            .stream()
+            .filter(instance -> !stats.get(instance).isEjected(now) && !InstanceStats.key(instance).equals(excludedKey))
+            .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            candidates = instances;
+        }
+        if (zone != null) {
+            List<ServiceInstance> sameZone = candidates
+                .stream()
+                .filter(instance -> zone.equalsIgnoreCase(instance.getMetadata().get("zone")))
+                .collect(Collectors.toList());
+            if (!sameZone.isEmpty()) {
+                candidates = sameZone;
+            }
+        }
+        if (candidates.size() == 1) {
+            return new DefaultResponse(candidates.get(0));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = candidates.get(first);
+        ServiceInstance b = candidates.get(second);
+        return new DefaultResponse(stats.get(b).getScore() < stats.get(a).getScore() ? b : a);
+    }
+}
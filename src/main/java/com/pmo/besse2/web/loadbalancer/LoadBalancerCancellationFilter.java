@@ -0,0 +1,50 @@
+package com.pmo.besse2.web.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Ends in the {@link LoadBalancerStats} the load balanced calls which are cancelled, when the client disconnects or a
+ * hedge request loses: the gateway only completes the load balancer lifecycle of the calls which end with a response or
+ * an error, so the cancelled calls would otherwise stay in flight forever.
+ * <p>
+ * The filter comes before the {@link ReactiveLoadBalancerClientFilter}, and finds the instance of the call in the
+ * {@link ServerWebExchangeUtils#GATEWAY_LOADBALANCER_RESPONSE_ATTR} exchange attribute set by it.
+ */
+@Component
+public class LoadBalancerCancellationFilter implements GlobalFilter, Ordered {
+
+    private final LoadBalancerStats stats;
+
+    public LoadBalancerCancellationFilter(LoadBalancerStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        return chain
+            .filter(exchange)
+            .doFinally(signal -> {
+                if (signal == SignalType.CANCEL) {
+                    Response<ServiceInstance> lbResponse = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+                    if (lbResponse != null && lbResponse.hasServer()) {
+                        stats.onCancel(lbResponse.getServer());
+                    }
+                }
+            });
+    }
+
+    @Override
+    public int getOrder() {
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 1;
+    }
+}
@@ -0,0 +1,133 @@
+package com.pmo.besse2.web.loadbalancer;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link InstanceStats} of the instances of the services proxied by the gateway, fed by the load balanced calls.
+ * <p>
+ * A call fails when it ends with an error or a {@code 5xx} status. The cancelled calls are ended by the
+ * {@link LoadBalancerCancellationFilter}, as the gateway doesn't complete their lifecycle.
+ */
+@Component
+public class LoadBalancerStats implements LoadBalancerLifecycle<RequestDataContext, ResponseData, ServiceInstance> {
+
+    private final Map<String, Map<String, InstanceStats>> statsByService = new ConcurrentHashMap<>();
+
+    private final long decayNanos;
+
+    private final int maxConsecutiveFailures;
+
+    private final long baseEjectionNanos;
+
+    private final long maxEjectionNanos;
+
+    public LoadBalancerStats(ApplicationProperties applicationProperties) {
+        ApplicationProperties.LoadBalancer properties = applicationProperties.getLoadBalancer();
+        this.decayNanos = properties.getDecayTime().toNanos();
+        this.maxConsecutiveFailures = properties.getMaxConsecutiveFailures();
+        this.baseEjectionNanos = properties.getBaseEjectionTime().toNanos();
+        this.maxEjectionNanos = properties.getMaxEjectionTime().toNanos();
+    }
+
+    /**
+     * Get the stats of the given instance, starting them if needed.
+     */
+    public InstanceStats get(ServiceInstance instance) {
+        return statsByService
+            .computeIfAbsent(serviceKey(instance.getServiceId()), serviceId -> new ConcurrentHashMap<>())
+            .computeIfAbsent(InstanceStats.key(instance), key -> new InstanceStats(instance));
+    }
+
+    /**
+     * Forget the instances of the service which are no longer registered.
+     */
+    public void retainAll(String serviceId, Collection<ServiceInstance> instances) {
+        Map<String, InstanceStats> stats = statsByService.get(serviceKey(serviceId));
+        if (stats != null && stats.size() > instances.size()) {
+            Set<String> keys = instances.stream().map(InstanceStats::key).collect(Collectors.toSet());
+            stats.keySet().retainAll(keys);
+        }
+    }
+
+    /**
+     * The service ids of the load balancers and of the discovered instances may differ in case.
+     */
+    private static String serviceKey(String serviceId) {
+        return serviceId.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the current stats of all the instances, by service.
+     */
+    public Map<String, List<InstanceStats.Snapshot>> snapshot() {
+        long now = System.nanoTime();
+        Map<String, List<InstanceStats.Snapshot>> snapshot = new TreeMap<>();
+        statsByService.forEach((serviceId, stats) ->
+            snapshot.put(serviceId, stats.values().stream().map(instanceStats -> instanceStats.snapshot(now)).collect(Collectors.toList()))
+        );
+        return snapshot;
+    }
+
+    @Override
+    public void onStart(Request<RequestDataContext> request) {
+        // The instance is not chosen yet
+    }
+
+    @Override
+    public void onStartRequest(Request<RequestDataContext> request, Response<ServiceInstance> lbResponse) {
+        if (request.getContext() instanceof TimedRequestContext) {
+            ((TimedRequestContext) request.getContext()).setRequestStartTime(System.nanoTime());
+        }
+        if (lbResponse.hasServer()) {
+            get(lbResponse.getServer()).startCall();
+        }
+    }
+
+    /**
+     * End a call cancelled before its instance answered, without recording its latency or outcome.
+     *
+     * @param instance the instance of the call.
+     */
+    public void onCancel(ServiceInstance instance) {
+        get(instance).endCall();
+    }
+
+    @Override
+    public void onComplete(CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completionContext) {
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (completionContext.status() == CompletionContext.Status.DISCARD || lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long latency = -1;
+        Request<RequestDataContext> request = completionContext.getLoadBalancerRequest();
+        Object context = request == null ? null : request.getContext();
+        if (context instanceof TimedRequestContext && ((TimedRequestContext) context).getRequestStartTime() > 0) {
+            latency = now - ((TimedRequestContext) context).getRequestStartTime();
+        }
+        ResponseData response = completionContext.getClientResponse();
+        boolean failed =
+            completionContext.status() == CompletionContext.Status.FAILED ||
+            (response != null && response.getHttpStatus() != null && response.getHttpStatus().is5xxServerError());
+        InstanceStats stats = get(lbResponse.getServer());
+        stats.endCall();
+        stats.record(latency, failed, now, decayNanos, maxConsecutiveFailures, baseEjectionNanos, maxEjectionNanos);
+    }
+}
@@ -0,0 +1,41 @@
+package com.pmo.besse2.web.rest;
+
+import com.pmo.besse2.security.AuthoritiesConstants;
+import com.pmo.besse2.service.HttpCacheInvalidationTransport;
+import com.pmo.besse2.service.dto.CacheInvalidationDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller receiving the user cache evictions sent by the other nodes.
+ */
+@RestController
+public class CacheInvalidationResource {
+
+    private final Logger log = LoggerFactory.getLogger(CacheInvalidationResource.class);
+
+    private final HttpCacheInvalidationTransport transport;
+
+    public CacheInvalidationResource(HttpCacheInvalidationTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * {@code POST /api/admin/cache-invalidations} : evict users from the lookup caches of this node.
+     *
+     * @param invalidation the evictions.
+     * @return the {@link ResponseEntity} with status {@code 204 (No Content)}.
+     */
+    @PostMapping(HttpCacheInvalidationTransport.PATH)
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public Mono<ResponseEntity<Void>> invalidate(@RequestBody CacheInvalidationDTO invalidation) {
+        log.debug("REST request to apply the user cache evictions of {}", invalidation.getOrigin());
+        return Mono.fromRunnable(() -> transport.receive(invalidation)).then(Mono.just(ResponseEntity.noContent().build()));
+    }
+}
@@ -0,0 +1,31 @@
+package com.pmo.besse2.web.rest;
+
+import com.pmo.besse2.management.CacheMetersService;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint exposing the statistics of the caches, at {@code /management/cachestats}.
+ */
+@Component
+@Endpoint(id = "cachestats")
+public class CacheStatsEndpoint {
+
+    private final CacheMetersService cacheMetersService;
+
+    public CacheStatsEndpoint(CacheMetersService cacheMetersService) {
+        this.cacheMetersService = cacheMetersService;
+    }
+
+    /**
+     * {@code GET /management/cachestats} : get the hit ratio, operation latencies, entry sizes and hottest keys of each cache.
+     *
+     * @return the statistics of the caches, by cache name.
+     */
+    @ReadOperation
+    public Map<String, CacheMetersService.Snapshot> caches() {
+        return cacheMetersService.snapshot();
+    }
+}
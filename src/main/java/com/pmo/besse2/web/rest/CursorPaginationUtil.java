@@ -0,0 +1,88 @@
+package com.pmo.besse2.web.rest;
+
+import com.pmo.besse2.service.dto.UserCursor;
+import com.pmo.besse2.service.dto.UserSearchCursor;
+import com.pmo.besse2.web.rest.errors.BadRequestAlertException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Utility class for handling keyset (cursor based) pagination of users.
+ * <p>
+ * The next page is advertised with a {@code Link} header, using an {@code after} parameter holding an opaque cursor.
+ * The total count is only sent when explicitly requested, as counting all the rows defeats the purpose of the cursor.
+ */
+public final class CursorPaginationUtil {
+
+    public static final String AFTER_PARAMETER = "after";
+
+    private static final String HEADER_X_TOTAL_COUNT = "X-Total-Count";
+
+    private CursorPaginationUtil() {}
+
+    /**
+     * Get the cursor of the requested page: the decoded {@code after} token, or the beginning of the list sorted with
+     * the first order of the pageable when the token is empty.
+     *
+     * @param after the {@code after} request parameter.
+     * @param pageable the pagination information.
+     * @param entityName the name of the paged entity, used in the error alert.
+     * @return the cursor.
+     * @throws BadRequestAlertException {@code 400 (Bad Request)} if the cursor is invalid.
+     */
+    public static UserCursor parseCursor(String after, Pageable pageable, String entityName) {
+        try {
+            if (StringUtils.hasText(after)) {
+                return UserCursor.decode(after);
+            }
+            return UserCursor.start(pageable.getSort().stream().findFirst().orElse(Sort.Order.asc("id")));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Invalid pagination cursor", entityName, "invalidcursor");
+        }
+    }
+
+    /**
+     * Get the cursor of the requested page of search results: the decoded {@code after} token, or {@code null} for the
+     * first page when the token is empty.
+     *
+     * @param after the {@code after} request parameter.
+     * @param entityName the name of the searched entity, used in the error alert.
+     * @return the cursor, or {@code null}.
+     * @throws BadRequestAlertException {@code 400 (Bad Request)} if the cursor is invalid.
+     */
+    public static UserSearchCursor parseSearchCursor(String after, String entityName) {
+        try {
+            return StringUtils.hasText(after) ? UserSearchCursor.decode(after) : null;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Invalid pagination cursor", entityName, "invalidcursor");
+        }
+    }
+
+    /**
+     * Generate the pagination headers of a cursor based page.
+     *
+     * @param uriBuilder the builder of the current request URI.
+     * @param nextCursor the cursor of the next page, or {@code null} if this is the last page.
+     * @param total the total count of elements, or {@code null} if it was not requested.
+     * @return the {@link HttpHeaders}.
+     */
+    public static HttpHeaders generateCursorHttpHeaders(UriComponentsBuilder uriBuilder, UserCursor nextCursor, Long total) {
+        HttpHeaders headers = new HttpHeaders();
+        if (total != null) {
+            headers.add(HEADER_X_TOTAL_COUNT, Long.toString(total));
+        }
+        if (nextCursor != null) {
+            String link = uriBuilder
+                .replaceQueryParam("page")
+                .replaceQueryParam(AFTER_PARAMETER, nextCursor.encode())
+                .toUriString()
+                .replace(",", "%2C")
+                .replace(";", "%3B");
+            headers.add(HttpHeaders.LINK, "<" + link + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+}
@@ -2,16 +2,11 @@ package com.pmo.besse2.web.rest;
 
 import com.pmo.besse2.security.AuthoritiesConstants;
 import com.pmo.besse2.web.rest.vm.RouteVM;
-import java.util.ArrayList;
 import java.util.List;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cloud.client.discovery.DiscoveryClient;
-import org.springframework.cloud.gateway.route.Route;
-import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.http.*;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * REST controller for managing Gateway configuration.
@@ -20,42 +15,21 @@ import reactor.core.publisher.Flux;
 @RequestMapping("/api/gateway")
 public class GatewayResource {
 
-    private final RouteLocator routeLocator;
+    private final GatewayRouteTopology routeTopology;
 
-    private final DiscoveryClient discoveryClient;
-
-    @Value("${spring.application.name}")
-    private String appName;
-
-    public GatewayResource(RouteLocator routeLocator, DiscoveryClient discoveryClient) {
-        this.routeLocator = routeLocator;
-        this.discoveryClient = discoveryClient;
+    public GatewayResource(GatewayRouteTopology routeTopology) {
+        this.routeTopology = routeTopology;
     }
 
     /**
      * {@code GET  /routes} : get the active routes.
      *
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the list of routes.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the list of routes, or with status
+     * {@code 304 (Not Modified)} if they didn't change since the ETag given in {@code If-None-Match}.
      */
     @GetMapping("/routes")
     @Secured(AuthoritiesConstants.ADMIN)
-    public ResponseEntity<List<RouteVM>> activeRoutes() {
-        Flux<Route> routes = routeLocator.getRoutes();
-        List<RouteVM> routeVMs = new ArrayList<>();
-        routes.subscribe(route -> {
-            RouteVM routeVM = new RouteVM();
-            // Manipulate strings to make Gateway routes look like Zuul's
-            String predicate = route.getPredicate().toString();
-            String path = predicate.substring(predicate.indexOf("[") + 1, predicate.indexOf("]"));
-            routeVM.setPath(path);
-            String serviceId = route.getId().substring(route.getId().indexOf("_") + 1).toLowerCase();
-            routeVM.setServiceId(serviceId);
-            // Exclude gateway app from routes
-            if (!serviceId.equalsIgnoreCase(appName)) {
-                routeVM.setServiceInstances(discoveryClient.getInstances(serviceId));
-                routeVMs.add(routeVM);
-            }
-        });
-        return ResponseEntity.ok(routeVMs);
+    public Mono<ResponseEntity<List<RouteVM>>> activeRoutes() {
+        return routeTopology.getSnapshot().map(snapshot -> ResponseEntity.ok().eTag(snapshot.getETag()).body(snapshot.getRoutes()));
     }
 }
@@ -0,0 +1,167 @@
+package com.pmo.besse2.web.rest;
+
+import com.pmo.besse2.web.rest.vm.RouteVM;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import reactor.core.publisher.Mono;
+
+/**
+ * The routes of the gateway and the instances of their services, as an immutable snapshot.
+ * <p>
+ * The snapshot is built on first use, then updated when the routes are refreshed and, with the instances only, on each
+ * discovery heartbeat. An update which doesn't change anything keeps the current snapshot, and its ETag. The updates are
+ * applied to the latest snapshot, so that a heartbeat never brings back the routes replaced by a refresh meanwhile.
+ */
+@Component
+public class GatewayRouteTopology {
+
+    private final Logger log = LoggerFactory.getLogger(GatewayRouteTopology.class);
+
+    private final RouteLocator routeLocator;
+
+    private final DiscoveryClient discoveryClient;
+
+    private final String appName;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    public GatewayRouteTopology(
+        RouteLocator routeLocator,
+        DiscoveryClient discoveryClient,
+        @Value("${spring.application.name}") String appName
+    ) {
+        this.routeLocator = routeLocator;
+        this.discoveryClient = discoveryClient;
+        this.appName = appName;
+    }
+
+    /**
+     * @return the current snapshot, built if there is none yet.
+     */
+    public Mono<Snapshot> getSnapshot() {
+        return Mono.defer(() -> {
+            Snapshot current = snapshot.get();
+            return current != null ? Mono.just(current) : refreshRoutes();
+        });
+    }
+
+    @EventListener
+    public void onRoutesRefreshed(RefreshRoutesResultEvent event) {
+        if (event.isSuccess()) {
+            refreshRoutes().subscribe(null, e -> log.warn("Could not refresh the gateway routes: {}", e.getMessage()));
+        }
+    }
+
+    @EventListener(HeartbeatEvent.class)
+    public void onHeartbeat() {
+        // Rebuilt from the routes of the latest snapshot, again if routes were refreshed meanwhile
+        snapshot.updateAndGet(current -> current != null ? build(current.entries, current) : null);
+    }
+
+    Mono<Snapshot> refreshRoutes() {
+        return routeLocator
+            .getRoutes()
+            .map(GatewayRouteTopology::toEntry)
+            // Exclude gateway app from routes
+            .filter(entry -> !entry.serviceId.equalsIgnoreCase(appName))
+            .collectList()
+            .map(entries -> snapshot.updateAndGet(current -> build(entries, current)));
+    }
+
+    private static RouteEntry toEntry(Route route) {
+        // Manipulate strings to make Gateway routes look like Zuul's
+        String predicate = route.getPredicate().toString();
+        int start = predicate.indexOf('[');
+        int end = predicate.indexOf(']', start + 1);
+        String path = start >= 0 && end > start ? predicate.substring(start + 1, end) : predicate;
+        String serviceId = route.getId().substring(route.getId().indexOf('_') + 1).toLowerCase(Locale.ROOT);
+        return new RouteEntry(path, serviceId);
+    }
+
+    private Snapshot build(List<RouteEntry> entries, Snapshot previous) {
+        List<List<ServiceInstance>> instances = new ArrayList<>(entries.size());
+        StringBuilder signature = new StringBuilder();
+        for (RouteEntry entry : entries) {
+            List<ServiceInstance> serviceInstances = discoveryClient.getInstances(entry.serviceId);
+            instances.add(serviceInstances);
+            signature.append(entry.path).append('\n').append(entry.serviceId).append('\n');
+            for (ServiceInstance instance : serviceInstances) {
+                signature
+                    .append(instance.getInstanceId())
+                    .append(' ')
+                    .append(instance.getUri())
+                    .append(' ')
+                    .append(new TreeMap<>(instance.getMetadata()))
+                    .append('\n');
+            }
+        }
+        String eTag = DigestUtils.md5DigestAsHex(signature.toString().getBytes(StandardCharsets.UTF_8));
+        if (previous != null && previous.eTag.equals(eTag)) {
+            return previous;
+        }
+        List<RouteVM> routes = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            RouteVM routeVM = new RouteVM();
+            routeVM.setPath(entries.get(i).path);
+            routeVM.setServiceId(entries.get(i).serviceId);
+            routeVM.setServiceInstances(Collections.unmodifiableList(instances.get(i)));
+            routes.add(routeVM);
+        }
+        return new Snapshot(List.copyOf(entries), Collections.unmodifiableList(routes), eTag);
+    }
+
+    private static final class RouteEntry {
+
+        private final String path;
+
+        private final String serviceId;
+
+        RouteEntry(String path, String serviceId) {
+            this.path = path;
+            this.serviceId = serviceId;
+        }
+    }
+
+    /**
+     * The routes at one point in time, with an ETag which changes with them.
+     */
+    public static final class Snapshot {
+
+        private final List<RouteEntry> entries;
+
+        private final List<RouteVM> routes;
+
+        private final String eTag;
+
+        private Snapshot(List<RouteEntry> entries, List<RouteVM> routes, String eTag) {
+            this.entries = entries;
+            this.routes = routes;
+            this.eTag = eTag;
+        }
+
+        public List<RouteVM> getRoutes() {
+            return routes;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+    }
+}
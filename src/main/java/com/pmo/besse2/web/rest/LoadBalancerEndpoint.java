@@ -0,0 +1,33 @@
+package com.pmo.besse2.web.rest;
+
+import com.pmo.besse2.web.loadbalancer.InstanceStats;
+import com.pmo.besse2.web.loadbalancer.LoadBalancerStats;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint exposing the load balancing stats of the service instances, at {@code /management/loadbalancer}.
+ */
+@Component
+@Endpoint(id = "loadbalancer")
+public class LoadBalancerEndpoint {
+
+    private final LoadBalancerStats loadBalancerStats;
+
+    public LoadBalancerEndpoint(LoadBalancerStats loadBalancerStats) {
+        this.loadBalancerStats = loadBalancerStats;
+    }
+
+    /**
+     * {@code GET /management/loadbalancer} : get the latency, calls in flight, failures and score of each instance.
+     *
+     * @return the stats of the instances, by service.
+     */
+    @ReadOperation
+    public Map<String, List<InstanceStats.Snapshot>> instances() {
+        return loadBalancerStats.snapshot();
+    }
+}
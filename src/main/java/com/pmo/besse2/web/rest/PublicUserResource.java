@@ -1,17 +1,23 @@
 package com.pmo.besse2.web.rest;
 
+import com.pmo.besse2.domain.User;
 import com.pmo.besse2.repository.search.UserSearchRepository;
 import com.pmo.besse2.service.UserService;
+import com.pmo.besse2.service.dto.UserCursor;
 import com.pmo.besse2.service.dto.UserDTO;
+import com.pmo.besse2.service.dto.UserSearchCursor;
+import com.pmo.besse2.service.dto.UserSearchResultDTO;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.reactive.ServerHttpRequest;
@@ -30,6 +36,17 @@ public class PublicUserResource {
         Arrays.asList("id", "login", "firstName", "lastName", "email", "activated", "langKey")
     );
 
+    /**
+     * The properties a cursor based page can be sorted on: the cursor holds the value of the last user of the page, so
+     * only the properties of the public {@link UserDTO}.
+     */
+    private static final List<String> CURSOR_ORDERED_PROPERTIES = List.of("id", "login");
+
+    /**
+     * The maximum number of results of a search request.
+     */
+    private static final int MAX_SEARCH_SIZE = 100;
+
     private final Logger log = LoggerFactory.getLogger(PublicUserResource.class);
 
     private final UserService userService;
@@ -42,20 +59,30 @@ public class PublicUserResource {
 
     /**
      * {@code GET /users} : get all users with only the public informations - calling this are allowed for anyone.
+     * <p>
+     * When the {@code after} parameter is present (an empty value starts from the beginning), the users are paged with a
+     * cursor instead of an offset, and the next page is given in the {@code Link} header.
      *
      * @param request a {@link ServerHttpRequest} request.
      * @param pageable the pagination information.
+     * @param after the cursor of the requested page, if cursor based pagination is used.
+     * @param withTotal whether the total count should be sent when cursor based pagination is used.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body all users.
      */
     @GetMapping("/users")
     public Mono<ResponseEntity<Flux<UserDTO>>> getAllPublicUsers(
         ServerHttpRequest request,
-        @org.springdoc.api.annotations.ParameterObject Pageable pageable
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable,
+        @RequestParam(name = CursorPaginationUtil.AFTER_PARAMETER, required = false) String after,
+        @RequestParam(name = "withTotal", defaultValue = "false") boolean withTotal
     ) {
         log.debug("REST request to get all public User names");
         if (!onlyContainsAllowedProperties(pageable)) {
             return Mono.just(ResponseEntity.badRequest().build());
         }
+        if (after != null) {
+            return getAllPublicUsersAfter(request, pageable, after, withTotal);
+        }
 
         return userService
             .countManagedUsers()
@@ -64,6 +91,37 @@ public class PublicUserResource {
             .map(headers -> ResponseEntity.ok().headers(headers).body(userService.getAllPublicUsers(pageable)));
     }
 
+    private Mono<ResponseEntity<Flux<UserDTO>>> getAllPublicUsersAfter(
+        ServerHttpRequest request,
+        Pageable pageable,
+        String after,
+        boolean withTotal
+    ) {
+        if (!pageable.getSort().stream().map(Sort.Order::getProperty).allMatch(CURSOR_ORDERED_PROPERTIES::contains)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        UserCursor cursor = CursorPaginationUtil.parseCursor(after, pageable, "user");
+        if (!CURSOR_ORDERED_PROPERTIES.contains(cursor.getOrder().getProperty())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        int size = pageable.getPageSize();
+        Mono<Optional<Long>> total = withTotal ? userService.countManagedUsers().map(Optional::of) : Mono.just(Optional.empty());
+        return userService
+            .getAllPublicUsers(cursor, size)
+            .collectList()
+            .zipWith(total)
+            .map(pageAndTotal -> {
+                List<User> users = pageAndTotal.getT1();
+                UserCursor next = users.size() < size ? null : cursor.next(users.get(users.size() - 1));
+                HttpHeaders headers = CursorPaginationUtil.generateCursorHttpHeaders(
+                    UriComponentsBuilder.fromHttpRequest(request),
+                    next,
+                    pageAndTotal.getT2().orElse(null)
+                );
+                return ResponseEntity.ok().headers(headers).body(Flux.fromIterable(users).map(UserDTO::new));
+            });
+    }
+
     private boolean onlyContainsAllowedProperties(Pageable pageable) {
         return pageable.getSort().stream().map(Sort.Order::getProperty).allMatch(ALLOWED_ORDERED_PROPERTIES::contains);
     }
@@ -79,12 +137,27 @@ public class PublicUserResource {
 
     /**
      * {@code SEARCH /_search/users/:query} : search for the User corresponding to the query.
+     * <p>
+     * The query is matched against the login, the names and the email of the users, best matches first. The results are
+     * paged: the {@code cursor} of the last result, given as the {@code after} parameter, requests the next page.
      *
-     * @param query the query to search.
+     * @param query the text to search.
+     * @param size the maximum number of results, at most {@value #MAX_SEARCH_SIZE}.
+     * @param after the cursor of the last result of the previous page, if any.
      * @return the result of the search.
      */
     @GetMapping("/_search/users/{query}")
-    public Mono<List<UserDTO>> search(@PathVariable String query) {
-        return userSearchRepository.search(query).map(UserDTO::new).collectList();
+    public Flux<UserSearchResultDTO> search(
+        @PathVariable String query,
+        @RequestParam(name = "size", defaultValue = "20") int size,
+        @RequestParam(name = CursorPaginationUtil.AFTER_PARAMETER, required = false) String after
+    ) {
+        log.debug("REST request to search Users for query {}", query);
+        UserSearchCursor cursor = CursorPaginationUtil.parseSearchCursor(after, "user");
+        return userSearchRepository
+            .search(query, cursor == null ? null : cursor.getSearchAfter(), Math.max(1, Math.min(size, MAX_SEARCH_SIZE)))
+            .map(hit ->
+                new UserSearchResultDTO(hit.getContent(), hit.getHighlightFields(), UserSearchCursor.of(hit.getSortValues()).encode())
+            );
     }
 }
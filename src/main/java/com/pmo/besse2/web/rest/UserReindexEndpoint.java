@@ -0,0 +1,71 @@
+package com.pmo.besse2.web.rest;
+
+import com.pmo.besse2.service.UserReindexService;
+import com.pmo.besse2.service.dto.UserReindexStatusDTO;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint to rebuild the user search index, at {@code /management/userreindex}.
+ */
+@Component
+@Endpoint(id = "userreindex")
+public class UserReindexEndpoint {
+
+    private final UserReindexService userReindexService;
+
+    public UserReindexEndpoint(UserReindexService userReindexService) {
+        this.userReindexService = userReindexService;
+    }
+
+    /**
+     * {@code GET /management/userreindex} : get the progress of the last reindex.
+     *
+     * @return the status of the reindex.
+     */
+    @ReadOperation
+    public UserReindexStatusDTO status() {
+        return userReindexService.getStatus();
+    }
+
+    /**
+     * {@code POST /management/userreindex} : start a reindex, resume the last one, or throttle the running one.
+     *
+     * @param action {@code start} (the default), {@code resume} or {@code throttle}.
+     * @param maxDocumentsPerSecond the maximum number of users indexed per second, {@code 0} for no limit.
+     * @return the status of the reindex, with status {@code 409 (Conflict)} if the action isn't possible now.
+     */
+    @WriteOperation
+    public WebEndpointResponse<UserReindexStatusDTO> update(@Nullable String action, @Nullable Integer maxDocumentsPerSecond) {
+        if (maxDocumentsPerSecond != null) {
+            userReindexService.setMaxDocumentsPerSecond(maxDocumentsPerSecond);
+        }
+        try {
+            if ("resume".equals(action)) {
+                return new WebEndpointResponse<>(userReindexService.resume());
+            } else if ("throttle".equals(action)) {
+                return new WebEndpointResponse<>(userReindexService.getStatus());
+            } else if (action == null || "start".equals(action)) {
+                return new WebEndpointResponse<>(userReindexService.start());
+            }
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new WebEndpointResponse<>(userReindexService.getStatus(), 409);
+        }
+    }
+
+    /**
+     * {@code DELETE /management/userreindex} : cancel the running reindex.
+     *
+     * @return the status of the reindex.
+     */
+    @DeleteOperation
+    public UserReindexStatusDTO cancel() {
+        return userReindexService.cancel();
+    }
+}
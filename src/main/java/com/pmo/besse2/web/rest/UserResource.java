@@ -5,8 +5,11 @@ import com.pmo.besse2.domain.User;
 import com.pmo.besse2.repository.UserRepository;
 import com.pmo.besse2.security.AuthoritiesConstants;
 import com.pmo.besse2.service.MailService;
+import com.pmo.besse2.service.UserImportService;
 import com.pmo.besse2.service.UserService;
 import com.pmo.besse2.service.dto.AdminUserDTO;
+import com.pmo.besse2.service.dto.UserCursor;
+import com.pmo.besse2.service.dto.UserImportResultDTO;
 import com.pmo.besse2.web.rest.errors.BadRequestAlertException;
 import com.pmo.besse2.web.rest.errors.EmailAlreadyUsedException;
 import com.pmo.besse2.web.rest.errors.LoginAlreadyUsedException;
@@ -16,15 +19,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import javax.validation.Valid;
 import javax.validation.constraints.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -80,6 +88,12 @@ public class UserResource {
         )
     );
 
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+
+    private static final StringDecoder LINE_DECODER = StringDecoder.allMimeTypes(StringDecoder.DEFAULT_DELIMITERS, true);
+
     private final Logger log = LoggerFactory.getLogger(UserResource.class);
 
     @Value("${jhipster.clientApp.name}")
@@ -91,10 +105,18 @@ public class UserResource {
 
     private final MailService mailService;
 
-    public UserResource(UserService userService, UserRepository userRepository, MailService mailService) {
+    private final UserImportService userImportService;
+
+    public UserResource(
+        UserService userService,
+        UserRepository userRepository,
+        MailService mailService,
+        UserImportService userImportService
+    ) {
         this.userService = userService;
         this.userRepository = userRepository;
         this.mailService = mailService;
+        this.userImportService = userImportService;
     }
 
     /**
@@ -146,6 +168,37 @@ public class UserResource {
             });
     }
 
+    /**
+     * {@code POST  /admin/users/import}  : Creates users in bulk.
+     * <p>
+     * The body is either newline delimited JSON, with one user per line, or CSV with a header line naming the columns
+     * ({@code login}, {@code firstName}, {@code lastName}, {@code email}, {@code imageUrl}, {@code langKey},
+     * {@code activated} and {@code authorities}, separated by {@value UserImportService#CSV_AUTHORITIES_SEPARATOR}).
+     * The outcome of each line is streamed back as newline delimited JSON while the import goes on.
+     *
+     * @param request the request, whose body holds the users to create.
+     * @param sendCreationEmail whether to send the creation email to the created users.
+     * @return the {@link Flux} of the outcome of each line.
+     */
+    @PostMapping(
+        value = "/users/import",
+        consumes = { MediaType.APPLICATION_NDJSON_VALUE, UserResource.TEXT_CSV_VALUE },
+        produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public Flux<UserImportResultDTO> importUsers(
+        ServerHttpRequest request,
+        @RequestParam(name = "sendCreationEmail", defaultValue = "false") boolean sendCreationEmail
+    ) {
+        log.debug("REST request to import Users");
+        MediaType contentType = request.getHeaders().getContentType();
+        UserImportService.Format format = contentType != null && contentType.isCompatibleWith(TEXT_CSV)
+            ? UserImportService.Format.CSV
+            : UserImportService.Format.NDJSON;
+        Flux<String> lines = LINE_DECODER.decode(request.getBody(), ResolvableType.forClass(String.class), contentType, null);
+        return userImportService.importUsers(lines, format, sendCreationEmail);
+    }
+
     /**
      * {@code PUT /admin/users} : Updates an existing User.
      *
@@ -187,21 +240,31 @@ public class UserResource {
 
     /**
      * {@code GET /admin/users} : get all users with all the details - calling this are only allowed for the administrators.
+     * <p>
+     * When the {@code after} parameter is present (an empty value starts from the beginning), the users are paged with a
+     * cursor instead of an offset, and the next page is given in the {@code Link} header.
      *
      * @param request a {@link ServerHttpRequest} request.
      * @param pageable the pagination information.
+     * @param after the cursor of the requested page, if cursor based pagination is used.
+     * @param withTotal whether the total count should be sent when cursor based pagination is used.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body all users.
      */
     @GetMapping("/users")
     @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
     public Mono<ResponseEntity<Flux<AdminUserDTO>>> getAllUsers(
         @org.springdoc.api.annotations.ParameterObject ServerHttpRequest request,
-        @org.springdoc.api.annotations.ParameterObject Pageable pageable
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable,
+        @RequestParam(name = CursorPaginationUtil.AFTER_PARAMETER, required = false) String after,
+        @RequestParam(name = "withTotal", defaultValue = "false") boolean withTotal
     ) {
         log.debug("REST request to get all User for an admin");
         if (!onlyContainsAllowedProperties(pageable)) {
             return Mono.just(ResponseEntity.badRequest().build());
         }
+        if (after != null) {
+            return getAllUsersAfter(request, pageable, after, withTotal);
+        }
 
         return userService
             .countManagedUsers()
@@ -210,6 +273,35 @@ public class UserResource {
             .map(headers -> ResponseEntity.ok().headers(headers).body(userService.getAllManagedUsers(pageable)));
     }
 
+    private Mono<ResponseEntity<Flux<AdminUserDTO>>> getAllUsersAfter(
+        ServerHttpRequest request,
+        Pageable pageable,
+        String after,
+        boolean withTotal
+    ) {
+        UserCursor cursor = CursorPaginationUtil.parseCursor(after, pageable, "userManagement");
+        // The order of a cursor comes from its token, not from the checked sort parameter
+        if (!ALLOWED_ORDERED_PROPERTIES.contains(cursor.getOrder().getProperty())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        int size = pageable.getPageSize();
+        Mono<Optional<Long>> total = withTotal ? userService.countManagedUsers().map(Optional::of) : Mono.just(Optional.empty());
+        return userService
+            .getAllManagedUsers(cursor, size)
+            .collectList()
+            .zipWith(total)
+            .map(pageAndTotal -> {
+                List<User> users = pageAndTotal.getT1();
+                UserCursor next = users.size() < size ? null : cursor.next(users.get(users.size() - 1));
+                HttpHeaders headers = CursorPaginationUtil.generateCursorHttpHeaders(
+                    UriComponentsBuilder.fromHttpRequest(request),
+                    next,
+                    pageAndTotal.getT2().orElse(null)
+                );
+                return ResponseEntity.ok().headers(headers).body(Flux.fromIterable(users).map(AdminUserDTO::new));
+            });
+    }
+
     private boolean onlyContainsAllowedProperties(Pageable pageable) {
         return pageable.getSort().stream().map(Sort.Order::getProperty).allMatch(ALLOWED_ORDERED_PROPERTIES::contains);
     }
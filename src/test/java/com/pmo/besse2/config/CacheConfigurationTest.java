@@ -0,0 +1,169 @@
+package com.pmo.besse2.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.pmo.besse2.domain.User;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.ResourceType;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import tech.jhipster.config.JHipsterProperties;
+
+/**
+ * Unit tests for the per cache policies of {@link CacheConfiguration}.
+ */
+class CacheConfigurationTest {
+
+    private static final ClassLoader CLASS_LOADER = CacheConfigurationTest.class.getClassLoader();
+
+    @TempDir
+    Path diskPath;
+
+    private JHipsterProperties jHipsterProperties;
+
+    private ApplicationProperties applicationProperties;
+
+    @BeforeEach
+    void setUp() {
+        jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getCache().getEhcache().setMaxEntries(50);
+        jHipsterProperties.getCache().getEhcache().setTimeToLiveSeconds(60);
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getCaches().setDiskPath(diskPath.toString());
+    }
+
+    @Test
+    void cachesWithoutPolicyUseTheJHipsterSettings() {
+        org.ehcache.config.CacheConfiguration<Object, Object> configuration = new CacheConfiguration(
+            jHipsterProperties,
+            applicationProperties
+        )
+            .ehcacheConfiguration("other", Object.class, Object.class, CLASS_LOADER);
+
+        assertThat(configuration.getResourcePools().getResourceTypeSet()).containsExactly(ResourceType.Core.HEAP);
+        assertThat(configuration.getResourcePools().getPoolForResource(ResourceType.Core.HEAP).getSize()).isEqualTo(50);
+        assertThat(configuration.getExpiryPolicy().getExpiryForCreation("key", "value")).isEqualTo(Duration.ofSeconds(60));
+        assertThat(configuration.getExpiryPolicy().getExpiryForAccess("key", () -> "value")).isNull();
+    }
+
+    @Test
+    void policiesConfigureTheTiersAndTheTimeToIdle() {
+        ApplicationProperties.CachePolicy policy = policy("users");
+        policy.setHeapEntries(10L);
+        policy.setOffHeap(DataSize.ofMegabytes(1));
+        policy.setDisk(DataSize.ofMegabytes(2));
+        policy.setTimeToIdle(Duration.ofMinutes(5));
+
+        org.ehcache.config.CacheConfiguration<String, User> configuration = new CacheConfiguration(
+            jHipsterProperties,
+            applicationProperties
+        )
+            .ehcacheConfiguration("users", String.class, User.class, CLASS_LOADER);
+
+        assertThat(configuration.getResourcePools().getResourceTypeSet())
+            .containsExactlyInAnyOrder(ResourceType.Core.HEAP, ResourceType.Core.OFFHEAP, ResourceType.Core.DISK);
+        assertThat(configuration.getResourcePools().getPoolForResource(ResourceType.Core.HEAP).getSize()).isEqualTo(10);
+        assertThat(configuration.getExpiryPolicy().getExpiryForAccess("key", () -> null)).isEqualTo(Duration.ofMinutes(5));
+    }
+
+    @Test
+    void entriesAreSerializedToTheOffHeapAndDiskTiers() {
+        ApplicationProperties.CachePolicy usersPolicy = policy("users");
+        usersPolicy.setHeapEntries(1L);
+        usersPolicy.setOffHeap(DataSize.ofMegabytes(1));
+        usersPolicy.setDisk(DataSize.ofMegabytes(2));
+        ApplicationProperties.CachePolicy objectsPolicy = policy("objects");
+        objectsPolicy.setHeapEntries(1L);
+        objectsPolicy.setOffHeap(DataSize.ofMegabytes(1));
+        CacheConfiguration cacheConfiguration = new CacheConfiguration(jHipsterProperties, applicationProperties);
+
+        try (
+            CacheManager cacheManager = CacheManagerBuilder
+                .newCacheManagerBuilder()
+                .with(CacheManagerBuilder.persistence(diskPath.toFile()))
+                .withCache("users", cacheConfiguration.ehcacheConfiguration("users", String.class, User.class, CLASS_LOADER))
+                .withCache("objects", cacheConfiguration.ehcacheConfiguration("objects", Object.class, Object.class, CLASS_LOADER))
+                .build(true)
+        ) {
+            Cache<String, User> users = cacheManager.getCache("users", String.class, User.class);
+            for (String login : new String[] { "alice", "bob", "carol" }) {
+                User user = new User();
+                user.setLogin(login);
+                users.put(login, user);
+            }
+            Cache<Object, Object> objects = cacheManager.getCache("objects", Object.class, Object.class);
+            objects.put(1L, Set.of("a"));
+            objects.put("two", Set.of("b"));
+
+            // A single entry stays on the heap, the others are read back from the other tiers
+            assertThat(users.get("alice").getLogin()).isEqualTo("alice");
+            assertThat(users.get("bob").getLogin()).isEqualTo("bob");
+            assertThat(users.get("carol").getLogin()).isEqualTo("carol");
+            assertThat(objects.get(1L)).isEqualTo(Set.of("a"));
+            assertThat(objects.get("two")).isEqualTo(Set.of("b"));
+        }
+    }
+
+    @Test
+    void diskTiersNeedADiskPath() {
+        applicationProperties.getCaches().setDiskPath(null);
+        policy("users").setDisk(DataSize.ofMegabytes(1));
+
+        CacheConfiguration cacheConfiguration = new CacheConfiguration(jHipsterProperties, applicationProperties);
+
+        assertThatThrownBy(() -> cacheConfiguration.ehcacheConfiguration("users", String.class, User.class, CLASS_LOADER))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("disk-path");
+    }
+
+    @Test
+    void policiesCantHaveBothExpiries() {
+        ApplicationProperties.CachePolicy policy = policy("users");
+        policy.setTimeToLive(Duration.ofMinutes(1));
+        policy.setTimeToIdle(Duration.ofMinutes(1));
+
+        CacheConfiguration cacheConfiguration = new CacheConfiguration(jHipsterProperties, applicationProperties);
+
+        assertThatThrownBy(() -> cacheConfiguration.ehcacheConfiguration("users", String.class, User.class, CLASS_LOADER))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void staleEntriesAreKeptDuringTheStaleWhileRevalidateTime() {
+        ApplicationProperties.CachePolicy policy = policy("users");
+        policy.setTimeToLive(Duration.ofMinutes(10));
+        policy.setStaleWhileRevalidate(Duration.ofMinutes(1));
+
+        org.ehcache.config.CacheConfiguration<String, User> configuration = new CacheConfiguration(
+            jHipsterProperties,
+            applicationProperties
+        )
+            .ehcacheConfiguration("users", String.class, User.class, CLASS_LOADER);
+
+        assertThat(configuration.getExpiryPolicy().getExpiryForCreation("key", null)).isEqualTo(Duration.ofMinutes(11));
+    }
+
+    @Test
+    void refreshesNeedATimeToLive() {
+        ApplicationProperties.CachePolicy policy = policy("users");
+        policy.setTimeToIdle(Duration.ofMinutes(10));
+        policy.setEarlyExpirationBeta(1);
+
+        CacheConfiguration cacheConfiguration = new CacheConfiguration(jHipsterProperties, applicationProperties);
+
+        assertThatThrownBy(() -> cacheConfiguration.ehcacheConfiguration("users", String.class, User.class, CLASS_LOADER))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    private ApplicationProperties.CachePolicy policy(String cacheName) {
+        return applicationProperties.getCaches().getPolicies().computeIfAbsent(cacheName, name -> new ApplicationProperties.CachePolicy());
+    }
+}
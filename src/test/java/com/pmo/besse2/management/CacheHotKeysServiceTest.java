@@ -0,0 +1,71 @@
+package com.pmo.besse2.management;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CacheHotKeysServiceTest {
+
+    private CacheHotKeysService cacheHotKeysService;
+
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    public void setup() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        EhcacheCachingProvider cachingProvider = (EhcacheCachingProvider) Caching.getCachingProvider(
+            EhcacheCachingProvider.class.getName(),
+            classLoader
+        );
+        cacheHotKeysService = new CacheHotKeysService(new ApplicationProperties());
+        cacheManager =
+            cacheHotKeysService.track(
+                cachingProvider.getCacheManager(URI.create("urn:cache-hot-keys-service-test"), new DefaultConfiguration(classLoader))
+            );
+        cacheManager.createCache("users", new MutableConfiguration<String, String>().setTypes(String.class, String.class));
+        cacheManager.createCache("buckets", new MutableConfiguration<String, String>().setTypes(String.class, String.class));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cacheManager.close();
+    }
+
+    @Test
+    void testReadsOfEveryCacheAreTracked() {
+        Cache<String, String> users = cacheManager.getCache("users", String.class, String.class);
+        Cache<String, String> buckets = cacheManager.getCache("buckets", String.class, String.class);
+        users.put("alice", "Alice");
+        users.get("alice");
+        users.get("alice");
+        users.getAll(Set.of("alice", "bob"));
+        buckets.invoke("ip:127.0.0.1", (entry, arguments) -> entry.getValue());
+
+        List<HotKeySketch.HotKey> hotKeys = cacheHotKeysService.hotKeys("users");
+        assertThat(hotKeys).extracting(HotKeySketch.HotKey::getKey).containsExactly("alice", "bob");
+        assertThat(hotKeys.get(0).getEstimatedCount()).isGreaterThanOrEqualTo(3);
+        assertThat(cacheHotKeysService.hotKeys("buckets")).extracting(HotKeySketch.HotKey::getKey).containsExactly("ip:127.0.0.1");
+        assertThat(cacheHotKeysService.hotKeys("unknown")).isEmpty();
+    }
+
+    @Test
+    void testWritesAreNotTracked() {
+        Cache<String, String> users = cacheManager.getCache("users", String.class, String.class);
+        users.put("alice", "Alice");
+        users.remove("alice");
+
+        assertThat(cacheHotKeysService.hotKeys("users")).isEmpty();
+    }
+}
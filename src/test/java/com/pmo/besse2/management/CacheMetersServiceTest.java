@@ -0,0 +1,91 @@
+package com.pmo.besse2.management;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.util.List;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CacheMetersServiceTest {
+
+    private CacheManager cacheManager;
+
+    private MeterRegistry meterRegistry;
+
+    private CacheMetersService cacheMetersService;
+
+    @BeforeEach
+    public void setup() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        EhcacheCachingProvider cachingProvider = (EhcacheCachingProvider) Caching.getCachingProvider(
+            EhcacheCachingProvider.class.getName(),
+            classLoader
+        );
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        CacheHotKeysService cacheHotKeysService = new CacheHotKeysService(applicationProperties);
+        cacheManager =
+            cacheHotKeysService.track(
+                cachingProvider.getCacheManager(URI.create("urn:cache-meters-service-test"), new DefaultConfiguration(classLoader))
+            );
+        cacheManager.createCache("users", new MutableConfiguration<String, String>().setTypes(String.class, String.class));
+        cacheManager.enableStatistics("users", true);
+        meterRegistry = new SimpleMeterRegistry();
+        cacheMetersService = new CacheMetersService(cacheManager, meterRegistry, cacheHotKeysService, applicationProperties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cacheMetersService.destroy();
+        cacheManager.close();
+    }
+
+    @Test
+    void testStatisticsAreReadFromTheCache() {
+        Cache<String, String> cache = cacheManager.getCache("users", String.class, String.class);
+        cache.put("alice", "Alice");
+        cache.get("alice");
+        cache.get("bob");
+
+        CacheMetersService.Snapshot snapshot = cacheMetersService.snapshot().get("users");
+
+        assertThat(snapshot.getHits()).isEqualTo(1);
+        assertThat(snapshot.getMisses()).isEqualTo(1);
+        assertThat(snapshot.getHitRatio()).isEqualTo(0.5f);
+        assertThat(snapshot.getPuts()).isEqualTo(1);
+        assertThat(meterRegistry.find(CacheMetersService.LATENCY_METER_NAME).tag("cache", "users").timeGauges()).hasSize(3);
+        assertThat(meterRegistry.find(CacheMetersService.ENTRY_SIZE_METER_NAME).tag("cache", "users").summary()).isNotNull();
+    }
+
+    @Test
+    void testHottestKeysReadAreReported() {
+        Cache<String, String> cache = cacheManager.getCache("users", String.class, String.class);
+        for (int i = 0; i < 5; i++) {
+            cache.get("alice");
+        }
+        cache.get("bob");
+
+        List<HotKeySketch.HotKey> hotKeys = cacheMetersService.snapshot().get("users").getHotKeys();
+
+        assertThat(hotKeys).extracting(HotKeySketch.HotKey::getKey).containsExactly("alice", "bob");
+        assertThat(hotKeys.get(0).getEstimatedCount()).isGreaterThanOrEqualTo(5);
+    }
+
+    @Test
+    void testSizeOfSerializedEntries() {
+        assertThat(CacheMetersService.sizeOf(new byte[12])).isEqualTo(12);
+        assertThat(CacheMetersService.sizeOf("é")).isEqualTo(2);
+        assertThat(CacheMetersService.sizeOf(List.of(1L, 2L))).isPositive();
+        assertThat(CacheMetersService.sizeOf(new Object())).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.pmo.besse2.management;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class HotKeySketchTest {
+
+    @Test
+    void testHottestKeysAreFoundAmongManyColdOnes() {
+        HotKeySketch sketch = new HotKeySketch(1024, 6);
+        for (int round = 0; round < 100; round++) {
+            sketch.add("hot-1");
+            sketch.add("hot-1");
+            sketch.add("hot-1");
+            sketch.add("hot-2");
+            sketch.add("hot-2");
+            sketch.add("hot-3");
+            for (int cold = 0; cold < 20; cold++) {
+                sketch.add("cold-" + round + "-" + cold);
+            }
+        }
+
+        List<String> hotKeys = sketch.hotKeys(3).stream().map(HotKeySketch.HotKey::getKey).collect(Collectors.toList());
+
+        assertThat(hotKeys).containsExactly("hot-1", "hot-2", "hot-3");
+    }
+
+    @Test
+    void testEstimatesAreNeverLowerThanTheCounts() {
+        HotKeySketch sketch = new HotKeySketch(16, 4);
+        for (int i = 0; i < 50; i++) {
+            sketch.add("key");
+            sketch.add("other-" + (i % 8));
+        }
+
+        assertThat(sketch.hotKeys(1))
+            .singleElement()
+            .satisfies(hotKey -> assertThat(hotKey.getEstimatedCount()).isGreaterThanOrEqualTo(50));
+    }
+
+    @Test
+    void testCountsAreHalvedSoThatOldKeysFade() {
+        HotKeySketch sketch = new HotKeySketch(16, 2);
+        for (int i = 0; i < 15; i++) {
+            sketch.add("old");
+        }
+        // The counts are halved after 160 additions
+        for (int i = 0; i < 200; i++) {
+            sketch.add("new");
+        }
+
+        List<HotKeySketch.HotKey> hotKeys = sketch.hotKeys(2);
+        assertThat(hotKeys).extracting(HotKeySketch.HotKey::getKey).containsExactly("new", "old");
+        assertThat(hotKeys.get(1).getEstimatedCount()).isEqualTo(7);
+    }
+}
@@ -0,0 +1,163 @@
+package com.pmo.besse2.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+class BatchLoaderTest {
+
+    private static final Duration WINDOW = Duration.ofMillis(5);
+
+    private final List<List<String>> queries = new ArrayList<>();
+
+    private ManualScheduler scheduler;
+
+    private MeterRegistry meterRegistry;
+
+    private BatchLoader<String, StringBuilder> batchLoader;
+
+    @BeforeEach
+    public void setup() {
+        scheduler = new ManualScheduler();
+        meterRegistry = new SimpleMeterRegistry();
+        batchLoader = createBatchLoader(keys -> Flux.fromIterable(keys).filter(key -> !key.startsWith("unknown")).map(StringBuilder::new));
+    }
+
+    private BatchLoader<String, StringBuilder> createBatchLoader(Function<Collection<String>, Flux<StringBuilder>> query) {
+        return new BatchLoader<>(
+            keys -> {
+                queries.add(new ArrayList<>(keys));
+                return query.apply(keys);
+            },
+            StringBuilder::toString,
+            value -> new StringBuilder(value),
+            WINDOW,
+            3,
+            scheduler,
+            DistributionSummary.builder("batch.size").register(meterRegistry),
+            Timer.builder("wait").register(meterRegistry)
+        );
+    }
+
+    @Test
+    void testKeysRequestedWithinTheWindowAreLoadedTogether() {
+        AtomicReference<StringBuilder> first = subscribe(batchLoader.load("a"));
+        AtomicReference<StringBuilder> second = subscribe(batchLoader.load("b"));
+
+        assertThat(queries).isEmpty();
+        scheduler.runDelayedTasks();
+
+        assertThat(queries).containsExactly(List.of("a", "b"));
+        assertThat(first.get()).hasToString("a");
+        assertThat(second.get()).hasToString("b");
+        assertThat(meterRegistry.get("batch.size").summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get("wait").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void testFullBatchIsLoadedAtOnce() {
+        subscribe(batchLoader.load("a"));
+        subscribe(batchLoader.load("b"));
+        AtomicReference<StringBuilder> third = subscribe(batchLoader.load("c"));
+        AtomicReference<StringBuilder> fourth = subscribe(batchLoader.load("d"));
+
+        assertThat(queries).containsExactly(List.of("a", "b", "c"));
+        assertThat(third.get()).hasToString("c");
+        assertThat(fourth.get()).isNull();
+
+        scheduler.runDelayedTasks();
+
+        assertThat(queries).containsExactly(List.of("a", "b", "c"), List.of("d"));
+        assertThat(fourth.get()).hasToString("d");
+    }
+
+    @Test
+    void testSubscribersOfTheSameKeyGetTheirOwnValue() {
+        AtomicReference<StringBuilder> first = subscribe(batchLoader.load("a"));
+        AtomicReference<StringBuilder> second = subscribe(batchLoader.load("a"));
+
+        scheduler.runDelayedTasks();
+
+        assertThat(queries).containsExactly(List.of("a"));
+        assertThat(first.get()).hasToString("a");
+        assertThat(second.get()).hasToString("a").isNotSameAs(first.get());
+    }
+
+    @Test
+    void testKeysWithoutValueAreEmpty() {
+        Mono<StringBuilder> unknown = batchLoader.load("unknown").cache();
+        unknown.subscribe();
+
+        scheduler.runDelayedTasks();
+
+        assertThat(unknown.blockOptional()).isEmpty();
+    }
+
+    @Test
+    void testQueryErrorsAreSignaledToAllTheSubscribers() {
+        batchLoader = createBatchLoader(keys -> Flux.error(new IllegalStateException("failed")));
+        Mono<StringBuilder> first = batchLoader.load("a").cache();
+        Mono<StringBuilder> second = batchLoader.load("b").cache();
+        first.subscribe(value -> {}, error -> {});
+        second.subscribe(value -> {}, error -> {});
+
+        scheduler.runDelayedTasks();
+
+        assertThat(first.map(StringBuilder::toString).onErrorReturn(IllegalStateException.class, "error").block()).isEqualTo("error");
+        assertThat(second.map(StringBuilder::toString).onErrorReturn(IllegalStateException.class, "error").block()).isEqualTo("error");
+        assertThat(queries).hasSize(1);
+    }
+
+    /**
+     * Runs the delayed tasks when asked to, as if their delay had elapsed.
+     */
+    private static class ManualScheduler implements Scheduler {
+
+        private final List<Runnable> delayedTasks = new ArrayList<>();
+
+        @Override
+        public Disposable schedule(Runnable task) {
+            task.run();
+            return () -> {};
+        }
+
+        @Override
+        public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+            delayedTasks.add(task);
+            return () -> delayedTasks.remove(task);
+        }
+
+        @Override
+        public Worker createWorker() {
+            throw new UnsupportedOperationException();
+        }
+
+        void runDelayedTasks() {
+            List<Runnable> tasks = new ArrayList<>(delayedTasks);
+            delayedTasks.clear();
+            tasks.forEach(Runnable::run);
+        }
+    }
+
+    private static AtomicReference<StringBuilder> subscribe(Mono<StringBuilder> load) {
+        AtomicReference<StringBuilder> value = new AtomicReference<>();
+        load.subscribe(value::set);
+        return value;
+    }
+}
@@ -0,0 +1,253 @@
+package com.pmo.besse2.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.domain.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Unit tests for {@link UserLookupCache}.
+ */
+class UserLookupCacheTest {
+
+    private static final String LOGIN = "johndoe";
+
+    private UserRepository userRepository;
+
+    private UserBatchLoader userBatchLoader;
+
+    private MeterRegistry meterRegistry;
+
+    private ConcurrentMapCacheManager cacheManager;
+
+    private ApplicationProperties.CachePolicy policy;
+
+    private UserLookupCache userLookupCache;
+
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        userRepository = mock(UserRepository.class);
+        userBatchLoader = mock(UserBatchLoader.class);
+        cacheManager = new ConcurrentMapCacheManager(UserRepository.USERS_BY_LOGIN_CACHE, UserRepository.USERS_BY_EMAIL_CACHE);
+        policy = new ApplicationProperties.CachePolicy();
+        policy.setTimeToLive(Duration.ofHours(1));
+        policy.setStaleWhileRevalidate(Duration.ofMinutes(1));
+        createUserLookupCache(applicationPropertiesWith(policy));
+
+        user = new User();
+        user.setId(1L);
+        user.setLogin(LOGIN);
+        user.setEmail("johndoe@localhost");
+    }
+
+    @Test
+    void testSecondLookupIsServedFromCache() {
+        AtomicInteger queries = new AtomicInteger();
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Mono.fromCallable(() -> {
+            queries.incrementAndGet();
+            return user;
+        }));
+
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(user);
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(user);
+
+        assertThat(queries).hasValue(1);
+        assertThat(lookups("hit")).isEqualTo(1);
+        assertThat(lookups("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void testConcurrentLookupsAreCoalesced() {
+        Sinks.One<User> result = Sinks.one();
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(result.asMono());
+
+        Mono<User> first = userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).cache();
+        Mono<User> second = userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).cache();
+        first.subscribe();
+        second.subscribe();
+        result.tryEmitValue(user);
+
+        assertThat(first.block()).isSameAs(user);
+        assertThat(second.block()).isSameAs(user);
+        verify(userBatchLoader, times(1)).findOneWithAuthoritiesByLogin(LOGIN);
+        assertThat(lookups("coalesced")).isEqualTo(1);
+    }
+
+    @Test
+    void testEvictedUserIsLoadedAgain() {
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Mono.just(user));
+
+        userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block();
+        userLookupCache.evict(user);
+        userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block();
+
+        verify(userBatchLoader, times(2)).findOneWithAuthoritiesByLogin(LOGIN);
+    }
+
+    @Test
+    void testLookupInFlightDuringEvictionDoesNotCacheItsUser() {
+        Sinks.One<User> result = Sinks.one();
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(result.asMono(), Mono.just(user));
+
+        Mono<User> lookup = userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).cache();
+        lookup.subscribe();
+        userLookupCache.evict(UserRepository.USERS_BY_LOGIN_CACHE, LOGIN);
+        result.tryEmitValue(user);
+        lookup.block();
+        userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block();
+
+        verify(userBatchLoader, times(2)).findOneWithAuthoritiesByLogin(LOGIN);
+    }
+
+    @Test
+    void testLookupEvictedWhileInFlightDoesNotRemoveTheNextOne() {
+        Sinks.One<User> evictedResult = Sinks.one();
+        Sinks.One<User> nextResult = Sinks.one();
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(evictedResult.asMono(), nextResult.asMono());
+
+        Mono<User> evictedLookup = userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).cache();
+        evictedLookup.subscribe();
+        userLookupCache.evict(UserRepository.USERS_BY_LOGIN_CACHE, LOGIN);
+        Mono<User> nextLookup = userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).cache();
+        nextLookup.subscribe();
+        evictedResult.tryEmitValue(user);
+        evictedLookup.block();
+        Mono<User> coalescedLookup = userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).cache();
+        coalescedLookup.subscribe();
+        nextResult.tryEmitValue(user);
+
+        assertThat(coalescedLookup.block()).isSameAs(user);
+        verify(userBatchLoader, times(2)).findOneWithAuthoritiesByLogin(LOGIN);
+        assertThat(lookups("coalesced")).isEqualTo(1);
+    }
+
+    @Test
+    void testUnknownUserIsNotCached() {
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Mono.empty());
+
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).blockOptional()).isEmpty();
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).blockOptional()).isEmpty();
+
+        verify(userBatchLoader, times(2)).findOneWithAuthoritiesByLogin(LOGIN);
+    }
+
+    @Test
+    void testStaleUserIsReturnedWhileItIsRefreshed() {
+        User staleUser = new User();
+        staleUser.setLogin(LOGIN);
+        putCachedUser(staleUser, System.currentTimeMillis() - Duration.ofMinutes(61).toMillis());
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Mono.just(user));
+
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(staleUser);
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(user);
+
+        verify(userBatchLoader, times(1)).findOneWithAuthoritiesByLogin(LOGIN);
+        assertThat(lookups("stale")).isEqualTo(1);
+        assertThat(lookups("hit")).isEqualTo(1);
+        assertThat(refreshes("stale")).isEqualTo(1);
+    }
+
+    @Test
+    void testConcurrentRefreshesShareASingleQuery() {
+        Sinks.One<User> result = Sinks.one();
+        putCachedUser(user, System.currentTimeMillis() - Duration.ofMinutes(61).toMillis());
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(result.asMono());
+
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(user);
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(user);
+        result.tryEmitValue(user);
+
+        verify(userBatchLoader, times(1)).findOneWithAuthoritiesByLogin(LOGIN);
+        assertThat(refreshes("stale")).isEqualTo(1);
+    }
+
+    @Test
+    void testUserIsRefreshedBeforeItExpires() {
+        policy.setEarlyExpirationBeta(1e12);
+        createUserLookupCache(applicationPropertiesWith(policy));
+        User cachedUser = new User();
+        cachedUser.setLogin(LOGIN);
+        putCachedUser(cachedUser, System.currentTimeMillis());
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Mono.just(user));
+
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(cachedUser);
+
+        verify(userBatchLoader, times(1)).findOneWithAuthoritiesByLogin(LOGIN);
+        assertThat(lookups("hit")).isEqualTo(1);
+        assertThat(refreshes("early")).isEqualTo(1);
+    }
+
+    @Test
+    void testFreshUserIsNotRefreshedWithoutEarlyExpiration() {
+        putCachedUser(user, System.currentTimeMillis());
+
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(user);
+
+        verify(userBatchLoader, never()).findOneWithAuthoritiesByLogin(LOGIN);
+    }
+
+    @Test
+    void testRefreshedUserWhichDoesNotExistAnymoreIsEvicted() {
+        putCachedUser(user, System.currentTimeMillis() - Duration.ofMinutes(61).toMillis());
+        when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Mono.empty());
+
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block()).isSameAs(user);
+        assertThat(userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).blockOptional()).isEmpty();
+
+        verify(userBatchLoader, times(2)).findOneWithAuthoritiesByLogin(LOGIN);
+    }
+
+    private void createUserLookupCache(ApplicationProperties applicationProperties) {
+        meterRegistry = new SimpleMeterRegistry();
+        userLookupCache =
+            new UserLookupCache(
+                userRepository,
+                userBatchLoader,
+                cacheManager,
+                applicationProperties,
+                meterRegistry
+            );
+    }
+
+    private static ApplicationProperties applicationPropertiesWith(ApplicationProperties.CachePolicy policy) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getCaches().getPolicies().put(UserRepository.USERS_BY_LOGIN_CACHE, policy);
+        return applicationProperties;
+    }
+
+    private void putCachedUser(User cachedUser, long loadedAtMillis) {
+        Cache cache = cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        cache.put(LOGIN, new UserLookupCache.CachedUser(cachedUser, loadedAtMillis, 1_000_000));
+    }
+
+    private double refreshes(String trigger) {
+        return meterRegistry
+            .get(UserLookupCache.REFRESHES_METER_NAME)
+            .tag("cache", UserRepository.USERS_BY_LOGIN_CACHE)
+            .tag("trigger", trigger)
+            .counter()
+            .count();
+    }
+
+    private double lookups(String result) {
+        return meterRegistry
+            .get(UserLookupCache.LOOKUPS_METER_NAME)
+            .tag("cache", UserRepository.USERS_BY_LOGIN_CACHE)
+            .tag("result", result)
+            .counter()
+            .count();
+    }
+}
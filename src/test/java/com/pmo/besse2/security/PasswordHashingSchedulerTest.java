@@ -0,0 +1,77 @@
+package com.pmo.besse2.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PasswordHashingScheduler}.
+ */
+class PasswordHashingSchedulerTest {
+
+    private MeterRegistry meterRegistry;
+
+    private PasswordHashingScheduler passwordHashingScheduler;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getPasswordHashing().setBcryptStrength(4);
+        applicationProperties.getPasswordHashing().setPoolSize(1);
+        applicationProperties.getPasswordHashing().setQueueCapacity(1);
+        meterRegistry = new SimpleMeterRegistry();
+        passwordHashingScheduler = new PasswordHashingScheduler(applicationProperties, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        passwordHashingScheduler.destroy();
+    }
+
+    @Test
+    void testEncodedPasswordMatches() {
+        String encodedPassword = passwordHashingScheduler.encode("password").block();
+
+        assertThat(passwordHashingScheduler.matches("password", encodedPassword).block()).isTrue();
+        assertThat(passwordHashingScheduler.matches("other", encodedPassword).block()).isFalse();
+        assertThat(hashingTimerCount("encode")).isEqualTo(1);
+        assertThat(hashingTimerCount("matches")).isEqualTo(2);
+    }
+
+    @Test
+    void testSaturatedSchedulerRejectsHashing() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        passwordHashingScheduler
+            .getScheduler()
+            .schedule(() -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        running.await();
+        passwordHashingScheduler.getScheduler().schedule(() -> {});
+
+        try {
+            assertThatThrownBy(() -> passwordHashingScheduler.encode("password").block())
+                .isInstanceOf(PasswordHashingUnavailableException.class);
+            assertThat(meterRegistry.get(PasswordHashingScheduler.REJECTED_METER_NAME).counter().count()).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private long hashingTimerCount(String operation) {
+        return meterRegistry.get(PasswordHashingScheduler.HASHING_METER_NAME).tag("operation", operation).timer().count();
+    }
+}
@@ -0,0 +1,100 @@
+package com.pmo.besse2.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.security.web.server.authorization.DelegatingReactiveAuthorizationManager;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcherEntry;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+class PathAuthorizationManagerTest {
+
+    private static final Authentication USER = authentication("user", AuthoritiesConstants.USER);
+
+    private static final Authentication ADMIN = authentication("admin", AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN);
+
+    private final PathAuthorizationManager authorizationManager = PathAuthorizationManager
+        .builder()
+        .permitAll("/", "/*.*", "/api/authenticate")
+        .hasAuthority(AuthoritiesConstants.ADMIN, "/api/admin/**")
+        .authenticated("/api/**")
+        .hasAuthority(AuthoritiesConstants.ADMIN, "/services/*/v3/api-docs")
+        .authenticated("/services/**")
+        .build();
+
+    @Test
+    void shouldDecideLikeTheSequenceOfPathMatchers() {
+        DelegatingReactiveAuthorizationManager.Builder builder = DelegatingReactiveAuthorizationManager.builder();
+        for (PathAuthorizationManager.Rule rule : authorizationManager.getRules()) {
+            builder.add(new ServerWebExchangeMatcherEntry<>(ServerWebExchangeMatchers.pathMatchers(rule.getPattern()), rule.getAccess()));
+        }
+        DelegatingReactiveAuthorizationManager pathMatchers = builder.build();
+
+        List<String> paths = List.of(
+            "/",
+            "/index.html",
+            "/api/authenticate",
+            "/api/authenticate/",
+            "/api/account",
+            "/api/admin/users",
+            "/api//admin/users",
+            "/api/admin;a=b/users",
+            "/services/service-a/v3/api-docs",
+            "/services/service-a/api/items",
+            "/management/info",
+            "/client/route"
+        );
+        for (String path : paths) {
+            for (Authentication authentication : new Authentication[] { null, USER, ADMIN }) {
+                ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+                assertThat(isGranted(authorizationManager, authentication, new AuthorizationContext(exchange)))
+                    .as("%s as %s", path, authentication)
+                    .isEqualTo(isGranted(pathMatchers, authentication, exchange));
+            }
+        }
+    }
+
+    @Test
+    void shouldDenyThePathsWithoutRule() {
+        ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/management/info"));
+
+        assertThat(isGranted(authorizationManager, ADMIN, new AuthorizationContext(exchange))).isFalse();
+    }
+
+    @Test
+    void shouldApplyTheAccessOfTheFirstMatchingRule() {
+        ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/admin/users"));
+
+        assertThat(isGranted(authorizationManager, USER, new AuthorizationContext(exchange))).isFalse();
+        assertThat(isGranted(authorizationManager, ADMIN, new AuthorizationContext(exchange))).isTrue();
+    }
+
+    private static <T> boolean isGranted(ReactiveAuthorizationManager<T> manager, Authentication authentication, T object) {
+        return manager
+            .check(Mono.justOrEmpty(authentication), object)
+            .map(AuthorizationDecision::isGranted)
+            .defaultIfEmpty(false)
+            .block();
+    }
+
+    private static Authentication authentication(String login, String... authorities) {
+        return new UsernamePasswordAuthenticationToken(
+            login,
+            login,
+            Arrays.stream(authorities).map(SimpleGrantedAuthority::new).collect(Collectors.toList())
+        );
+    }
+}
@@ -0,0 +1,113 @@
+package com.pmo.besse2.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.RequestPath;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+class PathRulesTest {
+
+    private static final List<String> PATTERNS = List.of(
+        "/",
+        "/*.*",
+        "/api/authenticate",
+        "/api/account/reset-password/init",
+        "/api/admin/**",
+        "/api/**",
+        "/services/*/v3/api-docs",
+        "/services/**",
+        "/management/health",
+        "/management/health/**",
+        "/management/*-info",
+        "/management/**",
+        "/static/*.js/**",
+        "/**"
+    );
+
+    private static final List<String> PATHS = List.of(
+        "/",
+        "//",
+        "/index.html",
+        "/index.html/",
+        "/favicon.ico/x",
+        "/.",
+        "/api",
+        "/api/",
+        "/api//authenticate",
+        "/api/authenticate",
+        "/api/authenticate/",
+        "/api/authenticate//",
+        "/api/Authenticate",
+        "/api/authenticate;jsessionid=1",
+        "/api/%61uthenticate",
+        "/api/account/reset-password/init",
+        "/api/account/reset-password",
+        "/api/admin",
+        "/api/admin/users",
+        "/api/admin;a=b/users",
+        "/api/admin//users",
+        "/apis",
+        "/services/service-a/v3/api-docs",
+        "/services/service-a/v3/api-docs/",
+        "/services/service-a/v3/api-docs/swagger-config",
+        "/services/;a=b/v3/api-docs",
+        "/services//v3/api-docs",
+        "/services/v3/api-docs",
+        "/management/health",
+        "/management/health/liveness",
+        "/management/healthz",
+        "/management/app-info",
+        "/management/-info",
+        "/management/info",
+        "/static/main.js",
+        "/static/main.js/map",
+        "/static/main.css/map",
+        "/client/route"
+    );
+
+    private final PathPatternParser parser = new PathPatternParser();
+
+    @Test
+    void shouldMatchTheFirstPatternLikeThePathPatterns() {
+        for (int count = 1; count <= PATTERNS.size(); count++) {
+            List<String> patterns = PATTERNS.subList(0, count);
+            PathRules.Builder<String> builder = PathRules.builder();
+            patterns.forEach(pattern -> builder.add(pattern, pattern));
+            PathRules<String> rules = builder.build();
+
+            for (String path : PATHS) {
+                RequestPath requestPath = RequestPath.parse(path, null);
+                String expected = patterns
+                    .stream()
+                    .filter(pattern -> parser.parse(pattern).matches(requestPath.pathWithinApplication()))
+                    .findFirst()
+                    .orElse(null);
+                assertThat(rules.match(requestPath.pathWithinApplication())).as("%s with %s", path, patterns).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void shouldKeepTheFirstOfTheSamePatterns() {
+        PathRules<String> rules = PathRules.<String>builder().add("first", "/api/**").add("second", "/api/**").build();
+
+        assertThat(rules.match(RequestPath.parse("/api/users", null))).isEqualTo("first");
+    }
+
+    @Test
+    void shouldNotMatchWithoutPatterns() {
+        PathRules<String> rules = PathRules.<String>builder().build();
+
+        assertThat(rules.match(RequestPath.parse("/", null))).isNull();
+    }
+
+    @Test
+    void shouldRejectTheUnsupportedPatterns() {
+        for (String pattern : List.of("api/**", "/services/*", "/api/{id}", "/api/**/users", "/api/user?", "/api/")) {
+            assertThatThrownBy(() -> PathRules.builder().add(true, pattern)).as(pattern).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.pmo.besse2.service;
+
+import com.pmo.besse2.service.dto.CacheInvalidationDTO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link CacheInvalidationTransport} delivering the evictions to the other nodes of an in-process cluster, at once.
+ */
+public class InProcessCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    private final List<InProcessCacheInvalidationTransport> cluster;
+
+    private final List<CacheInvalidationDTO> sent = new CopyOnWriteArrayList<>();
+
+    private volatile Consumer<CacheInvalidationDTO> receiver = invalidation -> {};
+
+    private volatile boolean connected = true;
+
+    private InProcessCacheInvalidationTransport(List<InProcessCacheInvalidationTransport> cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * @return the transports of the nodes of a new cluster.
+     */
+    public static List<InProcessCacheInvalidationTransport> cluster(int nodes) {
+        List<InProcessCacheInvalidationTransport> cluster = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            cluster.add(new InProcessCacheInvalidationTransport(cluster));
+        }
+        return cluster;
+    }
+
+    @Override
+    public Mono<Void> send(CacheInvalidationDTO invalidation) {
+        return Mono.defer(() -> {
+            if (!connected) {
+                return Mono.error(new IllegalStateException("Disconnected"));
+            }
+            sent.add(invalidation);
+            cluster.stream().filter(node -> node != this && node.connected).forEach(node -> node.receiver.accept(invalidation));
+            return Mono.empty();
+        });
+    }
+
+    @Override
+    public void onReceive(Consumer<CacheInvalidationDTO> receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Stop sending and receiving evictions, until {@link #setConnected(boolean) reconnected}.
+     */
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+
+    /**
+     * @return the evictions sent by this node.
+     */
+    public List<CacheInvalidationDTO> getSent() {
+        return sent;
+    }
+}
@@ -0,0 +1,171 @@
+package com.pmo.besse2.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.*;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.domain.User;
+import com.pmo.besse2.repository.UserBatchLoader;
+import com.pmo.besse2.repository.UserLookupCache;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.service.dto.CacheInvalidationDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Unit tests for {@link UserCacheInvalidationBus}, with nodes connected by an {@link InProcessCacheInvalidationTransport}.
+ */
+class UserCacheInvalidationBusTest {
+
+    private static final String LOGIN = "johndoe";
+
+    private static final String EMAIL = "johndoe@localhost";
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        user = new User();
+        user.setId(1L);
+        user.setLogin(LOGIN);
+        user.setEmail(EMAIL);
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getCacheInvalidation().setMaxBatchSize(1);
+        for (InProcessCacheInvalidationTransport transport : InProcessCacheInvalidationTransport.cluster(3)) {
+            nodes.add(new Node(transport, applicationProperties, user));
+        }
+    }
+
+    @AfterEach
+    public void teardown() {
+        nodes.forEach(node -> node.bus.destroy());
+    }
+
+    @Test
+    void testEvictionIsBroadcastToTheOtherNodes() {
+        nodes.forEach(Node::lookup);
+
+        nodes.get(0).bus.evict(user);
+
+        for (Node node : nodes) {
+            assertThat(node.cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get(LOGIN)).isNull();
+            assertThat(node.cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE).get(EMAIL)).isNull();
+        }
+        assertThat(nodes.get(0).evictions("sent")).isEqualTo(2);
+        assertThat(nodes.get(1).evictions("received")).isEqualTo(2);
+        assertThat(nodes.get(0).evictions("received")).isZero();
+    }
+
+    @Test
+    void testLateEvictionDoesNotLetAnInFlightLookupCacheTheStaleUser() {
+        Node node = nodes.get(1);
+        Sinks.One<User> staleUser = Sinks.one();
+        when(node.userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(staleUser.asMono());
+        Mono<User> lookup = node.userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).cache();
+        lookup.subscribe();
+
+        nodes.get(0).bus.evict(user);
+        staleUser.tryEmitValue(user);
+
+        assertThat(lookup.block()).isSameAs(user);
+        assertThat(node.cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get(LOGIN)).isNull();
+    }
+
+    @Test
+    void testEvictionsAreBatched() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getCacheInvalidation().setMaxBatchSize(10);
+        applicationProperties.getCacheInvalidation().setBatchWindow(Duration.ofMillis(20));
+        InProcessCacheInvalidationTransport transport = InProcessCacheInvalidationTransport.cluster(1).get(0);
+        Node node = new Node(transport, applicationProperties, user);
+        nodes.add(node);
+
+        node.bus.evict(user);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> !transport.getSent().isEmpty());
+        assertThat(transport.getSent()).hasSize(1);
+        assertThat(transport.getSent().get(0).getKeys())
+            .containsEntry(UserRepository.USERS_BY_LOGIN_CACHE, List.of(LOGIN))
+            .containsEntry(UserRepository.USERS_BY_EMAIL_CACHE, List.of(EMAIL));
+    }
+
+    @Test
+    void testUndeliveredEvictionsAreCounted() {
+        nodes.get(0).transport.setConnected(false);
+
+        nodes.get(0).bus.evict(user);
+
+        assertThat(nodes.get(0).evictions("failed")).isEqualTo(2);
+        assertThat(nodes.get(1).evictions("received")).isZero();
+    }
+
+    @Test
+    void testEvictionsOfUnknownCachesAreIgnored() {
+        Node node = nodes.get(1);
+        node.lookup();
+
+        node.bus.receive(new CacheInvalidationDTO("another-node", Map.of("unknownCache", List.of(LOGIN))));
+
+        assertThat(node.cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get(LOGIN)).isNotNull();
+        assertThat(node.evictions("received")).isZero();
+    }
+
+    private static final class Node {
+
+        private final InProcessCacheInvalidationTransport transport;
+
+        private final UserRepository userRepository = mock(UserRepository.class);
+
+        private final UserBatchLoader userBatchLoader = mock(UserBatchLoader.class);
+
+        private final CacheManager cacheManager = new ConcurrentMapCacheManager(
+            UserRepository.USERS_BY_LOGIN_CACHE,
+            UserRepository.USERS_BY_EMAIL_CACHE
+        );
+
+        private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private final UserLookupCache userLookupCache;
+
+        private final UserCacheInvalidationBus bus;
+
+        Node(InProcessCacheInvalidationTransport transport, ApplicationProperties applicationProperties, User user) {
+            this.transport = transport;
+            when(userBatchLoader.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Mono.just(user));
+            when(userRepository.findOneWithAuthoritiesByEmailIgnoreCase(EMAIL)).thenReturn(Mono.just(user));
+            this.userLookupCache =
+                new UserLookupCache(
+                    userRepository,
+                    userBatchLoader,
+                    cacheManager,
+                    new ApplicationProperties(),
+                    meterRegistry
+                );
+            this.bus = new UserCacheInvalidationBus(userLookupCache, transport, applicationProperties, meterRegistry);
+            bus.start();
+        }
+
+        void lookup() {
+            userLookupCache.findOneWithAuthoritiesByLogin(LOGIN).block();
+            userLookupCache.findOneWithAuthoritiesByEmailIgnoreCase(EMAIL).block();
+        }
+
+        double evictions(String result) {
+            return meterRegistry.get(UserCacheInvalidationBus.EVICTIONS_METER_NAME).tag("result", result).counter().count();
+        }
+    }
+}
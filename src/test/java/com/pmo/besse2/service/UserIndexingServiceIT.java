@@ -0,0 +1,138 @@
+package com.pmo.besse2.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.pmo.besse2.IntegrationTest;
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.config.Constants;
+import com.pmo.besse2.domain.User;
+import com.pmo.besse2.domain.UserIndexEvent;
+import com.pmo.besse2.repository.UserIndexEventRepository;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.repository.search.UserSearchRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import reactor.core.publisher.Mono;
+
+/**
+ * Integration tests for {@link UserIndexingService}.
+ */
+@IntegrationTest
+class UserIndexingServiceIT {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserIndexEventRepository userIndexEventRepository;
+
+    @Autowired
+    private UserIndexingService userIndexingService;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @SpyBean
+    private UserSearchRepository spiedUserSearchRepository;
+
+    private User user;
+
+    @BeforeEach
+    public void init() {
+        userIndexingService.flush().block();
+        userIndexEventRepository.deleteAll().block();
+        userRepository.deleteAllUserAuthorities().block();
+        userRepository.deleteAll().block();
+        user = new User();
+        user.setLogin("johndoe");
+        user.setPassword(RandomStringUtils.randomAlphanumeric(60));
+        user.setActivated(true);
+        user.setEmail("johndoe@localhost");
+        user.setCreatedBy(Constants.SYSTEM);
+    }
+
+    @Test
+    void assertThatChangesToTheSameUserAreCoalesced() {
+        User dbUser = userRepository.save(user).block();
+        userIndexingService.enqueue(dbUser.getId()).block();
+        userIndexingService.enqueue(dbUser.getId()).block();
+
+        userIndexingService.flush().block();
+
+        verify(spiedUserSearchRepository, times(1)).writeAll(argThat(users -> users.size() == 1), anyCollection(), any());
+        assertThat(userIndexEventRepository.count().block()).isZero();
+    }
+
+    @Test
+    void assertThatDeletedUsersAreRemovedFromTheIndex() {
+        User dbUser = userRepository.save(user).block();
+        userRepository.delete(dbUser).block();
+        userIndexingService.enqueue(dbUser.getId()).block();
+
+        userIndexingService.flush().block();
+
+        verify(spiedUserSearchRepository, times(1))
+            .writeAll(anyCollection(), argThat(ids -> ids.iterator().next().equals(dbUser.getId())), any());
+        assertThat(userIndexEventRepository.count().block()).isZero();
+    }
+
+    @Test
+    void assertThatAnOlderStateDoesNotOverwriteANewerOne() {
+        User dbUser = userRepository.save(user).block();
+        spiedUserSearchRepository.writeAll(List.of(dbUser), List.of(), id -> 100L).block();
+        dbUser.setFirstName("older");
+
+        assertThat(spiedUserSearchRepository.writeAll(List.of(dbUser), List.of(), id -> 1L).block()).isEmpty();
+
+        assertThat(spiedUserSearchRepository.findById(dbUser.getId()).block().getFirstName()).isNotEqualTo("older");
+    }
+
+    @Test
+    void assertThatTheEntriesClaimedByAnotherNodeAreSkipped() {
+        User dbUser = userRepository.save(user).block();
+        userIndexingService.enqueue(dbUser.getId()).block();
+        assertThat(userIndexEventRepository.claim("another-node", 10, Instant.now(), Duration.ofMinutes(1)).block()).isEqualTo(1);
+
+        userIndexingService.flush().block();
+
+        verify(spiedUserSearchRepository, never()).writeAll(anyCollection(), anyCollection(), any());
+        assertThat(userIndexEventRepository.findAllByClaimToken("another-node").count().block()).isEqualTo(1);
+    }
+
+    @Test
+    void assertThatTheEntriesWhichFailTooManyTimesAreGivenUp() {
+        User dbUser = userRepository.save(user).block();
+        userIndexingService.enqueue(dbUser.getId()).block();
+        doReturn(Mono.just(Set.of(dbUser.getId()))).when(spiedUserSearchRepository).writeAll(anyCollection(), anyCollection(), any());
+
+        userIndexingService.flush().block();
+
+        UserIndexEvent event = userIndexEventRepository.findAll().blockFirst();
+        assertThat(event.getStatus()).isEqualTo(UserIndexEvent.STATUS_PENDING);
+        assertThat(event.getAttempts()).isEqualTo(1);
+
+        // Expire the lease, as if the entry had been retried until its last attempt
+        event.setClaimedUntil(Instant.now().minus(Duration.ofDays(1)));
+        event.setAttempts(applicationProperties.getUserIndexing().getMaxAttempts() - 1);
+        userIndexEventRepository.save(event).block();
+
+        userIndexingService.flush().block();
+
+        assertThat(userIndexEventRepository.findById(event.getId()).block().getStatus()).isEqualTo(UserIndexEvent.STATUS_FAILED);
+        assertThat(userIndexEventRepository.countByStatus(UserIndexEvent.STATUS_PENDING).block()).isZero();
+    }
+}
@@ -0,0 +1,91 @@
+package com.pmo.besse2.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import com.pmo.besse2.IntegrationTest;
+import com.pmo.besse2.config.Constants;
+import com.pmo.besse2.domain.User;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.repository.search.UserSearchRepository;
+import com.pmo.besse2.service.dto.UserReindexStatusDTO;
+import java.time.Duration;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Integration tests for {@link UserReindexService}.
+ */
+@IntegrationTest
+class UserReindexServiceIT {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSearchRepository userSearchRepository;
+
+    @Autowired
+    private UserReindexService userReindexService;
+
+    @BeforeEach
+    public void init() {
+        userRepository.deleteAllUserAuthorities().block();
+        userRepository.deleteAll().block();
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.setLogin("reindex-" + i);
+            user.setPassword(RandomStringUtils.randomAlphanumeric(60));
+            user.setActivated(true);
+            user.setEmail("reindex-" + i + "@localhost");
+            user.setCreatedBy(Constants.SYSTEM);
+            userRepository.save(user).block();
+        }
+    }
+
+    @Test
+    void assertThatAllUsersAreReindexed() {
+        userReindexService.start();
+
+        await()
+            .atMost(Duration.ofSeconds(30))
+            .until(() -> userReindexService.getStatus().getStatus() != UserReindexStatusDTO.Status.RUNNING);
+
+        UserReindexStatusDTO status = userReindexService.getStatus();
+        assertThat(status.getStatus()).isEqualTo(UserReindexStatusDTO.Status.COMPLETED);
+        assertThat(status.getIndexedUsers()).isEqualTo(3);
+        assertThat(status.getTotalUsers()).isEqualTo(3);
+        assertThat(userSearchRepository.count().block()).isEqualTo(3);
+        assertThat(userSearchRepository.findReindexTargets().block()).isEmpty();
+    }
+
+    @Test
+    void assertThatAReindexWhichDidNotCompleteIsResumed() {
+        userSearchRepository.createIndex("user-incomplete").then(userSearchRepository.addReindexTarget("user-incomplete")).block();
+
+        userReindexService.start();
+
+        await()
+            .atMost(Duration.ofSeconds(30))
+            .until(() -> userReindexService.getStatus().getStatus() != UserReindexStatusDTO.Status.RUNNING);
+
+        UserReindexStatusDTO status = userReindexService.getStatus();
+        assertThat(status.getStatus()).isEqualTo(UserReindexStatusDTO.Status.COMPLETED);
+        assertThat(status.getTargetIndex()).isEqualTo("user-incomplete");
+        assertThat(userSearchRepository.count().block()).isEqualTo(3);
+        assertThat(userSearchRepository.findReindexTargets().block()).isEmpty();
+    }
+
+    @Test
+    void assertThatACompletedReindexCantBeResumed() {
+        userReindexService.start();
+        await()
+            .atMost(Duration.ofSeconds(30))
+            .until(() -> userReindexService.getStatus().getStatus() != UserReindexStatusDTO.Status.RUNNING);
+
+        assertThatThrownBy(() -> userReindexService.resume()).isInstanceOf(IllegalStateException.class);
+    }
+}
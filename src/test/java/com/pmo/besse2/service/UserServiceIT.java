@@ -1,6 +1,8 @@
 package com.pmo.besse2.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -9,9 +11,11 @@ import static org.mockito.Mockito.when;
 
 import com.pmo.besse2.IntegrationTest;
 import com.pmo.besse2.config.Constants;
+import com.pmo.besse2.domain.Authority;
 import com.pmo.besse2.domain.User;
 import com.pmo.besse2.repository.UserRepository;
 import com.pmo.besse2.repository.search.UserSearchRepository;
+import com.pmo.besse2.security.AuthoritiesConstants;
 import com.pmo.besse2.service.dto.AdminUserDTO;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -19,6 +23,7 @@ import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -52,6 +57,9 @@ class UserServiceIT {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UserIndexingService userIndexingService;
+
     /**
      * This repository is mocked in the com.pmo.besse2.repository.search test package.
      *
@@ -147,6 +155,27 @@ class UserServiceIT {
         userRepository.delete(user).block();
     }
 
+    @Test
+    void assertThatUpdateUserOnlyChangesTheModifiedAuthorities() {
+        User dbUser = userRepository.save(user).block();
+        userRepository.saveUserAuthority(dbUser.getId(), AuthoritiesConstants.USER).block();
+        AdminUserDTO userDTO = new AdminUserDTO(dbUser);
+        userDTO.setAuthorities(Set.of(AuthoritiesConstants.ADMIN));
+
+        userService.updateUser(userDTO).block();
+
+        assertThat(userRepository.findOneWithAuthoritiesByLogin(DEFAULT_LOGIN).block().getAuthorities())
+            .extracting(Authority::getName)
+            .containsExactly(AuthoritiesConstants.ADMIN);
+
+        userDTO.setAuthorities(Set.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER));
+        userService.updateUser(userDTO).block();
+
+        assertThat(userRepository.findOneWithAuthoritiesByLogin(DEFAULT_LOGIN).block().getAuthorities())
+            .extracting(Authority::getName)
+            .containsExactlyInAnyOrder(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+    }
+
     @Test
     void assertThatNotActivatedUsersWithNotNullActivationKeyCreatedBefore3DaysAreDeleted() {
         Instant now = Instant.now();
@@ -164,9 +193,11 @@ class UserServiceIT {
         userService.removeNotActivatedUsers();
         users = userRepository.findAllByActivatedIsFalseAndActivationKeyIsNotNullAndCreatedDateBefore(threeDaysAgo).collectList().block();
         assertThat(users).isEmpty();
+        userIndexingService.flush().block();
 
         // Verify Elasticsearch mock
-        verify(spiedUserSearchRepository, times(1)).delete(user);
+        verify(spiedUserSearchRepository, times(1))
+            .writeAll(anyCollection(), argThat(ids -> containsUserId(ids, dbUser.getId())), any());
     }
 
     @Test
@@ -185,8 +216,19 @@ class UserServiceIT {
         userService.removeNotActivatedUsers();
         Optional<User> maybeDbUser = userRepository.findById(dbUser.getId()).blockOptional();
         assertThat(maybeDbUser).contains(dbUser);
+        userIndexingService.flush().block();
 
         // Verify Elasticsearch mock
-        verify(spiedUserSearchRepository, never()).delete(user);
+        verify(spiedUserSearchRepository, never())
+            .writeAll(anyCollection(), argThat(ids -> containsUserId(ids, dbUser.getId())), any());
+    }
+
+    private static boolean containsUserId(Iterable<? extends Long> ids, Long userId) {
+        for (Long id : ids) {
+            if (id.equals(userId)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,65 @@
+package com.pmo.besse2.service.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.pmo.besse2.domain.User;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Unit tests for {@link UserCursor}.
+ */
+class UserCursorTest {
+
+    @Test
+    void startCursorHasNoPosition() {
+        UserCursor cursor = UserCursor.start(Sort.Order.desc("login"));
+
+        assertThat(cursor.isStart()).isTrue();
+        assertThat(cursor.getOrder()).isEqualTo(Sort.Order.desc("login"));
+    }
+
+    @Test
+    void nextCursorRoundTripsThroughToken() {
+        User user = new User();
+        user.setId(42L);
+        user.setLastName("doe\nsmith");
+
+        UserCursor next = UserCursor.start(Sort.Order.asc("lastName")).next(user);
+        UserCursor decoded = UserCursor.decode(next.encode());
+
+        assertThat(decoded).isEqualTo(next);
+        assertThat(decoded.getLastId()).isEqualTo(42L);
+        assertThat(decoded.getLastValue()).isEqualTo("doe\nsmith");
+    }
+
+    @Test
+    void typedValuesAreRestored() {
+        User user = new User();
+        user.setId(1L);
+        user.setCreatedDate(Instant.parse("2022-01-01T10:15:30Z"));
+
+        UserCursor decoded = UserCursor.decode(UserCursor.start(Sort.Order.asc("createdDate")).next(user).encode());
+
+        assertThat(decoded.getLastValue()).isEqualTo(Instant.parse("2022-01-01T10:15:30Z"));
+    }
+
+    @Test
+    void nullValuesAreRestored() {
+        User user = new User();
+        user.setId(7L);
+
+        UserCursor decoded = UserCursor.decode(UserCursor.start(Sort.Order.asc("firstName")).next(user).encode());
+
+        assertThat(decoded.getLastValue()).isNull();
+        assertThat(decoded.getLastId()).isEqualTo(7L);
+    }
+
+    @Test
+    void invalidTokensAreRejected() {
+        assertThatThrownBy(() -> UserCursor.decode("not a cursor")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UserCursor.start(Sort.Order.asc("password"))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
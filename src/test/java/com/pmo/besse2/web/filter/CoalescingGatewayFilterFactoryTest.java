@@ -0,0 +1,96 @@
+package com.pmo.besse2.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+class CoalescingGatewayFilterFactoryTest {
+
+    private static final String URL = "/services/service-test/api/things";
+
+    private final GatewayFilterChain filterChain = mock(GatewayFilterChain.class);
+
+    private MeterRegistry meterRegistry;
+
+    private CoalescingGatewayFilterFactory.Config config;
+
+    @BeforeEach
+    void setup() {
+        when(filterChain.filter(any()))
+            .thenAnswer(invocation -> {
+                ServerWebExchange exchange = invocation.getArgument(0);
+                return Mono
+                    .delay(Duration.ofMillis(200))
+                    .then(
+                        Mono.defer(() -> {
+                            exchange.getResponse().setStatusCode(HttpStatus.OK);
+                            byte[] body = "things".getBytes(StandardCharsets.UTF_8);
+                            return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(body)));
+                        })
+                    );
+            });
+        meterRegistry = new SimpleMeterRegistry();
+        config = new CoalescingGatewayFilterFactory.Config();
+    }
+
+    @Test
+    void shouldCollapseConcurrentIdenticalRequests() {
+        GatewayFilter filter = new CoalescingGatewayFilterFactory(meterRegistry).apply(config);
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get(URL).build());
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.get(URL).build());
+
+        Mono.when(filter.filter(first, filterChain), filter.filter(second, filterChain)).block();
+
+        assertThat(first.getResponse().getBodyAsString().block()).isEqualTo("things");
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("things");
+        verify(filterChain, times(1)).filter(any());
+        assertThat(meterRegistry.get(CoalescingGatewayFilterFactory.REQUESTS_METER_NAME).tag("result", "collapsed").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCollapseRequestsOfDifferentUsers() {
+        GatewayFilter filter = new CoalescingGatewayFilterFactory(meterRegistry).apply(config);
+        MockServerWebExchange first = MockServerWebExchange.from(
+            MockServerHttpRequest.get(URL).header(HttpHeaders.AUTHORIZATION, "Bearer first").build()
+        );
+        MockServerWebExchange second = MockServerWebExchange.from(
+            MockServerHttpRequest.get(URL).header(HttpHeaders.AUTHORIZATION, "Bearer second").build()
+        );
+
+        Mono.when(filter.filter(first, filterChain), filter.filter(second, filterChain)).block();
+
+        verify(filterChain, times(2)).filter(any());
+    }
+
+    @Test
+    void shouldForwardRequestsWaitingTooLong() {
+        config.setMaxWait(Duration.ofMillis(10));
+        GatewayFilter filter = new CoalescingGatewayFilterFactory(meterRegistry).apply(config);
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get(URL).build());
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.get(URL).build());
+
+        Mono.when(filter.filter(first, filterChain), filter.filter(second, filterChain)).block();
+
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("things");
+        verify(filterChain, times(2)).filter(any());
+        assertThat(meterRegistry.get(CoalescingGatewayFilterFactory.REQUESTS_METER_NAME).tag("result", "timeout").counter().count())
+            .isEqualTo(1);
+    }
+}
@@ -0,0 +1,119 @@
+package com.pmo.besse2.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class ConcurrencyLimitGatewayFilterFactoryTest {
+
+    private final GatewayFilterChain filterChain = mock(GatewayFilterChain.class);
+
+    private MeterRegistry meterRegistry;
+
+    private ConcurrencyLimitGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        factory = new ConcurrencyLimitGatewayFilterFactory(meterRegistry);
+    }
+
+    @Test
+    void shouldShedTheRequestsOverTheLimit() {
+        Sinks.Empty<Void> pending = Sinks.empty();
+        when(filterChain.filter(any())).thenReturn(pending.asMono());
+        GatewayFilter filter = factory.apply(config("service-test", 1));
+
+        MockServerWebExchange first = exchange();
+        filter.filter(first, filterChain).subscribe();
+        MockServerWebExchange second = exchange();
+        filter.filter(second, filterChain).block();
+
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(second.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(meterRegistry.get(ConcurrencyLimitGatewayFilterFactory.REJECTED_METER_NAME).counter().count()).isEqualTo(1);
+        verify(filterChain, times(1)).filter(any());
+
+        pending.tryEmitEmpty();
+        MockServerWebExchange third = exchange();
+        filter.filter(third, filterChain).block();
+        assertThat(third.getResponse().getStatusCode()).isNull();
+    }
+
+    @Test
+    void shouldIsolateTheRoutes() {
+        when(filterChain.filter(any())).thenReturn(Sinks.<Void>empty().asMono());
+        GatewayFilter slow = factory.apply(config("slow-service", 1));
+        GatewayFilter other = factory.apply(config("other-service", 1));
+
+        slow.filter(exchange(), filterChain).subscribe();
+        MockServerWebExchange exchange = exchange();
+        other.filter(exchange, filterChain).subscribe();
+
+        assertThat(exchange.getResponse().getStatusCode()).isNull();
+        verify(filterChain, times(2)).filter(any());
+    }
+
+    @Test
+    void shouldKeepTheLimiterOfARouteWhenTheRoutesAreRefreshed() {
+        when(filterChain.filter(any())).thenReturn(Sinks.<Void>empty().asMono());
+        factory.apply(config("service-test", 1)).filter(exchange(), filterChain).subscribe();
+
+        MockServerWebExchange exchange = exchange();
+        factory.apply(config("service-test", 1)).filter(exchange, filterChain).block();
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    void shouldAdaptTheLimitToTheLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 10, 200, 0.2, 1.5);
+        for (int i = 0; i < 100; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(10), limiter.getLimit(), false);
+        }
+        int grownLimit = limiter.getLimit();
+        assertThat(grownLimit).isGreaterThan(20);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(100), limiter.getLimit(), false);
+        }
+        assertThat(limiter.getLimit()).isLessThan(grownLimit).isGreaterThanOrEqualTo(10);
+    }
+
+    @Test
+    void shouldBackOffOnErrors() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 200, 0.2, 1.5);
+        limiter.tryAcquire();
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), 0, true);
+
+        assertThat(limiter.getLimit()).isEqualTo(90);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private static ConcurrencyLimitGatewayFilterFactory.Config config(String routeId, int maxLimit) {
+        ConcurrencyLimitGatewayFilterFactory.Config config = new ConcurrencyLimitGatewayFilterFactory.Config();
+        config.setRouteId(routeId);
+        config.setInitialLimit(maxLimit);
+        config.setMinLimit(maxLimit);
+        config.setMaxLimit(maxLimit);
+        return config;
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/services/service-test/api").build());
+    }
+}
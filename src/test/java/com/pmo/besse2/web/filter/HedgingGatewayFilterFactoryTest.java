@@ -0,0 +1,143 @@
+package com.pmo.besse2.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import com.pmo.besse2.web.loadbalancer.LatencyAwareLoadBalancer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+class HedgingGatewayFilterFactoryTest {
+
+    private static final ServiceInstance FIRST_INSTANCE = new DefaultServiceInstance("first", "service", "first.local", 8080, false);
+
+    private final GatewayFilterChain filterChain = mock(GatewayFilterChain.class);
+
+    private final List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+
+    private MeterRegistry meterRegistry;
+
+    private ApplicationProperties applicationProperties;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        applicationProperties = new ApplicationProperties();
+    }
+
+    @Test
+    void shouldAnswerWithTheHedgeWhenTheFirstRequestIsSlow() {
+        respondWithDelays(Duration.ofSeconds(2), Duration.ZERO);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/services/service-test/api"));
+        filter().filter(exchange, filterChain).block(Duration.ofSeconds(5));
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-Attempt")).isEqualTo("2");
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("attempt 2");
+        assertThat(attempts).hasSize(2);
+        // The hedge asks the load balancer to avoid the instance of the first request
+        String excludedInstanceHeader = LatencyAwareLoadBalancer.EXCLUDED_INSTANCE_HEADER;
+        assertThat(attempts.get(0).getRequest().getHeaders().getFirst(excludedInstanceHeader)).isNull();
+        assertThat(attempts.get(1).getRequest().getHeaders().getFirst(excludedInstanceHeader)).isEqualTo("first");
+        assertThat(count("hedge-won")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotHedgeFastRequests() {
+        respondWithDelays(Duration.ZERO, Duration.ZERO);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/services/service-test/api"));
+        filter().filter(exchange, filterChain).block(Duration.ofSeconds(5));
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("attempt 1");
+        assertThat(attempts).hasSize(1);
+        assertThat(count("primary")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotHedgeOverTheBudget() {
+        applicationProperties.getHedging().setBudgetBurst(0);
+        respondWithDelays(Duration.ofMillis(200), Duration.ZERO);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/services/service-test/api"));
+        filter().filter(exchange, filterChain).block(Duration.ofSeconds(5));
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("attempt 1");
+        assertThat(attempts).hasSize(1);
+        assertThat(count("no-budget")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotHedgeNonIdempotentRequests() {
+        respondWithDelays(Duration.ofMillis(200), Duration.ZERO);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/services/service-test/api"));
+        filter().filter(exchange, filterChain).block(Duration.ofSeconds(5));
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("attempt 1");
+        assertThat(attempts).hasSize(1);
+        assertThat(meterRegistry.find(HedgingGatewayFilterFactory.REQUESTS_METER_NAME).counters()).isEmpty();
+    }
+
+    private GatewayFilter filter() {
+        HedgingGatewayFilterFactory.Config config = new HedgingGatewayFilterFactory.Config();
+        config.setRouteId("service-test");
+        config.setMaxDelay(Duration.ofMillis(50));
+        return new HedgingGatewayFilterFactory(meterRegistry, applicationProperties).apply(config);
+    }
+
+    /**
+     * Each request sent writes its number as response, after the given delay.
+     */
+    private void respondWithDelays(Duration... delays) {
+        AtomicInteger calls = new AtomicInteger();
+        when(filterChain.filter(any()))
+            .thenAnswer(invocation -> {
+                ServerWebExchange attempt = invocation.getArgument(0);
+                int number = calls.incrementAndGet();
+                attempts.add(attempt);
+                attempt.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(FIRST_INSTANCE));
+                return Mono
+                    .delay(delays[number - 1])
+                    .then(
+                        Mono.defer(() -> {
+                            ServerHttpResponse response = attempt.getResponse();
+                            response.setStatusCode(HttpStatus.OK);
+                            response.getHeaders().set("X-Attempt", String.valueOf(number));
+                            byte[] body = ("attempt " + number).getBytes(StandardCharsets.UTF_8);
+                            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+                        })
+                    );
+            });
+    }
+
+    private double count(String result) {
+        return meterRegistry.get(HedgingGatewayFilterFactory.REQUESTS_METER_NAME).tag("result", result).counter().count();
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request.build());
+    }
+}
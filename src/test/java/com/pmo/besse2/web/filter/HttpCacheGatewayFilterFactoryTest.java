@@ -0,0 +1,113 @@
+package com.pmo.besse2.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+class HttpCacheGatewayFilterFactoryTest {
+
+    private static final String URL = "/services/service-test/api/things";
+
+    private final GatewayFilterChain filterChain = mock(GatewayFilterChain.class);
+
+    private MeterRegistry meterRegistry;
+
+    private GatewayFilter filter;
+
+    private String cacheControl;
+
+    @BeforeEach
+    void setup() {
+        cacheControl = "max-age=60";
+        when(filterChain.filter(any()))
+            .thenAnswer(invocation -> {
+                ServerWebExchange exchange = invocation.getArgument(0);
+                exchange.getResponse().setStatusCode(HttpStatus.OK);
+                exchange.getResponse().getHeaders().set(HttpHeaders.CACHE_CONTROL, cacheControl);
+                exchange.getResponse().getHeaders().setETag("\"v1\"");
+                byte[] body = "things".getBytes(StandardCharsets.UTF_8);
+                return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(body)));
+            });
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new HttpCacheGatewayFilterFactory(new ApplicationProperties(), meterRegistry).apply(new Object());
+    }
+
+    @Test
+    void shouldServeFreshResponsesFromTheCache() {
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get(URL).build());
+        filter.filter(first, filterChain).block();
+        assertThat(first.getResponse().getBodyAsString().block()).isEqualTo("things");
+
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.get(URL).build());
+        filter.filter(second, filterChain).block();
+
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("things");
+        assertThat(second.getResponse().getHeaders().getETag()).isEqualTo("\"v1\"");
+        assertThat(second.getResponse().getHeaders().getFirst(HttpHeaders.AGE)).isNotNull();
+        verify(filterChain, times(1)).filter(any());
+        assertThat(meterRegistry.get(HttpCacheGatewayFilterFactory.REQUESTS_METER_NAME).tag("result", "hit").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCacheNoStoreResponses() {
+        cacheControl = "no-store";
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get(URL).build()), filterChain).block();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get(URL).build()), filterChain).block();
+
+        verify(filterChain, times(2)).filter(any());
+    }
+
+    @Test
+    void shouldNotShareResponsesToAuthenticatedRequestsUnlessPublic() {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get(URL).header(HttpHeaders.AUTHORIZATION, "Bearer token");
+        filter.filter(MockServerWebExchange.from(request.build()), filterChain).block();
+        filter.filter(MockServerWebExchange.from(request.build()), filterChain).block();
+        verify(filterChain, times(2)).filter(any());
+
+        cacheControl = "public, max-age=60";
+        filter.filter(MockServerWebExchange.from(request.build()), filterChain).block();
+        filter.filter(MockServerWebExchange.from(request.build()), filterChain).block();
+        verify(filterChain, times(3)).filter(any());
+    }
+
+    @Test
+    void shouldCacheEachVariantSeparately() {
+        cacheControl = "max-age=60";
+        when(filterChain.filter(any()))
+            .thenAnswer(invocation -> {
+                ServerWebExchange exchange = invocation.getArgument(0);
+                String language = exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_LANGUAGE);
+                exchange.getResponse().setStatusCode(HttpStatus.OK);
+                exchange.getResponse().getHeaders().set(HttpHeaders.CACHE_CONTROL, cacheControl);
+                exchange.getResponse().getHeaders().set(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE);
+                byte[] body = language.getBytes(StandardCharsets.UTF_8);
+                return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(body)));
+            });
+
+        for (String language : new String[] { "en", "fr", "en", "fr" }) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get(URL).header(HttpHeaders.ACCEPT_LANGUAGE, language).build()
+            );
+            filter.filter(exchange, filterChain).block();
+            assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(language);
+        }
+        verify(filterChain, times(2)).filter(any());
+    }
+}
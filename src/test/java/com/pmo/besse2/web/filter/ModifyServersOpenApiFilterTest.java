@@ -4,9 +4,11 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -14,9 +16,14 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.web.server.ServerWebExchange;
@@ -44,11 +51,11 @@ class ModifyServersOpenApiFilterTest {
         ServerWebExchange exchange = MockServerWebExchange.from(request);
 
         // apply the filter to the request
-        ModifyServersOpenApiFilter modifyServersOpenApiFilter = spy(new ModifyServersOpenApiFilter());
+        ModifyServersOpenApiFilter modifyServersOpenApiFilter = spy(new ModifyServersOpenApiFilter(new ObjectMapper()));
         modifyServersOpenApiFilter.filter(exchange, filterChain).subscribe();
 
         verify(modifyServersOpenApiFilter, times(1))
-            .createModifyServersOpenApiInterceptor(sample_url, exchange.getResponse(), exchange.getResponse().bufferFactory());
+            .createModifyServersOpenApiInterceptor(sample_url, exchange);
     }
 
     @Test
@@ -61,16 +68,16 @@ class ModifyServersOpenApiFilterTest {
         ServerWebExchange exchange = MockServerWebExchange.from(request);
 
         // apply the filter to the request
-        ModifyServersOpenApiFilter modifyServersOpenApiFilter = spy(new ModifyServersOpenApiFilter());
+        ModifyServersOpenApiFilter modifyServersOpenApiFilter = spy(new ModifyServersOpenApiFilter(new ObjectMapper()));
         modifyServersOpenApiFilter.filter(exchange, filterChain).subscribe();
 
         verify(modifyServersOpenApiFilter, times(0))
-            .createModifyServersOpenApiInterceptor(sample_url, exchange.getResponse(), exchange.getResponse().bufferFactory());
+            .createModifyServersOpenApiInterceptor(sample_url, exchange);
     }
 
     @Test
     void shouldOrderToMinusOne() {
-        ModifyServersOpenApiFilter modifyServersOpenApiFilter = new ModifyServersOpenApiFilter();
+        ModifyServersOpenApiFilter modifyServersOpenApiFilter = new ModifyServersOpenApiFilter(new ObjectMapper());
         assertEquals(modifyServersOpenApiFilter.getOrder(), -1);
     }
 
@@ -80,14 +87,13 @@ class ModifyServersOpenApiFilterTest {
         private final String path = "/services/service-test/instance-test/v3/api-docs";
         private final MockServerHttpRequest request = MockServerHttpRequest.get(path).build();
         private final ServerWebExchange exchange = MockServerWebExchange.from(request);
-        private final ModifyServersOpenApiFilter modifyServersOpenApiFilter = new ModifyServersOpenApiFilter();
+        private final ModifyServersOpenApiFilter modifyServersOpenApiFilter = new ModifyServersOpenApiFilter(new ObjectMapper());
 
         @Test
         void shouldRewriteBodyWhenBodyIsFluxAndResponseIsNotZipped() {
             ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
                 path,
-                exchange.getResponse(),
-                exchange.getResponse().bufferFactory()
+                exchange
             );
 
             byte[] bytes = "{}".getBytes();
@@ -106,8 +112,7 @@ class ModifyServersOpenApiFilterTest {
             exchange.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
             ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
                 path,
-                exchange.getResponse(),
-                exchange.getResponse().bufferFactory()
+                exchange
             );
 
             byte[] bytes = zipContent();
@@ -125,8 +130,7 @@ class ModifyServersOpenApiFilterTest {
         void shouldNotRewriteBodyWhenBodyIsNotFlux() {
             ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
                 path,
-                exchange.getResponse(),
-                exchange.getResponse().bufferFactory()
+                exchange
             );
 
             byte[] bytes = "{}".getBytes();
@@ -135,6 +139,61 @@ class ModifyServersOpenApiFilterTest {
             assertThat(interceptor.getRewritedBody()).isEmpty();
         }
 
+        @Test
+        void shouldReplaceTheServersWhenTheBodyIsSplit() {
+            ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
+                path,
+                exchange
+            );
+
+            Flux<DataBuffer> body = Flux
+                .just("{\"openapi\":\"3.0.1\",\"serv", "ers\":[{\"url\":\"http://10.0.0.1:8081\"}],\"paths\":{\"/a\":{}}}")
+                .map(chunk -> exchange.getResponse().bufferFactory().wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+            interceptor.writeWith(body).block();
+
+            assertThat(interceptor.getRewritedBody())
+                .isEqualTo(
+                    "{\"openapi\":\"3.0.1\",\"servers\":[{\"url\":\"/services/service-test/instance-test\"," +
+                    "\"description\":\"added by global filter\"}],\"paths\":{\"/a\":{}}}"
+                );
+        }
+
+        @Test
+        void shouldNotRewriteErrorResponses() {
+            exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
+            ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
+                path,
+                exchange
+            );
+
+            DataBuffer body = exchange.getResponse().bufferFactory().wrap("{}".getBytes());
+            interceptor.writeWith(Flux.just(body)).block();
+            assertThat(interceptor.getRewritedBody()).isEmpty();
+        }
+
+        @Test
+        void shouldCacheTheDocumentOfEachInstanceVersion() {
+            assertThat(rewriteFromInstance("1.0.0", "{\"info\":{}}")).contains("\"info\"");
+            // the document of the same version is not parsed again
+            assertThat(rewriteFromInstance("1.0.0", "not parsed")).contains("\"info\"").contains("servers");
+            assertThat(rewriteFromInstance("1.1.0", "{\"paths\":{}}")).contains("\"paths\"").doesNotContain("\"info\"");
+        }
+
+        private String rewriteFromInstance(String version, String document) {
+            Map<String, String> metadata = Map.of("version", version);
+            ServiceInstance instance = new DefaultServiceInstance("instance-1", "service-test", "10.0.0.1", 8081, false, metadata);
+            ServerWebExchange instanceExchange = MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+            instanceExchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(instance));
+            ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
+                path,
+                instanceExchange
+            );
+
+            DataBuffer body = instanceExchange.getResponse().bufferFactory().wrap(document.getBytes(StandardCharsets.UTF_8));
+            interceptor.writeWith(Flux.just(body)).block();
+            return interceptor.getRewritedBody();
+        }
+
         private byte[] zipContent() {
             try {
                 ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream("{}".length());
@@ -0,0 +1,41 @@
+package com.pmo.besse2.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class PathClassifierTest {
+
+    private final PathClassifier pathClassifier = PathClassifier.INSTANCE;
+
+    @Test
+    void shouldClassifyTheServerPathsAsPrefixes() {
+        assertThat(pathClassifier.classify("/api/account")).isEqualTo(PathClassifier.Category.SERVER);
+        assertThat(pathClassifier.classify("/management/health")).isEqualTo(PathClassifier.Category.SERVER);
+        assertThat(pathClassifier.classify("/services/service-a/api/items")).isEqualTo(PathClassifier.Category.SERVER);
+        // like String#startsWith
+        assertThat(pathClassifier.classify("/apidocs")).isEqualTo(PathClassifier.Category.SERVER);
+    }
+
+    @Test
+    void shouldClassifyTheStaticPathsAndWhatIsBelowThem() {
+        assertThat(pathClassifier.classify("/app")).isEqualTo(PathClassifier.Category.STATIC);
+        assertThat(pathClassifier.classify("/app/")).isEqualTo(PathClassifier.Category.STATIC);
+        assertThat(pathClassifier.classify("/app/main.1a2b3c4d.js")).isEqualTo(PathClassifier.Category.STATIC);
+        assertThat(pathClassifier.classify("/i18n/en.json")).isEqualTo(PathClassifier.Category.STATIC);
+        assertThat(pathClassifier.classify("/v3/api-docs")).isEqualTo(PathClassifier.Category.STATIC);
+        assertThat(pathClassifier.classify("/v3/api-docs/swagger-config")).isEqualTo(PathClassifier.Category.STATIC);
+        assertThat(pathClassifier.classify("/v3/api-docsx")).isEqualTo(PathClassifier.Category.SERVER);
+        assertThat(pathClassifier.classify("/application")).isEqualTo(PathClassifier.Category.CLIENT);
+    }
+
+    @Test
+    void shouldRecognizeTheClientRoutes() {
+        assertThat(pathClassifier.isClientRoute("/")).isTrue();
+        assertThat(pathClassifier.isClientRoute("/admin/user-management")).isTrue();
+        assertThat(pathClassifier.isClientRoute("/favicon.ico")).isFalse();
+        assertThat(pathClassifier.isClientRoute("/admin\\users")).isFalse();
+        assertThat(pathClassifier.isClientRoute("/api/account")).isFalse();
+        assertThat(pathClassifier.isClientRoute("/content/images")).isFalse();
+    }
+}
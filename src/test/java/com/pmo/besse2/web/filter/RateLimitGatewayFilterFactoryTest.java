@@ -0,0 +1,77 @@
+package com.pmo.besse2.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+class RateLimitGatewayFilterFactoryTest {
+
+    private final GatewayFilterChain filterChain = mock(GatewayFilterChain.class);
+
+    private MeterRegistry meterRegistry;
+
+    private GatewayFilter filter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        when(filterChain.filter(any())).thenReturn(Mono.empty());
+        meterRegistry = new SimpleMeterRegistry();
+        RateLimitGatewayFilterFactory factory = new RateLimitGatewayFilterFactory(meterRegistry, mock(ObjectProvider.class));
+        RateLimitGatewayFilterFactory.Config config = new RateLimitGatewayFilterFactory.Config();
+        config.setKey(RateLimitGatewayFilterFactory.KeyType.IP);
+        config.setCapacity(1);
+        config.setRefillTokens(1);
+        config.setRefillPeriod(Duration.ofMinutes(1));
+        filter = factory.apply(config);
+    }
+
+    @Test
+    void shouldRejectRequestsOverTheLimit() {
+        MockServerWebExchange first = exchangeFrom("10.0.0.1");
+        filter.filter(first, filterChain).block();
+        assertThat(first.getResponse().getStatusCode()).isNull();
+        assertThat(first.getResponse().getHeaders().getFirst(RateLimitGatewayFilterFactory.REMAINING_HEADER)).isEqualTo("0");
+
+        MockServerWebExchange second = exchangeFrom("10.0.0.1");
+        filter.filter(second, filterChain).block();
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(Long.parseLong(second.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isBetween(1L, 60L);
+
+        verify(filterChain, times(1)).filter(any());
+        assertThat(meterRegistry.get(RateLimitGatewayFilterFactory.REJECTED_METER_NAME).counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLimitEachClientSeparately() {
+        filter.filter(exchangeFrom("10.0.0.1"), filterChain).block();
+        MockServerWebExchange other = exchangeFrom("10.0.0.2");
+        filter.filter(other, filterChain).block();
+
+        assertThat(other.getResponse().getStatusCode()).isNull();
+        verify(filterChain, times(2)).filter(any());
+    }
+
+    private static MockServerWebExchange exchangeFrom(String ip) {
+        MockServerHttpRequest request = MockServerHttpRequest
+            .get("/services/service-test/api")
+            .remoteAddress(new InetSocketAddress(ip, 12345))
+            .build();
+        return MockServerWebExchange.from(request);
+    }
+}
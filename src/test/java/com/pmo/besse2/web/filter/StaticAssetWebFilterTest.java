@@ -0,0 +1,116 @@
+package com.pmo.besse2.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+class StaticAssetWebFilterTest {
+
+    private static final String INDEX = "<html><body>" + "<div>jhipster</div>".repeat(100) + "</body></html>";
+
+    private static final String SCRIPT = "console.log('jhipster');\n".repeat(100);
+
+    @TempDir
+    Path location;
+
+    private final WebFilterChain chain = mock(WebFilterChain.class);
+
+    private StaticAssetWebFilter filter;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Files.writeString(location.resolve("index.html"), INDEX);
+        Files.createDirectories(location.resolve("app"));
+        Files.writeString(location.resolve("app/main.1a2b3c4d.js"), SCRIPT);
+        Files.write(location.resolve("app/main.1a2b3c4d.js.br"), new byte[] { 1, 2, 3 });
+        Files.writeString(location.resolve("app/not-hashed.js"), SCRIPT);
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getStaticAssets().setEnabled(true);
+        applicationProperties.getStaticAssets().setLocation(location.toUri().toString());
+        filter = new StaticAssetWebFilter(applicationProperties, new DefaultResourceLoader());
+        when(chain.filter(any())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void shouldServeTheIndexFromMemory() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/index.html"));
+
+        filter.filter(exchange, chain).block();
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(INDEX);
+        assertThat(exchange.getResponse().getHeaders().getCacheControl()).isEqualTo("no-cache");
+        assertThat(exchange.getResponse().getHeaders().getETag()).isNotNull();
+        verifyNoInteractions(chain);
+    }
+
+    @Test
+    void shouldNegotiateTheEncoding() {
+        MockServerWebExchange gzip = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/app/main.1a2b3c4d.js").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+        );
+        MockServerWebExchange brotli = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/app/main.1a2b3c4d.js").header(HttpHeaders.ACCEPT_ENCODING, "gzip, br")
+        );
+        MockServerWebExchange refused = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/app/main.1a2b3c4d.js").header(HttpHeaders.ACCEPT_ENCODING, "br;q=0")
+        );
+
+        filter.filter(gzip, chain).block();
+        filter.filter(brotli, chain).block();
+        filter.filter(refused, chain).block();
+
+        assertThat(gzip.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzip.getResponse().getHeaders().getContentLength()).isLessThan(SCRIPT.length());
+        assertThat(gzip.getResponse().getHeaders().getCacheControl()).contains("immutable");
+        assertThat(brotli.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("br");
+        assertThat(brotli.getResponse().getHeaders().getContentLength()).isEqualTo(3);
+        assertThat(refused.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(refused.getResponse().getBodyAsString().block()).isEqualTo(SCRIPT);
+        assertThat(gzip.getResponse().getHeaders().getETag())
+            .isNotEqualTo(brotli.getResponse().getHeaders().getETag())
+            .isNotEqualTo(refused.getResponse().getHeaders().getETag());
+    }
+
+    @Test
+    void shouldAnswerNotModifiedWhenTheETagMatches() {
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get("/index.html"));
+        filter.filter(first, chain).block();
+        String eTag = first.getResponse().getHeaders().getETag();
+
+        MockServerWebExchange second = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/index.html").header(HttpHeaders.IF_NONE_MATCH, eTag)
+        );
+        filter.filter(second, chain).block();
+
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(second.getResponse().getBodyAsString().block()).isEmpty();
+    }
+
+    @Test
+    void shouldPassTheOtherRequestsThrough() {
+        MockServerWebExchange notHashed = MockServerWebExchange.from(MockServerHttpRequest.get("/app/not-hashed.js"));
+        MockServerWebExchange post = MockServerWebExchange.from(MockServerHttpRequest.post("/index.html"));
+
+        filter.filter(notHashed, chain).block();
+        filter.filter(post, chain).block();
+
+        verify(chain).filter(notHashed);
+        verify(chain).filter(post);
+    }
+}
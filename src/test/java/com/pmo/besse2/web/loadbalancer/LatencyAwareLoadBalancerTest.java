@@ -0,0 +1,216 @@
+package com.pmo.besse2.web.loadbalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import com.pmo.besse2.config.ApplicationProperties;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.config.GatewayLoadBalancerProperties;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class LatencyAwareLoadBalancerTest {
+
+    private final ServiceInstance fast = instance("fast", "primary");
+
+    private final ServiceInstance slow = instance("slow", "primary");
+
+    private final ServiceInstance remote = instance("remote", "secondary");
+
+    private LoadBalancerStats stats;
+
+    @BeforeEach
+    void setup() {
+        stats = new LoadBalancerStats(new ApplicationProperties());
+    }
+
+    @Test
+    void shouldPreferTheFastestInstance() {
+        LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer("service", null, stats, null);
+        record(fast, Duration.ofMillis(10), false);
+        record(slow, Duration.ofMillis(500), false);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.choose(List.of(fast, slow)).getServer()).isEqualTo(fast);
+        }
+    }
+
+    @Test
+    void shouldAccountForTheCallsInFlight() {
+        LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer("service", null, stats, null);
+        record(fast, Duration.ofMillis(10), false);
+        record(slow, Duration.ofMillis(50), false);
+        for (int i = 0; i < 10; i++) {
+            stats.get(fast).startCall();
+        }
+
+        assertThat(loadBalancer.choose(List.of(fast, slow)).getServer()).isEqualTo(slow);
+    }
+
+    @Test
+    void shouldPreferTheInstancesOfTheSameZone() {
+        LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer("service", null, stats, "primary");
+        record(slow, Duration.ofMillis(500), false);
+        record(remote, Duration.ofMillis(10), false);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.choose(List.of(slow, remote)).getServer()).isEqualTo(slow);
+        }
+    }
+
+    @Test
+    void shouldEjectFailingInstances() {
+        LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer("service", null, stats, null);
+        record(slow, Duration.ofMillis(500), false);
+        for (int i = 0; i < 5; i++) {
+            record(fast, Duration.ofMillis(1), true);
+        }
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.choose(List.of(fast, slow)).getServer()).isEqualTo(slow);
+        }
+        Map<String, List<InstanceStats.Snapshot>> snapshot = stats.snapshot();
+        assertThat(snapshot.get("service"))
+            .filteredOn(instance -> instance.getInstanceId().equals("fast"))
+            .singleElement()
+            .satisfies(instance -> assertThat(instance.getEjectedForSeconds()).isPositive());
+    }
+
+    @Test
+    void shouldUseEjectedInstancesWhenThereAreNoOthers() {
+        LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer("service", null, stats, null);
+        for (int i = 0; i < 5; i++) {
+            record(fast, Duration.ofMillis(1), true);
+        }
+
+        assertThat(loadBalancer.choose(List.of(fast)).getServer()).isEqualTo(fast);
+    }
+
+    @Test
+    void shouldAvoidTheInstanceExcludedByTheRequestThroughTheGatewayFilter() {
+        record(fast, Duration.ofMillis(10), false);
+        record(slow, Duration.ofMillis(500), false);
+        ReactiveLoadBalancerClientFilter filter = loadBalancerClientFilter(List.of(fast, slow));
+
+        for (int i = 0; i < 20; i++) {
+            MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/services/service/api");
+            if (i % 2 == 1) {
+                request.header(LatencyAwareLoadBalancer.EXCLUDED_INSTANCE_HEADER, "fast");
+            }
+            MockServerWebExchange exchange = loadBalancedExchange(request);
+
+            filter.filter(exchange, filtered -> Mono.empty()).block(Duration.ofSeconds(5));
+
+            Response<ServiceInstance> response = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+            assertThat(response.getServer()).isEqualTo(i % 2 == 1 ? slow : fast);
+        }
+    }
+
+    @Test
+    void shouldEndTheCancelledCalls() {
+        ReactiveLoadBalancerClientFilter filter = loadBalancerClientFilter(List.of(fast));
+        LoadBalancerCancellationFilter cancellationFilter = new LoadBalancerCancellationFilter(stats);
+        MockServerWebExchange exchange = loadBalancedExchange(MockServerHttpRequest.get("/services/service/api"));
+
+        Disposable call = cancellationFilter.filter(exchange, filtered -> filter.filter(filtered, proxied -> Mono.never())).subscribe();
+        assertThat(inFlight(fast)).isEqualTo(1);
+        call.dispose();
+
+        assertThat(inFlight(fast)).isZero();
+    }
+
+    @Test
+    void shouldNotSendTheExcludedInstanceHeaderToTheServices() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, "application/json");
+        LatencyAwareLoadBalancer.excludeInstance(headers, fast);
+
+        HttpHeaders filtered = new ExcludedInstanceHeaderFilter().filter(headers, null);
+
+        assertThat(headers.getFirst(LatencyAwareLoadBalancer.EXCLUDED_INSTANCE_HEADER)).isEqualTo("fast");
+        assertThat(filtered.containsKey(LatencyAwareLoadBalancer.EXCLUDED_INSTANCE_HEADER)).isFalse();
+        assertThat(filtered.getFirst(HttpHeaders.ACCEPT)).isEqualTo("application/json");
+    }
+
+    /**
+     * The filter of the gateway calling the load balancer, with the given instances of the service.
+     */
+    @SuppressWarnings("unchecked")
+    private ReactiveLoadBalancerClientFilter loadBalancerClientFilter(List<ServiceInstance> instances) {
+        ServiceInstanceListSupplier supplier = new ServiceInstanceListSupplier() {
+            @Override
+            public String getServiceId() {
+                return "service";
+            }
+
+            @Override
+            public Flux<List<ServiceInstance>> get() {
+                return Flux.just(instances);
+            }
+        };
+        ObjectProvider<ServiceInstanceListSupplier> supplierProvider = mock(ObjectProvider.class);
+        when(supplierProvider.getIfAvailable(any())).thenReturn(supplier);
+        LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer("service", supplierProvider, stats, null);
+        LoadBalancerClientFactory clientFactory = mock(LoadBalancerClientFactory.class);
+        when(clientFactory.getInstance("service", ReactorServiceInstanceLoadBalancer.class)).thenReturn(loadBalancer);
+        when(clientFactory.getProperties("service")).thenReturn(new LoadBalancerProperties());
+        when(clientFactory.getInstances("service", LoadBalancerLifecycle.class)).thenReturn(Map.of("stats", stats));
+        return new ReactiveLoadBalancerClientFilter(clientFactory, new GatewayLoadBalancerProperties());
+    }
+
+    private static MockServerWebExchange loadBalancedExchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request.build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create("lb://service/api"));
+        return exchange;
+    }
+
+    private int inFlight(ServiceInstance instance) {
+        return stats
+            .snapshot()
+            .get("service")
+            .stream()
+            .filter(snapshot -> snapshot.getInstanceId().equals(instance.getInstanceId()))
+            .findFirst()
+            .orElseThrow()
+            .getInFlight();
+    }
+
+    private void record(ServiceInstance instance, Duration latency, boolean failed) {
+        stats
+            .get(instance)
+            .record(
+                latency.toNanos(),
+                failed,
+                System.nanoTime(),
+                Duration.ofSeconds(10).toNanos(),
+                5,
+                Duration.ofSeconds(30).toNanos(),
+                Duration.ofMinutes(5).toNanos()
+            );
+    }
+
+    private static ServiceInstance instance(String id, String zone) {
+        return new DefaultServiceInstance(id, "service", id + ".local", 8080, false, Map.of("zone", zone));
+    }
+}
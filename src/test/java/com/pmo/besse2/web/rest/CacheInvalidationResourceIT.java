@@ -0,0 +1,93 @@
+package com.pmo.besse2.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.pmo.besse2.IntegrationTest;
+import com.pmo.besse2.domain.User;
+import com.pmo.besse2.repository.EntityManager;
+import com.pmo.besse2.repository.UserLookupCache;
+import com.pmo.besse2.repository.UserRepository;
+import com.pmo.besse2.security.AuthoritiesConstants;
+import com.pmo.besse2.service.HttpCacheInvalidationTransport;
+import com.pmo.besse2.service.dto.CacheInvalidationDTO;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Integration tests for the {@link CacheInvalidationResource} REST controller.
+ */
+@AutoConfigureWebTestClient(timeout = IntegrationTest.DEFAULT_TIMEOUT)
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+@IntegrationTest
+class CacheInvalidationResourceIT {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLookupCache userLookupCache;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).clear();
+        cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE).clear();
+        user = userRepository.save(UserResourceIT.initTestUser(userRepository, em)).block();
+        userLookupCache.findOneWithAuthoritiesByLogin(user.getLogin()).block();
+    }
+
+    @Test
+    void invalidateEvictsTheUsersFromTheLocalCaches() throws Exception {
+        Cache usersByLogin = cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        assertThat(usersByLogin.get(user.getLogin())).isNotNull();
+
+        webTestClient
+            .post()
+            .uri(HttpCacheInvalidationTransport.PATH)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(invalidationOf(user)))
+            .exchange()
+            .expectStatus()
+            .isNoContent();
+
+        assertThat(usersByLogin.get(user.getLogin())).isNull();
+    }
+
+    @Test
+    @WithMockUser
+    void invalidateIsForbiddenToNonAdmins() throws Exception {
+        webTestClient
+            .post()
+            .uri(HttpCacheInvalidationTransport.PATH)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(invalidationOf(user)))
+            .exchange()
+            .expectStatus()
+            .isForbidden();
+
+        assertThat(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get(user.getLogin())).isNotNull();
+    }
+
+    private static CacheInvalidationDTO invalidationOf(User user) {
+        return new CacheInvalidationDTO("another-node", Map.of(UserRepository.USERS_BY_LOGIN_CACHE, List.of(user.getLogin())));
+    }
+}
@@ -0,0 +1,101 @@
+package com.pmo.besse2.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import com.pmo.besse2.web.rest.vm.RouteVM;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+class GatewayRouteTopologyTest {
+
+    private static final ServiceInstance FIRST_INSTANCE = new DefaultServiceInstance("first", "service-a", "first.local", 8081, false);
+
+    private static final ServiceInstance SECOND_INSTANCE = new DefaultServiceInstance("second", "service-a", "second.local", 8081, false);
+
+    private final RouteLocator routeLocator = mock(RouteLocator.class);
+
+    private final DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+
+    private GatewayRouteTopology routeTopology;
+
+    @BeforeEach
+    void setup() {
+        when(routeLocator.getRoutes()).thenReturn(Flux.just(route("SERVICE-A"), route("GATEWAY")));
+        when(discoveryClient.getInstances("service-a")).thenReturn(List.of(FIRST_INSTANCE));
+        routeTopology = new GatewayRouteTopology(routeLocator, discoveryClient, "gateway");
+    }
+
+    @Test
+    void shouldListTheRoutesOfTheServices() {
+        GatewayRouteTopology.Snapshot snapshot = routeTopology.getSnapshot().block();
+
+        assertThat(snapshot.getRoutes()).hasSize(1);
+        RouteVM route = snapshot.getRoutes().get(0);
+        assertThat(route.getServiceId()).isEqualTo("service-a");
+        assertThat(route.getPath()).isEqualTo("/services/service-a/**");
+        assertThat(route.getServiceInstances()).containsExactly(FIRST_INSTANCE);
+        assertThat(snapshot.getETag()).isNotBlank();
+    }
+
+    @Test
+    void shouldKeepTheSnapshotWhenNothingChanged() {
+        GatewayRouteTopology.Snapshot snapshot = routeTopology.getSnapshot().block();
+
+        routeTopology.onHeartbeat();
+        routeTopology.onRoutesRefreshed(new RefreshRoutesResultEvent(this));
+
+        assertThat(routeTopology.getSnapshot().block()).isSameAs(snapshot);
+        verify(routeLocator, times(2)).getRoutes();
+    }
+
+    @Test
+    void shouldUpdateTheInstancesOnHeartbeat() {
+        GatewayRouteTopology.Snapshot snapshot = routeTopology.getSnapshot().block();
+        when(discoveryClient.getInstances("service-a")).thenReturn(List.of(FIRST_INSTANCE, SECOND_INSTANCE));
+
+        routeTopology.onHeartbeat();
+
+        GatewayRouteTopology.Snapshot updated = routeTopology.getSnapshot().block();
+        assertThat(updated.getETag()).isNotEqualTo(snapshot.getETag());
+        assertThat(updated.getRoutes().get(0).getServiceInstances()).containsExactly(FIRST_INSTANCE, SECOND_INSTANCE);
+        verify(routeLocator, times(1)).getRoutes();
+    }
+
+    @Test
+    void shouldKeepTheRefreshedRoutesWhenAHeartbeatHappensMeanwhile() {
+        routeTopology.getSnapshot().block();
+        Sinks.Many<Route> routes = Sinks.many().unicast().onBackpressureBuffer();
+        when(routeLocator.getRoutes()).thenReturn(routes.asFlux());
+        routeTopology.refreshRoutes().subscribe();
+        routes.tryEmitNext(route("SERVICE-B"));
+
+        routeTopology.onHeartbeat();
+        routes.tryEmitComplete();
+
+        GatewayRouteTopology.Snapshot snapshot = routeTopology.getSnapshot().block();
+        assertThat(snapshot.getRoutes()).extracting(RouteVM::getServiceId).containsExactly("service-b");
+    }
+
+    private static Route route(String serviceId) {
+        return Route
+            .async()
+            .id("ReactiveCompositeDiscoveryClient_" + serviceId)
+            .uri("lb://" + serviceId)
+            .predicate(
+                new PathRoutePredicateFactory()
+                    .apply(config -> config.setPatterns(List.of("/services/" + serviceId.toLowerCase() + "/**")))
+            )
+            .build();
+    }
+}
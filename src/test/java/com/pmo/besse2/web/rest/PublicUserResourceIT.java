@@ -10,12 +10,20 @@ import com.pmo.besse2.repository.EntityManager;
 import com.pmo.besse2.repository.UserRepository;
 import com.pmo.besse2.repository.search.UserSearchRepository;
 import com.pmo.besse2.security.AuthoritiesConstants;
+import com.pmo.besse2.service.dto.UserCursor;
 import com.pmo.besse2.service.dto.UserDTO;
+import com.pmo.besse2.service.dto.UserSearchResultDTO;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -31,6 +39,12 @@ class PublicUserResourceIT {
 
     private static final String DEFAULT_LOGIN = "johndoe";
 
+    private static final String DEFAULT_EMAIL = "johndoe@localhost";
+
+    private static final String DEFAULT_FIRSTNAME = "john";
+
+    private static final String DEFAULT_LASTNAME = "doe";
+
     @Autowired
     private UserRepository userRepository;
 
@@ -86,6 +100,104 @@ class PublicUserResourceIT {
         assertThat(foundUser.getLogin()).isEqualTo(DEFAULT_LOGIN);
     }
 
+    @Test
+    void getAllPublicUsersAfterACursorSortedOnAPrivateProperty() {
+        userRepository.save(user).block();
+
+        webTestClient
+            .get()
+            .uri("/api/users?after=&size=1&sort=email,asc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    @Test
+    void getAllPublicUsersCursorDoesNotContainTheEmail() {
+        userRepository.save(user).block();
+
+        String link = webTestClient
+            .get()
+            .uri("/api/users?after=&size=1&sort=login,asc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(UserDTO.class)
+            .getResponseHeaders()
+            .getFirst(HttpHeaders.LINK);
+
+        Matcher after = Pattern.compile("[?&]after=([^&>]+)").matcher(link);
+        assertThat(after.find()).isTrue();
+        UserCursor cursor = UserCursor.decode(after.group(1));
+        assertThat(cursor.getOrder().getProperty()).isEqualTo("login");
+        assertThat(cursor.getLastValue()).isEqualTo(DEFAULT_LOGIN);
+        assertThat(new String(Base64.getUrlDecoder().decode(after.group(1)), StandardCharsets.UTF_8)).doesNotContain(DEFAULT_EMAIL);
+    }
+
+    @Test
+    void searchUsers() {
+        // Initialize the database and the index
+        userRepository.save(user).block();
+        mockUserSearchRepository.save(user).block();
+
+        List<UserSearchResultDTO> results = webTestClient
+            .get()
+            .uri("/api/_search/users/{query}?size=1", DEFAULT_LOGIN)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(UserSearchResultDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).getLogin()).isEqualTo(DEFAULT_LOGIN);
+        assertThat(results.get(0).getHighlights()).containsKey("login");
+        assertThat(results.get(0).getCursor()).isNotEmpty();
+    }
+
+    @Test
+    void searchUsersOnlyHighlightsThePublicFields() {
+        // Initialize the database and the index
+        userRepository.save(user).block();
+        mockUserSearchRepository.save(user).block();
+
+        List<UserSearchResultDTO> results = webTestClient
+            .get()
+            .uri("/api/_search/users/{query}", DEFAULT_FIRSTNAME + " " + DEFAULT_LASTNAME)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(UserSearchResultDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+
+        assertThat(results).isNotEmpty();
+        assertThat(results)
+            .allSatisfy(result -> {
+                if (result.getHighlights() != null) {
+                    assertThat(result.getHighlights().keySet()).isSubsetOf("id", "login");
+                }
+            });
+    }
+
+    @Test
+    void searchUsersWithInvalidCursor() {
+        webTestClient
+            .get()
+            .uri("/api/_search/users/{query}?after=invalid", DEFAULT_LOGIN)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
     @Test
     void getAllAuthorities() {
         webTestClient
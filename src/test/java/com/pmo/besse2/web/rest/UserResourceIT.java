@@ -1,6 +1,7 @@
 package com.pmo.besse2.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Mockito.*;
 
 import com.pmo.besse2.IntegrationTest;
@@ -13,8 +14,10 @@ import com.pmo.besse2.repository.UserRepository;
 import com.pmo.besse2.repository.search.UserSearchRepository;
 import com.pmo.besse2.security.AuthoritiesConstants;
 import com.pmo.besse2.service.dto.AdminUserDTO;
+import com.pmo.besse2.service.dto.UserImportResultDTO;
 import com.pmo.besse2.service.mapper.UserMapper;
 import com.pmo.besse2.web.rest.vm.ManagedUserVM;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Consumer;
@@ -278,6 +281,87 @@ class UserResourceIT {
         userSearchRepository.deleteAll();
     }
 
+    @Test
+    void importUsers() {
+        // Initialize the database
+        userRepository.save(user).block();
+        String csv = String.join(
+            "\n",
+            "login,firstName,email,authorities",
+            "importeda,Alice,importeda@localhost," + AuthoritiesConstants.USER + "|" + AuthoritiesConstants.ADMIN,
+            "",
+            DEFAULT_LOGIN + ",John,other@localhost,",
+            "importedb,Bob,IMPORTEDA@localhost,",
+            "importedc,Carol,not an email,",
+            "importedd,Dave,importedd@localhost,ROLE_UNKNOWN"
+        );
+
+        List<UserImportResultDTO> results = webTestClient
+            .post()
+            .uri("/api/admin/users/import")
+            .contentType(MediaType.parseMediaType("text/csv"))
+            .accept(MediaType.APPLICATION_NDJSON)
+            .bodyValue(csv)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(UserImportResultDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+
+        assertThat(results)
+            .extracting(UserImportResultDTO::getLine, UserImportResultDTO::getStatus)
+            .containsExactly(
+                tuple(2L, UserImportResultDTO.Status.CREATED),
+                tuple(4L, UserImportResultDTO.Status.LOGIN_ALREADY_USED),
+                tuple(5L, UserImportResultDTO.Status.EMAIL_ALREADY_USED),
+                tuple(6L, UserImportResultDTO.Status.INVALID),
+                tuple(7L, UserImportResultDTO.Status.INVALID)
+            );
+        User imported = userRepository.findOneWithAuthoritiesByLogin("importeda").block();
+        assertThat(imported.getId()).isEqualTo(results.get(0).getId());
+        assertThat(imported.getFirstName()).isEqualTo("Alice");
+        assertThat(imported.isActivated()).isTrue();
+        assertThat(imported.getResetKey()).isNotNull();
+        assertThat(imported.getAuthorities())
+            .extracting(Authority::getName)
+            .containsExactlyInAnyOrder(AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN);
+        assertThat(userRepository.findOneByLogin("importedb").blockOptional()).isEmpty();
+
+        userSearchRepository.deleteAll();
+    }
+
+    @Test
+    void importUsersWithTheActivatedColumn() {
+        String csv = String.join(
+            "\n",
+            "login,email,activated",
+            "importede,importede@localhost,false",
+            "importedf,importedf@localhost,true",
+            "importedg,importedg@localhost,"
+        );
+
+        webTestClient
+            .post()
+            .uri("/api/admin/users/import")
+            .contentType(MediaType.parseMediaType("text/csv"))
+            .accept(MediaType.APPLICATION_NDJSON)
+            .bodyValue(csv)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(UserImportResultDTO.class)
+            .getResponseBody()
+            .blockLast();
+
+        assertThat(userRepository.findOneByLogin("importede").block().isActivated()).isFalse();
+        assertThat(userRepository.findOneByLogin("importedf").block().isActivated()).isTrue();
+        assertThat(userRepository.findOneByLogin("importedg").block().isActivated()).isTrue();
+
+        userSearchRepository.deleteAll();
+    }
+
     @Test
     void getAllUsers() {
         // Initialize the database
@@ -312,6 +396,52 @@ class UserResourceIT {
         userSearchRepository.deleteAll();
     }
 
+    @Test
+    void getAllUsersPaged() {
+        // Initialize the database
+        userRepository.save(user).block();
+        User otherUser = createEntity(em);
+        otherUser.setLogin(UPDATED_LOGIN);
+        otherUser.setEmail(UPDATED_EMAIL);
+        userRepository.save(otherUser).block();
+        authorityRepository
+            .findById(AuthoritiesConstants.USER)
+            .flatMap(authority -> userRepository.saveUserAuthority(otherUser.getId(), authority.getName()))
+            .block();
+
+        // Get the second page, sorted by login, one user per page
+        List<AdminUserDTO> foundUsers = webTestClient
+            .get()
+            .uri("/api/admin/users?sort=login,desc&page=1&size=1")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Total-Count", "2")
+            .returnResult(AdminUserDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+
+        assertThat(foundUsers).hasSize(1);
+        assertThat(foundUsers.get(0).getLogin()).isEqualTo(UPDATED_LOGIN);
+        assertThat(foundUsers.get(0).getAuthorities()).containsExactly(AuthoritiesConstants.USER);
+    }
+
+    @Test
+    void getAllUsersAfterACursorSortedOnAPropertyWhichIsNotAllowed() {
+        String after = Base64.getUrlEncoder().withoutPadding().encodeToString("password\nASC\n1\n~".getBytes(StandardCharsets.UTF_8));
+
+        webTestClient
+            .get()
+            .uri("/api/admin/users?after={after}", after)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
     @Test
     void getUser() {
         // Initialize the database